@@ -4,6 +4,7 @@ import cz.zsstudanka.skola.bakakeeper.commands.*;
 import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
 import cz.zsstudanka.skola.bakakeeper.service.ServiceFactory;
+import cz.zsstudanka.skola.bakakeeper.service.SyncPlan;
 import cz.zsstudanka.skola.bakakeeper.service.SyncResult;
 import cz.zsstudanka.skola.bakakeeper.settings.Settings;
 import cz.zsstudanka.skola.bakakeeper.settings.Version;
@@ -31,6 +32,7 @@ import java.util.concurrent.Callable;
                 "Příklady:",
                 "  bakakeeper check -p heslo           Kontrola konektivity",
                 "  bakakeeper sync --verbose            Synchronizace s podrobným výstupem",
+                "  bakakeeper daemon                    Průběžná synchronizace v běžícím procesu",
                 "  bakakeeper report 5.A                Sestava přihlašovacích údajů",
                 "  bakakeeper reset 5.A --report        Reset hesel a sestava třídy",
                 "  bakakeeper reset *                   Reset hesel celé školy",
@@ -45,6 +47,7 @@ import java.util.concurrent.Callable;
         subcommands = {
                 CheckCommand.class,
                 SyncCommand.class,
+                DaemonCommand.class,
                 StatusCommand.class,
                 InitCommand.class,
                 ReportCommand.class,
@@ -179,6 +182,20 @@ public class App implements Callable<Integer> {
         if (errors > 0) ReportManager.log(EBakaLogType.LOG_ERR, "  Chyby: " + errors);
     }
 
+    /**
+     * Vypíše plán synchronizace (neprovedené změny suchého běhu).
+     *
+     * @param plan plán synchronizace
+     */
+    public static void printPlan(SyncPlan plan) {
+        if (plan.isEmpty()) {
+            return;
+        }
+        for (String line : plan.render()) {
+            ReportManager.log(EBakaLogType.LOG_STDOUT, line);
+        }
+    }
+
     /**
      * Chod programu.
      *
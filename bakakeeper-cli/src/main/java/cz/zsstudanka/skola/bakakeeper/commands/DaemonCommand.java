@@ -0,0 +1,184 @@
+package cz.zsstudanka.skola.bakakeeper.commands;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import cz.zsstudanka.skola.bakakeeper.App;
+import cz.zsstudanka.skola.bakakeeper.CliProgressListener;
+import cz.zsstudanka.skola.bakakeeper.RuntimeContext;
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.config.AppConfig;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+import cz.zsstudanka.skola.bakakeeper.service.ServiceFactory;
+import cz.zsstudanka.skola.bakakeeper.service.SyncDaemon;
+import cz.zsstudanka.skola.bakakeeper.service.SyncOrchestrator;
+import cz.zsstudanka.skola.bakakeeper.service.SyncReport;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParentCommand;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * Příkaz pro průběžnou synchronizaci v dlouhodobě běžícím procesu.
+ *
+ * <p>Spojení, pooly a mezipaměti zůstávají mezi běhy zachované; se zapnutým
+ * {@code sql.incremental} / {@code ldap.incremental} načítá každý další běh
+ * jen změněné záznamy. Přerušený běh se dokončí podle deníku na začátku
+ * dalšího běhu. Stav, metriky a vyžádání běhu zpřístupňuje lokální
+ * HTTP rozhraní (pouze 127.0.0.1).</p>
+ *
+ * @author Jan Hladěna
+ */
+@Command(name = "daemon", description = "Spustí průběžnou synchronizaci v dlouhodobě běžícím procesu.")
+public class DaemonCommand implements Callable<Integer> {
+
+    @ParentCommand App app;
+
+    @Option(names = "--interval", paramLabel = "S",
+            description = "Interval mezi běhy v sekundách (výchozí z konfigurace daemon.interval_s).")
+    Integer interval;
+
+    @Option(names = "--jitter", paramLabel = "S",
+            description = "Nejvyšší náhodné prodloužení intervalu v sekundách (výchozí z konfigurace daemon.jitter_s).")
+    Integer jitter;
+
+    @Option(names = "--port", paramLabel = "PORT",
+            description = "Port lokálního HTTP rozhraní, 0 = vypnuto (výchozí z konfigurace daemon.port).")
+    Integer port;
+
+    @Option(names = "--trigger-file", paramLabel = "SOUBOR",
+            description = "Spouštěcí soubor pro vyžádání okamžitého běhu (výchozí z konfigurace daemon.trigger_file).")
+    String triggerFile;
+
+    @Override
+    public Integer call() {
+        app.applyGlobalFlags();
+
+        ServiceFactory sf = app.createServiceFactory();
+        AppConfig config = sf.getConfig();
+
+        Duration runInterval = Duration.ofSeconds(Math.max(1, (interval != null) ? interval : config.getDaemonInterval()));
+        Duration runJitter = Duration.ofSeconds(Math.max(0, (jitter != null) ? jitter : config.getDaemonJitter()));
+        int httpPort = (port != null) ? port : config.getDaemonPort();
+        String trigger = (triggerFile != null) ? triggerFile : config.getDaemonTriggerFile();
+
+        SyncDaemon daemon = new SyncDaemon(() -> runSync(sf), runInterval, runJitter,
+                (trigger != null && !trigger.isBlank()) ? Path.of(trigger) : null);
+
+        HttpServer server = null;
+        if (httpPort > 0) {
+            // proces je v pořádku, dokud běhy nevynechá víc než dvakrát po sobě
+            Duration maxAge = runInterval.plus(runJitter).multipliedBy(3);
+            try {
+                server = startHttp(daemon, httpPort, maxAge);
+            } catch (IOException e) {
+                ReportManager.log(EBakaLogType.LOG_ERR, "HTTP rozhraní na portu " + httpPort
+                        + " nelze spustit: " + e.getMessage());
+                return 1;
+            }
+        }
+
+        // ukončení procesu (SIGTERM) – probíhající běh se dokončí
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemon.stop();
+            try {
+                daemon.awaitTermination();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "daemon-shutdown"));
+
+        ReportManager.log(EBakaLogType.LOG_STDOUT, "Průběžná synchronizace: interval " + runInterval.toSeconds()
+                + " s (+ až " + runJitter.toSeconds() + " s)"
+                + ((httpPort > 0) ? ", HTTP 127.0.0.1:" + httpPort : "")
+                + ((trigger != null && !trigger.isBlank()) ? ", spouštěcí soubor " + trigger : "") + ".");
+
+        daemon.run();
+
+        if (server != null) {
+            server.stop(0);
+        }
+        return 0;
+    }
+
+    /**
+     * Jeden běh synchronizace – shodný s příkazem {@code sync}. Přerušený
+     * předchozí běh (výpadek sítě, restart řadiče) nejprve dokončí podle
+     * deníku, jako {@code sync --resume}.
+     */
+    private SyncReport runSync(ServiceFactory sf) {
+        SyncOrchestrator orchestrator = sf.getOrchestrator();
+        CliProgressListener listener = new CliProgressListener(RuntimeContext.FLAG_VERBOSE);
+
+        if (orchestrator.hasUnfinishedRun()) {
+            SyncReport resumed = orchestrator.resume(listener);
+            App.printSummary(resumed.results());
+            if (resumed.totalActions() > 0) {
+                sf.getSyncReportSender().sendAll(resumed);
+            }
+        }
+
+        SyncReport report = orchestrator.runFullSync(true, sf.getConfig().getMaxParallelPhases(), listener);
+        App.printSummary(report.results());
+
+        // odeslání e-mailového hlášení (správci + třídním)
+        if (report.totalActions() > 0) {
+            sf.getSyncReportSender().sendAll(report);
+        }
+
+        // automatická záloha hesla správce
+        sf.getAuditService().backupAdminPassword();
+
+        return report;
+    }
+
+    /**
+     * Lokální HTTP rozhraní – /health, /metrics a POST /sync.
+     */
+    private static HttpServer startHttp(SyncDaemon daemon, int port, Duration maxAge) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+        server.createContext("/health", exchange -> {
+            SyncDaemon.Status status = daemon.status();
+            if (status.isHealthy(maxAge)) {
+                respond(exchange, 200, "OK\n");
+            } else {
+                respond(exchange, 503, (status.lastFailure() != null)
+                        ? "CHYBA: " + status.lastFailure() + "\n"
+                        : "CHYBA: synchronizace neproběhla déle než " + maxAge.toSeconds() + " s\n");
+            }
+        });
+
+        server.createContext("/metrics", exchange ->
+                respond(exchange, 200, String.join("\n", daemon.status().toMetrics()) + "\n"));
+
+        server.createContext("/sync", exchange -> {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Allow", "POST");
+                respond(exchange, 405, "Povolena je pouze metoda POST.\n");
+                return;
+            }
+            daemon.trigger();
+            respond(exchange, 202, "Běh synchronizace vyžádán.\n");
+        });
+
+        server.start();
+        return server;
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -4,8 +4,11 @@ import cz.zsstudanka.skola.bakakeeper.App;
 import cz.zsstudanka.skola.bakakeeper.CliProgressListener;
 import cz.zsstudanka.skola.bakakeeper.RuntimeContext;
 import cz.zsstudanka.skola.bakakeeper.service.ServiceFactory;
+import cz.zsstudanka.skola.bakakeeper.service.SyncPlanStore;
 import cz.zsstudanka.skola.bakakeeper.service.SyncReport;
+import cz.zsstudanka.skola.bakakeeper.settings.Settings;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
 import picocli.CommandLine.ParentCommand;
 
 import java.util.concurrent.Callable;
@@ -20,6 +23,10 @@ public class StatusCommand implements Callable<Integer> {
 
     @ParentCommand App app;
 
+    @Option(names = "--save-plan", paramLabel = "SOUBOR",
+            description = "Uloží plán synchronizace do šifrovaného souboru – lze jej později provést příkazem sync --plan.")
+    String savePlanFile;
+
     @Override
     public Integer call() {
         app.applyGlobalFlags();
@@ -28,6 +35,12 @@ public class StatusCommand implements Callable<Integer> {
         SyncReport report = sf.getOrchestrator().runFullSync(
                 false, new CliProgressListener(RuntimeContext.FLAG_VERBOSE));
         App.printSummary(report.results());
+        App.printPlan(report.plan());
+
+        if (savePlanFile != null
+                && !new SyncPlanStore(savePlanFile, Settings.getInstance().getPassphrase()).save(report.plan())) {
+            return 1;
+        }
 
         return 0;
     }
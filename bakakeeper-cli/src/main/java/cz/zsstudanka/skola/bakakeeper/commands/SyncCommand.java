@@ -3,8 +3,19 @@ package cz.zsstudanka.skola.bakakeeper.commands;
 import cz.zsstudanka.skola.bakakeeper.App;
 import cz.zsstudanka.skola.bakakeeper.CliProgressListener;
 import cz.zsstudanka.skola.bakakeeper.RuntimeContext;
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.connectors.BakaADAuthenticator;
+import cz.zsstudanka.skola.bakakeeper.connectors.BakaSQL;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapPoolStats;
+import cz.zsstudanka.skola.bakakeeper.connectors.SqlPoolStats;
+import cz.zsstudanka.skola.bakakeeper.connectors.SqlQueryStats;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+import cz.zsstudanka.skola.bakakeeper.service.PhaseTiming;
 import cz.zsstudanka.skola.bakakeeper.service.ServiceFactory;
+import cz.zsstudanka.skola.bakakeeper.service.SyncPlan;
+import cz.zsstudanka.skola.bakakeeper.service.SyncPlanStore;
 import cz.zsstudanka.skola.bakakeeper.service.SyncReport;
+import cz.zsstudanka.skola.bakakeeper.settings.Settings;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.ParentCommand;
@@ -24,6 +35,23 @@ public class SyncCommand implements Callable<Integer> {
     @Option(names = "--dryrun", description = "Režim bez zápisu – změny se pouze navrhnou.")
     boolean dryrun;
 
+    @Option(names = "--max-parallel-phases", paramLabel = "N",
+            description = "Nejvyšší počet souběžně běžících nezávislých fází (1 = postupně; výchozí z konfigurace sync.max_parallel_phases).")
+    Integer maxParallelPhases;
+
+    @Option(names = "--plan", paramLabel = "SOUBOR",
+            description = "Provede dříve uložený plán synchronizace nejvýše sync.plan_max_age_s starý"
+                    + " (výchozí 3600 s), starší se odmítne; s --dryrun jej pouze vypíše.")
+    String planFile;
+
+    @Option(names = "--resume",
+            description = "Dokončí přerušenou synchronizaci – provede jen zbývající operace z deníku.")
+    boolean resume;
+
+    @Option(names = "--save-plan", paramLabel = "SOUBOR",
+            description = "Uloží plán synchronizace dat a vyřazení žáků do šifrovaného souboru.")
+    String savePlanFile;
+
     @Override
     public Integer call() {
         app.applyGlobalFlags();
@@ -34,10 +62,50 @@ public class SyncCommand implements Callable<Integer> {
         ServiceFactory sf = app.createServiceFactory();
 
         boolean repair = !RuntimeContext.FLAG_DRYRUN;
+
+        if (planFile != null) {
+            return applyPlan(sf, repair);
+        }
+        if (resume) {
+            return resume(sf, repair);
+        }
+
+        int parallel = (maxParallelPhases != null) ? maxParallelPhases : sf.getConfig().getMaxParallelPhases();
         SyncReport report = sf.getOrchestrator().runFullSync(
-                repair, new CliProgressListener(RuntimeContext.FLAG_VERBOSE));
+                repair, parallel, new CliProgressListener(RuntimeContext.FLAG_VERBOSE));
         App.printSummary(report.results());
 
+        if (!repair) {
+            App.printPlan(report.plan());
+        }
+        if (savePlanFile != null
+                && !new SyncPlanStore(savePlanFile, Settings.getInstance().getPassphrase()).save(report.plan())) {
+            return 1;
+        }
+
+        // doba běhu jednotlivých fází a úspora souběžným během
+        for (PhaseTiming timing : report.phaseTimings()) {
+            ReportManager.log(EBakaLogType.LOG_VERBOSE, timing.toString());
+        }
+        ReportManager.log(EBakaLogType.LOG_VERBOSE, "Fáze synchronizace (souběžně nejvýše " + parallel + "): "
+                + report.phasesElapsedMs() + " ms, postupně by trvaly " + report.phasesTotalMs() + " ms.");
+
+        // využití poolů LDAP a SQL spojení – podklad pro nastavení ldap/sql.pool_min/pool_max
+        LdapPoolStats poolStats = BakaADAuthenticator.getInstance().getPoolStats();
+        if (poolStats != null) {
+            ReportManager.log(EBakaLogType.LOG_VERBOSE, poolStats.toString());
+        }
+        SqlPoolStats sqlPoolStats = BakaSQL.getInstance().getPoolStats();
+        if (sqlPoolStats != null) {
+            ReportManager.log(EBakaLogType.LOG_VERBOSE, sqlPoolStats.toString());
+        }
+        // doba provedení jednotlivých SQL dotazů
+        for (SqlQueryStats queryStats : BakaSQL.getInstance().getQueryStats()) {
+            ReportManager.log(EBakaLogType.LOG_VERBOSE, queryStats.toString());
+        }
+        // využití sdílené mezipaměti seznamů
+        ReportManager.log(EBakaLogType.LOG_VERBOSE, sf.getRosterCache().getStats().toString());
+
         // odeslání e-mailového hlášení (správci + třídním)
         if (repair && report.totalActions() > 0) {
             sf.getSyncReportSender().sendAll(report);
@@ -48,4 +116,47 @@ public class SyncCommand implements Callable<Integer> {
 
         return report.isSuccess() ? 0 : 1;
     }
+
+    /**
+     * Dokončení přerušené synchronizace podle deníku.
+     */
+    private Integer resume(ServiceFactory sf, boolean repair) {
+        if (!repair) {
+            ReportManager.log(EBakaLogType.LOG_ERR, "Přerušenou synchronizaci nelze dokončit v režimu bez zápisu.");
+            return 1;
+        }
+
+        SyncReport report = sf.getOrchestrator().resume(new CliProgressListener(RuntimeContext.FLAG_VERBOSE));
+        App.printSummary(report.results());
+
+        if (report.totalActions() > 0) {
+            sf.getSyncReportSender().sendAll(report);
+        }
+
+        return report.isSuccess() ? 0 : 1;
+    }
+
+    /**
+     * Provedení uloženého plánu – bez nového porovnání evidence s adresářem.
+     */
+    private Integer applyPlan(ServiceFactory sf, boolean repair) {
+        SyncPlan plan = new SyncPlanStore(planFile, Settings.getInstance().getPassphrase()).load();
+        if (plan == null) {
+            return 1;
+        }
+
+        if (!repair) {
+            App.printPlan(plan);
+            return 0;
+        }
+
+        SyncReport report = sf.getOrchestrator().applyPlan(plan, new CliProgressListener(RuntimeContext.FLAG_VERBOSE));
+        App.printSummary(report.results());
+
+        if (report.totalActions() > 0) {
+            sf.getSyncReportSender().sendAll(report);
+        }
+
+        return report.isSuccess() ? 0 : 1;
+    }
 }
@@ -0,0 +1,142 @@
+package cz.zsstudanka.skola.bakakeeper.model.mapping;
+
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
+import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
+import cz.zsstudanka.skola.bakakeeper.model.entities.DataSQL;
+import cz.zsstudanka.skola.bakakeeper.model.entities.SqlRow;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Alokace při převodu řádků evidence a záznamů AD na typované záznamy žáků.
+ *
+ * <p>Data odpovídají jedné škole – 30 tříd po 25 žácích. Výsledky s profilerem
+ * {@code -prof gc} ({@code gc.alloc.rate.norm}) udávají alokované bajty na jedno
+ * volání, tj. na celý seznam žáků.</p>
+ *
+ * <ul>
+ *     <li>{@code sqlRowView} – proudové čtení: pohled na řádek podle indexu sloupce,</li>
+ *     <li>{@code sqlRowCopy} – původní čtení: kopie řádku do {@link DataSQL},</li>
+ *     <li>{@code ldapEntries} – žákovské účty z AD včetně členství ve skupinách.</li>
+ * </ul>
+ *
+ * @author Jan Hladěna
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+
+    private static final EBakaSQL[] COLUMNS = {
+            EBakaSQL.F_STU_ID, EBakaSQL.F_STU_CLASS_ID, EBakaSQL.F_STU_SURNAME, EBakaSQL.F_STU_GIVENNAME,
+            EBakaSQL.F_STU_CLASS, EBakaSQL.F_STU_MAIL, EBakaSQL.F_STU_EXPIRED,
+            EBakaSQL.F_STU_BK_CLASSYEAR, EBakaSQL.F_STU_BK_CLASSLETTER,
+            EBakaSQL.F_GUA_BK_ID, EBakaSQL.F_GUA_BK_SURNAME, EBakaSQL.F_GUA_BK_GIVENNAME,
+            EBakaSQL.F_GUA_BK_MOBILE, EBakaSQL.F_GUA_BK_MAIL, EBakaSQL.F_GUA_BK_PRIMARY
+    };
+
+    /** hodnoty řádků v pořadí {@link #COLUMNS} */
+    private final List<String[]> rows = new ArrayList<>();
+
+    /** záznamy AD */
+    private final List<DataLDAP> entries = new ArrayList<>();
+
+    /** pohled na aktuální řádek – obdoba ResultSetRow */
+    private final ArrayRow view = new ArrayRow();
+
+    /**
+     * Řádek nad polem hodnot s indexy sloupců podle pořadí výčtu.
+     */
+    private static final class ArrayRow implements SqlRow {
+
+        private final int[] indexes = new int[EBakaSQL.values().length];
+        private String[] values;
+
+        ArrayRow() {
+            java.util.Arrays.fill(indexes, -1);
+            for (int i = 0; i < COLUMNS.length; i++) {
+                indexes[COLUMNS[i].ordinal()] = i;
+            }
+        }
+
+        @Override
+        public String get(EBakaSQL column) {
+            int index = indexes[column.ordinal()];
+            return (index < 0) ? null : values[index];
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        String[] letters = {"A", "B", "C"};
+        int id = 1000;
+        for (int year = 9; year >= 1; year--) {
+            for (String letter : letters) {
+                if (rows.size() >= 750) break;
+                for (int n = 1; n <= 25; n++, id++) {
+                    // nové instance řetězců – jako z ovladače JDBC/JNDI
+                    String className = new String(year + "." + letter);
+                    rows.add(new String[] {
+                            "S" + id, String.valueOf(n), "Příjmení" + id, "Jméno" + id,
+                            className, "zak" + id + "@skola.cz", EBakaSQL.NULL.field(),
+                            new String(String.valueOf(year)), new String(letter),
+                            "Z" + id, "Zástupce" + id, "Jméno" + id,
+                            "777" + id, "zz" + id + "@email.cz", "1"
+                    });
+
+                    DataLDAP entry = new DataLDAP();
+                    entry.put(EBakaLDAPAttributes.EXT01.attribute(), "S" + id);
+                    entry.put(EBakaLDAPAttributes.NAME_LAST.attribute(), "Příjmení" + id);
+                    entry.put(EBakaLDAPAttributes.NAME_FIRST.attribute(), "Jméno" + id);
+                    entry.put(EBakaLDAPAttributes.NAME_DISPLAY.attribute(), "Příjmení" + id + " Jméno" + id);
+                    entry.put(EBakaLDAPAttributes.MAIL.attribute(), "zak" + id + "@skola.cz");
+                    entry.put(EBakaLDAPAttributes.DN.attribute(), "CN=Příjmení" + id + " Jméno" + id
+                            + ",OU=Trida-" + letter + ",OU=Rocnik-" + year + ",OU=Zaci,OU=Uzivatele,DC=skola,DC=local");
+                    entry.put(EBakaLDAPAttributes.LOGIN.attribute(), "zak" + id);
+                    entry.put(EBakaLDAPAttributes.UPN.attribute(), "zak" + id + "@skola.local");
+                    entry.put(EBakaLDAPAttributes.TITLE.attribute(), new String(year + "." + letter));
+                    entry.put(EBakaLDAPAttributes.UAC.attribute(), "512");
+                    entry.put(EBakaLDAPAttributes.EXT02.attribute(), "FALSE");
+                    entry.put(EBakaLDAPAttributes.MEMBER_OF.attribute(), new ArrayList<Object>(List.of(
+                            new String("CN=Zaci-Trida-" + year + letter + ",OU=Skupiny,DC=skola,DC=local"),
+                            new String("CN=Skupina-Zaci,OU=Skupiny,DC=skola,DC=local"))));
+                    entries.add(entry);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void sqlRowView(Blackhole bh) {
+        for (String[] row : rows) {
+            view.values = row;
+            bh.consume(StudentMapper.fromSQL(view));
+        }
+    }
+
+    @Benchmark
+    public void sqlRowCopy(Blackhole bh) {
+        for (String[] row : rows) {
+            DataSQL copy = new DataSQL();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                copy.put(COLUMNS[i].basename(), row[i]);
+            }
+            bh.consume(StudentMapper.fromSQL(copy));
+        }
+    }
+
+    @Benchmark
+    public void ldapEntries(Blackhole bh) {
+        for (DataLDAP entry : entries) {
+            bh.consume(StudentMapper.fromLDAP(entry));
+        }
+    }
+}
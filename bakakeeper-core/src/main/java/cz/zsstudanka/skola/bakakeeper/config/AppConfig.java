@@ -118,6 +118,96 @@ public interface AppConfig {
     /** SMTP port (výchozí: 587). */
     default int getSmtpPort() { return 587; }
 
+    // --- LDAP pool kontextů (volitelné, s výchozími hodnotami) ---
+
+    /** Minimální počet udržovaných LDAP kontextů (výchozí: 1). */
+    default int getLdapPoolMinSize() { return 1; }
+
+    /** Maximální počet současných LDAP kontextů (výchozí: 8). */
+    default int getLdapPoolMaxSize() { return 8; }
+
+    /** Maximální doba čekání na volný LDAP kontext v ms (výchozí: 30000). */
+    default int getLdapPoolBorrowTimeout() { return 30_000; }
+
+    /** Doba nečinnosti LDAP kontextu před jeho zavřením v s (výchozí: 300). */
+    default int getLdapPoolIdleTimeout() { return 300; }
+
+    // --- SQL pool spojení (volitelné, s výchozími hodnotami) ---
+
+    /** Minimální počet udržovaných SQL spojení (výchozí: 1). */
+    default int getSqlPoolMinSize() { return 1; }
+
+    /** Maximální počet současných SQL spojení (výchozí: 4). */
+    default int getSqlPoolMaxSize() { return 4; }
+
+    /** Maximální doba čekání na volné SQL spojení v ms (výchozí: 30000). */
+    default int getSqlPoolBorrowTimeout() { return 30_000; }
+
+    /** Doba nečinnosti SQL spojení před jeho zavřením v s (výchozí: 300). */
+    default int getSqlPoolIdleTimeout() { return 300; }
+
+    /** Maximální stáří SQL spojení v s, 0 = neomezeno (výchozí: 1800). */
+    default int getSqlPoolMaxLifetime() { return 1800; }
+
+    /** Doba zapůjčení SQL spojení, po které se ohlásí jako nevrácené, v s, 0 = vypnuto (výchozí: 60). */
+    default int getSqlPoolLeakThreshold() { return 60; }
+
+    /** Počet řádků načítaných ze SQL serveru najednou při proudovém čtení (výchozí: 500). */
+    default int getSqlFetchSize() { return 500; }
+
+    /** Počet připravených dotazů v mezipaměti každého SQL spojení, 0 = vypnuto (výchozí: 32). */
+    default int getSqlStatementCacheSize() { return 32; }
+
+    /** Inkrementální čtení žáků z SQL podle kontrolních součtů tříd (výchozí: false). */
+    default boolean isSqlIncremental() { return false; }
+
+    /** Počet hodnot atributu member v jedné modifikaci skupiny (výchozí: 1000, pod MaxValRange AD). */
+    default int getLdapMemberChunkSize() { return 1000; }
+
+    /** Inkrementální čtení LDAP podle vodoznaku highestCommittedUSN (výchozí: false). */
+    default boolean isLdapIncremental() { return false; }
+
+    /** Ověření snapshotu adresáře proti serveru na konci synchronizace (výchozí: false). */
+    default boolean isLdapVerifySnapshot() { return false; }
+
+    /** Platnost mezipaměti jednotlivých vyhledání (UPN, interní kód) v s; 0 = vypnuto (výchozí: 0). */
+    default int getLdapLookupCacheTtl() { return 0; }
+
+    /** Platnost sdílené mezipaměti seznamů žáků, vyučujících a účtů v s; 0 = vypnuto (výchozí: 60). */
+    default int getRosterCacheTtl() { return 60; }
+
+    /** Nejvyšší počet souběžně běžících nezávislých fází synchronizace, 1 = postupně (výchozí: 3). */
+    default int getMaxParallelPhases() { return 3; }
+
+    /** Nejvyšší počet souběžně zpracovávaných tříd při synchronizaci žáků, 1 = postupně (výchozí: 4). */
+    default int getStudentShardParallelism() { return 4; }
+
+    /** Vést deník zapisující synchronizace pro obnovení přerušeného běhu (výchozí: true). */
+    default boolean isSyncJournal() { return true; }
+
+    /** Přeskakovat porovnání žáků, jejichž otisky v evidenci i adresáři se od posledního srovnání nezměnily (výchozí: true). */
+    default boolean isSyncFingerprints() { return true; }
+
+    /** Každá N-tá synchronizace porovná všechny žáky bez ohledu na otisky, 1 = vždy (výchozí: 24). */
+    default int getSyncFullCompareEvery() { return 24; }
+
+    /** Nejvyšší stáří uloženého plánu provedeného příkazem sync --plan v sekundách, 0 = bez omezení (výchozí: 3600). */
+    default int getSyncPlanMaxAge() { return 3600; }
+
+    // --- Dlouhodobě běžící proces (bakakeeper daemon) ---
+
+    /** Interval mezi synchronizacemi v s (výchozí: 900). */
+    default int getDaemonInterval() { return 900; }
+
+    /** Nejvyšší náhodné prodloužení intervalu v s, 0 = vypnuto (výchozí: 60). */
+    default int getDaemonJitter() { return 60; }
+
+    /** Port lokálního HTTP rozhraní (stav, metriky, spuštění běhu), 0 = vypnuto (výchozí: 8765). */
+    default int getDaemonPort() { return 8765; }
+
+    /** Spouštěcí soubor – jeho vytvořením se vyžádá okamžitý běh (výchozí: ./sync.trigger). */
+    default String getDaemonTriggerFile() { return "./sync.trigger"; }
+
     // --- Per-service credentials (fallback na globální) ---
 
     /** Uživatel pro LDAP (volitelný, výchozí: credentials.user). */
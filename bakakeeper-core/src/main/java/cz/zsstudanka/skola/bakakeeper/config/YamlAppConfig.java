@@ -211,6 +211,177 @@ public class YamlAppConfig implements AppConfig {
         return (port != null) ? port : 587;
     }
 
+    // --- LDAP pool kontextů (volitelné, s fallback na výchozí hodnoty) ---
+
+    @Override
+    public int getLdapPoolMinSize() {
+        Integer size = getInteger("ldap", "pool_min");
+        return (size != null) ? size : AppConfig.super.getLdapPoolMinSize();
+    }
+
+    @Override
+    public int getLdapPoolMaxSize() {
+        Integer size = getInteger("ldap", "pool_max");
+        return (size != null) ? size : AppConfig.super.getLdapPoolMaxSize();
+    }
+
+    @Override
+    public int getLdapPoolBorrowTimeout() {
+        Integer timeout = getInteger("ldap", "pool_timeout_ms");
+        return (timeout != null) ? timeout : AppConfig.super.getLdapPoolBorrowTimeout();
+    }
+
+    @Override
+    public int getLdapPoolIdleTimeout() {
+        Integer timeout = getInteger("ldap", "pool_idle_s");
+        return (timeout != null) ? timeout : AppConfig.super.getLdapPoolIdleTimeout();
+    }
+
+    // --- SQL pool spojení (volitelné, s fallback na výchozí hodnoty) ---
+
+    @Override
+    public int getSqlPoolMinSize() {
+        Integer size = getInteger("sql", "pool_min");
+        return (size != null) ? size : AppConfig.super.getSqlPoolMinSize();
+    }
+
+    @Override
+    public int getSqlPoolMaxSize() {
+        Integer size = getInteger("sql", "pool_max");
+        return (size != null) ? size : AppConfig.super.getSqlPoolMaxSize();
+    }
+
+    @Override
+    public int getSqlPoolBorrowTimeout() {
+        Integer timeout = getInteger("sql", "pool_timeout_ms");
+        return (timeout != null) ? timeout : AppConfig.super.getSqlPoolBorrowTimeout();
+    }
+
+    @Override
+    public int getSqlPoolIdleTimeout() {
+        Integer timeout = getInteger("sql", "pool_idle_s");
+        return (timeout != null) ? timeout : AppConfig.super.getSqlPoolIdleTimeout();
+    }
+
+    @Override
+    public int getSqlPoolMaxLifetime() {
+        Integer lifetime = getInteger("sql", "pool_lifetime_s");
+        return (lifetime != null) ? lifetime : AppConfig.super.getSqlPoolMaxLifetime();
+    }
+
+    @Override
+    public int getSqlPoolLeakThreshold() {
+        Integer threshold = getInteger("sql", "pool_leak_s");
+        return (threshold != null) ? threshold : AppConfig.super.getSqlPoolLeakThreshold();
+    }
+
+    @Override
+    public int getSqlFetchSize() {
+        Integer size = getInteger("sql", "fetch_size");
+        return (size != null) ? size : AppConfig.super.getSqlFetchSize();
+    }
+
+    @Override
+    public int getSqlStatementCacheSize() {
+        Integer size = getInteger("sql", "statement_cache");
+        return (size != null) ? size : AppConfig.super.getSqlStatementCacheSize();
+    }
+
+    @Override
+    public boolean isSqlIncremental() {
+        return getBoolean("sql", "incremental");
+    }
+
+    @Override
+    public int getLdapMemberChunkSize() {
+        Integer chunk = getInteger("ldap", "member_chunk");
+        return (chunk != null && chunk > 0) ? chunk : AppConfig.super.getLdapMemberChunkSize();
+    }
+
+    @Override
+    public boolean isLdapIncremental() {
+        return getBoolean("ldap", "incremental");
+    }
+
+    @Override
+    public boolean isLdapVerifySnapshot() {
+        return getBoolean("ldap", "verify_snapshot");
+    }
+
+    @Override
+    public int getLdapLookupCacheTtl() {
+        Integer ttl = getInteger("ldap", "lookup_cache_s");
+        return (ttl != null && ttl >= 0) ? ttl : AppConfig.super.getLdapLookupCacheTtl();
+    }
+
+    @Override
+    public int getRosterCacheTtl() {
+        Integer ttl = getInteger("cache", "roster_s");
+        return (ttl != null && ttl >= 0) ? ttl : AppConfig.super.getRosterCacheTtl();
+    }
+
+    @Override
+    public int getMaxParallelPhases() {
+        Integer max = getInteger("sync", "max_parallel_phases");
+        return (max != null && max >= 1) ? max : AppConfig.super.getMaxParallelPhases();
+    }
+
+    @Override
+    public int getStudentShardParallelism() {
+        Integer shards = getInteger("sync", "shard_parallelism");
+        return (shards != null && shards >= 1) ? shards : AppConfig.super.getStudentShardParallelism();
+    }
+
+    @Override
+    public boolean isSyncJournal() {
+        Object journal = getSection("sync").get("journal");
+        return (journal != null) ? getBooleanValue(journal) : AppConfig.super.isSyncJournal();
+    }
+
+    @Override
+    public boolean isSyncFingerprints() {
+        Object fingerprints = getSection("sync").get("fingerprints");
+        return (fingerprints != null) ? getBooleanValue(fingerprints) : AppConfig.super.isSyncFingerprints();
+    }
+
+    @Override
+    public int getSyncFullCompareEvery() {
+        Integer every = getInteger("sync", "full_compare_every");
+        return (every != null && every >= 1) ? every : AppConfig.super.getSyncFullCompareEvery();
+    }
+
+    @Override
+    public int getSyncPlanMaxAge() {
+        Integer maxAge = getInteger("sync", "plan_max_age_s");
+        return (maxAge != null && maxAge >= 0) ? maxAge : AppConfig.super.getSyncPlanMaxAge();
+    }
+
+    // --- Dlouhodobě běžící proces ---
+
+    @Override
+    public int getDaemonInterval() {
+        Integer interval = getInteger("daemon", "interval_s");
+        return (interval != null && interval >= 1) ? interval : AppConfig.super.getDaemonInterval();
+    }
+
+    @Override
+    public int getDaemonJitter() {
+        Integer jitter = getInteger("daemon", "jitter_s");
+        return (jitter != null && jitter >= 0) ? jitter : AppConfig.super.getDaemonJitter();
+    }
+
+    @Override
+    public int getDaemonPort() {
+        Integer port = getInteger("daemon", "port");
+        return (port != null && port >= 0 && port <= 65535) ? port : AppConfig.super.getDaemonPort();
+    }
+
+    @Override
+    public String getDaemonTriggerFile() {
+        String file = getString("daemon", "trigger_file");
+        return (file != null) ? file : AppConfig.super.getDaemonTriggerFile();
+    }
+
     // --- Per-service credentials (fallback na globální credentials) ---
 
     @Override
@@ -550,6 +721,14 @@ public class YamlAppConfig implements AppConfig {
         putIfPresent(ldap, "port", getInteger("ldap", "port"));
         putIfPresent(ldap, "user", getString("ldap", "user"));
         putIfPresent(ldap, "password", getString("ldap", "password"));
+        putIfPresent(ldap, "pool_min", getInteger("ldap", "pool_min"));
+        putIfPresent(ldap, "pool_max", getInteger("ldap", "pool_max"));
+        putIfPresent(ldap, "pool_timeout_ms", getInteger("ldap", "pool_timeout_ms"));
+        putIfPresent(ldap, "pool_idle_s", getInteger("ldap", "pool_idle_s"));
+        putIfPresent(ldap, "member_chunk", getInteger("ldap", "member_chunk"));
+        if (isLdapIncremental()) ldap.put("incremental", true);
+        if (isLdapVerifySnapshot()) ldap.put("verify_snapshot", true);
+        putIfPresent(ldap, "lookup_cache_s", getInteger("ldap", "lookup_cache_s"));
         ldap.put("base", getLdapBase());
         ldap.put("students", getLdapBaseStudents());
         ldap.put("alumni", getLdapBaseAlumni());
@@ -569,6 +748,15 @@ public class YamlAppConfig implements AppConfig {
         sql.put("method", getSqlConnectionMethod());
         putIfPresent(sql, "user", getString("sql", "user"));
         putIfPresent(sql, "password", getString("sql", "password"));
+        putIfPresent(sql, "pool_min", getInteger("sql", "pool_min"));
+        putIfPresent(sql, "pool_max", getInteger("sql", "pool_max"));
+        putIfPresent(sql, "pool_timeout_ms", getInteger("sql", "pool_timeout_ms"));
+        putIfPresent(sql, "pool_idle_s", getInteger("sql", "pool_idle_s"));
+        putIfPresent(sql, "pool_lifetime_s", getInteger("sql", "pool_lifetime_s"));
+        putIfPresent(sql, "pool_leak_s", getInteger("sql", "pool_leak_s"));
+        putIfPresent(sql, "fetch_size", getInteger("sql", "fetch_size"));
+        putIfPresent(sql, "statement_cache", getInteger("sql", "statement_cache"));
+        if (isSqlIncremental()) sql.put("incremental", true);
         output.put("sql", sql);
 
         Map<String, Object> mail = new LinkedHashMap<>();
@@ -594,6 +782,27 @@ public class YamlAppConfig implements AppConfig {
         policies.put("pwd_no_expire", new ArrayList<>(getPwdNoExpire()));
         output.put("policies", policies);
 
+        // volitelná sekce – zapsat jen pokud je explicitně nastavena
+        Map<String, Object> cache = new LinkedHashMap<>();
+        putIfPresent(cache, "roster_s", getInteger("cache", "roster_s"));
+        if (!cache.isEmpty()) output.put("cache", cache);
+
+        Map<String, Object> sync = new LinkedHashMap<>();
+        putIfPresent(sync, "max_parallel_phases", getInteger("sync", "max_parallel_phases"));
+        putIfPresent(sync, "shard_parallelism", getInteger("sync", "shard_parallelism"));
+        if (getSection("sync").get("journal") != null) sync.put("journal", isSyncJournal());
+        if (getSection("sync").get("fingerprints") != null) sync.put("fingerprints", isSyncFingerprints());
+        putIfPresent(sync, "full_compare_every", getInteger("sync", "full_compare_every"));
+        putIfPresent(sync, "plan_max_age_s", getInteger("sync", "plan_max_age_s"));
+        if (!sync.isEmpty()) output.put("sync", sync);
+
+        Map<String, Object> daemon = new LinkedHashMap<>();
+        putIfPresent(daemon, "interval_s", getInteger("daemon", "interval_s"));
+        putIfPresent(daemon, "jitter_s", getInteger("daemon", "jitter_s"));
+        putIfPresent(daemon, "port", getInteger("daemon", "port"));
+        putIfPresent(daemon, "trigger_file", getString("daemon", "trigger_file"));
+        if (!daemon.isEmpty()) output.put("daemon", daemon);
+
         // pravidla
         List<Map<String, Object>> rulesOut = new ArrayList<>();
         for (SyncRule rule : getRules()) {
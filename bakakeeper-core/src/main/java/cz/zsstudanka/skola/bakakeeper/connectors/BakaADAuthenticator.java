@@ -5,14 +5,16 @@ import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Konektor pro Active Directory – fasáda delegující na specializované helper třídy.
  *
  * <p>Veškerá logika byla extrahována do:
  * <ul>
- *   <li>{@link LdapConnectionFactory} – životní cyklus spojení, SSL, autentizace</li>
+ *   <li>{@link LdapConnectionFactory} – životní cyklus spojení, SSL, autentizace, pool kontextů</li>
  *   <li>{@link LdapQueryEngine} – dotazy a čtení objektů (s pagingem)</li>
  *   <li>{@link LdapObjectFactory} – vytváření a mazání objektů (OU, uživatel, kontakt, skupina)</li>
  *   <li>{@link LdapAttributeModifier} – modifikace atributů (UAC/SDDL/heslo)</li>
@@ -98,11 +100,44 @@ public class BakaADAuthenticator implements LDAPConnector {
         return connectionFactory.authUserInfo();
     }
 
+    /**
+     * Statistiky poolu LDAP kontextů (zapůjčení, čekání, vytvořená a vyřazená spojení).
+     *
+     * @return snímek statistik, nebo null pokud spojení nebylo ověřeno
+     */
+    public LdapPoolStats getPoolStats() {
+        return connectionFactory.poolStats();
+    }
+
+    /**
+     * Uzavření poolu LDAP kontextů.
+     */
+    public void close() {
+        connectionFactory.close();
+    }
+
     // === Dotazy (LdapQueryEngine) ===
 
     @Override
-    public Map getObjectInfo(String baseOU, HashMap<String, String> findAttributes, String[] retAttributes) {
-        return queryEngine.getObjectInfo(baseOU, findAttributes, retAttributes);
+    public Map getObjectInfo(String baseOU, LdapFilter filter, String[] retAttributes) {
+        return queryEngine.getObjectInfo(baseOU, filter, retAttributes);
+    }
+
+    @Override
+    public boolean searchObjects(String baseOU, LdapFilter filter, String[] retAttributes,
+                                 Consumer<DataLDAP> consumer) {
+        return queryEngine.search(baseOU, filter, retAttributes, consumer);
+    }
+
+    @Override
+    public boolean searchObjectsChangedSince(String baseOU, LdapFilter filter, long sinceUsn,
+                                             String[] retAttributes, Consumer<DataLDAP> consumer) {
+        return queryEngine.searchChangedSince(baseOU, filter, sinceUsn, retAttributes, consumer);
+    }
+
+    @Override
+    public LdapWatermark readWatermark() {
+        return queryEngine.getWatermark();
     }
 
     /**
@@ -208,6 +243,11 @@ public class BakaADAuthenticator implements LDAPConnector {
         return attributeModifier.removeAttribute(dn, attribute, oldValue);
     }
 
+    @Override
+    public Boolean modifyAttributes(LdapModificationBatch batch) {
+        return attributeModifier.modifyAttributes(batch);
+    }
+
     @Override
     public Boolean setGroupInfo(String ou, String groupCN, EBakaLDAPAttributes attribute, String value) {
         return attributeModifier.setGroupInfo(ou, groupCN, attribute, value);
@@ -276,6 +316,11 @@ public class BakaADAuthenticator implements LDAPConnector {
         return groupManager.removeObjectFromGroup(objectDN, groupDN);
     }
 
+    @Override
+    public List<String> modifyGroupMembers(String groupDN, List<String> addMembers, List<String> removeMembers) {
+        return groupManager.modifyMembers(groupDN, addMembers, removeMembers);
+    }
+
     @Override
     public Boolean removeObjectFromAllGroups(String objectDN) {
         return groupManager.removeObjectFromAllGroups(objectDN);
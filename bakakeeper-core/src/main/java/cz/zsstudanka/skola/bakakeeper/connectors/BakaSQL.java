@@ -1,18 +1,33 @@
 package cz.zsstudanka.skola.bakakeeper.connectors;
 
-import com.microsoft.sqlserver.jdbc.SQLServerDataSource;
 import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
-import cz.zsstudanka.skola.bakakeeper.constants.EBakaPorts;
 import cz.zsstudanka.skola.bakakeeper.settings.Settings;
 
+import cz.zsstudanka.skola.bakakeeper.model.entities.SqlRow;
+
 import java.sql.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.sql.rowset.CachedRowSet;
 import javax.sql.rowset.RowSetProvider;
 
 /**
  * Konektor pro Microsoft SQL Server.
  *
+ * <p>Spojení se zapůjčují z omezeného poolu ({@link SqlConnectionPool}), takže souběžná
+ * volání repozitářů běží paralelně na vlastních spojeních. Spojení z {@link #getConnection()}
+ * je nutné zavřít – tím se vrátí do poolu.</p>
+ *
+ * <p>Dotazy repozitářů jsou pojmenované a parametrizované ({@link SqlQuery}); připravují
+ * se přes mezipaměť spojení a doba jejich provedení se průběžně sčítá podle názvu.</p>
+ *
  * @author Jan Hladěna
  */
 public class BakaSQL implements SQLConnector {
@@ -20,18 +35,21 @@ public class BakaSQL implements SQLConnector {
     /** instance SQL konektoru */
     private static BakaSQL instance = null;
 
-    /** připojení k SQL */
-    private Connection con = null;
+    /** pool SQL spojení */
+    private volatile SqlConnectionPool pool = null;
 
     /** stav připojení */
-    private Boolean valid = false;
+    private volatile boolean valid = false;
+
+    /** doba provedení pojmenovaných dotazů */
+    private final SqlQueryTimings timings = new SqlQueryTimings();
 
     /**
      * Vytvoření instance připojení.
      *
      * @return instance SQL spojení
      */
-    public static BakaSQL getInstance() {
+    public static synchronized BakaSQL getInstance() {
         if (BakaSQL.instance == null) {
             BakaSQL.instance = new BakaSQL();
         }
@@ -45,43 +63,34 @@ public class BakaSQL implements SQLConnector {
     /**
      * Zjištění stavu navázání spojení.
      *
-     * @return spojení je nenulové
+     * @return pool je vytvořen a první spojení bylo navázáno
      */
     public Boolean isConnected() {
-        if (this.con == null) {
-            return false;
-        }
-
-        try {
-            if (this.con.isClosed()) {
-                closeConnectionQuietly();
-                valid = false;
-                return false;
-            }
-            try {
-                if (!this.con.isValid(2)) {
-                    closeConnectionQuietly();
-                    valid = false;
-                    return false;
-                }
-            } catch (AbstractMethodError | SQLFeatureNotSupportedException ignored) {
-                // fallback pouze na isClosed() pro starší/neúplné JDBC ovladače
-            }
-            return true;
-        } catch (SQLException e) {
-            closeConnectionQuietly();
-            valid = false;
-            return false;
-        }
+        return this.pool != null && this.valid;
     }
 
+    /**
+     * Zapůjčení spojení z poolu. Volající jej musí zavřít (vrátí se do poolu).
+     *
+     * @return spojení, nebo null pokud jej nebylo možné navázat
+     */
     public Connection getConnection() {
 
         if (!isConnected()) {
             connect();
         }
 
-        return this.con;
+        SqlConnectionPool current = this.pool;
+        if (current == null) {
+            return null;
+        }
+
+        try {
+            return current.borrow();
+        } catch (SQLException e) {
+            ReportManager.handleException("Nebylo možné získat SQL spojení.", e);
+            return null;
+        }
     }
 
     public ResultSet select(String sql) {
@@ -90,111 +99,205 @@ public class BakaSQL implements SQLConnector {
             return null;
         }
 
-        try (Statement stmt = getConnection().createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            CachedRowSet cached = RowSetProvider.newFactory().createCachedRowSet();
-            cached.populate(rs);
-            return cached;
+        Connection con = getConnection();
+        if (con == null) {
+            return null;
+        }
+
+        try (con) {
+            try (Statement stmt = con.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                CachedRowSet cached = RowSetProvider.newFactory().createCachedRowSet();
+                cached.populate(rs);
+                return cached;
+            } catch (SQLException e) {
+                invalidateOnConnectionError(con, e);
+                throw e;
+            }
         } catch (Exception e) {
             ReportManager.handleException("Nebylo možné provést SQL dotaz.", e);
-            closeConnectionQuietly();
-            valid = false;
         }
 
         return null;
     }
 
-    /**
-     * Připojení pomocí NTLMv2 autentizace.
-     */
-    private void connectNTLM() {
-        try {
-            closeConnectionQuietly();
+    @Override
+    public <T> Stream<T> stream(SqlQuery query, Function<SqlRow, T> mapper, Object... params) {
+        Connection con = getConnection();
+        if (con == null) {
+            throw new IllegalStateException("SQL spojení není k dispozici.");
+        }
 
-            // JTDS ovladač
-            Class.forName("net.sourceforge.jtds.jdbc.Driver");
+        long started = System.nanoTime();
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        ResultSetRow row;
+        try {
+            // připravený dotaz pochází z mezipaměti spojení
+            stmt = con.prepareStatement(query.sql());
+            stmt.setFetchSize(Settings.getInstance().getSqlFetchSize());
+            bind(stmt, params);
+            rs = stmt.executeQuery();
+            row = new ResultSetRow(rs);
+        } catch (SQLException e) {
+            closeQuietly(rs, stmt, con, e);
+            throw new IllegalStateException("Nebylo možné provést SQL dotaz " + query + ".", e);
+        }
 
-            int port = Settings.getInstance().getSqlPort();
-            String url = "jdbc:jtds:" + EBakaPorts.SRV_MSSQL.getScheme() + "://" + Settings.getInstance().getSqlHost()
-                    + ":" + port
-                    + "/" + Settings.getInstance().getSqlDatabase()
-                    + ";domain=" + Settings.getInstance().getLdapDomain().toUpperCase() + ";useNTLMv2=true;CharacterSet=UTF-8";
+        ResultSet cursor = rs;
+        Statement statement = stmt;
+        long[] rows = { 0 };
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!cursor.next()) {
+                        return false;
+                    }
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Nebylo možné přečíst výsledek SQL dotazu " + query + ".", e);
+                }
+                rows[0]++;
+                action.accept(mapper.apply(row));
+                return true;
+            }
+        };
+
+        // doba dotazu se měří včetně čtení řádků až do zavření proudu
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> {
+                    closeQuietly(cursor, statement, con, null);
+                    timings.record(query.name(), System.nanoTime() - started, rows[0]);
+                });
+    }
 
-            con = DriverManager.getConnection(url, Settings.getInstance().getSqlUser(), Settings.getInstance().getSqlPass());
+    @Override
+    public int update(SqlQuery query, Object... params) throws SQLException {
+        Connection con = getConnection();
+        if (con == null) {
+            throw new SQLNonTransientConnectionException("SQL spojení není k dispozici.");
+        }
 
-            if (this.con != null) {
-                this.debugInfo();
-                valid = true;
-            } else {
-                valid = false;
+        long started = System.nanoTime();
+        try (con) {
+            try (PreparedStatement stmt = con.prepareStatement(query.sql())) {
+                bind(stmt, params);
+                int affected = stmt.executeUpdate();
+                timings.record(query.name(), System.nanoTime() - started, affected);
+                return affected;
+            } catch (SQLException e) {
+                invalidateOnConnectionError(con, e);
+                throw e;
             }
-
-        } catch (Exception e) {
-            ReportManager.handleException("Nebylo možné vytvořit NTLM spojení se SQL serverem.", e);
-            closeConnectionQuietly();
-            valid = false;
         }
     }
 
-    /**
-     * Připojení pomocí ověření protokolem Kerberos 5.
-     */
-    private void connectKerberos() {
-        closeConnectionQuietly();
+    @Override
+    public int[] updateBatch(SqlQuery query, List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return new int[0];
+        }
 
-        StringBuilder conString = new StringBuilder();
+        Connection con = getConnection();
+        if (con == null) {
+            throw new SQLNonTransientConnectionException("SQL spojení není k dispozici.");
+        }
 
-        // připojovací řetězec integrovaného ověřování
-        int port = Settings.getInstance().getSqlPort();
-        conString.append("jdbc:");
-        conString.append(EBakaPorts.SRV_MSSQL.getScheme() + "://" + Settings.getInstance().getSqlHost() + ":" + port + "; ");
-        conString.append("DatabaseName=" + Settings.getInstance().getSqlDatabase() + "; ");
+        long started = System.nanoTime();
+        // nepotvrzená transakce se při vrácení spojení do poolu odvolá
+        try (con) {
+            try (PreparedStatement stmt = con.prepareStatement(query.sql())) {
+                con.setAutoCommit(false);
+                for (Object[] params : rows) {
+                    bind(stmt, params);
+                    stmt.addBatch();
+                }
 
-        // UPN + heslo pro Kerberos
-        conString.append("user=" + Settings.getInstance().getKrbUser() + "; ");
-        conString.append("password=" + Settings.getInstance().getSqlPass() + "; ");
-        // SPN
-        conString.append("ServerSpn=" + Settings.getInstance().getSqlSpn() + "; ");
-        conString.append("integratedSecurity=true; authenticationScheme=JavaKerberos; loginTimeout=1; ");
+                int[] counts;
+                try {
+                    counts = stmt.executeBatch();
+                } catch (BatchUpdateException e) {
+                    if (SqlConnectionPool.isConnectionError(e)) {
+                        throw e;
+                    }
+                    // řádky za selháním ovladač nemusel provést
+                    counts = batchCounts(e.getUpdateCounts(), rows.size());
+                }
 
-        String connectionUrl = conString.toString();
+                con.commit();
+                con.setAutoCommit(true);
 
-        // vytvoření Krb5 tiketu
-        try {
-            BakaKerberos.generateTicket();
-        } catch (Exception e) {
-            ReportManager.handleException("Nevytvořil se tiket služby MSSQLSvc.", e);
+                long affected = 0;
+                for (int count : counts) {
+                    if (count > 0) affected += count;
+                }
+                timings.record(query.name(), System.nanoTime() - started, affected);
+                return counts;
+            } catch (SQLException e) {
+                invalidateOnConnectionError(con, e);
+                throw e;
+            }
         }
+    }
 
-        // vytvoření spojení
-        try {
-            // identifikace třídy
-            Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
+    /**
+     * Počty řádků dávky po částečném selhání – neprovedené řádky jsou označeny jako selhané.
+     */
+    private static int[] batchCounts(int[] reported, int size) {
+        int[] counts = new int[size];
+        Arrays.fill(counts, Statement.EXECUTE_FAILED);
+        if (reported != null) {
+            System.arraycopy(reported, 0, counts, 0, Math.min(reported.length, size));
+        }
+        return counts;
+    }
 
-            SQLServerDataSource ds = new SQLServerDataSource();
-            // základní řetězec
-            ds.setURL(connectionUrl);
+    /**
+     * Spojení po chybě komunikace se do poolu nevrací.
+     */
+    private void invalidateOnConnectionError(Connection con, SQLException e) {
+        SqlConnectionPool current = this.pool;
+        if (current != null && SqlConnectionPool.isConnectionError(e)) {
+            current.invalidate(con);
+        }
+    }
 
-            this.con = ds.getConnection();
+    @Override
+    public List<SqlQueryStats> getQueryStats() {
+        return timings.snapshot();
+    }
 
-            if (this.con != null) {
-                debugInfo();
-                valid = true;
-            } else {
-                valid = false;
-            }
+    /**
+     * Nastavení parametrů dotazu v pořadí zástupných znaků.
+     */
+    private static void bind(PreparedStatement stmt, Object[] params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+    }
 
-        } catch (Exception e) {
-            ReportManager.handleException("Nebylo možné vytvořit Kerberos spojení se SQL serverem.", e);
-            closeConnectionQuietly();
-            valid = false;
+    /**
+     * Uzavření výsledku, dotazu a vrácení spojení do poolu (po chybě komunikace se spojení zahodí).
+     */
+    private void closeQuietly(ResultSet rs, Statement stmt, Connection con, SQLException cause) {
+        if (cause != null) {
+            invalidateOnConnectionError(con, cause);
+        }
+
+        for (AutoCloseable resource : new AutoCloseable[] { rs, stmt, con }) {
+            if (resource == null) continue;
+            try {
+                resource.close();
+            } catch (Exception ignored) {
+                // zdroj už může být zavřený
+            }
         }
     }
 
     /**
      * Ladící informace o spojení.
      */
-    private void debugInfo() {
+    private void debugInfo(Connection con) {
         if (Settings.getInstance().isVerbose()) {
             ReportManager.log("SQL připojení bylo vytvořeno.");
         }
@@ -222,62 +325,40 @@ public class BakaSQL implements SQLConnector {
     }
 
     /**
-     * Připojení přímým SQL Server ověřením (user/password bez doménového ověření).
-     * Používá Microsoft JDBC Driver.
+     * Vyvoření poolu spojení podle nastavené metody ověření a navázání prvního spojení.
      */
-    private void connectSQL() {
-        try {
-            closeConnectionQuietly();
-            Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
-
-            int port = Settings.getInstance().getSqlPort();
-            SQLServerDataSource ds = new SQLServerDataSource();
-            ds.setServerName(Settings.getInstance().getSqlHost());
-            ds.setPortNumber(port);
-            ds.setDatabaseName(Settings.getInstance().getSqlDatabase());
-            ds.setUser(Settings.getInstance().getSqlUser());
-            ds.setPassword(Settings.getInstance().getSqlPass());
-            ds.setEncrypt("true");
-            ds.setTrustServerCertificate(true);
-
-            this.con = ds.getConnection();
-
-            if (this.con != null) {
-                debugInfo();
-                valid = true;
-            } else {
-                valid = false;
-            }
-
-        } catch (Exception e) {
-            ReportManager.handleException("Nebylo možné vytvořit SQL Server spojení.", e);
-            closeConnectionQuietly();
-            valid = false;
-        }
-    }
-
-    /**
-     * Vyvoření spojení.
-     */
-    public void connect() {
+    public synchronized void connect() {
 
         if (isConnected()) {
             return;
         }
 
-        closeConnectionQuietly();
-        valid = false;
-
-        if (Settings.getInstance().isSqlKerberos()) {
-            connectKerberos();
-        }
+        close();
 
-        if (Settings.getInstance().isSqlNtlm()) {
-            connectNTLM();
-        }
+        SqlConnectionPool created = null;
+        try {
+            created = new SqlConnectionPool(SqlConnectionFactory.fromSettings(),
+                    Settings.getInstance().getSqlPoolMinSize(),
+                    Settings.getInstance().getSqlPoolMaxSize(),
+                    Settings.getInstance().getSqlPoolBorrowTimeout(),
+                    Settings.getInstance().getSqlPoolIdleTimeout() * 1000L,
+                    Settings.getInstance().getSqlPoolMaxLifetime() * 1000L,
+                    Settings.getInstance().getSqlPoolLeakThreshold() * 1000L,
+                    Settings.getInstance().getSqlStatementCacheSize());
+
+            // ověření přihlášení prvním spojením, které zůstane v poolu
+            try (Connection con = created.borrow()) {
+                debugInfo(con);
+            }
+            created.prefill();
 
-        if (Settings.getInstance().isSqlAuth()) {
-            connectSQL();
+            this.pool = created;
+            this.valid = true;
+        } catch (Exception e) {
+            ReportManager.handleException("Nebylo možné vytvořit spojení se SQL serverem.", e);
+            if (created != null) {
+                created.close();
+            }
         }
     }
 
@@ -296,16 +377,18 @@ public class BakaSQL implements SQLConnector {
         return testSQL();
     }
 
-    private void closeConnectionQuietly() {
-        if (this.con == null) {
-            return;
-        }
-        try {
-            this.con.close();
-        } catch (Exception ignored) {
-            // spojení už může být neplatné nebo zavřené
-        } finally {
-            this.con = null;
+    @Override
+    public SqlPoolStats getPoolStats() {
+        SqlConnectionPool current = this.pool;
+        return (current != null) ? current.stats() : null;
+    }
+
+    @Override
+    public synchronized void close() {
+        this.valid = false;
+        if (this.pool != null) {
+            this.pool.close();
+            this.pool = null;
         }
     }
 }
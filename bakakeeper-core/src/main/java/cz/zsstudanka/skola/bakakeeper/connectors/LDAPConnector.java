@@ -5,7 +5,9 @@ import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Rozhraní pro LDAP/AD konektivitu. Umožňuje testovatelnost repository vrstvy
@@ -20,7 +22,36 @@ public interface LDAPConnector {
 
     /** Dotaz na objekty v AD. */
     @SuppressWarnings("rawtypes")
-    Map getObjectInfo(String baseOU, HashMap<String, String> findAttributes, String[] retAttributes);
+    Map getObjectInfo(String baseOU, LdapFilter filter, String[] retAttributes);
+
+    /**
+     * Proudový dotaz na objekty v AD – každý objekt je předán konzumentovi
+     * průběžně se stránkami výsledků, bez hromadění celé odpovědi v paměti.
+     *
+     * @param baseOU základní OU pro prohledávání
+     * @param filter LDAP filtr
+     * @param retAttributes seznam čtených atributů
+     * @param consumer zpracování jednoho objektu
+     * @return hledání proběhlo bez chyby
+     */
+    boolean searchObjects(String baseOU, LdapFilter filter, String[] retAttributes,
+                          Consumer<DataLDAP> consumer);
+
+    /**
+     * Proudový dotaz na objekty změněné po zadaném USN (uSNChanged).
+     *
+     * @param baseOU základní OU pro prohledávání
+     * @param filter LDAP filtr
+     * @param sinceUsn USN posledního zpracovaného stavu
+     * @param retAttributes seznam čtených atributů
+     * @param consumer zpracování jednoho objektu
+     * @return hledání proběhlo bez chyby
+     */
+    boolean searchObjectsChangedSince(String baseOU, LdapFilter filter, long sinceUsn,
+                                      String[] retAttributes, Consumer<DataLDAP> consumer);
+
+    /** Aktuální vodoznak změn (highestCommittedUSN) připojeného řadiče domény, nebo null. */
+    LdapWatermark readWatermark();
 
     /** Ověření existence DN. */
     Boolean checkDN(String dn);
@@ -43,6 +74,9 @@ public interface LDAPConnector {
     /** Odebrání konkrétní hodnoty z multi-value atributu. */
     Boolean removeAttribute(String dn, EBakaLDAPAttributes attribute, String oldValue);
 
+    /** Provedení dávky změn atributů jednoho objektu jedinou operací. */
+    Boolean modifyAttributes(LdapModificationBatch batch);
+
     /** Přejmenování objektu (změna CN) ve stejné OU. Vrací nové DN, nebo null při chybě. */
     String renameObject(String objectDN, String newCn);
 
@@ -67,6 +101,9 @@ public interface LDAPConnector {
     /** Odebrání objektu z konkrétní skupiny. */
     Boolean removeObjectFromGroup(String objectDN, String groupDN);
 
+    /** Hromadná změna členů skupiny. Vrací DN členů, jejichž změna selhala. */
+    List<String> modifyGroupMembers(String groupDN, List<String> addMembers, List<String> removeMembers);
+
     // --- Správa struktury OU a skupin ---
 
     /** Kontrola existence OU. Vrací počet položek v OU, nebo -1 pokud neexistuje. */
@@ -11,11 +11,11 @@ import net.tirasa.adsddl.ntsd.SDDL;
 import net.tirasa.adsddl.ntsd.controls.SDFlagsControl;
 
 import javax.naming.NameAlreadyBoundException;
-import javax.naming.NamingException;
 import javax.naming.directory.*;
 import javax.naming.ldap.Control;
 import javax.naming.ldap.LdapContext;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -58,11 +58,13 @@ class LdapAttributeModifier {
         }
 
         LdapContext bakaContext = null;
+        Exception failure = null;
         try {
-            bakaContext = connectionFactory.createContext();
-
             ModificationItem mod[] = new ModificationItem[1];
 
+            // zápis NT Security Descriptoru vyžaduje SD flags control
+            boolean writeDacl = false;
+
             // heslo v Microsoft Active Directory
             if (attribute.equals(EBakaLDAPAttributes.PW_UNICODE)) {
                 String password = "\"" + value + "\"";
@@ -75,9 +77,9 @@ class LdapAttributeModifier {
                 // změna UAC na Microsoft Active Directory
             } else if (attribute.equals(EBakaLDAPAttributes.UAC)) {
                 // původní data v UAC
-                HashMap<String, String> queryOrig = new HashMap<String, String>();
-                queryOrig.put(EBakaLDAPAttributes.OC_USER.attribute(), EBakaLDAPAttributes.OC_USER.value());
-                queryOrig.put(EBakaLDAPAttributes.CN.attribute(), BakaUtils.parseCN(dn));
+                LdapFilter queryOrig = LdapFilter.and(
+                        LdapFilter.is(EBakaLDAPAttributes.OC_USER),
+                        LdapFilter.eq(EBakaLDAPAttributes.CN, BakaUtils.parseCN(dn)));
 
                 String[] origAttributes = {
                         EBakaLDAPAttributes.UAC.attribute()
@@ -98,7 +100,7 @@ class LdapAttributeModifier {
                 // požadována změna oprávnění uživatelské změny hesla?
                 if (uacPNXOrig != uacPNXNew) {
 
-                    bakaContext.setRequestControls(new Control[] { new SDFlagsControl(0x04) }); // DACL
+                    writeDacl = true;
 
                     // data objektu
                     Map<Integer, Map<String, Object>> ntsdOrigResult = queryEngine.getObjectInfo(
@@ -136,6 +138,12 @@ class LdapAttributeModifier {
                 mod[0] = new ModificationItem(modOp, new BasicAttribute(attribute.attribute(), value));
             }
 
+            // kontext se zapůjčuje až po dokončení čtení – dotazy výše si berou vlastní kontext z poolu
+            bakaContext = connectionFactory.borrowContext();
+            if (writeDacl) {
+                bakaContext.setRequestControls(new Control[] { new SDFlagsControl(0x04) }); // DACL
+            }
+
             bakaContext.modifyAttributes(dn, mod);
         } catch (AttributeInUseException | NameAlreadyBoundException e) {
             // LDAP error 20 (AttributeInUseException) nebo 68 (NameAlreadyBoundException, Samba4) –
@@ -147,10 +155,11 @@ class LdapAttributeModifier {
             }
             return true;
         } catch (Exception e) {
+            failure = e;
             ReportManager.handleException("Nebylo možné modifikovat atribut objektu.", e);
             return false;
         } finally {
-            if (bakaContext != null) { try { bakaContext.close(); } catch (NamingException ignored) {} }
+            connectionFactory.releaseContext(bakaContext, failure);
         }
 
         return true;
@@ -206,6 +215,159 @@ class LdapAttributeModifier {
         }
     }
 
+    /**
+     * Provedení dávky změn jednoho objektu jedinou operací {@code modifyAttributes}.
+     *
+     * <p>Změny UAC vyžadují čtení původní hodnoty (případně zápis NT Security
+     * Descriptoru) a provádějí se samostatně. Nahrazení prázdnou hodnotou se odešle
+     * jako {@code REMOVE_ATTRIBUTE} bez hodnoty (Samba4, LDAP error 21).</p>
+     *
+     * <p>Operace nad adresářem je atomická – pokud server dávku odmítne (např. přidání
+     * již existující hodnoty, odebrání neexistujícího atributu), neprovede se nic
+     * a změny se zopakují jednotlivě s ošetřením idempotence.</p>
+     *
+     * @param batch dávka změn
+     * @return úspěch všech změn
+     */
+    Boolean modifyAttributes(LdapModificationBatch batch) {
+        List<LdapModificationBatch.Modification> direct = new ArrayList<>();
+        List<LdapModificationBatch.Modification> separate = new ArrayList<>();
+        for (LdapModificationBatch.Modification mod : batch.getModifications()) {
+            if (mod.attribute().equals(EBakaLDAPAttributes.UAC)) {
+                separate.add(mod);
+            } else {
+                direct.add(mod);
+            }
+        }
+
+        boolean result = true;
+        if (direct.size() == 1) {
+            separate.add(0, direct.get(0));
+        } else if (!direct.isEmpty()) {
+            result = modifyAtOnce(batch.getDn(), direct);
+        }
+
+        for (LdapModificationBatch.Modification mod : separate) {
+            result &= modifySingle(batch.getDn(), mod);
+        }
+
+        return result;
+    }
+
+    /**
+     * Odeslání změn jedním požadavkem, při odmítnutí jednotlivě.
+     */
+    private boolean modifyAtOnce(String dn, List<LdapModificationBatch.Modification> modifications) {
+        if (Settings.getInstance().isDebug()) {
+            ReportManager.log(EBakaLogType.LOG_LDAP, "Dávková modifikace objektu: [" + dn + "], změn: " + modifications.size() + ".");
+        }
+
+        LdapContext ctx = null;
+        Exception failure = null;
+        try {
+            ModificationItem[] mods = new ModificationItem[modifications.size()];
+            for (int m = 0; m < modifications.size(); m++) {
+                mods[m] = toModificationItem(modifications.get(m));
+            }
+
+            ctx = connectionFactory.borrowContext();
+            ctx.modifyAttributes(dn, mods);
+            return true;
+        } catch (Exception e) {
+            failure = e;
+            if (Settings.getInstance().isDebug()) {
+                ReportManager.log(EBakaLogType.LOG_DEBUG,
+                        "Dávka změn objektu [" + dn + "] byla odmítnuta (" + e.getMessage() + "), změny proběhnou jednotlivě.");
+            }
+        } finally {
+            connectionFactory.releaseContext(ctx, failure);
+        }
+
+        boolean result = true;
+        for (LdapModificationBatch.Modification mod : modifications) {
+            result &= modifySingle(dn, mod);
+        }
+        return result;
+    }
+
+    /**
+     * Převod změny z dávky na položku modifikace.
+     */
+    private static ModificationItem toModificationItem(LdapModificationBatch.Modification mod) throws Exception {
+        String attribute = mod.attribute().attribute();
+
+        switch (mod.operation()) {
+            case REPLACE:
+                if (mod.value() == null || mod.value().isEmpty()) {
+                    // Samba4 – odebrání atributu bez hodnoty namísto REPLACE s prázdnou hodnotou
+                    return new ModificationItem(DirContext.REMOVE_ATTRIBUTE, new BasicAttribute(attribute));
+                }
+                return new ModificationItem(DirContext.REPLACE_ATTRIBUTE, valueOf(mod));
+            case ADD:
+                return new ModificationItem(DirContext.ADD_ATTRIBUTE, valueOf(mod));
+            default:
+                return new ModificationItem(DirContext.REMOVE_ATTRIBUTE, valueOf(mod));
+        }
+    }
+
+    private static BasicAttribute valueOf(LdapModificationBatch.Modification mod) throws Exception {
+        // heslo v Microsoft Active Directory
+        if (mod.attribute().equals(EBakaLDAPAttributes.PW_UNICODE)) {
+            return new BasicAttribute(mod.attribute().attribute(), ("\"" + mod.value() + "\"").getBytes("UTF-16LE"));
+        }
+        return new BasicAttribute(mod.attribute().attribute(), mod.value());
+    }
+
+    /**
+     * Změna více hodnot jednoho atributu jedinou položkou modifikace
+     * (např. přidání nebo odebrání více členů skupiny).
+     *
+     * <p>Chyby se nehlásí – volající při neúspěchu opakuje změny jednotlivě.</p>
+     *
+     * @param modOp typ operace DirContext (ADD_ATTRIBUTE/REMOVE_ATTRIBUTE)
+     * @param dn plné DN objektu
+     * @param attribute atribut
+     * @param values hodnoty
+     * @return úspěch operace
+     */
+    boolean modifyValues(int modOp, String dn, EBakaLDAPAttributes attribute, List<String> values) {
+        if (Settings.getInstance().isDebug()) {
+            ReportManager.log(EBakaLogType.LOG_LDAP, "Operace typu [" + modOp + "] nad objektem: [" + dn + "]. Atribut: ["
+                    + attribute.attribute() + "], počet hodnot: " + values.size() + ".");
+        }
+
+        LdapContext ctx = null;
+        Exception failure = null;
+        try {
+            BasicAttribute attr = new BasicAttribute(attribute.attribute());
+            values.forEach(attr::add);
+
+            ctx = connectionFactory.borrowContext();
+            ctx.modifyAttributes(dn, new ModificationItem[] { new ModificationItem(modOp, attr) });
+            return true;
+        } catch (Exception e) {
+            failure = e;
+            if (Settings.getInstance().isDebug()) {
+                ReportManager.log(EBakaLogType.LOG_DEBUG,
+                        "Hromadná změna atributu [" + attribute.attribute() + "] objektu [" + dn + "] selhala: " + e.getMessage());
+            }
+            return false;
+        } finally {
+            connectionFactory.releaseContext(ctx, failure);
+        }
+    }
+
+    /**
+     * Provedení jedné změny z dávky samostatným požadavkem.
+     */
+    private boolean modifySingle(String dn, LdapModificationBatch.Modification mod) {
+        return switch (mod.operation()) {
+            case REPLACE -> replaceAttribute(dn, mod.attribute(), mod.value());
+            case ADD -> addAttribute(dn, mod.attribute(), mod.value());
+            case REMOVE -> removeAttribute(dn, mod.attribute(), mod.value());
+        };
+    }
+
     /**
      * Kompletní odebrání atributu z objektu (bez specifikace hodnoty).
      *
@@ -227,8 +389,9 @@ class LdapAttributeModifier {
         }
 
         LdapContext ctx = null;
+        Exception failure = null;
         try {
-            ctx = connectionFactory.createContext();
+            ctx = connectionFactory.borrowContext();
             ModificationItem[] mod = new ModificationItem[1];
             // BasicAttribute bez hodnoty → odebere celý atribut
             mod[0] = new ModificationItem(DirContext.REMOVE_ATTRIBUTE,
@@ -241,11 +404,12 @@ class LdapAttributeModifier {
                         "Atribut [" + attribute.attribute() + "] neexistuje na [" + dn + "] – přeskakuji.");
             }
         } catch (Exception e) {
+            failure = e;
             ReportManager.handleException(
                     "Nebylo možné odebrat atribut [" + attribute.attribute() + "] z objektu [" + dn + "].", e);
             return false;
         } finally {
-            if (ctx != null) { try { ctx.close(); } catch (NamingException ignored) {} }
+            connectionFactory.releaseContext(ctx, failure);
         }
 
         return true;
@@ -6,11 +6,12 @@ import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
 import cz.zsstudanka.skola.bakakeeper.settings.Settings;
 
+import javax.naming.CommunicationException;
 import javax.naming.Context;
 import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
 import javax.naming.ldap.InitialLdapContext;
 import javax.naming.ldap.LdapContext;
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
 
@@ -40,6 +41,9 @@ class LdapConnectionFactory {
     /** reference na dotazovací engine (pro vyhledání přihlášeného uživatele) */
     private LdapQueryEngine queryEngine;
 
+    /** pool znovupoužitelných LDAP kontextů */
+    private LdapContextPool pool;
+
     /**
      * Konstruktor – provede autentizaci s výchozím nastavením.
      */
@@ -79,7 +83,6 @@ class LdapConnectionFactory {
         int port = Settings.getInstance().getLdapPort();
 
         env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
-        env.put("com.sun.jndi.ldap.connect.pool", "true");
         if (Settings.getInstance().isLdapSsl()) {
             env.put(Context.SECURITY_PROTOCOL, "ssl");
             env.put("java.naming.ldap.factory.socket", "cz.zsstudanka.skola.bakakeeper.components.BakaSSLSocketFactory");
@@ -127,16 +130,27 @@ class LdapConnectionFactory {
 
             this.authSucceeded = true;
 
+            // pool kontextů – dotazy i zápisy helper tříd sdílí navázaná spojení
+            if (this.pool != null) {
+                this.pool.close();
+            }
+            this.pool = new LdapContextPool(this::createContext,
+                    Settings.getInstance().getLdapPoolMinSize(),
+                    Settings.getInstance().getLdapPoolMaxSize(),
+                    Settings.getInstance().getLdapPoolBorrowTimeout(),
+                    Settings.getInstance().getLdapPoolIdleTimeout() * 1000L);
+            this.pool.prefill();
+
             if (Settings.getInstance().isVerbose()) {
                 ReportManager.log(EBakaLogType.LOG_VERBOSE, "Ověření proti Active Directory proběhlo úspěšně.");
             }
 
             // uložení lokálních informací o přihlášeném uživateli
             if (queryEngine != null) {
-                HashMap<String, String> userLDAPquery = new HashMap<>();
-                userLDAPquery.put(EBakaLDAPAttributes.ST_USER.attribute(), EBakaLDAPAttributes.ST_USER.value());
-                userLDAPquery.put(EBakaLDAPAttributes.OC_USER.attribute(), EBakaLDAPAttributes.OC_USER.value());
-                userLDAPquery.put(EBakaLDAPAttributes.LOGIN.attribute(), user);
+                LdapFilter userLDAPquery = LdapFilter.and(
+                        LdapFilter.is(EBakaLDAPAttributes.ST_USER),
+                        LdapFilter.is(EBakaLDAPAttributes.OC_USER),
+                        LdapFilter.eq(EBakaLDAPAttributes.LOGIN, user));
 
                 // hledání v celé doméně (servisní účet může být v jiné OU)
                 String domainRootDn = java.util.Arrays.stream(Settings.getInstance().getLdapDomain().split("\\."))
@@ -191,7 +205,7 @@ class LdapConnectionFactory {
     }
 
     /**
-     * Vytvoří nový LDAP kontext. Volající je zodpovědný za zavření kontextu.
+     * Vytvoří nový LDAP kontext mimo pool. Volající je zodpovědný za zavření kontextu.
      *
      * @return nový LDAP kontext
      * @throws NamingException při chybě připojení
@@ -199,4 +213,61 @@ class LdapConnectionFactory {
     LdapContext createContext() throws NamingException {
         return new InitialLdapContext(env, null);
     }
+
+    /**
+     * Zapůjčí LDAP kontext z poolu. Volající jej musí vrátit
+     * přes {@link #releaseContext(LdapContext)}.
+     *
+     * @return připravený LDAP kontext
+     * @throws NamingException při chybě připojení nebo vypršení čekání na volný kontext
+     */
+    LdapContext borrowContext() throws NamingException {
+        if (pool == null) {
+            throw new ServiceUnavailableException("Spojení s Active Directory nebylo ověřeno.");
+        }
+        return pool.borrow();
+    }
+
+    /**
+     * Vrátí zapůjčený kontext do poolu. Po chybě komunikace je kontext zahozen.
+     *
+     * @param ctx zapůjčený kontext (null je ignorován)
+     * @param failure výjimka vzniklá při práci s kontextem, nebo null
+     */
+    void releaseContext(LdapContext ctx, Exception failure) {
+        if (ctx == null || pool == null) return;
+
+        if (failure instanceof CommunicationException || failure instanceof ServiceUnavailableException) {
+            pool.invalidate(ctx);
+        } else {
+            pool.release(ctx);
+        }
+    }
+
+    /**
+     * Vrátí zapůjčený kontext do poolu.
+     *
+     * @param ctx zapůjčený kontext (null je ignorován)
+     */
+    void releaseContext(LdapContext ctx) {
+        releaseContext(ctx, null);
+    }
+
+    /**
+     * Statistiky poolu LDAP kontextů.
+     *
+     * @return snímek statistik, nebo null před ověřením spojení
+     */
+    LdapPoolStats poolStats() {
+        return (pool != null) ? pool.stats() : null;
+    }
+
+    /**
+     * Uzavře pool a všechny nečinné kontexty.
+     */
+    void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
 }
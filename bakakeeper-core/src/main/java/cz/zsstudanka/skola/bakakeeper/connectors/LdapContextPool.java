@@ -0,0 +1,289 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.LdapContext;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Omezený pool LDAP kontextů.
+ *
+ * <p>Každý kontext představuje navázané (a ověřené) spojení s řadičem domény,
+ * takže jeho znovupoužití šetří TLS handshake i bind. Pool drží nejvýše
+ * {@code maxSize} kontextů, nečinné kontexty nad {@code minSize} po uplynutí
+ * {@code idleTimeout} zavírá a kontext nečinný déle než {@code probeInterval}
+ * před zapůjčením ověří dotazem na RootDSE.</p>
+ *
+ * <p>Zapůjčený kontext je nutné vždy vrátit přes {@link #release(LdapContext)},
+ * případně zahodit přes {@link #invalidate(LdapContext)}. Request controls
+ * nastavené volajícím (stránkování, SD flags) se při vrácení resetují.</p>
+ *
+ * @author Jan Hladěna
+ */
+class LdapContextPool {
+
+    /** zdroj nových kontextů */
+    @FunctionalInterface
+    interface ContextSource {
+        LdapContext create() throws NamingException;
+    }
+
+    /** nečinný kontext v poolu */
+    private record IdleEntry(LdapContext context, long idleSince) {}
+
+    /** atributy čtené při ověření spojení */
+    private static final String[] PROBE_ATTRIBUTES = { "supportedLDAPVersion" };
+
+    /** interval mezi ověřením kontextu (ms) */
+    private static final long PROBE_INTERVAL_MS = 30_000;
+
+    private final ContextSource source;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+
+    /** nečinné kontexty (LIFO – nejčerstvější spojení se používá přednostně) */
+    private final LinkedBlockingDeque<IdleEntry> idle = new LinkedBlockingDeque<>();
+
+    /** zapůjčené kontexty */
+    private final Map<LdapContext, Boolean> leased = new IdentityHashMap<>();
+
+    /** povolení odpovídající maximální velikosti poolu */
+    private final Semaphore permits;
+
+    /** plánovač vyřazování nečinných kontextů */
+    private final ScheduledExecutorService evictor;
+
+    // statistiky
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Konstruktor.
+     *
+     * @param source zdroj nových kontextů
+     * @param minSize minimální počet udržovaných kontextů
+     * @param maxSize maximální počet současně existujících kontextů
+     * @param borrowTimeoutMs maximální doba čekání na volný kontext (ms)
+     * @param idleTimeoutMs doba nečinnosti, po které je kontext nad minimem zavřen (ms)
+     */
+    LdapContextPool(ContextSource source, int minSize, int maxSize, long borrowTimeoutMs, long idleTimeoutMs) {
+        this.source = source;
+        this.maxSize = Math.max(1, maxSize);
+        this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.permits = new Semaphore(this.maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ldap-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, idleTimeoutMs / 2);
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Předvytvoření minimálního počtu kontextů.
+     */
+    void prefill() {
+        while (!closed && idle.size() < minSize && permits.tryAcquire()) {
+            try {
+                idle.offerFirst(new IdleEntry(newContext(), System.currentTimeMillis()));
+            } catch (NamingException e) {
+                ReportManager.handleException("Nebylo možné předvytvořit LDAP kontext.", e);
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Zapůjčení kontextu. Čeká nejvýše {@code borrowTimeoutMs} na uvolnění kontextu.
+     *
+     * @return připravený LDAP kontext
+     * @throws NamingException při chybě spojení nebo vypršení čekání
+     */
+    LdapContext borrow() throws NamingException {
+        if (closed) {
+            throw new ServiceUnavailableException("Pool LDAP kontextů byl uzavřen.");
+        }
+
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Čekání na LDAP kontext bylo přerušeno.");
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new ServiceUnavailableException("Nebyl k dispozici volný LDAP kontext do " + borrowTimeoutMs + " ms.");
+        }
+
+        try {
+            LdapContext ctx = takeIdle();
+            if (ctx == null) {
+                ctx = newContext();
+            }
+            synchronized (leased) {
+                leased.put(ctx, Boolean.TRUE);
+            }
+            borrowed.incrementAndGet();
+            return ctx;
+        } catch (NamingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Vrácení zapůjčeného kontextu do poolu.
+     *
+     * @param ctx kontext získaný přes {@link #borrow()}
+     */
+    void release(LdapContext ctx) {
+        if (ctx == null || !unlease(ctx)) return;
+
+        try {
+            // odstranění request controls (paged results, SD flags) předchozího volajícího
+            ctx.setRequestControls(null);
+        } catch (NamingException e) {
+            destroy(ctx);
+            permits.release();
+            return;
+        }
+
+        if (closed) {
+            destroy(ctx);
+        } else {
+            idle.offerFirst(new IdleEntry(ctx, System.currentTimeMillis()));
+        }
+        permits.release();
+    }
+
+    /**
+     * Zahození zapůjčeného kontextu (např. po chybě komunikace).
+     *
+     * @param ctx kontext získaný přes {@link #borrow()}
+     */
+    void invalidate(LdapContext ctx) {
+        if (ctx == null || !unlease(ctx)) return;
+        destroy(ctx);
+        evicted.incrementAndGet();
+        permits.release();
+    }
+
+    /**
+     * Uzavření poolu a všech nečinných kontextů. Zapůjčené kontexty
+     * budou zavřeny při vrácení.
+     */
+    void close() {
+        closed = true;
+        evictor.shutdownNow();
+        IdleEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            destroy(entry.context());
+        }
+    }
+
+    /**
+     * Aktuální statistiky poolu.
+     *
+     * @return snímek statistik
+     */
+    LdapPoolStats stats() {
+        int active;
+        synchronized (leased) {
+            active = leased.size();
+        }
+        return new LdapPoolStats(minSize, maxSize, active, idle.size(), waiting.get(),
+                borrowed.get(), created.get(), evicted.get(), timeouts.get());
+    }
+
+    /**
+     * Vyzvednutí použitelného nečinného kontextu; neplatné kontexty jsou zavřeny.
+     */
+    private LdapContext takeIdle() {
+        IdleEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            long idleFor = System.currentTimeMillis() - entry.idleSince();
+            if (idleFor < PROBE_INTERVAL_MS || isHealthy(entry.context())) {
+                return entry.context();
+            }
+            destroy(entry.context());
+            evicted.incrementAndGet();
+        }
+        return null;
+    }
+
+    /**
+     * Ověření spojení čtením RootDSE.
+     */
+    private boolean isHealthy(LdapContext ctx) {
+        try {
+            ctx.getAttributes("", PROBE_ATTRIBUTES);
+            return true;
+        } catch (NamingException e) {
+            ReportManager.log(EBakaLogType.LOG_DEBUG, "LDAP kontext neprošel ověřením spojení a bude zahozen.");
+            return false;
+        }
+    }
+
+    /**
+     * Periodické zavírání kontextů nečinných déle než {@code idleTimeoutMs}, při zachování minima.
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<IdleEntry> it = idle.descendingIterator();
+        while (it.hasNext() && idle.size() > minSize) {
+            IdleEntry entry = it.next();
+            if (now - entry.idleSince() >= idleTimeoutMs && idle.removeFirstOccurrence(entry)) {
+                destroy(entry.context());
+                evicted.incrementAndGet();
+            }
+        }
+    }
+
+    private LdapContext newContext() throws NamingException {
+        LdapContext ctx = source.create();
+        created.incrementAndGet();
+        return ctx;
+    }
+
+    private boolean unlease(LdapContext ctx) {
+        synchronized (leased) {
+            return leased.remove(ctx) != null;
+        }
+    }
+
+    private void destroy(LdapContext ctx) {
+        try {
+            ctx.close();
+        } catch (NamingException ignored) {}
+    }
+}
@@ -0,0 +1,218 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
+import cz.zsstudanka.skola.bakakeeper.utils.BakaUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Typovaný LDAP filtr (RFC 4515).
+ *
+ * <p>Filtr se skládá z uzlů (a, nebo, negace, rovnost, přítomnost, podřetězec, neostrá
+ * nerovnost) a do textové podoby se převádí až metodou {@link #encode()}. Hodnoty se při
+ * převodu vždy ošetří, názvy atributů se berou tak, jak jsou.</p>
+ *
+ * <pre>{@code
+ * LdapFilter.and(LdapFilter.is(EBakaLDAPAttributes.OC_USER),
+ *                LdapFilter.eq(EBakaLDAPAttributes.UPN, upn))
+ * }</pre>
+ *
+ * <p>Opakovaně používané filtry s parametry lze předkompilovat přes {@link LdapFilterTemplate}.</p>
+ *
+ * @author Jan Hladěna
+ */
+public sealed interface LdapFilter permits LdapFilter.And, LdapFilter.Or, LdapFilter.Not,
+        LdapFilter.Equals, LdapFilter.GreaterOrEqual, LdapFilter.Present, LdapFilter.Substring,
+        LdapFilter.Prepared {
+
+    /**
+     * Textová podoba filtru.
+     *
+     * @return filtr podle RFC 4515
+     */
+    String encode();
+
+    // --- uzly ---
+
+    /** Konjunkce. */
+    record And(List<LdapFilter> filters) implements LdapFilter {
+        public And {
+            filters = List.copyOf(filters);
+        }
+
+        @Override
+        public String encode() {
+            // jediný člen nepotřebuje obalení
+            if (filters.size() == 1) return filters.get(0).encode();
+            return compose('&', filters);
+        }
+    }
+
+    /** Disjunkce. */
+    record Or(List<LdapFilter> filters) implements LdapFilter {
+        public Or {
+            filters = List.copyOf(filters);
+        }
+
+        @Override
+        public String encode() {
+            if (filters.size() == 1) return filters.get(0).encode();
+            return compose('|', filters);
+        }
+    }
+
+    /** Negace. */
+    record Not(LdapFilter filter) implements LdapFilter {
+        @Override
+        public String encode() {
+            return "(!" + filter.encode() + ")";
+        }
+    }
+
+    /** Rovnost hodnoty atributu. */
+    record Equals(String attribute, String value) implements LdapFilter {
+        @Override
+        public String encode() {
+            return "(" + attribute + "=" + BakaUtils.escapeLdapFilter(value) + ")";
+        }
+    }
+
+    /** Hodnota atributu větší nebo rovna. */
+    record GreaterOrEqual(String attribute, String value) implements LdapFilter {
+        @Override
+        public String encode() {
+            return "(" + attribute + ">=" + BakaUtils.escapeLdapFilter(value) + ")";
+        }
+    }
+
+    /** Přítomnost atributu. */
+    record Present(String attribute) implements LdapFilter {
+        @Override
+        public String encode() {
+            return "(" + attribute + "=*)";
+        }
+    }
+
+    /** Shoda podřetězce – začátek, libovolné vnitřní části a konec (každá část je volitelná). */
+    record Substring(String attribute, String initial, List<String> any, String fin) implements LdapFilter {
+        public Substring {
+            any = List.copyOf(any);
+        }
+
+        @Override
+        public String encode() {
+            StringBuilder filter = new StringBuilder("(").append(attribute).append('=');
+            if (initial != null) filter.append(BakaUtils.escapeLdapFilter(initial));
+            filter.append('*');
+            for (String part : any) {
+                filter.append(BakaUtils.escapeLdapFilter(part)).append('*');
+            }
+            if (fin != null) filter.append(BakaUtils.escapeLdapFilter(fin));
+            return filter.append(')').toString();
+        }
+    }
+
+    /** Filtr již převedený do textu z předkompilované šablony. */
+    record Prepared(String filter) implements LdapFilter {
+        @Override
+        public String encode() {
+            return filter;
+        }
+    }
+
+    // --- tovární metody ---
+
+    /**
+     * Konjunkce filtrů.
+     *
+     * @param filters filtry
+     * @return (&amp;...)
+     */
+    static LdapFilter and(LdapFilter... filters) {
+        return new And(Arrays.asList(filters));
+    }
+
+    /**
+     * Disjunkce filtrů.
+     *
+     * @param filters filtry
+     * @return (|...)
+     */
+    static LdapFilter or(LdapFilter... filters) {
+        return new Or(Arrays.asList(filters));
+    }
+
+    /**
+     * Negace filtru.
+     *
+     * @param filter filtr
+     * @return (!...)
+     */
+    static LdapFilter not(LdapFilter filter) {
+        return new Not(filter);
+    }
+
+    /**
+     * Rovnost hodnoty atributu.
+     *
+     * @param attribute atribut
+     * @param value hodnota (bude ošetřena)
+     * @return (atribut=hodnota)
+     */
+    static LdapFilter eq(EBakaLDAPAttributes attribute, String value) {
+        return new Equals(attribute.attribute(), value);
+    }
+
+    /**
+     * Rovnost atributu s jeho pevnou hodnotou z výčtu (např. {@code OC_USER}, {@code ST_USER}).
+     *
+     * @param attributeWithValue atribut s hodnotou
+     * @return (atribut=hodnota)
+     */
+    static LdapFilter is(EBakaLDAPAttributes attributeWithValue) {
+        return new Equals(attributeWithValue.attribute(), attributeWithValue.value());
+    }
+
+    /**
+     * Hodnota atributu větší nebo rovna.
+     *
+     * @param attribute atribut
+     * @param value hodnota (bude ošetřena)
+     * @return (atribut&gt;=hodnota)
+     */
+    static LdapFilter greaterOrEqual(EBakaLDAPAttributes attribute, String value) {
+        return new GreaterOrEqual(attribute.attribute(), value);
+    }
+
+    /**
+     * Přítomnost atributu.
+     *
+     * @param attribute atribut
+     * @return (atribut=*)
+     */
+    static LdapFilter present(EBakaLDAPAttributes attribute) {
+        return new Present(attribute.attribute());
+    }
+
+    /**
+     * Shoda podřetězce.
+     *
+     * @param attribute atribut
+     * @param initial začátek hodnoty, nebo null
+     * @param fin konec hodnoty, nebo null
+     * @param any vnitřní části hodnoty
+     * @return (atribut=začátek*část*konec)
+     */
+    static LdapFilter substring(EBakaLDAPAttributes attribute, String initial, String fin, String... any) {
+        return new Substring(attribute.attribute(), initial, Arrays.asList(any), fin);
+    }
+
+    private static String compose(char operator, List<LdapFilter> filters) {
+        StringBuilder filter = new StringBuilder("(").append(operator);
+        for (LdapFilter member : filters) {
+            filter.append(member.encode());
+        }
+        return filter.append(')').toString();
+    }
+}
@@ -0,0 +1,114 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import cz.zsstudanka.skola.bakakeeper.utils.BakaUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Předkompilovaná šablona LDAP filtru s parametry {@code {0}}, {@code {1}}, …
+ *
+ * <p>Šablona se rozloží na pevné části a pozice parametrů jen jednou a je sdílena
+ * v mezipaměti podle svého textu. Dosazené hodnoty se vždy ošetří podle RFC 4515,
+ * pevné části šablony se nemění.</p>
+ *
+ * <pre>{@code
+ * LdapFilterTemplate.compile("(&(objectClass=user)(userPrincipalName={0}))").bind(upn)
+ * }</pre>
+ *
+ * @author Jan Hladěna
+ */
+public final class LdapFilterTemplate {
+
+    /** zkompilované šablony podle textu */
+    private static final Map<String, LdapFilterTemplate> CACHE = new ConcurrentHashMap<>();
+
+    /** pevné části šablony (o jednu více než parametrů) */
+    private final String[] literals;
+
+    /** index parametru za každou pevnou částí */
+    private final int[] parameters;
+
+    /** počet různých parametrů */
+    private final int arity;
+
+    private LdapFilterTemplate(String[] literals, int[] parameters) {
+        this.literals = literals;
+        this.parameters = parameters;
+
+        int max = -1;
+        for (int index : parameters) max = Math.max(max, index);
+        this.arity = max + 1;
+    }
+
+    /**
+     * Zkompilovaná šablona (z mezipaměti, případně nově rozložená).
+     *
+     * @param pattern text šablony
+     * @return šablona
+     * @throws IllegalArgumentException nevyvážené závorky nebo chybný parametr
+     */
+    public static LdapFilterTemplate compile(String pattern) {
+        return CACHE.computeIfAbsent(pattern, LdapFilterTemplate::parse);
+    }
+
+    /**
+     * Dosazení hodnot do šablony.
+     *
+     * @param values hodnoty parametrů v pořadí indexů
+     * @return filtr
+     * @throws IllegalArgumentException nesouhlasí počet hodnot
+     */
+    public LdapFilter bind(String... values) {
+        if (values.length != arity) {
+            throw new IllegalArgumentException("Šablona LDAP filtru očekává " + arity + " hodnot, předáno " + values.length + ".");
+        }
+
+        StringBuilder filter = new StringBuilder(literals[0]);
+        for (int i = 0; i < parameters.length; i++) {
+            filter.append(BakaUtils.escapeLdapFilter(values[parameters[i]]));
+            filter.append(literals[i + 1]);
+        }
+        return new LdapFilter.Prepared(filter.toString());
+    }
+
+    private static LdapFilterTemplate parse(String pattern) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> parameters = new ArrayList<>();
+
+        int depth = 0;
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '{') {
+                int end = pattern.indexOf('}', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Neukončený parametr v šabloně LDAP filtru: " + pattern);
+                }
+                try {
+                    parameters.add(Integer.parseInt(pattern.substring(i + 1, end)));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Chybný parametr v šabloně LDAP filtru: " + pattern, e);
+                }
+                literals.add(literal.toString());
+                literal.setLength(0);
+                i = end;
+                continue;
+            }
+
+            if (c == '(') depth++;
+            if (c == ')' && --depth < 0) break;
+            literal.append(c);
+        }
+
+        if (depth != 0) {
+            throw new IllegalArgumentException("Nevyvážené závorky v šabloně LDAP filtru: " + pattern);
+        }
+        literals.add(literal.toString());
+
+        return new LdapFilterTemplate(literals.toArray(new String[0]),
+                parameters.stream().mapToInt(Integer::intValue).toArray());
+    }
+}
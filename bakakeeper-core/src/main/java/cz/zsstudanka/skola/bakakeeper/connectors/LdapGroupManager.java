@@ -3,6 +3,7 @@ package cz.zsstudanka.skola.bakakeeper.connectors;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.settings.Settings;
 
+import javax.naming.directory.DirContext;
 import java.util.*;
 
 /**
@@ -44,8 +45,7 @@ class LdapGroupManager {
         ArrayList<String> result = null;
 
         // dotaz
-        HashMap<String, String> ldapQ = new HashMap<String, String>();
-        ldapQ.put(EBakaLDAPAttributes.DN.attribute(), objDN);
+        LdapFilter ldapQ = LdapFilter.eq(EBakaLDAPAttributes.DN, objDN);
 
         // požadované atributy
         String[] retAttributes = {
@@ -91,32 +91,41 @@ class LdapGroupManager {
     /**
      * Výpis všech přímých členů skupiny definované pomocí plného DN.
      *
+     * <p>Čte se atribut {@code member} samotné skupiny (u velkých skupin po rozsazích),
+     * nikoli hledání {@code memberOf=} v celém stromu. Vráceni jsou členové pod
+     * základní LDAP bází, stejně jako dříve.</p>
+     *
      * @param dn plné DN skupiny
      * @return seznam DN přímo podřízených objektů
      */
     public ArrayList<String> listDirectMembers(String dn) {
         ArrayList<String> result = new ArrayList<>(0);
 
-        // dotaz na všechny přímé členy skupiny (uživatele i kontakty)
-        HashMap<String, String> ldapQ = new HashMap<String, String>();
-        ldapQ.put(EBakaLDAPAttributes.MEMBER_OF.attribute(), dn);
+        // dotaz na samotnou skupinu
+        LdapFilter ldapQ = LdapFilter.is(EBakaLDAPAttributes.OC_GROUP);
 
-        // získat DN
+        // členové skupiny
         String[] retAttributes = {
-                EBakaLDAPAttributes.DN.attribute(),
+                EBakaLDAPAttributes.MEMBER.attribute(),
         };
 
-        Map<Integer, Map<String, String>> query = (Map<Integer, Map<String, String>>) queryEngine.getObjectInfo(Settings.getInstance().getLdapBase(), ldapQ, retAttributes);
+        Map<Integer, Map<String, Object>> query = (Map<Integer, Map<String, Object>>) queryEngine.getObjectInfo(dn, ldapQ, retAttributes);
+        if (query == null || query.get(0) == null) {
+            return result;
+        }
 
-        if (query != null && query.size() > 0) {
-            result = new ArrayList<String>(query.size());
+        Object members = query.get(0).get(EBakaLDAPAttributes.MEMBER.attribute());
+        String baseSuffix = "," + Settings.getInstance().getLdapBase().toLowerCase();
 
-            for (int memberCounter = 0; memberCounter < query.size(); memberCounter++) {
-                Map<String, String> member = query.get(memberCounter);
-                if (member != null && member.get(EBakaLDAPAttributes.DN.attribute()) != null) {
-                    result.add(member.get(EBakaLDAPAttributes.DN.attribute()));
+        if (members instanceof List<?> list) {
+            result = new ArrayList<>(list.size());
+            for (Object member : list) {
+                if (member.toString().toLowerCase().endsWith(baseSuffix)) {
+                    result.add(member.toString());
                 }
             }
+        } else if (members != null && members.toString().toLowerCase().endsWith(baseSuffix)) {
+            result.add(members.toString());
         }
 
         return result;
@@ -167,6 +176,61 @@ class LdapGroupManager {
         return attributeModifier.removeAttribute(groupDN, EBakaLDAPAttributes.MEMBER, objectDN);
     }
 
+    /**
+     * Hromadná změna členů skupiny.
+     *
+     * <p>Členové se odebírají a přidávají vícehodnotovými modifikacemi atributu
+     * {@code member} po dávkách velikosti {@code ldap.member_chunk}. Server dávku
+     * zpracuje atomicky – pokud ji odmítne (např. člen již existuje nebo chybí),
+     * změny dávky se zopakují po jednotlivých členech.</p>
+     *
+     * @param groupDN plné DN skupiny
+     * @param addMembers DN přidávaných členů
+     * @param removeMembers DN odebíraných členů
+     * @return DN členů, jejichž změna selhala (prázdný seznam při úspěchu)
+     */
+    public List<String> modifyMembers(String groupDN, List<String> addMembers, List<String> removeMembers) {
+        List<String> failed = new ArrayList<>();
+        int chunkSize = Math.max(1, Settings.getInstance().getLdapMemberChunkSize());
+
+        // nejprve odebrání – uvolní místo při přesunech mezi skupinami
+        for (List<String> chunk : chunks(removeMembers, chunkSize)) {
+            if (!attributeModifier.modifyValues(DirContext.REMOVE_ATTRIBUTE, groupDN, EBakaLDAPAttributes.MEMBER, chunk)) {
+                for (String member : chunk) {
+                    if (!removeObjectFromGroup(member, groupDN)) {
+                        failed.add(member);
+                    }
+                }
+            }
+        }
+
+        for (List<String> chunk : chunks(addMembers, chunkSize)) {
+            if (!attributeModifier.modifyValues(DirContext.ADD_ATTRIBUTE, groupDN, EBakaLDAPAttributes.MEMBER, chunk)) {
+                for (String member : chunk) {
+                    if (!addObjectToGroup(member, groupDN)) {
+                        failed.add(member);
+                    }
+                }
+            }
+        }
+
+        return failed;
+    }
+
+    /**
+     * Rozdělení seznamu na dávky.
+     */
+    private static List<List<String>> chunks(List<String> values, int chunkSize) {
+        List<List<String>> result = new ArrayList<>();
+        if (values == null) {
+            return result;
+        }
+        for (int from = 0; from < values.size(); from += chunkSize) {
+            result.add(values.subList(from, Math.min(values.size(), from + chunkSize)));
+        }
+        return result;
+    }
+
     /**
      * Odebrání objektu ze všech dosavadních skupin.
      *
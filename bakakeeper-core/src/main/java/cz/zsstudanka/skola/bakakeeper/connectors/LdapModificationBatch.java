@@ -0,0 +1,122 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Dávka změn atributů jednoho objektu.
+ *
+ * <p>Změny se sbírají v pořadí volání a odešlou se jedinou operací
+ * {@code modifyAttributes(dn, ModificationItem[])} – místo jednoho požadavku
+ * na každý atribut. Nahrazení prázdnou hodnotou znamená odebrání atributu.</p>
+ *
+ * @author Jan Hladěna
+ */
+public class LdapModificationBatch {
+
+    /** Typ změny. */
+    public enum Operation {
+        /** nahrazení hodnoty (prázdná hodnota = odebrání atributu) */
+        REPLACE,
+        /** přidání hodnoty */
+        ADD,
+        /** odebrání konkrétní hodnoty */
+        REMOVE
+    }
+
+    /**
+     * Jedna změna atributu.
+     *
+     * @param operation typ změny
+     * @param attribute atribut
+     * @param value     hodnota
+     */
+    public record Modification(Operation operation, EBakaLDAPAttributes attribute, String value) implements Serializable {}
+
+    /** DN modifikovaného objektu */
+    private final String dn;
+
+    /** změny v pořadí provedení */
+    private final List<Modification> modifications = new ArrayList<>();
+
+    /**
+     * Nová prázdná dávka.
+     *
+     * @param dn DN modifikovaného objektu
+     */
+    public LdapModificationBatch(String dn) {
+        this.dn = dn;
+    }
+
+    /**
+     * Nahrazení hodnoty atributu (null/prázdná hodnota atribut odebere).
+     *
+     * @param attribute atribut
+     * @param value nová hodnota
+     * @return tato dávka
+     */
+    public LdapModificationBatch replace(EBakaLDAPAttributes attribute, String value) {
+        modifications.add(new Modification(Operation.REPLACE, attribute, value));
+        return this;
+    }
+
+    /**
+     * Přidání hodnoty k (vícehodnotovému) atributu.
+     *
+     * @param attribute atribut
+     * @param value přidávaná hodnota
+     * @return tato dávka
+     */
+    public LdapModificationBatch add(EBakaLDAPAttributes attribute, String value) {
+        modifications.add(new Modification(Operation.ADD, attribute, value));
+        return this;
+    }
+
+    /**
+     * Odebrání konkrétní hodnoty atributu.
+     *
+     * @param attribute atribut
+     * @param value odebíraná hodnota
+     * @return tato dávka
+     */
+    public LdapModificationBatch remove(EBakaLDAPAttributes attribute, String value) {
+        modifications.add(new Modification(Operation.REMOVE, attribute, value));
+        return this;
+    }
+
+    /**
+     * DN modifikovaného objektu.
+     *
+     * @return DN
+     */
+    public String getDn() {
+        return dn;
+    }
+
+    /**
+     * Změny v pořadí provedení.
+     *
+     * @return neměnný seznam změn
+     */
+    public List<Modification> getModifications() {
+        return Collections.unmodifiableList(modifications);
+    }
+
+    /**
+     * Dávka neobsahuje žádnou změnu.
+     *
+     * @return prázdná dávka
+     */
+    public boolean isEmpty() {
+        return modifications.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "[" + dn + "] " + modifications.size() + " změn";
+    }
+}
@@ -6,7 +6,6 @@ import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
 import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
 import cz.zsstudanka.skola.bakakeeper.settings.Settings;
 
-import javax.naming.NamingException;
 import javax.naming.directory.*;
 import javax.naming.ldap.LdapContext;
 import java.util.HashMap;
@@ -179,9 +178,9 @@ class LdapObjectFactory {
     public Boolean deleteContact(String dn) {
 
         // dotaz
-        HashMap<String, String> ldapQ = new HashMap<>();
-        ldapQ.put(EBakaLDAPAttributes.OC_CONTACT.attribute(), EBakaLDAPAttributes.OC_CONTACT.value());
-        ldapQ.put(EBakaLDAPAttributes.DN.attribute(), dn);
+        LdapFilter ldapQ = LdapFilter.and(
+                LdapFilter.is(EBakaLDAPAttributes.OC_CONTACT),
+                LdapFilter.eq(EBakaLDAPAttributes.DN, dn));
 
         // požadované atributy
         String[] retAttributes = {
@@ -306,8 +305,9 @@ class LdapObjectFactory {
 
         // kontext – try-finally pro správné uzavření
         LdapContext ctxGC = null;
+        Exception failure = null;
         try {
-            ctxGC = connectionFactory.createContext();
+            ctxGC = connectionFactory.borrowContext();
 
             if (objectClass.length == 2 && objectClass[1].contains(EBakaLDAPAttributes.OC_OU.value())) {
                 // tvorba OU
@@ -318,9 +318,10 @@ class LdapObjectFactory {
             }
 
         } catch (Exception e) {
+            failure = e;
             ReportManager.handleException("Nebylo možné vytvořit požadovaný LDAP záznam (" + cnName + ").", e);
         } finally {
-            if (ctxGC != null) { try { ctxGC.close(); } catch (NamingException ignored) {} }
+            connectionFactory.releaseContext(ctxGC, failure);
         }
 
     }
@@ -334,14 +335,16 @@ class LdapObjectFactory {
 
         // kontext – try-finally pro správné uzavření
         LdapContext ctxGC = null;
+        Exception failure = null;
         try {
-            ctxGC = connectionFactory.createContext();
+            ctxGC = connectionFactory.borrowContext();
             ctxGC.destroySubcontext(dn);
             return true;
         } catch (Exception e) {
+            failure = e;
             ReportManager.handleException("Nebylo možné smazat záznam [" + dn + "].", e);
         } finally {
-            if (ctxGC != null) { try { ctxGC.close(); } catch (NamingException ignored) {} }
+            connectionFactory.releaseContext(ctxGC, failure);
         }
 
         return false;
@@ -78,15 +78,17 @@ class LdapObjectMover {
 
         // provedení přejmenování – try-finally pro správné uzavření
         LdapContext ctxRN = null;
+        Exception failure = null;
         try {
-            ctxRN = connectionFactory.createContext();
+            ctxRN = connectionFactory.borrowContext();
             ctxRN.rename(objectDN, newObjectDN);
         } catch (Exception e) {
+            failure = e;
             ReportManager.handleException(
                     "Nebylo možné přejmenovat objekt [" + objectDN + "] na [" + newObjectDN + "].", e);
             return null;
         } finally {
-            if (ctxRN != null) { try { ctxRN.close(); } catch (Exception ignored) {} }
+            connectionFactory.releaseContext(ctxRN, failure);
         }
 
         // ověřit existenci nového DN
@@ -216,13 +218,15 @@ class LdapObjectMover {
 
         // 5. Provedení přesunu – try-finally pro správné uzavření
         LdapContext ctxOM = null;
+        Exception failure = null;
         try {
-            ctxOM = connectionFactory.createContext();
+            ctxOM = connectionFactory.borrowContext();
             ctxOM.rename(objectDN, newObjectDN);
         } catch (Exception e) {
+            failure = e;
             ReportManager.handleException("Nebylo možné přesunout objekt.", e);
         } finally {
-            if (ctxOM != null) { try { ctxOM.close(); } catch (Exception ignored) {} }
+            connectionFactory.releaseContext(ctxOM, failure);
         }
 
         // kontrola existence objektu po přesunutí
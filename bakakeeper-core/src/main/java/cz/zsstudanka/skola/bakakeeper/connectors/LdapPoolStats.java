@@ -0,0 +1,35 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+/**
+ * Snímek statistik poolu LDAP kontextů – podklad pro nastavení jeho velikosti.
+ *
+ * @param minSize minimální velikost poolu
+ * @param maxSize maximální velikost poolu
+ * @param active počet aktuálně zapůjčených kontextů
+ * @param idle počet nečinných kontextů v poolu
+ * @param waiting počet vláken čekajících na kontext
+ * @param borrowed celkový počet zapůjčení
+ * @param created celkový počet vytvořených kontextů (bindů)
+ * @param evicted celkový počet vyřazených kontextů (nečinnost, neplatné spojení)
+ * @param timeouts celkový počet zapůjčení, která vypršela
+ * @author Jan Hladěna
+ */
+public record LdapPoolStats(
+        int minSize,
+        int maxSize,
+        int active,
+        int idle,
+        int waiting,
+        long borrowed,
+        long created,
+        long evicted,
+        long timeouts
+) {
+
+    @Override
+    public String toString() {
+        return "LDAP pool [" + active + "/" + maxSize + " aktivních, " + idle + " nečinných, "
+                + waiting + " čekajících; zapůjčeno " + borrowed + ", vytvořeno " + created
+                + ", vyřazeno " + evicted + ", vypršelo " + timeouts + "]";
+    }
+}
@@ -4,8 +4,10 @@ import cz.zsstudanka.skola.bakakeeper.components.BakaSDDLHelper;
 import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaUAC;
+import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
 import cz.zsstudanka.skola.bakakeeper.settings.Settings;
 import cz.zsstudanka.skola.bakakeeper.utils.BakaUtils;
+import cz.zsstudanka.skola.bakakeeper.utils.StringPool;
 import net.tirasa.adsddl.ntsd.SDDL;
 import net.tirasa.adsddl.ntsd.controls.SDFlagsControl;
 
@@ -15,6 +17,7 @@ import javax.naming.directory.*;
 import javax.naming.ldap.*;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * LDAP dotazovací engine extrahovaný z BakaADAuthenticator.
@@ -27,6 +30,13 @@ class LdapQueryEngine {
     /** stránkování výsledků */
     private final int PAGE_SIZE = 250;
 
+    /** volba rozsahu u částečně vráceného vícehodnotového atributu */
+    private static final String RANGE_OPTION = ";range=";
+
+    /** uživatelský účet podle UPN */
+    private static final LdapFilterTemplate USER_BY_UPN = LdapFilterTemplate.compile(
+            "(&(objectClass=user)(sAMAccountType=805306368)(userPrincipalName={0}))");
+
     /** továrna na LDAP připojení */
     private final LdapConnectionFactory connectionFactory;
 
@@ -43,59 +53,62 @@ class LdapQueryEngine {
      * Základní informace o objektu podle předaných atributů a základní cesty OU.
      *
      * @param baseOU základní OU pro prohledávání
-     * @param findAttributes pole dotazů atribut/hodnota
+     * @param filter LDAP filtr
      * @param retAttributes seznam čtených atributů
      * @return mapa získaných dat
      */
-    public Map getObjectInfo(String baseOU, HashMap<String, String> findAttributes, final String[] retAttributes) {
+    public Map getObjectInfo(String baseOU, LdapFilter filter, final String[] retAttributes) {
 
-        if (!connectionFactory.isAuthenticated()) return null;
+        // výsledek
+        HashMap<Integer, Map> objInfo = new HashMap();
 
-        StringBuilder findAND = new StringBuilder();
-        findAND.append("(&");
+        if (!search(baseOU, filter, retAttributes, entry -> objInfo.put(objInfo.size(), entry))) {
+            return null;
+        }
 
-        Iterator attrIterator = findAttributes.entrySet().iterator();
-        while (attrIterator.hasNext()) {
-            findAND.append("(");
+        return objInfo;
+    }
 
-            Map.Entry ldapQ = (Map.Entry) attrIterator.next();
+    /**
+     * Proudové vyhledávání objektů – každý nalezený objekt je předán konzumentovi
+     * ihned po přečtení stránky, výsledky se v paměti nehromadí.
+     *
+     * @param baseOU základní OU pro prohledávání
+     * @param filter LDAP filtr
+     * @param retAttributes seznam čtených atributů
+     * @param consumer zpracování jednoho objektu
+     * @return hledání proběhlo bez chyby
+     */
+    public boolean search(String baseOU, LdapFilter filter, final String[] retAttributes, Consumer<DataLDAP> consumer) {
 
-            findAND.append(ldapQ.getKey());
-            findAND.append("=");
-            findAND.append(ldapQ.getValue());
+        if (!connectionFactory.isAuthenticated()) return false;
 
-            findAND.append(")");
-        }
+        // LDAP dotaz
+        String searchFilter = filter.encode();
 
-        findAND.append(")");
+        // požaduje se UAC -> bude se číst i NTSD
+        final boolean readUac = Arrays.stream(retAttributes).anyMatch(EBakaLDAPAttributes.UAC.attribute()::equals);
 
-        // výsledek
-        HashMap<Integer, Map> objInfo = new HashMap();
-        // počet výsledků
-        Integer resNum = 0;
-
-        // obecný kontext
-        DirContext ctxGC = null;
+        // kontext zapůjčený z poolu
+        LdapContext ctxGC = null;
+        Exception failure = null;
 
         try {
             byte[] cookie = null;
 
             // LDAP dotaz a výsledky
-            String searchFilter = findAND.toString();
             String[] returnedAtts = retAttributes;
 
-            if (baseOU.equals(EBakaLDAPAttributes.BK_SYMBOL_ROOTDSE.attribute())) {
-                ctxGC = new InitialDirContext(connectionFactory.getEnv());
-            } else {
-                ctxGC = new InitialLdapContext(connectionFactory.getEnv(), null);
+            ctxGC = connectionFactory.borrowContext();
 
+            if (!baseOU.equals(EBakaLDAPAttributes.BK_SYMBOL_ROOTDSE.attribute())) {
                 // použití stránkování pro výsledky
-                if (PAGE_SIZE > 0 && !baseOU.equals(EBakaLDAPAttributes.BK_SYMBOL_ROOTDSE.attribute())) {
-                    ((InitialLdapContext) ctxGC).setRequestControls(new Control[]{ new PagedResultsControl(PAGE_SIZE, Control.NONCRITICAL) });
+                if (PAGE_SIZE > 0) {
+                    ctxGC.setRequestControls(new Control[]{ new PagedResultsControl(PAGE_SIZE, Control.NONCRITICAL) });
                 }
 
                 // LDAP je MS AD a požaduje se UAC -> bude se číst i NTSD
-                if (Arrays.stream(retAttributes).anyMatch(EBakaLDAPAttributes.UAC.attribute()::equals)) {
+                if (readUac) {
 
                     returnedAtts = new String[retAttributes.length + 1];
                     int rA;
@@ -105,7 +118,7 @@ class LdapQueryEngine {
                     returnedAtts[retAttributes.length] = EBakaLDAPAttributes.NT_SECURITY_DESCRIPTOR.attribute();
 
                     // LDAP_SERVER_SD_FLAGS_OID = DACL (0x4)
-                    ((InitialLdapContext) ctxGC).setRequestControls(new Control[]{new SDFlagsControl(0x04)});
+                    ctxGC.setRequestControls(new Control[]{new SDFlagsControl(0x04)});
                 }
             }
 
@@ -119,57 +132,12 @@ class LdapQueryEngine {
                 // provedení dotazu + výsledky
                 final NamingEnumeration<SearchResult> answer = ctxGC.search((baseOU.equals(EBakaLDAPAttributes.BK_SYMBOL_ROOTDSE.attribute())) ? "" : baseOU, searchFilter, searchCtls);
                 while (answer.hasMoreElements()) {
-
-                    //SearchResult result = (SearchResult) answer.next();
-                    SearchResult result = answer.next();
-                    Attributes attrs = result.getAttributes();
-
-                    // jeden objekt
-                    Map objDetails = new HashMap<String, Object>();
-
-                    // atributy výsledku
-                    if (attrs != null) {
-                        NamingEnumeration<? extends Attribute> enumeration = attrs.getAll();
-
-                        while (enumeration.hasMore()) {
-
-                            // konstrukce atributu
-                            Attribute attr = (Attribute) enumeration.next();
-
-                            // jeden prvek atributu
-                            if (attr.size() == 1) {
-                                // vložení výsledku
-                                objDetails.put(attr.getID().toString(), (Object) attr.get());
-                            } else {
-                                // pole prvků atributu (skupiny, ...)
-                                ArrayList<Object> retData = new ArrayList<>();
-                                for (int ats = 0; ats < attr.size(); ats++) {
-                                    retData.add(attr.get(ats));
-                                }
-
-                                // vložení pole výsledků
-                                objDetails.put(attr.getID().toString(), retData);
-                            }
-                        } // jednotlivé atributy
-
-                        // modifikace UAC
-                        if (Arrays.stream(retAttributes).anyMatch(EBakaLDAPAttributes.UAC.attribute()::equals)) {
-                            if (BakaSDDLHelper.isUserCannotChangePassword(new SDDL((byte[]) objDetails.get(EBakaLDAPAttributes.NT_SECURITY_DESCRIPTOR.attribute())))) {
-                                // nastavení flagu do UAC; ve výchozím stavu MS AS vždy uvádí 0
-                                objDetails.replace(EBakaLDAPAttributes.UAC.attribute(), String.format("%d", EBakaUAC.PASSWD_CANT_CHANGE.setFlag((String) objDetails.get(EBakaLDAPAttributes.UAC.attribute()).toString())));
-                            }
-                        }
-
-                        enumeration.close();
-                    }
-
-                    objInfo.put(resNum, objDetails);
-                    resNum++;
+                    consumer.accept(toEntry(answer.next(), readUac, ctxGC));
                 }
 
                 // řízení stránky
                 if (PAGE_SIZE > 0 && !baseOU.equals(EBakaLDAPAttributes.BK_SYMBOL_ROOTDSE.attribute())) {
-                    final Control[] controls = ((InitialLdapContext) ctxGC).getResponseControls();
+                    final Control[] controls = ctxGC.getResponseControls();
                     if (controls != null) {
                         for (Control control : controls) {
                             // řízení stránkování
@@ -183,24 +151,245 @@ class LdapQueryEngine {
 
                 // reaktivace stránkování s novým cookie
                 if (PAGE_SIZE > 0 && !baseOU.equals(EBakaLDAPAttributes.BK_SYMBOL_ROOTDSE.attribute())) {
-                    ((InitialLdapContext) ctxGC).setRequestControls(new Control[]{ new PagedResultsControl(PAGE_SIZE, cookie, Control.CRITICAL) });
+                    ctxGC.setRequestControls(new Control[]{ new PagedResultsControl(PAGE_SIZE, cookie, Control.CRITICAL) });
                 }
 
                 // není žádná další stránka
             } while (cookie != null);
 
-            ctxGC.close();
-
         } catch (NamingException e) {
+            failure = e;
             ReportManager.handleException("Hledaný objekt nebylo možné nalézt.", e);
             // prázdný výsledek - objekt nenalezen
-            return null;
+            return false;
         } catch (IOException e) {
+            failure = e;
             ReportManager.handleException("Došlo k chybě během stránkování výsledků.", e);
+            return false;
+        } finally {
+            connectionFactory.releaseContext(ctxGC, failure);
+        }
+
+        return true;
+    }
+
+    /**
+     * Proudové vyhledávání objektů změněných od zadaného USN (uSNChanged).
+     *
+     * @param baseOU základní OU pro prohledávání
+     * @param filter LDAP filtr
+     * @param sinceUsn USN, od kterého (výhradně) se hledají změny
+     * @param retAttributes seznam čtených atributů
+     * @param consumer zpracování jednoho objektu
+     * @return hledání proběhlo bez chyby
+     */
+    public boolean searchChangedSince(String baseOU, LdapFilter filter, long sinceUsn, final String[] retAttributes, Consumer<DataLDAP> consumer) {
+        // LDAP filtr nezná ostrou nerovnost, proto >= (USN + 1)
+        LdapFilter changed = LdapFilter.and(filter,
+                LdapFilter.greaterOrEqual(EBakaLDAPAttributes.USN_CHANGED, String.valueOf(sinceUsn + 1)));
+        return search(baseOU, changed, retAttributes, consumer);
+    }
+
+    /**
+     * Aktuální vodoznak řadiče domény (highestCommittedUSN) z RootDSE.
+     *
+     * @return vodoznak nebo null, pokud jej nelze zjistit
+     */
+    public LdapWatermark getWatermark() {
+        LdapFilter ldapQ = LdapFilter.present(EBakaLDAPAttributes.OC_GENERAL);
+
+        String[] retAttributes = {
+                EBakaLDAPAttributes.SRV_DS_SERVICE.attribute(),
+                EBakaLDAPAttributes.SRV_HIGHEST_USN.attribute()
+        };
+
+        Map<Integer, Map<String, Object>> rootDse = getObjectInfo(EBakaLDAPAttributes.BK_SYMBOL_ROOTDSE.attribute(), ldapQ, retAttributes);
+        if (rootDse == null || rootDse.get(0) == null) return null;
+
+        Object server = rootDse.get(0).get(EBakaLDAPAttributes.SRV_DS_SERVICE.attribute());
+        Object usn = rootDse.get(0).get(EBakaLDAPAttributes.SRV_HIGHEST_USN.attribute());
+        if (server == null || usn == null) return null;
+
+        try {
+            return new LdapWatermark(server.toString(), Long.parseLong(usn.toString()));
+        } catch (NumberFormatException e) {
             return null;
         }
+    }
 
-        return objInfo;
+    /**
+     * Převod jednoho výsledku hledání na LDAP data objektu.
+     *
+     * <p>Velké vícehodnotové atributy (member, proxyAddresses, …) vrací AD po částech
+     * {@code atribut;range=0-1499}; zbývající části se dočtou a hodnoty se uloží
+     * pod původním názvem atributu.</p>
+     *
+     * @param result výsledek hledání
+     * @param readUac byl požadován UAC (a tedy i NT Security Descriptor)
+     * @param ctx kontext hledání (pro dočtení rozsahů)
+     * @return data objektu
+     * @throws NamingException při chybě čtení atributů
+     */
+    private DataLDAP toEntry(SearchResult result, boolean readUac, LdapContext ctx) throws NamingException {
+        Attributes attrs = result.getAttributes();
+
+        // jeden objekt
+        DataLDAP objDetails = new DataLDAP();
+
+        // atributy výsledku
+        if (attrs != null) {
+            NamingEnumeration<? extends Attribute> enumeration = attrs.getAll();
+
+            while (enumeration.hasMore()) {
+
+                // konstrukce atributu
+                Attribute attr = (Attribute) enumeration.next();
+                String attrId = attr.getID();
+                boolean shared = isSharedValue(attrId);
+
+                // částečně vrácený atribut – dočtení zbývajících rozsahů
+                int rangeIndex = (attrId.indexOf(';') < 0) ? -1 : attrId.toLowerCase().indexOf(RANGE_OPTION);
+                if (rangeIndex > 0) {
+                    String attrName = StringPool.canonical(attrId.substring(0, rangeIndex));
+                    shared = isSharedValue(attrName);
+                    ArrayList<Object> retData = new ArrayList<>(attr.size());
+                    for (int ats = 0; ats < attr.size(); ats++) {
+                        retData.add(value(attr.get(ats), shared));
+                    }
+
+                    int next = nextRangeStart(attrId);
+                    if (next > 0) {
+                        for (Object rangeValue : readRanges(ctx, result.getNameInNamespace(), attrName, next)) {
+                            retData.add(value(rangeValue, shared));
+                        }
+                    }
+
+                    if (retData.size() == 1) {
+                        objDetails.put(attrName, retData.get(0));
+                    } else if (!retData.isEmpty()) {
+                        objDetails.put(attrName, retData);
+                    }
+                    continue;
+                }
+
+                // jeden prvek atributu
+                if (attr.size() == 1) {
+                    // vložení výsledku
+                    objDetails.put(StringPool.canonical(attrId), value(attr.get(), shared));
+                } else {
+                    // pole prvků atributu (skupiny, ...)
+                    ArrayList<Object> retData = new ArrayList<>(attr.size());
+                    for (int ats = 0; ats < attr.size(); ats++) {
+                        retData.add(value(attr.get(ats), shared));
+                    }
+
+                    // vložení pole výsledků
+                    objDetails.put(StringPool.canonical(attrId), retData);
+                }
+            } // jednotlivé atributy
+
+            // modifikace UAC
+            if (readUac) {
+                if (BakaSDDLHelper.isUserCannotChangePassword(new SDDL((byte[]) objDetails.get(EBakaLDAPAttributes.NT_SECURITY_DESCRIPTOR.attribute())))) {
+                    // nastavení flagu do UAC; ve výchozím stavu MS AS vždy uvádí 0
+                    objDetails.replace(EBakaLDAPAttributes.UAC.attribute(), String.format("%d", EBakaUAC.PASSWD_CANT_CHANGE.setFlag(objDetails.get(EBakaLDAPAttributes.UAC.attribute()).toString())));
+                }
+            }
+
+            enumeration.close();
+        }
+
+        return objDetails;
+    }
+
+    /**
+     * Hodnoty atributu jsou společné mnoha objektům (DN skupin, pracovní zařazení)
+     * a v paměti se sdílejí.
+     *
+     * @param attrName název atributu
+     * @return hodnoty sdílet přes {@link StringPool}
+     */
+    private static boolean isSharedValue(String attrName) {
+        return EBakaLDAPAttributes.MEMBER_OF.attribute().equalsIgnoreCase(attrName)
+                || EBakaLDAPAttributes.TITLE.attribute().equalsIgnoreCase(attrName);
+    }
+
+    private static Object value(Object value, boolean shared) {
+        return (shared && value instanceof String str) ? StringPool.canonical(str) : value;
+    }
+
+    /**
+     * Dočtení zbývajících rozsahů vícehodnotového atributu jednoho objektu.
+     *
+     * <p>Dotazy jdou přes novou instanci kontextu nad stejným spojením – bez stránkování
+     * a dalších řídicích prvků probíhajícího hledání.</p>
+     *
+     * @param ctx kontext probíhajícího hledání
+     * @param dn DN objektu
+     * @param attrName název atributu bez volby rozsahu
+     * @param start první index k načtení
+     * @return hodnoty od indexu start do konce
+     * @throws NamingException při chybě čtení
+     */
+    private List<Object> readRanges(LdapContext ctx, String dn, String attrName, int start) throws NamingException {
+        List<Object> values = new ArrayList<>();
+
+        LdapContext rangeCtx = ctx.newInstance(null);
+        try {
+            SearchControls rangeCtls = new SearchControls();
+            rangeCtls.setSearchScope(SearchControls.OBJECT_SCOPE);
+
+            while (start > 0) {
+                rangeCtls.setReturningAttributes(new String[]{ attrName + RANGE_OPTION + start + "-*" });
+                NamingEnumeration<SearchResult> answer = rangeCtx.search(new LdapName(dn), "(objectClass=*)", rangeCtls);
+
+                int next = -1;
+                if (answer.hasMore()) {
+                    NamingEnumeration<? extends Attribute> attrs = answer.next().getAttributes().getAll();
+                    while (attrs.hasMore()) {
+                        Attribute attr = attrs.next();
+                        if (attr.getID().toLowerCase().startsWith(attrName.toLowerCase() + RANGE_OPTION)) {
+                            for (int ats = 0; ats < attr.size(); ats++) {
+                                values.add(attr.get(ats));
+                            }
+                            next = nextRangeStart(attr.getID());
+                        }
+                    }
+                    attrs.close();
+                }
+                answer.close();
+
+                start = next;
+            }
+        } finally {
+            rangeCtx.close();
+        }
+
+        return values;
+    }
+
+    /**
+     * Začátek dalšího rozsahu podle názvu vráceného atributu.
+     *
+     * @param rangedId název atributu s volbou rozsahu, např. {@code member;range=0-1499}
+     * @return první index dalšího rozsahu, nebo -1 u posledního rozsahu ({@code -*})
+     */
+    static int nextRangeStart(String rangedId) {
+        int rangeIndex = rangedId.toLowerCase().indexOf(RANGE_OPTION);
+        if (rangeIndex < 0) return -1;
+
+        String range = rangedId.substring(rangeIndex + RANGE_OPTION.length());
+        int dash = range.indexOf('-');
+        if (dash < 0) return -1;
+
+        String end = range.substring(dash + 1);
+        if (end.equals("*")) return -1;
+
+        try {
+            return Integer.parseInt(end) + 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     /**
@@ -211,8 +400,7 @@ class LdapQueryEngine {
     public Map<String, String> getServerInfo() {
 
         // dotaz
-        HashMap<String, String> ldapQ = new HashMap<String, String>();
-        ldapQ.put(EBakaLDAPAttributes.OC_GENERAL.attribute(), EBakaLDAPAttributes.BK_SYMBOL_ANY_VALUE.value());
+        LdapFilter ldapQ = LdapFilter.present(EBakaLDAPAttributes.OC_GENERAL);
 
         // požadované atributy
         String[] retAttributes = {
@@ -236,9 +424,9 @@ class LdapQueryEngine {
     public Map getGroupInfo(String cn, String OU) {
 
         // dotaz
-        HashMap<String, String> ldapQ = new HashMap<String, String>();
-        ldapQ.put(EBakaLDAPAttributes.OC_GROUP.attribute(), EBakaLDAPAttributes.OC_GROUP.value());
-        ldapQ.put(EBakaLDAPAttributes.CN.attribute(), cn);
+        LdapFilter ldapQ = LdapFilter.and(
+                LdapFilter.is(EBakaLDAPAttributes.OC_GROUP),
+                LdapFilter.eq(EBakaLDAPAttributes.CN, cn));
 
         // požadované atributy
         String[] retAttributes = {
@@ -265,10 +453,7 @@ class LdapQueryEngine {
     public Map getUserInfo(String upn, String base) {
 
         // dotaz
-        HashMap<String, String> ldapQ = new HashMap<String, String>();
-        ldapQ.put(EBakaLDAPAttributes.OC_USER.attribute(), EBakaLDAPAttributes.OC_USER.value());
-        ldapQ.put(EBakaLDAPAttributes.ST_USER.attribute(), EBakaLDAPAttributes.ST_USER.value());
-        ldapQ.put(EBakaLDAPAttributes.UPN.attribute(), upn);
+        LdapFilter ldapQ = USER_BY_UPN.bind(upn);
 
         // požadované atributy
         String[] retAttributes = {
@@ -303,11 +488,11 @@ class LdapQueryEngine {
      * @return počet položek, nebo -1 v případě neexistence OU
      */
     public int checkOU(String OU) {
-        HashMap<String, String> ldapQ = new HashMap<String, String>();
+        List<LdapFilter> ldapQ = new ArrayList<>();
 
         // kontakty
         if (OU.contains(Settings.getInstance().getLdapBaseContacts())) {
-            ldapQ.put(EBakaLDAPAttributes.OC_CONTACT.attribute(), EBakaLDAPAttributes.OC_CONTACT.value());
+            ldapQ.add(LdapFilter.is(EBakaLDAPAttributes.OC_CONTACT));
         }
 
         // skupiny a seznamy
@@ -315,7 +500,7 @@ class LdapQueryEngine {
                 OU.contains(Settings.getInstance().getLdapBaseStudentGroups())
                 || OU.contains(Settings.getInstance().getLdapBaseDistributionLists())
         ) {
-            ldapQ.put(EBakaLDAPAttributes.OC_GROUP.attribute(), EBakaLDAPAttributes.OC_GROUP.value());
+            ldapQ.add(LdapFilter.is(EBakaLDAPAttributes.OC_GROUP));
         }
 
         // uživatelé
@@ -324,8 +509,8 @@ class LdapQueryEngine {
                 || OU.contains(Settings.getInstance().getLdapBaseFaculty())
                 || OU.contains(Settings.getInstance().getLdapBaseAlumni())
         ) {
-            ldapQ.put(EBakaLDAPAttributes.ST_USER.attribute(), EBakaLDAPAttributes.ST_USER.value());
-            ldapQ.put(EBakaLDAPAttributes.OC_USER.attribute(), EBakaLDAPAttributes.OC_USER.value());
+            ldapQ.add(LdapFilter.is(EBakaLDAPAttributes.ST_USER));
+            ldapQ.add(LdapFilter.is(EBakaLDAPAttributes.OC_USER));
         }
 
         // požadované atributy
@@ -333,7 +518,7 @@ class LdapQueryEngine {
                 EBakaLDAPAttributes.NAME_DISPLAY.attribute(),
         };
 
-        Map<Integer, Map> result = getObjectInfo(OU, ldapQ, retAttributes);
+        Map<Integer, Map> result = getObjectInfo(OU, new LdapFilter.And(ldapQ), retAttributes);
 
         return (result == null) ? -1 : result.size();
     }
@@ -350,8 +535,7 @@ class LdapQueryEngine {
         String cn = BakaUtils.parseCN(dn);
         String ou = BakaUtils.parseBase(dn);
 
-        HashMap<String, String> ldapQ = new HashMap<String, String>();
-        ldapQ.put(EBakaLDAPAttributes.CN.attribute(), cn);
+        LdapFilter ldapQ = LdapFilter.eq(EBakaLDAPAttributes.CN, cn);
 
         // atributy
         String[] retAttributes = {
@@ -0,0 +1,30 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import java.io.Serializable;
+
+/**
+ * Vodoznak změn adresáře – nejvyšší potvrzené USN konkrétního řadiče domény.
+ *
+ * <p>USN jsou lokální pro každý řadič domény, vodoznak je proto platný pouze
+ * vůči stejnému serveru ({@code dsServiceName}).</p>
+ *
+ * @param server DN NTDS nastavení řadiče domény (dsServiceName)
+ * @param usn nejvyšší potvrzené USN (highestCommittedUSN)
+ *
+ * @author Jan Hladěna
+ */
+public record LdapWatermark(String server, long usn) implements Serializable {
+
+    /**
+     * Ověří, zda lze z tohoto (uloženého) vodoznaku pokračovat vůči aktuálnímu stavu serveru.
+     *
+     * @param current aktuální vodoznak serveru
+     * @return stejný server a USN se nevrátilo zpět (obnova ze zálohy)
+     */
+    public boolean isValidAgainst(LdapWatermark current) {
+        return current != null
+                && server != null
+                && server.equalsIgnoreCase(current.server())
+                && usn <= current.usn();
+    }
+}
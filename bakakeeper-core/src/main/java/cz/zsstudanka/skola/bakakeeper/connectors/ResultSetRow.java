@@ -0,0 +1,71 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
+import cz.zsstudanka.skola.bakakeeper.model.entities.SqlRow;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Řádek SQL dat nad aktuální pozicí kurzoru ResultSet.
+ *
+ * <p>Indexy sloupců se zjistí z metadat jednou pro celý výsledek, hodnoty se pak čtou
+ * přímo podle indexu bez kopírování řádku. Sloupec, který dotaz nevrací, má hodnotu null.</p>
+ *
+ * <p>Index sloupce se vyhledá při prvním čtení a uloží do pole podle pořadí
+ * {@link EBakaSQL} – další řádky už nevyhledávají podle názvu.</p>
+ *
+ * @author Jan Hladěna
+ */
+class ResultSetRow implements SqlRow {
+
+    private final ResultSet rs;
+
+    /** index sloupce podle názvu (malými písmeny) */
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    /** již vyhledané indexy sloupců podle {@link EBakaSQL#ordinal()} (0 = dotaz sloupec nevrací, -1 = nevyhledáno) */
+    private final int[] resolved = new int[EBakaSQL.values().length];
+
+    /**
+     * Konstruktor.
+     *
+     * @param rs otevřený výsledek dotazu
+     * @throws SQLException chyba při čtení metadat
+     */
+    ResultSetRow(ResultSet rs) throws SQLException {
+        this.rs = rs;
+
+        Arrays.fill(resolved, -1);
+
+        ResultSetMetaData meta = rs.getMetaData();
+        for (int i = meta.getColumnCount(); i >= 1; i--) {
+            // při duplicitním názvu platí první výskyt (jako ResultSet.findColumn)
+            indexes.put(meta.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+        }
+    }
+
+    @Override
+    public String get(EBakaSQL column) {
+        int index = resolved[column.ordinal()];
+        if (index < 0) {
+            index = indexes.getOrDefault(column.basename().toLowerCase(Locale.ROOT), 0);
+            resolved[column.ordinal()] = index;
+        }
+        if (index == 0) {
+            return null;
+        }
+
+        try {
+            String val = rs.getString(index);
+            return (val == null) ? EBakaSQL.NULL.basename() : val.trim();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Nebylo možné přečíst sloupec " + column.basename() + ".", e);
+        }
+    }
+}
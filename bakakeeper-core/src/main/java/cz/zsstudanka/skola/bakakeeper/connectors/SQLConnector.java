@@ -1,7 +1,13 @@
 package cz.zsstudanka.skola.bakakeeper.connectors;
 
+import cz.zsstudanka.skola.bakakeeper.model.entities.SqlRow;
+
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * Rozhraní pro SQL konektivitu. Umožňuje testovatelnost repository vrstvy
@@ -14,10 +20,45 @@ public interface SQLConnector {
     /** Navázání spojení s databází. */
     void connect();
 
-    /** Provedení SELECT dotazu. */
+    /** Provedení SELECT dotazu; celý výsledek se načte do paměti. */
     ResultSet select(String sql);
 
-    /** Získání aktivního spojení. */
+    /**
+     * Proudové čtení výsledku parametrizovaného SELECT dotazu – každý řádek se rovnou
+     * převede na záznam. Dotaz i spojení zůstávají otevřené jen po dobu proudu,
+     * proud je proto nutné zavřít.
+     *
+     * @param query pojmenovaný dotaz
+     * @param mapper převod řádku na záznam (řádek nelze uchovávat)
+     * @param params hodnoty parametrů v pořadí zástupných znaků
+     * @return proud záznamů
+     * @param <T> typ záznamu
+     */
+    <T> Stream<T> stream(SqlQuery query, Function<SqlRow, T> mapper, Object... params);
+
+    /**
+     * Provedení parametrizovaného příkazu UPDATE/INSERT/DELETE.
+     *
+     * @param query pojmenovaný příkaz
+     * @param params hodnoty parametrů v pořadí zástupných znaků
+     * @return počet změněných řádků
+     * @throws SQLException chyba při provedení příkazu
+     */
+    int update(SqlQuery query, Object... params) throws SQLException;
+
+    /**
+     * Provedení parametrizovaného příkazu pro více řádků jednou JDBC dávkou
+     * v jediné transakci. Selhání jednotlivých řádků se vrací v počtech
+     * ({@link java.sql.Statement#EXECUTE_FAILED}), úspěšné řádky se potvrdí.
+     *
+     * @param query pojmenovaný příkaz
+     * @param rows hodnoty parametrů pro každý řádek dávky
+     * @return počty změněných řádků v pořadí dávky
+     * @throws SQLException chyba spojení nebo transakce (nic se nepotvrdí)
+     */
+    int[] updateBatch(SqlQuery query, List<Object[]> rows) throws SQLException;
+
+    /** Zapůjčení spojení; volající jej musí zavřít (u poolu se tím vrací). */
     Connection getConnection();
 
     /** Stav připojení. */
@@ -25,4 +66,13 @@ public interface SQLConnector {
 
     /** Test spojení s databází (connect + jednoduchý dotaz). */
     boolean testConnection();
+
+    /** Statistiky poolu spojení (null = konektor bez poolu nebo nepřipojen). */
+    default SqlPoolStats getPoolStats() { return null; }
+
+    /** Doba provedení pojmenovaných dotazů (seřazeno sestupně podle celkové doby). */
+    default List<SqlQueryStats> getQueryStats() { return List.of(); }
+
+    /** Uzavření spojení. */
+    default void close() {}
 }
@@ -0,0 +1,157 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import com.microsoft.sqlserver.jdbc.SQLServerDataSource;
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaPorts;
+import cz.zsstudanka.skola.bakakeeper.settings.Settings;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Zdroje fyzických SQL spojení pro pool podle metody ověření (NTLMv2 přes jTDS,
+ * Kerberos V, SQL Server).
+ *
+ * @author Jan Hladěna
+ */
+final class SqlConnectionFactory {
+
+    private SqlConnectionFactory() {
+    }
+
+    /**
+     * Zdroj spojení podle nastavené metody ověření.
+     *
+     * @return zdroj spojení
+     * @throws IllegalStateException není nastavena žádná metoda ověření
+     */
+    static SqlConnectionPool.ConnectionSource fromSettings() {
+        if (Settings.getInstance().isSqlKerberos()) {
+            return kerberos();
+        }
+
+        if (Settings.getInstance().isSqlNtlm()) {
+            return ntlm();
+        }
+
+        if (Settings.getInstance().isSqlAuth()) {
+            return sqlServer();
+        }
+
+        throw new IllegalStateException("Není nastavena metoda ověření SQL.");
+    }
+
+    /**
+     * Připojení pomocí NTLMv2 autentizace (ovladač jTDS).
+     *
+     * @return zdroj spojení
+     */
+    static SqlConnectionPool.ConnectionSource ntlm() {
+        loadDriver("net.sourceforge.jtds.jdbc.Driver");
+
+        int port = Settings.getInstance().getSqlPort();
+        String url = "jdbc:jtds:" + EBakaPorts.SRV_MSSQL.getScheme() + "://" + Settings.getInstance().getSqlHost()
+                + ":" + port
+                + "/" + Settings.getInstance().getSqlDatabase()
+                + ";domain=" + Settings.getInstance().getLdapDomain().toUpperCase() + ";useNTLMv2=true;CharacterSet=UTF-8";
+
+        return () -> DriverManager.getConnection(url,
+                Settings.getInstance().getSqlUser(), Settings.getInstance().getSqlPass());
+    }
+
+    /**
+     * Připojení pomocí ověření protokolem Kerberos 5.
+     *
+     * <p>Tiket služby MSSQLSvc se vytvoří před prvním spojením; další spojení poolu
+     * jej sdílí. Nový tiket se vyžádá jen tehdy, když se spojení nepodaří navázat.</p>
+     *
+     * @return zdroj spojení
+     */
+    static SqlConnectionPool.ConnectionSource kerberos() {
+        loadDriver("com.microsoft.sqlserver.jdbc.SQLServerDriver");
+
+        StringBuilder conString = new StringBuilder();
+
+        // připojovací řetězec integrovaného ověřování
+        int port = Settings.getInstance().getSqlPort();
+        conString.append("jdbc:");
+        conString.append(EBakaPorts.SRV_MSSQL.getScheme() + "://" + Settings.getInstance().getSqlHost() + ":" + port + "; ");
+        conString.append("DatabaseName=" + Settings.getInstance().getSqlDatabase() + "; ");
+
+        // UPN + heslo pro Kerberos
+        conString.append("user=" + Settings.getInstance().getKrbUser() + "; ");
+        conString.append("password=" + Settings.getInstance().getSqlPass() + "; ");
+        // SPN
+        conString.append("ServerSpn=" + Settings.getInstance().getSqlSpn() + "; ");
+        conString.append("integratedSecurity=true; authenticationScheme=JavaKerberos; loginTimeout=1; ");
+
+        SQLServerDataSource ds = new SQLServerDataSource();
+        ds.setURL(conString.toString());
+
+        return new SqlConnectionPool.ConnectionSource() {
+
+            /** tiket služby byl vytvořen */
+            private boolean ticket = false;
+
+            @Override
+            public synchronized Connection create() throws SQLException {
+                if (!ticket) {
+                    ticket = generateTicket();
+                }
+
+                try {
+                    return ds.getConnection();
+                } catch (SQLException e) {
+                    // tiket mohl vypršet – jeden pokus s novým tiketem
+                    ticket = generateTicket();
+                    return ds.getConnection();
+                }
+            }
+        };
+    }
+
+    /**
+     * Připojení přímým SQL Server ověřením (user/password bez doménového ověření).
+     * Používá Microsoft JDBC Driver.
+     *
+     * @return zdroj spojení
+     */
+    static SqlConnectionPool.ConnectionSource sqlServer() {
+        loadDriver("com.microsoft.sqlserver.jdbc.SQLServerDriver");
+
+        SQLServerDataSource ds = new SQLServerDataSource();
+        ds.setServerName(Settings.getInstance().getSqlHost());
+        ds.setPortNumber(Settings.getInstance().getSqlPort());
+        ds.setDatabaseName(Settings.getInstance().getSqlDatabase());
+        ds.setUser(Settings.getInstance().getSqlUser());
+        ds.setPassword(Settings.getInstance().getSqlPass());
+        ds.setEncrypt("true");
+        ds.setTrustServerCertificate(true);
+
+        return ds::getConnection;
+    }
+
+    /**
+     * Vytvoření tiketu služby MSSQLSvc.
+     *
+     * @return tiket byl vytvořen
+     */
+    private static boolean generateTicket() {
+        try {
+            BakaKerberos.generateTicket();
+            return true;
+        } catch (Exception e) {
+            ReportManager.handleException("Nevytvořil se tiket služby MSSQLSvc.", e);
+            return false;
+        }
+    }
+
+    private static void loadDriver(String driverClass) {
+        try {
+            Class.forName(driverClass);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Ovladač SQL " + driverClass + " není k dispozici.", e);
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Omezený pool SQL spojení.
+ *
+ * <p>Pool drží nejvýše {@code maxSize} fyzických spojení. Nečinná spojení nad
+ * {@code minSize} po uplynutí {@code idleTimeout} zavírá, spojení starší než
+ * {@code maxLifetime} nahrazuje novým a spojení nečinné déle než {@code probeInterval}
+ * před zapůjčením ověří – čerstvě vrácené spojení se neověřuje.</p>
+ *
+ * <p>Volající dostane obal spojení, jehož {@link Connection#close()} spojení vrací
+ * do poolu. Rozpracovaná transakce se při vrácení odvolá a autocommit obnoví.
+ * Spojení nevrácené do {@code leakThreshold} se ohlásí jako únik
+ * i s místem zapůjčení.</p>
+ *
+ * <p>Každé fyzické spojení má vlastní mezipaměť připravených dotazů
+ * ({@link SqlStatementCache}); {@link Connection#prepareStatement(String)} na obalu
+ * vrací dotaz z ní, takže opakovaný dotaz se na serveru nepřipravuje znovu.</p>
+ *
+ * @author Jan Hladěna
+ */
+class SqlConnectionPool {
+
+    /** zdroj nových fyzických spojení */
+    @FunctionalInterface
+    interface ConnectionSource {
+        Connection create() throws SQLException;
+    }
+
+    /** fyzické spojení s časem vytvoření a mezipamětí připravených dotazů */
+    private record Physical(Connection connection, long createdAt, SqlStatementCache statements) {}
+
+    /** nečinné spojení v poolu */
+    private record IdleEntry(Physical physical, long idleSince) {}
+
+    /** zapůjčení spojení – kdy a odkud */
+    private static final class Lease {
+        private final Physical physical;
+        private final long since;
+        private final Exception origin;
+        private boolean reported = false;
+
+        private Lease(Physical physical, long since, Exception origin) {
+            this.physical = physical;
+            this.since = since;
+            this.origin = origin;
+        }
+    }
+
+    /** interval mezi ověřením spojení (ms) */
+    private static final long PROBE_INTERVAL_MS = 30_000;
+
+    /** časový limit ověření spojení (s) */
+    private static final int PROBE_TIMEOUT_S = 2;
+
+    private final ConnectionSource source;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long maxLifetimeMs;
+    private final long leakThresholdMs;
+    private final int statementCacheSize;
+
+    /** nečinná spojení (LIFO – nejčerstvější spojení se používá přednostně) */
+    private final LinkedBlockingDeque<IdleEntry> idle = new LinkedBlockingDeque<>();
+
+    /** zapůjčená spojení podle obalu předaného volajícímu */
+    private final Map<Connection, Lease> leased = new IdentityHashMap<>();
+
+    /** povolení odpovídající maximální velikosti poolu */
+    private final Semaphore permits;
+
+    /** plánovač vyřazování nečinných spojení a detekce úniků */
+    private final ScheduledExecutorService evictor;
+
+    // statistiky
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Konstruktor.
+     *
+     * @param source zdroj nových spojení
+     * @param minSize minimální počet udržovaných spojení
+     * @param maxSize maximální počet současně existujících spojení
+     * @param borrowTimeoutMs maximální doba čekání na volné spojení (ms)
+     * @param idleTimeoutMs doba nečinnosti, po které je spojení nad minimem zavřeno (ms)
+     * @param maxLifetimeMs maximální stáří fyzického spojení (ms, 0 = neomezeno)
+     * @param leakThresholdMs doba zapůjčení, po které se spojení ohlásí jako únik (ms, 0 = vypnuto)
+     * @param statementCacheSize počet připravených dotazů v mezipaměti spojení (0 = vypnuto)
+     */
+    SqlConnectionPool(ConnectionSource source, int minSize, int maxSize, long borrowTimeoutMs,
+                      long idleTimeoutMs, long maxLifetimeMs, long leakThresholdMs, int statementCacheSize) {
+        this.source = source;
+        this.maxSize = Math.max(1, maxSize);
+        this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxLifetimeMs = Math.max(0, maxLifetimeMs);
+        this.leakThresholdMs = Math.max(0, leakThresholdMs);
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+        this.permits = new Semaphore(this.maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sql-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = idleTimeoutMs / 2;
+        if (this.leakThresholdMs > 0) period = Math.min(period, this.leakThresholdMs / 2);
+        period = Math.max(1_000, period);
+        this.evictor.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Předvytvoření minimálního počtu spojení.
+     */
+    void prefill() {
+        while (!closed && idle.size() < minSize && permits.tryAcquire()) {
+            try {
+                idle.offerFirst(new IdleEntry(newPhysical(), System.currentTimeMillis()));
+            } catch (SQLException e) {
+                ReportManager.handleException("Nebylo možné předvytvořit SQL spojení.", e);
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Zapůjčení spojení. Čeká nejvýše {@code borrowTimeoutMs} na uvolnění spojení.
+     *
+     * @return spojení, jehož zavřením se vrátí do poolu
+     * @throws SQLException při chybě spojení nebo vypršení čekání
+     */
+    Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLNonTransientConnectionException("Pool SQL spojení byl uzavřen.");
+        }
+
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Čekání na SQL spojení bylo přerušeno.");
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new SQLTransientConnectionException("Nebylo k dispozici volné SQL spojení do " + borrowTimeoutMs + " ms.");
+        }
+
+        try {
+            Physical physical = takeIdle();
+            if (physical == null) {
+                physical = newPhysical();
+            }
+
+            Connection pooled = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new PooledConnection(physical));
+            Exception origin = (leakThresholdMs > 0) ? new Exception("Místo zapůjčení SQL spojení") : null;
+            synchronized (leased) {
+                leased.put(pooled, new Lease(physical, System.currentTimeMillis(), origin));
+            }
+            borrowed.incrementAndGet();
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Zahození zapůjčeného spojení (např. po chybě komunikace). Spojení se
+     * při zavření volajícím fyzicky uzavře místo vrácení do poolu.
+     *
+     * @param pooled spojení získané přes {@link #borrow()}
+     */
+    void invalidate(Connection pooled) {
+        if (pooled != null && Proxy.isProxyClass(pooled.getClass())
+                && Proxy.getInvocationHandler(pooled) instanceof PooledConnection handler) {
+            handler.broken = true;
+        }
+    }
+
+    /**
+     * Uzavření poolu a všech nečinných spojení. Zapůjčená spojení
+     * budou zavřena při vrácení.
+     */
+    void close() {
+        closed = true;
+        evictor.shutdownNow();
+        IdleEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            destroy(entry.physical());
+        }
+    }
+
+    /**
+     * Aktuální statistiky poolu.
+     *
+     * @return snímek statistik
+     */
+    SqlPoolStats stats() {
+        int active;
+        synchronized (leased) {
+            active = leased.size();
+        }
+        return new SqlPoolStats(minSize, maxSize, active, idle.size(), waiting.get(),
+                borrowed.get(), created.get(), evicted.get(), timeouts.get(), leaks.get());
+    }
+
+    /**
+     * Chyba signalizuje ztrátu spojení (SQLState třídy 08).
+     *
+     * @param e výjimka
+     * @return spojení již nelze použít
+     */
+    static boolean isConnectionError(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLNonTransientConnectionException
+                || (state != null && state.startsWith("08"));
+    }
+
+    /**
+     * Vrácení spojení do poolu voláním {@link Connection#close()} na obalu.
+     */
+    private void release(Connection pooled, boolean broken) {
+        Lease lease;
+        synchronized (leased) {
+            lease = leased.remove(pooled);
+        }
+        if (lease == null) return;
+
+        Physical physical = lease.physical;
+        if (closed) {
+            destroy(physical);
+        } else if (broken || isExpired(physical, System.currentTimeMillis()) || !reset(physical.connection())) {
+            destroy(physical);
+            evicted.incrementAndGet();
+        } else {
+            idle.offerFirst(new IdleEntry(physical, System.currentTimeMillis()));
+        }
+        permits.release();
+    }
+
+    /**
+     * Odvolání rozpracované transakce a obnovení výchozího stavu spojení.
+     */
+    private boolean reset(Connection connection) {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+            return !connection.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Vyzvednutí použitelného nečinného spojení; neplatná a přestárlá spojení jsou zavřena.
+     */
+    private Physical takeIdle() {
+        IdleEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            long now = System.currentTimeMillis();
+            Physical physical = entry.physical();
+            if (!isExpired(physical, now)
+                    && (now - entry.idleSince() < PROBE_INTERVAL_MS || isHealthy(physical.connection()))) {
+                return physical;
+            }
+            destroy(physical);
+            evicted.incrementAndGet();
+        }
+        return null;
+    }
+
+    /**
+     * Ověření spojení; ovladače bez {@code isValid} (jTDS) se ověří jednoduchým dotazem.
+     */
+    private boolean isHealthy(Connection connection) {
+        try {
+            try {
+                return connection.isValid(PROBE_TIMEOUT_S);
+            } catch (AbstractMethodError | SQLFeatureNotSupportedException ignored) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.setQueryTimeout(PROBE_TIMEOUT_S);
+                    stmt.execute("SELECT 1");
+                    return true;
+                }
+            }
+        } catch (SQLException e) {
+            ReportManager.log(EBakaLogType.LOG_DEBUG, "SQL spojení neprošlo ověřením a bude zahozeno.");
+            return false;
+        }
+    }
+
+    private boolean isExpired(Physical physical, long now) {
+        return maxLifetimeMs > 0 && now - physical.createdAt() >= maxLifetimeMs;
+    }
+
+    /**
+     * Periodická údržba – vyřazení nečinných a přestárlých spojení, detekce úniků.
+     */
+    private void maintain() {
+        evictIdle();
+        detectLeaks();
+    }
+
+    /**
+     * Zavření spojení nečinných déle než {@code idleTimeoutMs} (při zachování minima)
+     * a spojení starších než {@code maxLifetimeMs}.
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<IdleEntry> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            IdleEntry entry = it.next();
+            boolean stale = idle.size() > minSize && now - entry.idleSince() >= idleTimeoutMs;
+            if ((stale || isExpired(entry.physical(), now)) && idle.removeFirstOccurrence(entry)) {
+                destroy(entry.physical());
+                evicted.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Ohlášení spojení zapůjčených déle než {@code leakThresholdMs} (každé jen jednou).
+     */
+    void detectLeaks() {
+        if (leakThresholdMs <= 0) return;
+
+        long now = System.currentTimeMillis();
+        List<Lease> suspected = new ArrayList<>();
+        synchronized (leased) {
+            for (Lease lease : leased.values()) {
+                if (!lease.reported && now - lease.since >= leakThresholdMs) {
+                    lease.reported = true;
+                    suspected.add(lease);
+                }
+            }
+        }
+
+        for (Lease lease : suspected) {
+            leaks.incrementAndGet();
+            ReportManager.log(EBakaLogType.LOG_WARN, "SQL spojení nebylo vráceno do poolu déle než "
+                    + (now - lease.since) / 1000 + " s.");
+            ReportManager.printStackTrace(EBakaLogType.LOG_DEBUG, lease.origin);
+        }
+    }
+
+    private Physical newPhysical() throws SQLException {
+        Connection connection = source.create();
+        if (connection == null) {
+            throw new SQLNonTransientConnectionException("Nebylo možné vytvořit SQL spojení.");
+        }
+        created.incrementAndGet();
+        return new Physical(connection, System.currentTimeMillis(),
+                new SqlStatementCache(connection, statementCacheSize));
+    }
+
+    private void destroy(Physical physical) {
+        physical.statements().closeAll();
+        try {
+            physical.connection().close();
+        } catch (SQLException ignored) {}
+    }
+
+    /**
+     * Obal zapůjčeného spojení – zavření vrací spojení do poolu, chyba
+     * spojení (SQLState 08) jej označí k zahození.
+     */
+    private final class PooledConnection implements InvocationHandler {
+
+        private final Connection connection;
+        private final SqlStatementCache statements;
+        private volatile boolean returned = false;
+        private volatile boolean broken = false;
+
+        private PooledConnection(Physical physical) {
+            this.connection = physical.connection();
+            this.statements = physical.statements();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!returned) {
+                        returned = true;
+                        release((Connection) proxy, broken);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return returned || connection.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "SqlConnectionPool[" + connection + "]";
+                }
+                default -> {
+                    if (returned) {
+                        throw new SQLNonTransientConnectionException("SQL spojení již bylo vráceno do poolu.");
+                    }
+                }
+            }
+
+            try {
+                if ("prepareStatement".equals(method.getName()) && args.length == 1) {
+                    return statements.prepare((String) args[0]);
+                }
+                return method.invoke(connection, args);
+            } catch (SQLException e) {
+                if (isConnectionError(e)) {
+                    broken = true;
+                }
+                throw e;
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException sqlException && isConnectionError(sqlException)) {
+                    broken = true;
+                }
+                throw e.getCause();
+            }
+        }
+    }
+}
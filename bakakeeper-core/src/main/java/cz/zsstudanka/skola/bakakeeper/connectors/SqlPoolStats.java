@@ -0,0 +1,37 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+/**
+ * Snímek statistik poolu SQL spojení – podklad pro nastavení jeho velikosti.
+ *
+ * @param minSize minimální velikost poolu
+ * @param maxSize maximální velikost poolu
+ * @param active počet aktuálně zapůjčených spojení
+ * @param idle počet nečinných spojení v poolu
+ * @param waiting počet vláken čekajících na spojení
+ * @param borrowed celkový počet zapůjčení
+ * @param created celkový počet vytvořených spojení (přihlášení k serveru)
+ * @param evicted celkový počet vyřazených spojení (nečinnost, stáří, neplatné spojení)
+ * @param timeouts celkový počet zapůjčení, která vypršela
+ * @param leaks celkový počet spojení nevrácených do limitu pro detekci úniku
+ * @author Jan Hladěna
+ */
+public record SqlPoolStats(
+        int minSize,
+        int maxSize,
+        int active,
+        int idle,
+        int waiting,
+        long borrowed,
+        long created,
+        long evicted,
+        long timeouts,
+        long leaks
+) {
+
+    @Override
+    public String toString() {
+        return "SQL pool [" + active + "/" + maxSize + " aktivních, " + idle + " nečinných, "
+                + waiting + " čekajících; zapůjčeno " + borrowed + ", vytvořeno " + created
+                + ", vyřazeno " + evicted + ", vypršelo " + timeouts + ", nevráceno " + leaks + "]";
+    }
+}
@@ -0,0 +1,22 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+/**
+ * Pojmenovaný parametrizovaný SQL dotaz.
+ *
+ * <p>Text dotazu obsahuje pouze zástupné znaky {@code ?}, hodnoty se předávají
+ * při provedení. Stejný text tak server i pool spojení rozpoznají jako tentýž
+ * dotaz (sdílený plán, znovupoužitý PreparedStatement) a doba provedení se
+ * sleduje podle názvu.</p>
+ *
+ * @param name název dotazu pro statistiky
+ * @param sql text dotazu se zástupnými znaky
+ *
+ * @author Jan Hladěna
+ */
+public record SqlQuery(String name, String sql) {
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,26 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+/**
+ * Souhrnné statistiky jednoho pojmenovaného SQL dotazu.
+ *
+ * @param name název dotazu
+ * @param executions počet provedení
+ * @param rows celkový počet načtených nebo změněných řádků
+ * @param totalMillis celková doba provedení včetně načtení řádků (ms)
+ * @param maxMillis nejdelší jednotlivé provedení (ms)
+ * @author Jan Hladěna
+ */
+public record SqlQueryStats(
+        String name,
+        long executions,
+        long rows,
+        long totalMillis,
+        long maxMillis
+) {
+
+    @Override
+    public String toString() {
+        return "SQL dotaz " + name + " [" + executions + "×, " + rows + " řádků, celkem "
+                + totalMillis + " ms, nejdéle " + maxMillis + " ms]";
+    }
+}
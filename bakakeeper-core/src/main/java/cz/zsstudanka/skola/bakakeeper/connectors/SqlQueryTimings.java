@@ -0,0 +1,59 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Průběžné měření doby provedení pojmenovaných SQL dotazů.
+ *
+ * @author Jan Hladěna
+ */
+class SqlQueryTimings {
+
+    /** měření jednoho dotazu */
+    private static final class Timing {
+        private long executions;
+        private long rows;
+        private long totalNanos;
+        private long maxNanos;
+    }
+
+    private final Map<String, Timing> timings = new ConcurrentHashMap<>();
+
+    /**
+     * Zaznamenání jednoho provedení dotazu.
+     *
+     * @param name název dotazu
+     * @param nanos doba provedení (ns)
+     * @param rows počet načtených nebo změněných řádků
+     */
+    void record(String name, long nanos, long rows) {
+        Timing timing = timings.computeIfAbsent(name, n -> new Timing());
+        synchronized (timing) {
+            timing.executions++;
+            timing.rows += rows;
+            timing.totalNanos += nanos;
+            timing.maxNanos = Math.max(timing.maxNanos, nanos);
+        }
+    }
+
+    /**
+     * Snímek statistik seřazený sestupně podle celkové doby.
+     *
+     * @return statistiky dotazů
+     */
+    List<SqlQueryStats> snapshot() {
+        List<SqlQueryStats> stats = new ArrayList<>();
+        timings.forEach((name, timing) -> {
+            synchronized (timing) {
+                stats.add(new SqlQueryStats(name, timing.executions, timing.rows,
+                        timing.totalNanos / 1_000_000, timing.maxNanos / 1_000_000));
+            }
+        });
+        stats.sort(Comparator.comparingLong(SqlQueryStats::totalMillis).reversed());
+        return stats;
+    }
+}
@@ -0,0 +1,192 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Mezipaměť připravených dotazů jednoho fyzického SQL spojení.
+ *
+ * <p>Volající dostane obal PreparedStatement, jehož {@link PreparedStatement#close()}
+ * dotaz nezavře, jen vymaže parametry a vrátí jej do mezipaměti. Připravený dotaz,
+ * který je právě používán, se pro stejný text nepůjčí podruhé – vytvoří se nový
+ * mimo mezipaměť. Nejdéle nepoužitý dotaz nad kapacitou se zavře.</p>
+ *
+ * <p>Mezipaměť patří jednomu spojení a pool spojení zapůjčuje vždy jen jednomu
+ * vláknu, proto není synchronizovaná.</p>
+ *
+ * @author Jan Hladěna
+ */
+class SqlStatementCache {
+
+    /** připravený dotaz v mezipaměti */
+    private static final class Entry {
+        private final PreparedStatement statement;
+        private boolean inUse = false;
+
+        private Entry(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+    private final Connection connection;
+    private final int maxSize;
+
+    /** připravené dotazy podle textu (v pořadí posledního použití) */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Konstruktor.
+     *
+     * @param connection fyzické spojení
+     * @param maxSize maximální počet připravených dotazů (0 = mezipaměť vypnuta)
+     */
+    SqlStatementCache(Connection connection, int maxSize) {
+        this.connection = connection;
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    /**
+     * Připravený dotaz – z mezipaměti, nebo nově připravený.
+     *
+     * @param sql text dotazu
+     * @return připravený dotaz, jehož zavření jej vrátí do mezipaměti
+     * @throws SQLException chyba při přípravě dotazu
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        if (maxSize == 0) {
+            return connection.prepareStatement(sql);
+        }
+
+        Entry entry = entries.get(sql);
+        if (entry != null && entry.inUse) {
+            // souběžně otevřený stejný dotaz – mimo mezipaměť
+            return connection.prepareStatement(sql);
+        }
+
+        if (entry == null || entry.statement.isClosed()) {
+            entry = new Entry(connection.prepareStatement(sql));
+            entries.put(sql, entry);
+            evictOverflow();
+        }
+
+        entry.inUse = true;
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, new CachedStatement(sql, entry));
+    }
+
+    /**
+     * Počet připravených dotazů v mezipaměti.
+     *
+     * @return velikost mezipaměti
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Zavření všech připravených dotazů (před zavřením spojení).
+     */
+    void closeAll() {
+        for (Entry entry : entries.values()) {
+            closeQuietly(entry.statement);
+        }
+        entries.clear();
+    }
+
+    /**
+     * Zavření nejdéle nepoužitých dotazů nad kapacitou (používané dotazy zůstávají).
+     */
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            if (!eldest.inUse) {
+                closeQuietly(eldest.statement);
+                it.remove();
+            }
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {}
+    }
+
+    /**
+     * Obal připraveného dotazu – zavření jej vrací do mezipaměti.
+     */
+    private final class CachedStatement implements InvocationHandler {
+
+        private final String sql;
+        private final Entry entry;
+        private boolean returned = false;
+
+        private CachedStatement(String sql, Entry entry) {
+            this.sql = sql;
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!returned) {
+                        returned = true;
+                        giveBack();
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return returned || entry.statement.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "SqlStatementCache[" + sql + "]";
+                }
+                default -> {
+                    if (returned) {
+                        throw new SQLException("Připravený dotaz již byl vrácen do mezipaměti.");
+                    }
+                }
+            }
+
+            try {
+                return method.invoke(entry.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * Vrácení dotazu do mezipaměti; dotaz, který nelze vyčistit, se zahodí.
+         */
+        private void giveBack() {
+            entry.inUse = false;
+            try {
+                entry.statement.clearParameters();
+                entry.statement.clearWarnings();
+            } catch (SQLException e) {
+                closeQuietly(entry.statement);
+                entries.remove(sql, entry);
+                return;
+            }
+
+            // mezipaměť mohla mezitím přetéct
+            evictOverflow();
+        }
+    }
+}
@@ -32,6 +32,10 @@ public enum EBakaLDAPAttributes {
     SRV_AD_CATALOG_READY("isGlobalCatalogReady", BK_LITERAL_TRUE.value),
     SRV_AD_DOMAIN_LEVEL("domainFunctionality", "7"), // MS AD 2016 = 7
     SRV_AD_FOREST_LEVEL("forestFunctionality", "7"), // MS AD 2016 = 7
+    SRV_DS_SERVICE("dsServiceName", null), // DN NTDS nastavení řadiče domény
+    SRV_HIGHEST_USN("highestCommittedUSN", null), // nejvyšší potvrzené USN řadiče domény
+
+    USN_CHANGED("uSNChanged", null), // USN poslední změny objektu
 
     MAIL ("mail", null), // primární e-mail
     PROXY_ADDR("proxyAddresses", null), // seznam proxy-adres
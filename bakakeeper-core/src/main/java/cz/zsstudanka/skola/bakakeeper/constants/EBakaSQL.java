@@ -45,6 +45,8 @@ public enum EBakaSQL {
     F_STU_EXPIRED(TBL_STU.field + "." + "EVID_DO", "Datum - konec platnosti evidence žáka."),
     F_STU_BK_CLASSYEAR("B_ROCNIK", "Ročník žáka."),
     F_STU_BK_CLASSLETTER("B_TRIDA", "Písmeno třídy žáka."),
+    F_STU_BK_ROWS("BK_RADKU", "Alias - počet řádků žáků a zástupců třídy."),
+    F_STU_BK_CHECKSUM("BK_SOUCET", "Alias - kontrolní součet řádků žáků a zástupců třídy."),
 
     // pole - Guardian
     F_GUA_ID(TBL_GUA.field + "." + "ID", "Interní kód zákonného zástupce."),
@@ -57,6 +59,7 @@ public enum EBakaSQL {
     F_GUA_BK_GIVENNAME("ZZ_JMENO", "Alias - jméno zákonného zástupce."),
     F_GUA_BK_MAIL("ZZ_MAIL", "Alias - e-mailová adresa zákonného zástupce."),
     F_GUA_BK_MOBILE("ZZ_TELEFON", "Alias - mobilní telefon zákonného zástupce."),
+    F_GUA_BK_PRIMARY("ZZ_PRIMARNI", "Alias - příznak primárního zákonného zástupce."),
 
     // pole - Faculty - učitel
     F_FAC_ID(TBL_FAC.field + "." + "INTERN_KOD", "Interní kód vyučujícího."),
@@ -103,6 +106,14 @@ public enum EBakaSQL {
     S_STU_BK_GUA_GIVENNAME(F_GUA_GIVENNAME.field + " AS " + F_GUA_BK_GIVENNAME.field, "Výběr: jméno zákonného zástupce."),
     S_STU_BK_GUA_MOBILE(F_GUA_MOBILE.field + " AS " + F_GUA_BK_MOBILE.field, "Výběr: telefon zákonného zástupce."),
     S_STU_BK_GUA_MAIL(F_GUA_MAIL.field + " AS " + F_GUA_BK_MAIL.field, "Výběr: e-mailová adresa zákonného zástupce."),
+    S_STU_BK_ROWS("COUNT(*) AS " + F_STU_BK_ROWS.field, "Výběr: počet řádků třídy."),
+    S_STU_BK_CHECKSUM("CHECKSUM_AGG(BINARY_CHECKSUM("
+            + F_STU_ID.field + ", " + F_STU_CLASS_ID.field + ", " + F_STU_SURNAME.field + ", "
+            + F_STU_GIVENNAME.field + ", " + F_STU_MAIL.field + ", "
+            + F_GUA_ID.field + ", " + F_GUA_SURNAME.field + ", " + F_GUA_GIVENNAME.field + ", "
+            + F_GUA_MOBILE.field + ", " + F_GUA_MAIL.field + ", " + FS_GS_IS_PRI.field
+            + ")) AS " + F_STU_BK_CHECKSUM.field, "Výběr: kontrolní součet řádků třídy."),
+    S_STU_BK_GUA_PRIMARY("CASE WHEN " + FS_GS_IS_PRI.field + " = '" + LIT_TRUE.field + "' THEN '1' ELSE '0' END AS " + F_GUA_BK_PRIMARY.field, "Výběr: příznak primárního zákonného zástupce."),
 
     // ostatní
     NULL("(NULL)", "Literál prázdných dat."),
@@ -111,9 +122,13 @@ public enum EBakaSQL {
     private final String field;
     private final String description;
 
+    /** alias sloupce – určený jednou, čte se pro každou hodnotu každého řádku */
+    private final String basename;
+
     EBakaSQL(String field, String description) {
         this.field = field;
         this.description = description;
+        this.basename = aliasOf(field);
     }
 
     public String field() {
@@ -121,16 +136,20 @@ public enum EBakaSQL {
     }
 
     public String basename() {
+        return this.basename;
+    }
+
+    private static String aliasOf(String field) {
 
         if (field.contains(" AS ")) {
-            return field().split(" AS ")[field().split(" AS ").length - 1];
+            return field.split(" AS ")[field.split(" AS ").length - 1];
         }
 
         if (field.contains(".")) {
-            return field().split("\\.")[field().split("\\.").length - 1];
+            return field.split("\\.")[field.split("\\.").length - 1];
         }
 
-        return field();
+        return field;
     }
 
     public EBakaSQL primaryKey() {
@@ -3,6 +3,8 @@ package cz.zsstudanka.skola.bakakeeper.model;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.io.Serializable;
+
 /**
  * Abstraktní základ pro všechny typy osob v systému.
  * Obsahuje společná pole sdílená mezi žáky, zákonnými zástupci, učiteli a absolventy.
@@ -11,7 +13,7 @@ import lombok.Setter;
  */
 @Getter
 @Setter
-public abstract class Person {
+public abstract class Person implements Serializable {
 
     /** interní kód v evidenci Bakaláři (INTERN_KOD), uložen i v extensionAttribute1 */
     private String internalId;
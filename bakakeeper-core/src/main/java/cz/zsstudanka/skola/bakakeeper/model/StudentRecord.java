@@ -66,6 +66,9 @@ public class StudentRecord extends Person {
     /** e-mail zákonného zástupce (z SQL joinu) */
     private String guardianEmail;
 
+    /** všichni zákonní zástupci žáka z evidence (primární první) */
+    private List<GuardianRecord> guardians = new ArrayList<>();
+
     /** datum konce evidence (EVID_DO) */
     private String expired;
 
@@ -1,7 +1,9 @@
 package cz.zsstudanka.skola.bakakeeper.model.entities;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -23,4 +25,18 @@ public class DataLDAP extends HashMap<String, Object> {
         }
     }
 
+    /**
+     * Nezávislá kopie objektu – vícehodnotové atributy jako nové seznamy.
+     *
+     * @return kopie
+     */
+    public DataLDAP copy() {
+        DataLDAP copy = new DataLDAP();
+        for (Map.Entry<String, Object> attribute : entrySet()) {
+            Object value = attribute.getValue();
+            copy.put(attribute.getKey(), (value instanceof List<?> list) ? new ArrayList<>(list) : value);
+        }
+        return copy;
+    }
+
 }
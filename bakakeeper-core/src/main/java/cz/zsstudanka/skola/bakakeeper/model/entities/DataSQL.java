@@ -1,5 +1,7 @@
 package cz.zsstudanka.skola.bakakeeper.model.entities;
 
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
+
 import java.util.HashMap;
 
 /**
@@ -7,5 +9,10 @@ import java.util.HashMap;
  *
  * @author Jan Hladěna
  */
-public class DataSQL extends HashMap<String, String> {
+public class DataSQL extends HashMap<String, String> implements SqlRow {
+
+    @Override
+    public String get(EBakaSQL column) {
+        return get(column.basename());
+    }
 }
@@ -0,0 +1,23 @@
+package cz.zsstudanka.skola.bakakeeper.model.entities;
+
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
+
+/**
+ * Jeden řádek SQL dat – hodnoty sloupců podle názvu.
+ *
+ * <p>Hodnoty jsou oříznuté, SQL NULL se vrací jako {@link EBakaSQL#NULL}. Řádek
+ * z proudového čtení je pohledem na aktuální pozici kurzoru a po přesunu na další
+ * řádek se mění – nelze jej uchovávat.</p>
+ *
+ * @author Jan Hladěna
+ */
+public interface SqlRow {
+
+    /**
+     * Hodnota sloupce.
+     *
+     * @param column sloupec (podle {@link EBakaSQL#basename()})
+     * @return hodnota sloupce
+     */
+    String get(EBakaSQL column);
+}
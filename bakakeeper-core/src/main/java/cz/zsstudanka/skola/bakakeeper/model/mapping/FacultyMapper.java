@@ -5,6 +5,7 @@ import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
 import cz.zsstudanka.skola.bakakeeper.model.FacultyRecord;
 import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
 import cz.zsstudanka.skola.bakakeeper.model.entities.DataSQL;
+import cz.zsstudanka.skola.bakakeeper.model.entities.SqlRow;
 
 /**
  * Mapper pro převod dat vyučujícího z DataSQL a DataLDAP na typovaný FacultyRecord.
@@ -23,7 +24,7 @@ public class FacultyMapper {
      * @param sql data z evidence Bakaláři
      * @return typovaný záznam vyučujícího, nebo null
      */
-    public static FacultyRecord fromSQL(DataSQL sql) {
+    public static FacultyRecord fromSQL(SqlRow sql) {
         if (sql == null) {
             return null;
         }
@@ -32,15 +33,13 @@ public class FacultyMapper {
         record.setPartial(true);
         record.setPaired(false);
 
-        record.setInternalId(sql.get(EBakaSQL.F_FAC_ID.basename()));
-        record.setSurname(sql.get(EBakaSQL.F_FAC_SURNAME.basename()));
-        record.setGivenName(sql.get(EBakaSQL.F_FAC_GIVENNAME.basename()));
-        record.setDisplayName(
-                sql.get(EBakaSQL.F_FAC_SURNAME.basename()) + " " +
-                sql.get(EBakaSQL.F_FAC_GIVENNAME.basename()));
-        record.setEmail(sql.get(EBakaSQL.F_FAC_EMAIL.basename()));
+        record.setInternalId(sql.get(EBakaSQL.F_FAC_ID));
+        record.setSurname(sql.get(EBakaSQL.F_FAC_SURNAME));
+        record.setGivenName(sql.get(EBakaSQL.F_FAC_GIVENNAME));
+        record.setDisplayName(record.getSurname() + " " + record.getGivenName());
+        record.setEmail(sql.get(EBakaSQL.F_FAC_EMAIL));
 
-        String active = sql.get(EBakaSQL.F_FAC_ACTIVE.basename());
+        String active = sql.get(EBakaSQL.F_FAC_ACTIVE);
         record.setActiveThisYear(EBakaSQL.LIT_TRUE.basename().equals(active));
 
         return record;
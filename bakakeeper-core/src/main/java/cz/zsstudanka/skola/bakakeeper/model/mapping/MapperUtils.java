@@ -2,6 +2,7 @@ package cz.zsstudanka.skola.bakakeeper.model.mapping;
 
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
+import cz.zsstudanka.skola.bakakeeper.utils.StringPool;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -40,23 +41,40 @@ class MapperUtils {
      * @param attr požadovaný atribut
      * @return seznam hodnot (nikdy null, může být prázdný)
      */
-    @SuppressWarnings("unchecked")
     static List<String> getMultiValueAttr(DataLDAP ldap, EBakaLDAPAttributes attr) {
-        List<String> result = new ArrayList<>();
+        return multiValue(ldap, attr, false);
+    }
+
+    /**
+     * Multi-value atribut se sdílenými instancemi hodnot ({@link StringPool}) –
+     * pro hodnoty společné mnoha účtům (např. DN skupin v memberOf).
+     *
+     * @param ldap LDAP data
+     * @param attr požadovaný atribut
+     * @return seznam hodnot (nikdy null, může být prázdný)
+     */
+    static List<String> getCanonicalMultiValueAttr(DataLDAP ldap, EBakaLDAPAttributes attr) {
+        return multiValue(ldap, attr, true);
+    }
+
+    private static List<String> multiValue(DataLDAP ldap, EBakaLDAPAttributes attr, boolean canonical) {
         Object val = ldap.get(attr.attribute());
         if (val == null) {
-            return result;
+            return new ArrayList<>();
         }
 
+        List<String> result;
         if (val instanceof List<?> list) {
+            result = new ArrayList<>(list.size());
             for (Object item : list) {
                 if (item != null) {
-                    result.add(item.toString());
+                    result.add(canonical ? StringPool.canonical(item.toString()) : item.toString());
                 }
             }
         } else {
             // jednoprvkový atribut – vrácen jako String
-            result.add(val.toString());
+            result = new ArrayList<>(1);
+            result.add(canonical ? StringPool.canonical(val.toString()) : val.toString());
         }
         return result;
     }
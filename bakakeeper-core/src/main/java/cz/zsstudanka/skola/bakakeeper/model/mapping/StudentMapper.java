@@ -2,12 +2,13 @@ package cz.zsstudanka.skola.bakakeeper.model.mapping;
 
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
+import cz.zsstudanka.skola.bakakeeper.model.GuardianRecord;
 import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
 import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
 import cz.zsstudanka.skola.bakakeeper.model.entities.DataSQL;
-import cz.zsstudanka.skola.bakakeeper.utils.BakaUtils;
+import cz.zsstudanka.skola.bakakeeper.model.entities.SqlRow;
+import cz.zsstudanka.skola.bakakeeper.utils.StringPool;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,6 +16,10 @@ import java.util.Map;
 /**
  * Mapper pro převod dat žáka z DataSQL a DataLDAP na typovaný StudentRecord.
  *
+ * <p>Opakující se hodnoty (označení a písmeno třídy, pracovní zařazení, DN skupin)
+ * sdílejí jednu instanci přes {@link StringPool} – seznamy žáků zůstávají v paměti
+ * mezi fázemi synchronizace i mezi běhy.</p>
+ *
  * @author Jan Hladěna
  */
 public class StudentMapper {
@@ -29,7 +34,7 @@ public class StudentMapper {
      * @param sql data z evidence Bakaláři
      * @return typovaný záznam žáka (partial = true, paired = false), nebo null
      */
-    public static StudentRecord fromSQL(DataSQL sql) {
+    public static StudentRecord fromSQL(SqlRow sql) {
         if (sql == null) {
             return null;
         }
@@ -48,7 +53,7 @@ public class StudentMapper {
                 (surname != null ? surname : "") + " " +
                 (givenName != null ? givenName : ""));
         record.setEmail(sqlValue(sql, EBakaSQL.F_STU_MAIL));
-        record.setClassName(sqlValue(sql, EBakaSQL.F_STU_CLASS));
+        record.setClassName(StringPool.canonical(sqlValue(sql, EBakaSQL.F_STU_CLASS)));
         record.setClassNumber(sqlValue(sql, EBakaSQL.F_STU_CLASS_ID));
         record.setExpired(sqlValue(sql, EBakaSQL.F_STU_EXPIRED));
 
@@ -62,18 +67,52 @@ public class StudentMapper {
             }
         }
 
-        record.setClassLetter(sqlValue(sql, EBakaSQL.F_STU_BK_CLASSLETTER));
+        record.setClassLetter(StringPool.canonical(sqlValue(sql, EBakaSQL.F_STU_BK_CLASSLETTER)));
 
         // data zákonného zástupce (pokud je v SQL joinu)
-        record.setGuardianInternalId(sqlValue(sql, EBakaSQL.F_GUA_BK_ID));
-        record.setGuardianSurname(sqlValue(sql, EBakaSQL.F_GUA_BK_SURNAME));
-        record.setGuardianGivenName(sqlValue(sql, EBakaSQL.F_GUA_BK_GIVENNAME));
-        record.setGuardianPhone(sqlValue(sql, EBakaSQL.F_GUA_BK_MOBILE));
-        record.setGuardianEmail(sqlValue(sql, EBakaSQL.F_GUA_BK_MAIL));
+        addGuardian(record, sql);
 
         return record;
     }
 
+    /**
+     * Doplní žákovi zákonného zástupce z řádku SQL joinu. Primárního zástupce
+     * (příznak ZZ_PRIMARNI, u řádků bez příznaku každého) zapíše i do polí
+     * guardian* – pokud žák primárního zástupce ještě nemá.
+     *
+     * @param record záznam žáka
+     * @param sql řádek se sloupci ZZ_*
+     */
+    public static void addGuardian(StudentRecord record, SqlRow sql) {
+        String guardianId = sqlValue(sql, EBakaSQL.F_GUA_BK_ID);
+        if (guardianId == null) {
+            return;
+        }
+
+        GuardianRecord guardian = new GuardianRecord();
+        guardian.setPartial(true);
+        guardian.setPaired(false);
+        guardian.setInternalId(guardianId);
+        guardian.setSurname(sqlValue(sql, EBakaSQL.F_GUA_BK_SURNAME));
+        guardian.setGivenName(sqlValue(sql, EBakaSQL.F_GUA_BK_GIVENNAME));
+        guardian.setDisplayName(
+                (guardian.getSurname() != null ? guardian.getSurname() : "") + " " +
+                (guardian.getGivenName() != null ? guardian.getGivenName() : ""));
+        guardian.setPhone(sqlValue(sql, EBakaSQL.F_GUA_BK_MOBILE));
+        guardian.setEmail(sqlValue(sql, EBakaSQL.F_GUA_BK_MAIL));
+        record.getGuardians().add(guardian);
+
+        String primary = sqlValue(sql, EBakaSQL.F_GUA_BK_PRIMARY);
+        boolean isPrimary = (primary == null) || EBakaSQL.LIT_TRUE.field().equals(primary);
+        if (isPrimary && record.getGuardianInternalId() == null) {
+            record.setGuardianInternalId(guardian.getInternalId());
+            record.setGuardianSurname(guardian.getSurname());
+            record.setGuardianGivenName(guardian.getGivenName());
+            record.setGuardianPhone(guardian.getPhone());
+            record.setGuardianEmail(guardian.getEmail());
+        }
+    }
+
     /**
      * Vytvoří StudentRecord z LDAP dat.
      *
@@ -99,19 +138,13 @@ public class StudentMapper {
         record.setDn(dn);
 
         // derivace třídy z DN – např. CN=novak.jan,OU=Trida-A,OU=Rocnik-6,...
-        if (dn != null && dn.contains("Trida-") && dn.contains("Rocnik-")) {
-            try {
-                record.setClassYear(BakaUtils.classYearFromDn(dn));
-                record.setClassLetter(BakaUtils.classLetterFromDn(dn));
-                record.setClassName(BakaUtils.classStringFromDN(dn));
-            } catch (Exception ignored) {
-                // DN neobsahuje standardní strukturu (např. alumni) – ponechat výchozí
-            }
+        if (dn != null) {
+            setClassFromDn(record, dn);
         }
 
         record.setSamAccountName(MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.LOGIN));
         record.setUpn(MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.UPN));
-        record.setTitle(MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.TITLE));
+        record.setTitle(StringPool.canonical(MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.TITLE)));
 
         // UAC
         String uacStr = MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.UAC);
@@ -129,8 +162,7 @@ public class StudentMapper {
                 EBakaLDAPAttributes.BK_LITERAL_TRUE.value().equalsIgnoreCase(ext02));
 
         // proxyAddresses – multi-value atribut (SMTP: primární, smtp: sekundární)
-        record.setProxyAddresses(
-                new ArrayList<>(MapperUtils.getMultiValueAttr(ldap, EBakaLDAPAttributes.PROXY_ADDR)));
+        record.setProxyAddresses(MapperUtils.getMultiValueAttr(ldap, EBakaLDAPAttributes.PROXY_ADDR));
 
         // poslední přihlášení
         String lastLogonStr = MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.LAST_LOGON);
@@ -145,7 +177,7 @@ public class StudentMapper {
         }
 
         // členství ve skupinách
-        record.setMemberOf(new ArrayList<>(MapperUtils.getMultiValueAttr(ldap, EBakaLDAPAttributes.MEMBER_OF)));
+        record.setMemberOf(MapperUtils.getCanonicalMultiValueAttr(ldap, EBakaLDAPAttributes.MEMBER_OF));
 
         // aktuální hodnoty atributů pro konvergentní rekonciliaci pravidel
         // (extensionAttribute3-15 + title) – umožňuje zjistit, zda atribut
@@ -154,7 +186,7 @@ public class StudentMapper {
         for (EBakaLDAPAttributes ext : RULE_ELIGIBLE_ATTRIBUTES) {
             String val = MapperUtils.getStringAttr(ldap, ext);
             if (val != null && !val.isEmpty()) {
-                ruleAttrs.put(ext.attribute(), val);
+                ruleAttrs.put(ext.attribute(), StringPool.canonical(val));
             }
         }
         // title je samostatné pole, ale pro rekonciliaci potřebujeme i jeho hodnotu v mapě
@@ -166,6 +198,41 @@ public class StudentMapper {
         return record;
     }
 
+    /**
+     * Doplní ročník, písmeno a označení třídy z DN žáka. Třída je první OU
+     * ({@code OU=Trida-A}), ročník druhá ({@code OU=Rocnik-6}). DN jiné struktury
+     * (např. absolventi) ponechá výchozí hodnoty.
+     *
+     * @param record záznam žáka
+     * @param dn plné DN žáka
+     */
+    private static void setClassFromDn(StudentRecord record, String dn) {
+        int letterStart = dn.indexOf(',') + 1;
+        int yearStart = dn.indexOf(',', letterStart) + 1;
+        if (letterStart == 0 || yearStart == 0
+                || !dn.startsWith(CLASS_OU, letterStart) || !dn.startsWith(YEAR_OU, yearStart)) {
+            return;
+        }
+
+        int yearEnd = dn.indexOf(',', yearStart);
+        String letter = dn.substring(letterStart + CLASS_OU.length(), yearStart - 1);
+        String year = dn.substring(yearStart + YEAR_OU.length(), (yearEnd < 0) ? dn.length() : yearEnd);
+
+        int classYear;
+        try {
+            classYear = Integer.parseInt(year);
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        record.setClassYear(classYear);
+        record.setClassLetter(StringPool.canonical(letter));
+        record.setClassName(StringPool.canonical(classYear + "." + letter));
+    }
+
+    private static final String CLASS_OU = "OU=Trida-";
+    private static final String YEAR_OU = "OU=Rocnik-";
+
     /**
      * Atributy spravovatelné pravidly – extensionAttribute3-15.
      * EXT01 (INTERN_KOD) a EXT02 (mail restriction) jsou spravovány jinými fázemi
@@ -180,10 +247,10 @@ public class StudentMapper {
     );
 
     /**
-     * Vrátí hodnotu z DataSQL, přičemž sentinel "(NULL)" nahrazuje skutečným null.
+     * Vrátí hodnotu z SQL řádku, přičemž sentinel "(NULL)" nahrazuje skutečným null.
      */
-    private static String sqlValue(DataSQL sql, EBakaSQL field) {
-        String val = sql.get(field.basename());
+    private static String sqlValue(SqlRow sql, EBakaSQL field) {
+        String val = sql.get(field);
         if (val == null || EBakaSQL.NULL.basename().equals(val)) {
             return null;
         }
@@ -212,7 +279,7 @@ public class StudentMapper {
         record.setDn(MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.DN));
         record.setSamAccountName(MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.LOGIN));
         record.setUpn(MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.UPN));
-        record.setTitle(MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.TITLE));
+        record.setTitle(StringPool.canonical(MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.TITLE)));
 
         // UAC
         String uacStr = MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.UAC);
@@ -230,8 +297,7 @@ public class StudentMapper {
                 EBakaLDAPAttributes.BK_LITERAL_TRUE.value().equalsIgnoreCase(ext02));
 
         // proxyAddresses – multi-value atribut z LDAP
-        record.setProxyAddresses(
-                new ArrayList<>(MapperUtils.getMultiValueAttr(ldap, EBakaLDAPAttributes.PROXY_ADDR)));
+        record.setProxyAddresses(MapperUtils.getMultiValueAttr(ldap, EBakaLDAPAttributes.PROXY_ADDR));
 
         // poslední přihlášení
         String lastLogonStr = MapperUtils.getStringAttr(ldap, EBakaLDAPAttributes.LAST_LOGON);
@@ -246,7 +312,7 @@ public class StudentMapper {
         }
 
         // členství ve skupinách
-        record.setMemberOf(new ArrayList<>(MapperUtils.getMultiValueAttr(ldap, EBakaLDAPAttributes.MEMBER_OF)));
+        record.setMemberOf(MapperUtils.getCanonicalMultiValueAttr(ldap, EBakaLDAPAttributes.MEMBER_OF));
 
         // e-mail z SQL je autoritativní; pokud je prázdný, použijeme LDAP
         if (record.getEmail() == null || record.getEmail().isEmpty()) {
@@ -0,0 +1,70 @@
+package cz.zsstudanka.skola.bakakeeper.repository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Odložený zápis e-mailů žáků do SQL evidence.
+ *
+ * <p>Během fáze synchronizace se e-maily jen shromažďují a na konci fáze
+ * se zapíší jedinou dávkou ({@link StudentRepository#updateEmails(Map)}).
+ * Opakovaný zápis pro stejného žáka přepíše dřívější hodnotu.</p>
+ *
+ * @author Jan Hladěna
+ */
+public class EmailWriteBuffer {
+
+    private final StudentRepository repository;
+
+    /** čekající zápisy v pořadí přidání */
+    private final Map<String, String> pending = new LinkedHashMap<>();
+
+    public EmailWriteBuffer(StudentRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Přidání e-mailu k zápisu.
+     *
+     * @param internalId interní kód žáka
+     * @param email nová e-mailová adresa
+     */
+    public synchronized void add(String internalId, String email) {
+        pending.put(internalId, email);
+    }
+
+    /**
+     * Počet čekajících zápisů.
+     *
+     * @return počet žáků
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Zápis čekajících e-mailů jednou dávkou. Buffer je poté prázdný.
+     *
+     * @return nezapsané řádky – interní kód → důvod
+     */
+    public Map<String, String> flush() {
+        Map<String, String> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return Map.of();
+            }
+            batch = new LinkedHashMap<>(pending);
+            pending.clear();
+        }
+
+        try {
+            return repository.updateEmails(batch);
+        } catch (RuntimeException e) {
+            // selhala celá dávka
+            String reason = (e.getMessage() != null) ? e.getMessage() : e.getClass().getSimpleName();
+            Map<String, String> failed = new LinkedHashMap<>();
+            batch.keySet().forEach(id -> failed.put(id, reason));
+            return failed;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package cz.zsstudanka.skola.bakakeeper.repository;
 
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapModificationBatch;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
 import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
@@ -87,6 +88,14 @@ public interface LDAPUserRepository {
      */
     boolean removeAttribute(String dn, EBakaLDAPAttributes attr, String oldValue);
 
+    /**
+     * Provede všechny změny atributů jednoho objektu jedinou LDAP operací.
+     *
+     * @param batch dávka změn (DN a změny v pořadí provedení)
+     * @return úspěch všech změn
+     */
+    boolean modifyAttributes(LdapModificationBatch batch);
+
     /**
      * Přejmenuje objekt (změní CN) ve stejné OU.
      *
@@ -164,4 +173,30 @@ public interface LDAPUserRepository {
      * @return úspěch operace
      */
     boolean removeFromGroup(String dn, String groupDn);
+
+    /**
+     * Hromadně přidá a odebere členy skupiny (vícehodnotové modifikace po dávkách,
+     * při odmítnutí dávky po jednotlivých členech).
+     *
+     * @param groupDn DN skupiny
+     * @param toAdd DN členů k přidání
+     * @param toRemove DN členů k odebrání
+     * @return DN členů, jejichž změna selhala
+     */
+    List<String> updateGroupMembers(String groupDn, List<String> toAdd, List<String> toRemove);
+
+    /**
+     * Zahájí práci nad paměťovým snapshotem adresáře. Načtené báze se do konce
+     * synchronizace drží v paměti a úspěšné zápisy repozitáře se na ně aplikují,
+     * takže opakované čtení vidí vlastní změny bez dalšího prohledávání stromu.
+     */
+    void openSnapshot();
+
+    /**
+     * Ukončí práci nad snapshotem, volitelně s ověřením proti aktuálnímu stavu adresáře.
+     *
+     * @param verify znovu načíst báze a porovnat je se snapshotem
+     * @return popis nalezených odchylek (prázdný bez ověření nebo bez odchylek)
+     */
+    List<String> closeSnapshot(boolean verify);
 }
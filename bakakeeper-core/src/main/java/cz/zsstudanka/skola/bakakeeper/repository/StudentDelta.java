@@ -0,0 +1,45 @@
+package cz.zsstudanka.skola.bakakeeper.repository;
+
+import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
+
+import java.util.List;
+
+/**
+ * Aktivní žáci z evidence spolu se změnami od předchozího čtení.
+ *
+ * @param students všichni aktivní žáci (v pořadí ročník, třída, jméno)
+ * @param added    žáci nově v evidenci
+ * @param changed  žáci se změněnými údaji (včetně zákonných zástupců a přesunu do jiné třídy)
+ * @param removed  žáci, kteří z evidence aktivních žáků zmizeli (poslední známý záznam)
+ * @param complete true = předchozí stav nebyl k dispozici, proběhlo úplné čtení
+ *                 a všichni žáci jsou vedeni jako přidaní
+ *
+ * @author Jan Hladěna
+ */
+public record StudentDelta(
+        List<StudentRecord> students,
+        List<StudentRecord> added,
+        List<StudentRecord> changed,
+        List<StudentRecord> removed,
+        boolean complete
+) {
+
+    /**
+     * Výsledek úplného čtení bez předchozího stavu.
+     *
+     * @param students všichni aktivní žáci
+     * @return změny, kde jsou všichni žáci přidaní
+     */
+    public static StudentDelta full(List<StudentRecord> students) {
+        return new StudentDelta(students, students, List.of(), List.of(), true);
+    }
+
+    /**
+     * Evidence se od předchozího čtení nezměnila.
+     *
+     * @return true = žádný žák nepřibyl, nezměnil se ani neubyl
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+}
@@ -2,7 +2,10 @@ package cz.zsstudanka.skola.bakakeeper.repository;
 
 import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Repository pro přístup k SQL datům žáků z evidence Bakaláři.
@@ -20,6 +23,37 @@ public interface StudentRepository {
      */
     List<StudentRecord> findActive(Integer classYear, String classLetter);
 
+    /**
+     * Nalezne aktivní žáky vybraných tříd, seskupené podle třídy.
+     *
+     * <p>Výchozí implementace volá {@link #findActive(Integer, String)} pro každou
+     * třídu; implementace nad SQL načte celý výběr jedním dotazem.</p>
+     *
+     * @param classLabels třídy ve tvaru "X.Y" (např. "5.A")
+     * @return třída → žáci, v pořadí zadaných tříd (i třídy bez žáků)
+     */
+    default Map<String, List<StudentRecord>> findActiveByClasses(Collection<String> classLabels) {
+        Map<String, List<StudentRecord>> byClass = new LinkedHashMap<>();
+        for (String classLabel : classLabels) {
+            byClass.put(classLabel, findActive(Character.getNumericValue(classLabel.charAt(0)),
+                    String.valueOf(classLabel.charAt(2))));
+        }
+        return byClass;
+    }
+
+    /**
+     * Nalezne všechny aktivní žáky spolu se změnami od předchozího volání.
+     *
+     * <p>Výchozí implementace čte celou evidenci a všechny žáky vede jako
+     * přidané; implementace nad SQL může při inkrementálním čtení znovu
+     * načíst jen třídy, jejichž kontrolní součet se změnil.</p>
+     *
+     * @return žáci a změny
+     */
+    default StudentDelta findActiveChanges() {
+        return StudentDelta.full(findActive(null, null));
+    }
+
     /**
      * Nalezne žáka podle interního kódu.
      *
@@ -44,4 +78,27 @@ public interface StudentRepository {
      * @return úspěch operace
      */
     boolean updateEmail(String internalId, String email);
+
+    /**
+     * Zapíše e-maily více žáků zpět do SQL evidence najednou.
+     *
+     * <p>Výchozí implementace zapisuje jednotlivě; implementace nad SQL
+     * zapíše celou dávku jednou transakcí.</p>
+     *
+     * @param emails nové e-mailové adresy podle interního kódu žáka
+     * @return nezapsané řádky – interní kód → důvod (prázdné = vše zapsáno)
+     */
+    default Map<String, String> updateEmails(Map<String, String> emails) {
+        Map<String, String> failed = new LinkedHashMap<>();
+        emails.forEach((internalId, email) -> {
+            try {
+                if (!updateEmail(internalId, email)) {
+                    failed.put(internalId, "Žák nebyl v evidenci nalezen.");
+                }
+            } catch (RuntimeException e) {
+                failed.put(internalId, e.getMessage());
+            }
+        });
+        return failed;
+    }
 }
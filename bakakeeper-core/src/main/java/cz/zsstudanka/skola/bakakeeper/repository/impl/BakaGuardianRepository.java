@@ -1,6 +1,8 @@
 package cz.zsstudanka.skola.bakakeeper.repository.impl;
 
 import cz.zsstudanka.skola.bakakeeper.connectors.LDAPConnector;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapFilter;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapFilterTemplate;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.model.GuardianRecord;
 import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
@@ -8,9 +10,8 @@ import cz.zsstudanka.skola.bakakeeper.model.mapping.GuardianMapper;
 import cz.zsstudanka.skola.bakakeeper.repository.GuardianRepository;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Implementace GuardianRepository nad BakaADAuthenticator konektorem.
@@ -35,33 +36,61 @@ public class BakaGuardianRepository implements GuardianRepository {
             EBakaLDAPAttributes.EXT01.attribute(),
     };
 
+    /** všechny kontakty */
+    private static final LdapFilter CONTACT_FILTER = LdapFilter.is(EBakaLDAPAttributes.OC_CONTACT);
+
+    /** kontakt podle interního kódu */
+    private static final LdapFilterTemplate CONTACT_BY_ID = LdapFilterTemplate.compile(
+            "(&(objectClass=contact)(extensionAttribute1={0}))");
+
+    /** inkrementální čtení podle vodoznaku (volitelné) */
+    private final LdapChangeTracker changeTracker;
+
     public BakaGuardianRepository(LDAPConnector ldap) {
+        this(ldap, null);
+    }
+
+    /**
+     * Konstruktor s inkrementálním čtením adresáře.
+     *
+     * @param ldap LDAP konektor
+     * @param changeTracker sledování změn podle vodoznaku, nebo null pro úplné čtení
+     */
+    public BakaGuardianRepository(LDAPConnector ldap, LdapChangeTracker changeTracker) {
         this.ldap = ldap;
+        this.changeTracker = changeTracker;
     }
 
     @Override
     public List<GuardianRecord> findAllContacts(String baseOu) {
-        Map<Integer, Map<String, String>> raw = queryContacts(baseOu);
         List<GuardianRecord> result = new ArrayList<>();
 
-        for (int i = 0; i < raw.size(); i++) {
-            DataLDAP data = new DataLDAP(raw.get(i));
-            GuardianRecord record = GuardianMapper.fromLDAP(data);
+        queryContacts(baseOu, entry -> {
+            GuardianRecord record = GuardianMapper.fromLDAP(entry);
             if (record != null) {
                 result.add(record);
             }
-        }
+        });
 
         return result;
     }
 
     @Override
     public GuardianRecord findByInternalId(String baseOu, String internalId) {
-        List<GuardianRecord> all = findAllContacts(baseOu);
-        return all.stream()
-                .filter(g -> internalId.equals(g.getInternalId()))
-                .findFirst()
-                .orElse(null);
+        if (internalId == null) {
+            return null;
+        }
+
+        // filtr na rovnost se vyhodnotí na serveru – nečte se celá OU kontaktů
+        List<GuardianRecord> found = new ArrayList<>(1);
+        ldap.searchObjects(baseOu, CONTACT_BY_ID.bind(internalId), CONTACT_ATTRIBUTES, entry -> {
+            GuardianRecord record = GuardianMapper.fromLDAP(entry);
+            if (found.isEmpty() && record != null && internalId.equalsIgnoreCase(record.getInternalId())) {
+                found.add(record);
+            }
+        });
+
+        return found.isEmpty() ? null : found.get(0);
     }
 
     @Override
@@ -91,13 +120,13 @@ public class BakaGuardianRepository implements GuardianRepository {
     }
 
     /**
-     * Provede LDAP dotaz na kontakty v dané OU.
+     * Provede proudový LDAP dotaz na kontakty v dané OU.
      */
-    @SuppressWarnings("unchecked")
-    private Map<Integer, Map<String, String>> queryContacts(String baseOu) {
-        HashMap<String, String> filter = new HashMap<>();
-        filter.put(EBakaLDAPAttributes.OC_CONTACT.attribute(), EBakaLDAPAttributes.OC_CONTACT.value());
-
-        return ldap.getObjectInfo(baseOu, filter, CONTACT_ATTRIBUTES);
+    private void queryContacts(String baseOu, Consumer<DataLDAP> consumer) {
+        if (changeTracker != null) {
+            changeTracker.read(baseOu, CONTACT_FILTER, CONTACT_ATTRIBUTES, consumer);
+        } else {
+            ldap.searchObjects(baseOu, CONTACT_FILTER, CONTACT_ATTRIBUTES, consumer);
+        }
     }
 }
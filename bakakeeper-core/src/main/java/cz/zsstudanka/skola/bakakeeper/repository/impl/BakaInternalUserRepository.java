@@ -3,7 +3,6 @@ package cz.zsstudanka.skola.bakakeeper.repository.impl;
 import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
 import cz.zsstudanka.skola.bakakeeper.connectors.SQLConnector;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
-import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
 import cz.zsstudanka.skola.bakakeeper.model.InternalUserSnapshot;
 import cz.zsstudanka.skola.bakakeeper.repository.InternalUserRepository;
 
@@ -35,13 +34,8 @@ public class BakaInternalUserRepository implements InternalUserRepository {
         // admin login se v DB ukládá jako '*'
         String dbLogin = "ADMIN".equalsIgnoreCase(login) ? "*" : login;
 
-        String query = "SELECT " +
-                "INTERN_KOD, LOGIN, KOD1, PRAVA, UPD_TYP, KODF, " +
-                "HESLO, METODA, SALT, MODIFIED, MODIFIEDBY " +
-                "FROM " + EBakaSQL.TBL_LOGIN.field() +
-                " WHERE LOGIN = ?";
-
-        try (PreparedStatement ps = sql.getConnection().prepareStatement(query)) {
+        try (Connection connection = sql.getConnection();
+             PreparedStatement ps = connection.prepareStatement(BakaQueries.LOGIN_BY_NAME.sql())) {
             ps.setString(1, dbLogin);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs != null && rs.next()) {
@@ -74,13 +68,8 @@ public class BakaInternalUserRepository implements InternalUserRepository {
     public void writeBack(InternalUserSnapshot snapshot) {
         sql.connect();
 
-        String update = "UPDATE " + EBakaSQL.TBL_LOGIN.field() +
-                " SET HESLO = ?, METODA = ?, SALT = ?, MODIFIED = ?, MODIFIEDBY = ? " +
-                "WHERE LOGIN = ?";
-
-        Connection connection = sql.getConnection();
-
-        try (PreparedStatement ps = connection.prepareStatement(update)) {
+        try (Connection connection = sql.getConnection();
+             PreparedStatement ps = connection.prepareStatement(BakaQueries.LOGIN_UPDATE.sql())) {
             ps.setString(1, snapshot.pwdHash());
             ps.setString(2, snapshot.pwdMethod());
             ps.setString(3, snapshot.pwdSalt());
@@ -1,16 +1,18 @@
 package cz.zsstudanka.skola.bakakeeper.repository.impl;
 
 import cz.zsstudanka.skola.bakakeeper.connectors.LDAPConnector;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapFilter;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapFilterTemplate;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapModificationBatch;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
 import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
 import cz.zsstudanka.skola.bakakeeper.model.mapping.StudentMapper;
 import cz.zsstudanka.skola.bakakeeper.repository.LDAPUserRepository;
+import cz.zsstudanka.skola.bakakeeper.utils.BakaUtils;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Implementace LDAPUserRepository nad BakaADAuthenticator konektorem.
@@ -20,6 +22,9 @@ import java.util.Map;
  */
 public class BakaLDAPUserRepository implements LDAPUserRepository {
 
+    /** zdroj v klíči sdílené mezipaměti seznamů */
+    static final String CACHE_SOURCE = "ldap.students";
+
     private final LDAPConnector ldap;
 
     /** atributy požadované pro uživatelské účty */
@@ -56,119 +61,208 @@ public class BakaLDAPUserRepository implements LDAPUserRepository {
             EBakaLDAPAttributes.MEMBER_OF.attribute(),
     };
 
+    /** všechny uživatelské účty */
+    private static final LdapFilter USER_FILTER = LdapFilter.is(EBakaLDAPAttributes.OC_USER);
+
+    /** účet podle UPN */
+    private static final LdapFilterTemplate USER_BY_UPN = LdapFilterTemplate.compile(
+            "(&(objectClass=user)(userPrincipalName={0}))");
+
+    /** účet podle interního kódu */
+    private static final LdapFilterTemplate USER_BY_INTERNAL_ID = LdapFilterTemplate.compile(
+            "(&(objectClass=user)(extensionAttribute1={0}))");
+
+    /** atributy vynechané při ověření snapshotu – mění je server sám (přihlášení, heslo) */
+    private static final Set<String> VERIFY_IGNORED = Set.of(
+            EBakaLDAPAttributes.LAST_LOGON.attribute().toLowerCase(),
+            EBakaLDAPAttributes.PW_LASTSET.attribute().toLowerCase()
+    );
+
+    /** atributy s hodnotami DN – porovnávají se bez ohledu na velikost písmen */
+    private static final Set<String> DN_VALUED = Set.of(
+            EBakaLDAPAttributes.DN.attribute().toLowerCase(),
+            EBakaLDAPAttributes.MEMBER_OF.attribute().toLowerCase()
+    );
+
+    /** inkrementální čtení podle vodoznaku (volitelné) */
+    private final LdapChangeTracker changeTracker;
+
+    /** snapshot adresáře během synchronizace, jinak null */
+    private volatile DirectorySnapshot snapshot;
+
+    /** mezipaměť jednotlivých vyhledání (UPN, interní kód) */
+    private final LookupCache<StudentRecord> lookupCache;
+
+    /** sdílená mezipaměť seznamů */
+    private final RosterCache rosterCache;
+
     public BakaLDAPUserRepository(LDAPConnector ldap) {
+        this(ldap, null);
+    }
+
+    /**
+     * Konstruktor s inkrementálním čtením adresáře.
+     *
+     * @param ldap LDAP konektor
+     * @param changeTracker sledování změn podle vodoznaku, nebo null pro úplné čtení
+     */
+    public BakaLDAPUserRepository(LDAPConnector ldap, LdapChangeTracker changeTracker) {
+        this(ldap, changeTracker, new LookupCache<>(0));
+    }
+
+    /**
+     * Konstruktor s inkrementálním čtením adresáře a mezipamětí vyhledání.
+     *
+     * @param ldap LDAP konektor
+     * @param changeTracker sledování změn podle vodoznaku, nebo null pro úplné čtení
+     * @param lookupCache mezipaměť vyhledání podle UPN a interního kódu
+     */
+    public BakaLDAPUserRepository(LDAPConnector ldap, LdapChangeTracker changeTracker, LookupCache<StudentRecord> lookupCache) {
+        this(ldap, changeTracker, lookupCache, new RosterCache(0));
+    }
+
+    /**
+     * Konstruktor s inkrementálním čtením, mezipamětí vyhledání a sdílenou mezipamětí seznamů.
+     *
+     * @param ldap LDAP konektor
+     * @param changeTracker sledování změn podle vodoznaku, nebo null pro úplné čtení
+     * @param lookupCache mezipaměť vyhledání podle UPN a interního kódu
+     * @param rosterCache sdílená mezipaměť seznamů
+     */
+    public BakaLDAPUserRepository(LDAPConnector ldap, LdapChangeTracker changeTracker,
+                                  LookupCache<StudentRecord> lookupCache, RosterCache rosterCache) {
         this.ldap = ldap;
+        this.changeTracker = changeTracker;
+        this.lookupCache = lookupCache;
+        this.rosterCache = rosterCache;
     }
 
     @Override
     public List<StudentRecord> findAllStudents(String baseOu, String alumniOu) {
-        Map<Integer, Map<String, String>> raw = queryUsers(baseOu);
-        List<StudentRecord> result = new ArrayList<>();
-
-        if (raw == null) {
-            return result;
+        // během synchronizace čte snapshot (včetně vlastních zápisů), mimo ni sdílená mezipaměť
+        if (snapshot != null) {
+            return readAllStudents(baseOu, alumniOu);
         }
+        return new ArrayList<>(rosterCache.get(CACHE_SOURCE + "|" + baseOu + "|" + alumniOu,
+                () -> readAllStudents(baseOu, alumniOu)));
+    }
 
-        for (int i = 0; i < raw.size(); i++) {
-            Map<String, String> entry = raw.get(i);
-
-            // ochrana proti NPE – nekonzistentní klíče v mapě
-            if (entry == null) {
-                continue;
-            }
+    /**
+     * Načtení účtů z báze bez absolventů.
+     */
+    private List<StudentRecord> readAllStudents(String baseOu, String alumniOu) {
+        List<StudentRecord> result = new ArrayList<>();
+        String alumniLower = (alumniOu != null) ? alumniOu.toLowerCase() : null;
 
+        readUsers(baseOu, entry -> {
             // vyloučit absolventy (pokud nejsou explicitně hledáni)
-            if (alumniOu != null && entry.get(EBakaLDAPAttributes.DN.attribute()) != null
-                    && entry.get(EBakaLDAPAttributes.DN.attribute()).toLowerCase().contains(alumniOu.toLowerCase())) {
-                continue;
+            Object dn = entry.get(EBakaLDAPAttributes.DN.attribute());
+            if (alumniLower != null && dn != null && dn.toString().toLowerCase().contains(alumniLower)) {
+                return;
             }
 
-            DataLDAP data = new DataLDAP(entry);
-            StudentRecord record = StudentMapper.fromLDAP(data);
+            StudentRecord record = StudentMapper.fromLDAP(entry);
             if (record != null) {
                 result.add(record);
             }
-        }
+        });
 
         return result;
     }
 
     @Override
     public List<StudentRecord> findAllAlumni(String alumniOu) {
-        Map<Integer, Map<String, String>> raw = queryUsers(alumniOu);
         List<StudentRecord> result = new ArrayList<>();
 
-        if (raw == null) {
-            return result;
-        }
-
-        for (int i = 0; i < raw.size(); i++) {
-            Map<String, String> entry = raw.get(i);
-            if (entry == null) {
-                continue;
-            }
-
-            DataLDAP data = new DataLDAP(entry);
-            StudentRecord record = StudentMapper.fromLDAP(data);
+        readUsers(alumniOu, entry -> {
+            StudentRecord record = StudentMapper.fromLDAP(entry);
             if (record != null) {
                 result.add(record);
             }
-        }
+        });
 
         return result;
     }
 
     @Override
     public StudentRecord findByUPN(String baseOu, String upn) {
-        List<StudentRecord> all = findAllStudents(baseOu, null);
-        return all.stream()
-                .filter(s -> upn.equals(s.getUpn()))
-                .findFirst()
-                .orElse(null);
+        return findOne(baseOu, EBakaLDAPAttributes.UPN, upn, USER_BY_UPN);
     }
 
     @Override
     public StudentRecord findByInternalId(String baseOu, String internalId) {
-        List<StudentRecord> all = findAllStudents(baseOu, null);
-        return all.stream()
-                .filter(s -> internalId.equals(s.getInternalId()))
-                .findFirst()
-                .orElse(null);
+        return findOne(baseOu, EBakaLDAPAttributes.EXT01, internalId, USER_BY_INTERNAL_ID);
     }
 
     @Override
     public void createUser(String cn, String targetOu, DataLDAP data) {
         ldap.createNewUser(cn, targetOu, data);
+        // výsledek zápisu není znám – nový objekt se před dalším čtením načte ze serveru
+        String newDn = "CN=" + cn + "," + targetOu;
+        journal(true, new SnapshotMutation(SnapshotMutation.Type.CREATE, newDn, null, null, newDn));
     }
 
     @Override
     public boolean updateAttribute(String dn, EBakaLDAPAttributes attr, String value) {
-        return ldap.replaceAttribute(dn, attr, value);
+        boolean result = ldap.replaceAttribute(dn, attr, value);
+        // heslo se do žurnálu nezapisuje
+        String journalValue = (attr == EBakaLDAPAttributes.PW_UNICODE) ? null : value;
+        journal(result, new SnapshotMutation(SnapshotMutation.Type.REPLACE, dn, attr.attribute(), journalValue, null));
+        return result;
     }
 
     @Override
     public boolean addAttribute(String dn, EBakaLDAPAttributes attr, String value) {
-        return ldap.addAttribute(dn, attr, value);
+        boolean result = ldap.addAttribute(dn, attr, value);
+        journal(result, new SnapshotMutation(SnapshotMutation.Type.ADD_VALUE, dn, attr.attribute(), value, null));
+        return result;
     }
 
     @Override
     public boolean removeAttribute(String dn, EBakaLDAPAttributes attr, String oldValue) {
-        return ldap.removeAttribute(dn, attr, oldValue);
+        boolean result = ldap.removeAttribute(dn, attr, oldValue);
+        journal(result, new SnapshotMutation(SnapshotMutation.Type.REMOVE_VALUE, dn, attr.attribute(), oldValue, null));
+        return result;
+    }
+
+    @Override
+    public boolean modifyAttributes(LdapModificationBatch batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        boolean result = Boolean.TRUE.equals(ldap.modifyAttributes(batch));
+        for (LdapModificationBatch.Modification mod : batch.getModifications()) {
+            SnapshotMutation.Type type = switch (mod.operation()) {
+                case REPLACE -> SnapshotMutation.Type.REPLACE;
+                case ADD -> SnapshotMutation.Type.ADD_VALUE;
+                case REMOVE -> SnapshotMutation.Type.REMOVE_VALUE;
+            };
+            String journalValue = (mod.attribute() == EBakaLDAPAttributes.PW_UNICODE) ? null : mod.value();
+            journal(result, new SnapshotMutation(type, batch.getDn(), mod.attribute().attribute(), journalValue, null));
+        }
+        return result;
     }
 
     @Override
     public String renameObject(String dn, String newCn) {
-        return ldap.renameObject(dn, newCn);
+        String newDn = ldap.renameObject(dn, newCn);
+        journal(newDn != null, new SnapshotMutation(SnapshotMutation.Type.RENAME, dn, null, null, newDn));
+        return newDn;
     }
 
     @Override
     public boolean moveObject(String dn, String targetOu) {
-        return ldap.moveObject(dn, targetOu);
+        boolean result = Boolean.TRUE.equals(ldap.moveObject(dn, targetOu));
+        journalMove(result, dn, targetOu);
+        return result;
     }
 
     @Override
     public boolean moveObject(String dn, String targetOu, boolean createOuIfNotExists) {
-        return ldap.moveObject(dn, targetOu, createOuIfNotExists);
+        boolean result = Boolean.TRUE.equals(ldap.moveObject(dn, targetOu, createOuIfNotExists));
+        journalMove(result, dn, targetOu);
+        return result;
     }
 
     @Override
@@ -178,12 +272,16 @@ public class BakaLDAPUserRepository implements LDAPUserRepository {
 
     @Override
     public boolean addToGroup(String dn, String groupDn) {
-        return ldap.addObjectToGroup(dn, groupDn);
+        boolean result = Boolean.TRUE.equals(ldap.addObjectToGroup(dn, groupDn));
+        journal(result, new SnapshotMutation(SnapshotMutation.Type.GROUP_ADD, dn, groupDn, null, null));
+        return result;
     }
 
     @Override
     public boolean removeFromAllGroups(String dn) {
-        return ldap.removeObjectFromAllGroups(dn);
+        boolean result = Boolean.TRUE.equals(ldap.removeObjectFromAllGroups(dn));
+        journal(result, new SnapshotMutation(SnapshotMutation.Type.GROUP_REMOVE_ALL, dn, null, null, null));
+        return result;
     }
 
     @Override
@@ -200,17 +298,272 @@ public class BakaLDAPUserRepository implements LDAPUserRepository {
 
     @Override
     public boolean removeFromGroup(String dn, String groupDn) {
-        return ldap.removeObjectFromGroup(dn, groupDn);
+        boolean result = Boolean.TRUE.equals(ldap.removeObjectFromGroup(dn, groupDn));
+        journal(result, new SnapshotMutation(SnapshotMutation.Type.GROUP_REMOVE, dn, groupDn, null, null));
+        return result;
+    }
+
+    @Override
+    public List<String> updateGroupMembers(String groupDn, List<String> toAdd, List<String> toRemove) {
+        if (toAdd.isEmpty() && toRemove.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<String> failed = ldap.modifyGroupMembers(groupDn, toAdd, toRemove);
+        if (failed == null) {
+            failed = new ArrayList<>();
+        }
+
+        Set<String> failedLower = new HashSet<>();
+        failed.forEach(dn -> failedLower.add(dn.toLowerCase()));
+        for (String dn : toRemove) {
+            journal(!failedLower.contains(dn.toLowerCase()),
+                    new SnapshotMutation(SnapshotMutation.Type.GROUP_REMOVE, dn, groupDn, null, null));
+        }
+        for (String dn : toAdd) {
+            journal(!failedLower.contains(dn.toLowerCase()),
+                    new SnapshotMutation(SnapshotMutation.Type.GROUP_ADD, dn, groupDn, null, null));
+        }
+
+        return failed;
+    }
+
+    @Override
+    public void openSnapshot() {
+        this.snapshot = new DirectorySnapshot();
+    }
+
+    @Override
+    public List<String> closeSnapshot(boolean verify) {
+        DirectorySnapshot active = this.snapshot;
+        this.snapshot = null;
+
+        if (active == null || !verify) {
+            return new ArrayList<>();
+        }
+
+        // známé neaktuální objekty nejsou odchylkou – dočíst před porovnáním
+        refreshStale(active);
+        return verifySnapshot(active);
+    }
+
+    /**
+     * Čtení uživatelských účtů – ze snapshotu, pokud je aktivní, jinak přímo z adresáře.
+     */
+    private void readUsers(String baseOu, Consumer<DataLDAP> consumer) {
+        DirectorySnapshot active = this.snapshot;
+        if (active == null) {
+            queryUsers(baseOu, consumer);
+            return;
+        }
+
+        refreshStale(active);
+
+        if (!active.covers(baseOu)) {
+            List<DataLDAP> loaded = new ArrayList<>();
+            if (queryUsers(baseOu, loaded::add)) {
+                active.load(baseOu, loaded);
+            }
+            loaded.forEach(consumer);
+            return;
+        }
+
+        active.entriesUnder(baseOu).forEach(consumer);
+    }
+
+    /**
+     * Vyhledání jednoho účtu podle hodnoty atributu.
+     *
+     * <p>Je-li báze ve snapshotu, hledá se v něm; jinak se na server pošle
+     * ošetřený filtr na rovnost ze šablony (atribut je v AD indexovaný) místo čtení celé OU.</p>
+     */
+    private StudentRecord findOne(String baseOu, EBakaLDAPAttributes attr, String value, LdapFilterTemplate template) {
+        if (value == null) {
+            return null;
+        }
+
+        DirectorySnapshot active = this.snapshot;
+        if (active != null && active.covers(baseOu)) {
+            refreshStale(active);
+            DataLDAP entry = active.findUnder(baseOu, e -> matches(e, attr, value));
+            return (entry != null) ? StudentMapper.fromLDAP(entry) : null;
+        }
+
+        String cacheKey = baseOu.toLowerCase() + "|" + attr.attribute() + "|" + value.toLowerCase();
+        StudentRecord cached = lookupCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<DataLDAP> found = new ArrayList<>(1);
+        ldap.searchObjects(baseOu, template.bind(value), USER_ATTRIBUTES, entry -> {
+            if (found.isEmpty() && matches(entry, attr, value)) {
+                found.add(entry);
+            }
+        });
+
+        StudentRecord record = found.isEmpty() ? null : StudentMapper.fromLDAP(found.get(0));
+        lookupCache.put(cacheKey, record);
+        return record;
+    }
+
+    /**
+     * Shoda hodnoty atributu – LDAP porovnává UPN i extensionAttribute bez ohledu na velikost písmen.
+     */
+    private static boolean matches(DataLDAP entry, EBakaLDAPAttributes attr, String value) {
+        Object actual = entry.get(attr.attribute());
+        return actual != null && value.equalsIgnoreCase(actual.toString());
     }
 
     /**
-     * Provede LDAP dotaz na uživatelské účty v dané OU.
+     * Jednotlivé dočtení objektů označených jako neaktuální.
      */
-    @SuppressWarnings("unchecked")
-    private Map<Integer, Map<String, String>> queryUsers(String baseOu) {
-        HashMap<String, String> filter = new HashMap<>();
-        filter.put(EBakaLDAPAttributes.OC_USER.attribute(), EBakaLDAPAttributes.OC_USER.value());
+    private void refreshStale(DirectorySnapshot active) {
+        for (String dn : active.drainStale()) {
+            if (!ldap.checkDN(dn)) {
+                active.refresh(dn, null);
+                continue;
+            }
+
+            List<DataLDAP> found = new ArrayList<>();
+            if (ldap.searchObjects(dn, USER_FILTER, USER_ATTRIBUTES, found::add) && found.size() == 1) {
+                active.refresh(dn, found.get(0));
+            } else {
+                // stav objektu nelze určit – báze se příště načte celá
+                active.invalidateContaining(dn);
+            }
+        }
+    }
+
+    /**
+     * Porovnání snapshotu s aktuálním stavem adresáře.
+     *
+     * @return popis nalezených odchylek
+     */
+    private List<String> verifySnapshot(DirectorySnapshot active) {
+        List<String> drift = new ArrayList<>();
+        List<String> bases = active.loadedBases();
+
+        for (String base : bases) {
+            // vnořená báze je ověřena s nadřazenou
+            String baseLower = base.toLowerCase();
+            if (bases.stream().anyMatch(other -> baseLower.endsWith("," + other.toLowerCase()))) {
+                continue;
+            }
+
+            Map<String, DataLDAP> server = new LinkedHashMap<>();
+            if (!ldap.searchObjects(base, USER_FILTER, USER_ATTRIBUTES, entry -> {
+                Object dn = entry.get(EBakaLDAPAttributes.DN.attribute());
+                if (dn != null) server.put(dn.toString().toLowerCase(), entry);
+            })) {
+                drift.add("Bázi [" + base + "] nebylo možné pro ověření snapshotu načíst.");
+                continue;
+            }
 
-        return ldap.getObjectInfo(baseOu, filter, USER_ATTRIBUTES);
+            Map<String, DataLDAP> local = new LinkedHashMap<>();
+            for (DataLDAP entry : active.entriesUnder(base)) {
+                Object dn = entry.get(EBakaLDAPAttributes.DN.attribute());
+                if (dn != null) local.put(dn.toString().toLowerCase(), entry);
+            }
+
+            for (Map.Entry<String, DataLDAP> entry : local.entrySet()) {
+                DataLDAP actual = server.get(entry.getKey());
+                String dn = String.valueOf(entry.getValue().get(EBakaLDAPAttributes.DN.attribute()));
+                if (actual == null) {
+                    drift.add("Objekt [" + dn + "] je ve snapshotu, ale v adresáři neexistuje.");
+                    continue;
+                }
+                compareEntry(dn, entry.getValue(), actual, drift);
+            }
+
+            for (Map.Entry<String, DataLDAP> entry : server.entrySet()) {
+                if (!local.containsKey(entry.getKey())) {
+                    drift.add("Objekt [" + entry.getValue().get(EBakaLDAPAttributes.DN.attribute())
+                            + "] existuje v adresáři, ale chybí ve snapshotu.");
+                }
+            }
+        }
+
+        return drift;
+    }
+
+    private static void compareEntry(String dn, DataLDAP expected, DataLDAP actual, List<String> drift) {
+        Set<String> attributes = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        attributes.addAll(expected.keySet());
+        attributes.addAll(actual.keySet());
+
+        for (String attribute : attributes) {
+            if (VERIFY_IGNORED.contains(attribute.toLowerCase())) continue;
+
+            boolean dnValued = DN_VALUED.contains(attribute.toLowerCase());
+            List<String> snapshotValues = normalize(valueOf(expected, attribute), dnValued);
+            List<String> serverValues = normalize(valueOf(actual, attribute), dnValued);
+
+            if (!snapshotValues.equals(serverValues)) {
+                drift.add("Objekt [" + dn + "], atribut " + attribute
+                        + ": snapshot " + snapshotValues + ", adresář " + serverValues + ".");
+            }
+        }
+    }
+
+    private static Object valueOf(DataLDAP entry, String attribute) {
+        for (Map.Entry<String, Object> e : entry.entrySet()) {
+            if (e.getKey().equalsIgnoreCase(attribute)) return e.getValue();
+        }
+        return null;
+    }
+
+    private static List<String> normalize(Object value, boolean lowerCase) {
+        List<String> values = new ArrayList<>();
+        if (value instanceof Collection<?> collection) {
+            collection.forEach(v -> values.add(v.toString()));
+        } else if (value != null) {
+            values.add(value.toString());
+        }
+        if (lowerCase) {
+            values.replaceAll(String::toLowerCase);
+        }
+        Collections.sort(values);
+        return values;
+    }
+
+    /**
+     * Zápis změny do aktivního snapshotu; neúspěšný zápis objekt označí jako neaktuální.
+     */
+    private void journal(boolean success, SnapshotMutation mutation) {
+        // i neúspěšný zápis mohl objekt částečně změnit
+        lookupCache.clear();
+        // heslo se v seznamech účtů neprojeví
+        if (!EBakaLDAPAttributes.PW_UNICODE.attribute().equals(mutation.attribute())) {
+            rosterCache.invalidate(CACHE_SOURCE);
+        }
+
+        DirectorySnapshot active = this.snapshot;
+        if (active == null) {
+            return;
+        }
+
+        if (success) {
+            active.apply(mutation);
+        } else {
+            active.markStale(mutation.dn());
+        }
+    }
+
+    private void journalMove(boolean success, String dn, String targetOu) {
+        String newDn = "CN=" + BakaUtils.parseCN(dn) + "," + targetOu;
+        journal(success, new SnapshotMutation(SnapshotMutation.Type.MOVE, dn, null, null, newDn));
+    }
+
+    /**
+     * Provede proudový LDAP dotaz na uživatelské účty v dané OU.
+     *
+     * @return dotaz proběhl bez chyby
+     */
+    private boolean queryUsers(String baseOu, Consumer<DataLDAP> consumer) {
+        if (changeTracker != null) {
+            return changeTracker.read(baseOu, USER_FILTER, USER_ATTRIBUTES, consumer);
+        }
+        return ldap.searchObjects(baseOu, USER_FILTER, USER_ATTRIBUTES, consumer);
     }
 }
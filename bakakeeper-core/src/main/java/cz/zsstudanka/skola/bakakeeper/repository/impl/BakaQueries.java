@@ -0,0 +1,203 @@
+package cz.zsstudanka.skola.bakakeeper.repository.impl;
+
+import cz.zsstudanka.skola.bakakeeper.connectors.SqlQuery;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
+
+import java.util.Collection;
+
+/**
+ * Katalog dotazů do evidence Bakaláři.
+ *
+ * <p>Všechny dotazy jsou parametrizované – proměnné hodnoty (třída, interní kód,
+ * e-mail, login) se předávají jako parametry, text dotazu je pro každé volání
+ * stejný. Server tak znovu použije plán dotazu a pool spojení připravený dotaz.</p>
+ *
+ * @author Jan Hladěna
+ */
+public final class BakaQueries {
+
+    private BakaQueries() {
+    }
+
+    /** aktivní žáci všech tříd */
+    public static final SqlQuery STUDENTS_ACTIVE = new SqlQuery("students.active",
+            studentSelect("") + studentOrder());
+
+    /** aktivní žáci tříd odpovídajících vzoru ({@link #classPattern(Integer, String)}) */
+    public static final SqlQuery STUDENTS_IN_CLASS = new SqlQuery("students.in_class",
+            studentSelect("AND " + EBakaSQL.F_STU_CLASS.field() + " LIKE ? ") + studentOrder());
+
+    /**
+     * aktivní žáci vybraných tříd – seznam tříd je jediný parametr
+     * ({@link #classList(Collection)}), text dotazu nezávisí na počtu tříd
+     */
+    public static final SqlQuery STUDENTS_IN_CLASSES = new SqlQuery("students.in_classes",
+            studentSelect("AND CHARINDEX(',' + " + EBakaSQL.F_STU_CLASS.field() + " + ',', ?) > 0 ")
+                    + studentOrder());
+
+    /** aktivní žák podle interního kódu */
+    public static final SqlQuery STUDENT_BY_ID = new SqlQuery("students.by_id",
+            studentSelect("AND " + EBakaSQL.F_STU_ID.field() + " = ? ") + studentOrder());
+
+    /** aktivní žák podle e-mailu */
+    public static final SqlQuery STUDENT_BY_EMAIL = new SqlQuery("students.by_email",
+            studentSelect("AND " + EBakaSQL.F_STU_MAIL.field() + " = ? ") + studentOrder());
+
+    /**
+     * Kontrolní součet řádků žáků a zástupců po třídách – počítá server,
+     * na klienta jde jeden řádek za třídu.
+     */
+    public static final SqlQuery STUDENTS_CLASS_CHECKSUMS = new SqlQuery("students.class_checksums",
+            "SELECT " + EBakaSQL.F_STU_CLASS.field() + ", "
+                    + EBakaSQL.S_STU_BK_ROWS.field() + ", "
+                    + EBakaSQL.S_STU_BK_CHECKSUM.field() + " "
+                    + studentFrom("")
+                    + "GROUP BY " + EBakaSQL.F_STU_CLASS.field() + ";");
+
+    /** zápis e-mailu žáka (e-mail, interní kód) */
+    public static final SqlQuery STUDENT_UPDATE_EMAIL = new SqlQuery("students.update_email",
+            "UPDATE " + EBakaSQL.TBL_STU.field()
+                    + " SET " + EBakaSQL.F_STU_MAIL.field() + " = ?"
+                    + " WHERE " + EBakaSQL.F_STU_ID.field() + " = ?");
+
+    /** třídní učitelé */
+    public static final SqlQuery FACULTY_CLASS_TEACHERS = new SqlQuery("faculty.class_teachers",
+            facultySelect()
+                    + EBakaSQL.TBL_FAC.field() + " RIGHT JOIN " + EBakaSQL.TBL_CLASS.field() + " "
+                    + "ON (" + EBakaSQL.F_CLASS_TEACHER.field() + " = " + EBakaSQL.F_FAC_ID.field() + ") "
+                    + "WHERE " + EBakaSQL.F_CLASS_LABEL.field() + " LIKE '[1-9].[A-E]' "
+                    + "AND " + EBakaSQL.F_FAC_ACTIVE.field() + " = '" + EBakaSQL.LIT_TRUE.field() + "' "
+                    + "ORDER BY " + EBakaSQL.F_CLASS_LABEL.field() + " ASC;");
+
+    /** všichni aktivní vyučující (s případnou třídou) */
+    public static final SqlQuery FACULTY_ACTIVE = new SqlQuery("faculty.active",
+            facultySelect()
+                    + EBakaSQL.TBL_CLASS.field() + " RIGHT JOIN " + EBakaSQL.TBL_FAC.field() + " "
+                    + "ON (" + EBakaSQL.F_CLASS_TEACHER.field() + " = " + EBakaSQL.F_FAC_ID.field() + ") "
+                    + "WHERE " + EBakaSQL.F_FAC_ACTIVE.field() + " = '" + EBakaSQL.LIT_TRUE.field() + "' "
+                    + "AND (" + EBakaSQL.F_CLASS_LABEL.field() + " LIKE '[1-9].[A-E]' "
+                    + "OR " + EBakaSQL.F_CLASS_LABEL.field() + " IS NULL) "
+                    + "ORDER BY " + EBakaSQL.F_FAC_SURNAME.field() + " ASC;");
+
+    /** interní uživatel podle loginu */
+    public static final SqlQuery LOGIN_BY_NAME = new SqlQuery("login.by_name",
+            "SELECT INTERN_KOD, LOGIN, KOD1, PRAVA, UPD_TYP, KODF, "
+                    + "HESLO, METODA, SALT, MODIFIED, MODIFIEDBY "
+                    + "FROM " + EBakaSQL.TBL_LOGIN.field()
+                    + " WHERE LOGIN = ?");
+
+    /** zápis hesla interního uživatele (heslo, metoda, sůl, změna, změnil, login) */
+    public static final SqlQuery LOGIN_UPDATE = new SqlQuery("login.update",
+            "UPDATE " + EBakaSQL.TBL_LOGIN.field()
+                    + " SET HESLO = ?, METODA = ?, SALT = ?, MODIFIED = ?, MODIFIEDBY = ? "
+                    + "WHERE LOGIN = ?");
+
+    /**
+     * Vzor třídy pro {@link #STUDENTS_IN_CLASS} – chybějící ročník nebo písmeno
+     * nahradí zástupný znak.
+     *
+     * @param classYear ročník, nebo null
+     * @param classLetter písmeno třídy, nebo null
+     * @return vzor (např. {@code 5.A}, {@code 5.%}, {@code %.B}), nebo null bez filtru
+     */
+    public static String classPattern(Integer classYear, String classLetter) {
+        if (classYear == null && classLetter == null) {
+            return null;
+        }
+
+        String year = (classYear == null) ? "%" : classYear.toString();
+        String letter = (classLetter == null) ? "%" : classLetter;
+        return year + "." + letter;
+    }
+
+    /**
+     * Seznam tříd pro {@link #STUDENTS_IN_CLASSES}.
+     *
+     * @param classLabels třídy ve tvaru "X.Y"
+     * @return třídy oddělené čárkou včetně krajních čárek (např. {@code ,5.A,5.B,})
+     */
+    public static String classList(Collection<String> classLabels) {
+        return "," + String.join(",", classLabels) + ",";
+    }
+
+    /**
+     * SELECT aktivních žáků se všemi zákonnými zástupci a doplňující podmínkou.
+     * Žák s více zástupci vrací více řádků ({@link BakaStudentRepository} je slučuje).
+     */
+    private static String studentSelect(String condition) {
+        StringBuilder sb = new StringBuilder("SELECT ");
+
+        // sloupce
+        sb.append(EBakaSQL.F_STU_ID.field()).append(", ");
+        sb.append(EBakaSQL.F_STU_CLASS_ID.field()).append(", ");
+        sb.append(EBakaSQL.F_STU_SURNAME.field()).append(", ");
+        sb.append(EBakaSQL.F_STU_GIVENNAME.field()).append(", ");
+        sb.append(EBakaSQL.F_STU_CLASS.field()).append(", ");
+        sb.append(EBakaSQL.F_STU_MAIL.field()).append(", ");
+        sb.append(EBakaSQL.S_STU_BK_CLASSYEAR.field()).append(", ");
+        sb.append(EBakaSQL.S_STU_BK_CLASSLETTER.field()).append(", ");
+        sb.append(EBakaSQL.S_STU_BK_GUA_ID.field()).append(", ");
+        sb.append(EBakaSQL.S_STU_BK_GUA_SURNAME.field()).append(", ");
+        sb.append(EBakaSQL.S_STU_BK_GUA_GIVENNAME.field()).append(", ");
+        sb.append(EBakaSQL.S_STU_BK_GUA_MOBILE.field()).append(", ");
+        sb.append(EBakaSQL.S_STU_BK_GUA_MAIL.field()).append(", ");
+        sb.append(EBakaSQL.S_STU_BK_GUA_PRIMARY.field()).append(" ");
+
+        sb.append(studentFrom(condition));
+        return sb.toString();
+    }
+
+    /**
+     * FROM + JOIN všech vazeb na zákonné zástupce a jejich údajů – jednou
+     * pro celou množinu žáků, bez korelovaného poddotazu na každý řádek.
+     * WHERE omezuje na aktivní žáky a doplňující podmínku.
+     */
+    private static String studentFrom(String condition) {
+        StringBuilder sb = new StringBuilder("FROM ");
+
+        sb.append(EBakaSQL.TBL_STU.field()).append(" ");
+        sb.append("LEFT JOIN ").append(EBakaSQL.TBL_STU_GUA.field()).append(" ");
+        sb.append("ON (");
+        sb.append(EBakaSQL.F_GS_STUID.field()).append(" = ").append(EBakaSQL.F_STU_ID.field());
+        sb.append(" AND ");
+        sb.append(EBakaSQL.FS_GS_IS_GUA.field()).append(" = '").append(EBakaSQL.LIT_TRUE.field()).append("'");
+        sb.append(") ");
+        sb.append("LEFT JOIN ").append(EBakaSQL.TBL_GUA.field()).append(" ");
+        sb.append("ON (");
+        sb.append(EBakaSQL.F_GUA_ID.field()).append(" = ").append(EBakaSQL.F_GS_GUAID.field());
+        sb.append(") ");
+
+        // WHERE – pouze aktivní žáci
+        sb.append("WHERE ");
+        sb.append(EBakaSQL.F_STU_CLASS.field()).append(" LIKE '[1-9].[A-E]' ");
+        sb.append("AND ").append(EBakaSQL.F_STU_EXPIRED.field()).append(" IS NULL ");
+        sb.append(condition);
+
+        return sb.toString();
+    }
+
+    /**
+     * Řazení žáků podle ročníku, třídy a jména. Řádky jednoho žáka (jeden na
+     * každého zástupce) jdou po sobě, primární zástupce první.
+     */
+    private static String studentOrder() {
+        return "ORDER BY " + EBakaSQL.F_STU_BK_CLASSYEAR.basename() + " DESC, "
+                + EBakaSQL.F_STU_BK_CLASSLETTER.basename() + " ASC, "
+                + EBakaSQL.F_STU_SURNAME.field() + " ASC, "
+                + EBakaSQL.F_STU_GIVENNAME.field() + " ASC, "
+                + EBakaSQL.F_STU_ID.field() + " ASC, "
+                + EBakaSQL.F_GUA_BK_PRIMARY.basename() + " DESC;";
+    }
+
+    /**
+     * Sloupce vyučujících včetně třídy.
+     */
+    private static String facultySelect() {
+        return "SELECT " + EBakaSQL.F_FAC_ID.field() + ", "
+                + EBakaSQL.F_FAC_EMAIL.field() + ", "
+                + EBakaSQL.F_FAC_GIVENNAME.field() + ", "
+                + EBakaSQL.F_FAC_SURNAME.field() + ", "
+                + EBakaSQL.F_CLASS_LABEL.field() + " "
+                + "FROM ";
+    }
+}
@@ -1,17 +1,25 @@
 package cz.zsstudanka.skola.bakakeeper.repository.impl;
 
 import cz.zsstudanka.skola.bakakeeper.connectors.SQLConnector;
+import cz.zsstudanka.skola.bakakeeper.connectors.SqlQuery;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
 import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
-import cz.zsstudanka.skola.bakakeeper.model.entities.DataSQL;
+import cz.zsstudanka.skola.bakakeeper.model.entities.SqlRow;
 import cz.zsstudanka.skola.bakakeeper.model.mapping.StudentMapper;
+import cz.zsstudanka.skola.bakakeeper.repository.StudentDelta;
 import cz.zsstudanka.skola.bakakeeper.repository.StudentRepository;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Implementace StudentRepository nad SQL konektorem Bakaláři.
@@ -21,187 +29,197 @@ import java.util.List;
  */
 public class BakaStudentRepository implements StudentRepository {
 
+    /** zdroj v klíči sdílené mezipaměti seznamů */
+    static final String CACHE_SOURCE = "sql.students";
+
     private final SQLConnector sql;
 
-    /** sloupce vracené dotazem */
-    private static final EBakaSQL[] COLUMNS = {
-            EBakaSQL.F_STU_ID,
-            EBakaSQL.F_STU_CLASS_ID,
-            EBakaSQL.F_STU_SURNAME,
-            EBakaSQL.F_STU_GIVENNAME,
-            EBakaSQL.F_STU_CLASS,
-            EBakaSQL.F_STU_MAIL,
-            EBakaSQL.F_STU_BK_CLASSYEAR,
-            EBakaSQL.F_STU_BK_CLASSLETTER,
-            EBakaSQL.S_STU_BK_GUA_ID,
-            EBakaSQL.S_STU_BK_GUA_SURNAME,
-            EBakaSQL.S_STU_BK_GUA_GIVENNAME,
-            EBakaSQL.S_STU_BK_GUA_MOBILE,
-            EBakaSQL.S_STU_BK_GUA_MAIL,
-    };
+    /** inkrementální čtení (null = vypnuto) */
+    private final StudentChangeTracker changeTracker;
+
+    /** sdílená mezipaměť seznamů */
+    private final RosterCache rosterCache;
 
     public BakaStudentRepository(SQLConnector sql) {
+        this(sql, null);
+    }
+
+    /**
+     * Konstruktor s inkrementálním čtením.
+     *
+     * @param sql SQL konektor
+     * @param changeTracker sledování změn podle kontrolních součtů tříd (null = vypnuto)
+     */
+    public BakaStudentRepository(SQLConnector sql, StudentChangeTracker changeTracker) {
+        this(sql, changeTracker, new RosterCache(0));
+    }
+
+    /**
+     * Konstruktor s inkrementálním čtením a sdílenou mezipamětí seznamů.
+     *
+     * @param sql SQL konektor
+     * @param changeTracker sledování změn podle kontrolních součtů tříd (null = vypnuto)
+     * @param rosterCache sdílená mezipaměť seznamů
+     */
+    public BakaStudentRepository(SQLConnector sql, StudentChangeTracker changeTracker, RosterCache rosterCache) {
         this.sql = sql;
+        this.changeTracker = changeTracker;
+        this.rosterCache = rosterCache;
     }
 
     @Override
     public List<StudentRecord> findActive(Integer classYear, String classLetter) {
-        sql.connect();
+        String pattern = BakaQueries.classPattern(classYear, classLetter);
+        return new ArrayList<>(rosterCache.get(CACHE_SOURCE + "|" + ((pattern == null) ? "*" : pattern),
+                () -> (pattern == null)
+                        ? readStudents(BakaQueries.STUDENTS_ACTIVE)
+                        : readStudents(BakaQueries.STUDENTS_IN_CLASS, pattern)));
+    }
 
-        String query = buildStudentQuery(classYear, classLetter);
-        List<StudentRecord> result = new ArrayList<>();
+    @Override
+    public Map<String, List<StudentRecord>> findActiveByClasses(Collection<String> classLabels) {
+        Map<String, List<StudentRecord>> byClass = new LinkedHashMap<>();
+        for (String classLabel : classLabels) {
+            byClass.put(classLabel, new ArrayList<>());
+        }
+        if (byClass.isEmpty()) {
+            return byClass;
+        }
 
-        try (ResultSet rs = sql.select(query)) {
-            while (rs != null && rs.next()) {
-                DataSQL row = mapRow(rs);
-                StudentRecord record = StudentMapper.fromSQL(row);
-                if (record != null) {
-                    result.add(record);
-                }
+        // celý výběr jedním dotazem, rozdělení podle třídy na klientovi
+        String classList = BakaQueries.classList(byClass.keySet());
+        List<StudentRecord> students = rosterCache.get(CACHE_SOURCE + "|" + classList,
+                () -> readStudents(BakaQueries.STUDENTS_IN_CLASSES, classList));
+        for (StudentRecord student : students) {
+            List<StudentRecord> classStudents = byClass.get(student.getClassName());
+            if (classStudents != null) {
+                classStudents.add(student);
             }
+        }
+        return byClass;
+    }
+
+    /**
+     * Načtení žáků dotazem – řádky se převádějí rovnou na záznamy, bez mezikopie výsledku.
+     */
+    private List<StudentRecord> readStudents(SqlQuery query, Object... params) {
+        sql.connect();
+
+        try (Stream<StudentRecord> rows = sql.stream(query, new GuardianRows(), params)) {
+            return rows.filter(Objects::nonNull)
+                    .collect(Collectors.toCollection(ArrayList::new));
         } catch (Exception e) {
             throw new RuntimeException("Chyba při načítání žáků z SQL.", e);
         }
+    }
+
+    @Override
+    public StudentDelta findActiveChanges() {
+        if (changeTracker == null) {
+            return StudentRepository.super.findActiveChanges();
+        }
 
-        return result;
+        // třída se čte přesným označením (vzor bez zástupných znaků)
+        return changeTracker.read(classLabel -> readStudents(BakaQueries.STUDENTS_IN_CLASS, classLabel),
+                () -> readStudents(BakaQueries.STUDENTS_ACTIVE));
     }
 
     @Override
     public StudentRecord findByInternalId(String internalId) {
-        List<StudentRecord> all = findActive(null, null);
-        return all.stream()
-                .filter(s -> internalId.equals(s.getInternalId()))
-                .findFirst()
-                .orElse(null);
+        return findOneBy(BakaQueries.STUDENT_BY_ID, internalId, "Chyba při vyhledávání žáka podle interního kódu.");
     }
 
     @Override
     public StudentRecord findByEmail(String email) {
+        return findOneBy(BakaQueries.STUDENT_BY_EMAIL, email, "Chyba při vyhledávání žáka podle e-mailu.");
+    }
+
+    /**
+     * Vyhledání jednoho aktivního žáka – podmínka se předá serveru jako
+     * parametr dotazu, nečte se celá evidence. Proud se dočte celý, aby se
+     * k záznamu sloučily řádky všech zákonných zástupců.
+     */
+    private StudentRecord findOneBy(SqlQuery query, String value, String errorMessage) {
         sql.connect();
 
-        // dotaz se základním filtrem (aktivní žáci) + podmínka na e-mail
-        String baseQuery = buildStudentQuery(null, null);
-        // vloží podmínku na e-mail před ORDER BY
-        String query = baseQuery.replace("ORDER BY",
-                "AND " + EBakaSQL.F_STU_MAIL.field() + " = ? ORDER BY");
-
-        try (PreparedStatement ps = sql.getConnection().prepareStatement(query)) {
-            ps.setString(1, email);
-            try (ResultSet rs = ps.executeQuery()) {
-            if (rs != null && rs.next()) {
-                DataSQL row = mapRow(rs);
-                return StudentMapper.fromSQL(row);
-            }
-            }
+        try (Stream<StudentRecord> rows = sql.stream(query, new GuardianRows(), value)) {
+            List<StudentRecord> students = rows.filter(Objects::nonNull).toList();
+            return students.isEmpty() ? null : students.getFirst();
         } catch (Exception e) {
-            throw new RuntimeException("Chyba při vyhledávání žáka podle e-mailu.", e);
+            throw new RuntimeException(errorMessage, e);
         }
-
-        return null;
     }
 
     @Override
     public boolean updateEmail(String internalId, String email) {
         sql.connect();
 
-        String update = "UPDATE " + EBakaSQL.TBL_STU.field()
-                + " SET " + EBakaSQL.F_STU_MAIL.field() + " = ?"
-                + " WHERE " + EBakaSQL.F_STU_ID.field() + " = ?";
-
-        Connection connection = sql.getConnection();
+        // jediný příkaz – v autocommitu je atomický
         try {
-            connection.setAutoCommit(false);
-            try (PreparedStatement ps = connection.prepareStatement(update)) {
-                ps.setString(1, email);
-                ps.setString(2, internalId);
-
-                int affected = ps.executeUpdate();
-                connection.commit();
-                return affected == 1;
-            }
-        } catch (Exception e) {
-            try {
-                connection.rollback();
-            } catch (Exception rollbackEx) {
-                // rollback selhal – nemůžeme udělat víc
-            }
+            return sql.update(BakaQueries.STUDENT_UPDATE_EMAIL, email, internalId) == 1;
+        } catch (SQLException e) {
             throw new RuntimeException("Chyba při zápisu e-mailu do SQL.", e);
         } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (Exception ignored) {
-                // obnovení autocommitu selhalo
-            }
+            rosterCache.invalidate(CACHE_SOURCE);
         }
     }
 
-    /**
-     * Sestaví SELECT dotaz pro žáky s volitelným filtrem ročníku/třídy.
-     * Sestavení SQL dotazu s volitelným filtrem.
-     */
-    public static String buildStudentQuery(Integer classYear, String classLetter) {
-        StringBuilder sb = new StringBuilder("SELECT ");
-
-        // sloupce
-        sb.append(EBakaSQL.F_STU_ID.field()).append(", ");
-        sb.append(EBakaSQL.F_STU_CLASS_ID.field()).append(", ");
-        sb.append(EBakaSQL.F_STU_SURNAME.field()).append(", ");
-        sb.append(EBakaSQL.F_STU_GIVENNAME.field()).append(", ");
-        sb.append(EBakaSQL.F_STU_CLASS.field()).append(", ");
-        sb.append(EBakaSQL.F_STU_MAIL.field()).append(", ");
-        sb.append(EBakaSQL.S_STU_BK_CLASSYEAR.field()).append(", ");
-        sb.append(EBakaSQL.S_STU_BK_CLASSLETTER.field()).append(", ");
-        sb.append(EBakaSQL.S_STU_BK_GUA_ID.field()).append(", ");
-        sb.append(EBakaSQL.S_STU_BK_GUA_SURNAME.field()).append(", ");
-        sb.append(EBakaSQL.S_STU_BK_GUA_GIVENNAME.field()).append(", ");
-        sb.append(EBakaSQL.S_STU_BK_GUA_MOBILE.field()).append(", ");
-        sb.append(EBakaSQL.S_STU_BK_GUA_MAIL.field()).append(" ");
-
-        // FROM + JOIN zákonný zástupce
-        sb.append("FROM ").append(EBakaSQL.TBL_STU.field()).append(" ");
-        sb.append("LEFT JOIN ").append(EBakaSQL.TBL_GUA.field()).append(" ");
-        sb.append("ON (");
-        sb.append(EBakaSQL.F_GUA_ID.field()).append(" = ");
-        sb.append("(SELECT TOP 1 ").append(EBakaSQL.F_GS_GUAID.field()).append(" ");
-        sb.append("FROM ").append(EBakaSQL.TBL_STU_GUA.field()).append(" ");
-        sb.append("WHERE ").append(EBakaSQL.F_GS_STUID.field()).append(" = ").append(EBakaSQL.F_STU_ID.field()).append(" ");
-        sb.append("AND (");
-        sb.append(EBakaSQL.FS_GS_IS_GUA.field()).append(" = '").append(EBakaSQL.LIT_TRUE.field()).append("'");
-        sb.append(" AND ");
-        sb.append(EBakaSQL.FS_GS_IS_PRI.field()).append(" = '").append(EBakaSQL.LIT_TRUE.field()).append("'");
-        sb.append("))) ");
-
-        // WHERE – pouze aktivní žáci
-        sb.append("WHERE ");
-        sb.append(EBakaSQL.F_STU_CLASS.field()).append(" LIKE '[1-9].[A-E]' ");
-        sb.append("AND ").append(EBakaSQL.F_STU_EXPIRED.field()).append(" IS NULL ");
-
-        // filtr ročník/třída
-        if (classYear != null || classLetter != null) {
-            String year = (classYear == null) ? "%" : classYear.toString();
-            String letter = (classLetter == null) ? "%" : classLetter;
-            sb.append("AND ").append(EBakaSQL.F_STU_CLASS.field())
-              .append(" LIKE '").append(year).append(".").append(letter).append("' ");
+    @Override
+    public Map<String, String> updateEmails(Map<String, String> emails) {
+        if (emails.isEmpty()) {
+            return Map.of();
         }
 
-        // řazení
-        sb.append("ORDER BY ").append(EBakaSQL.F_STU_BK_CLASSYEAR.basename()).append(" DESC, ");
-        sb.append(EBakaSQL.F_STU_BK_CLASSLETTER.basename()).append(" ASC, ");
-        sb.append(EBakaSQL.F_STU_SURNAME.field()).append(" ASC, ");
-        sb.append(EBakaSQL.F_STU_GIVENNAME.field()).append(" ASC;");
+        sql.connect();
+
+        List<String> ids = new ArrayList<>(emails.keySet());
+        List<Object[]> rows = new ArrayList<>(ids.size());
+        for (String internalId : ids) {
+            rows.add(new Object[] { emails.get(internalId), internalId });
+        }
+
+        // celá dávka jednou transakcí
+        int[] counts;
+        try {
+            counts = sql.updateBatch(BakaQueries.STUDENT_UPDATE_EMAIL, rows);
+        } catch (SQLException e) {
+            throw new RuntimeException("Chyba při zápisu e-mailů do SQL.", e);
+        } finally {
+            rosterCache.invalidate(CACHE_SOURCE);
+        }
 
-        return sb.toString();
+        Map<String, String> failed = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            int count = (i < counts.length) ? counts[i] : Statement.EXECUTE_FAILED;
+            if (count == Statement.EXECUTE_FAILED) {
+                failed.put(ids.get(i), "Zápis e-mailu do SQL selhal.");
+            } else if (count == 0) {
+                failed.put(ids.get(i), "Žák nebyl v evidenci nalezen.");
+            }
+        }
+        return failed;
     }
 
     /**
-     * Mapuje jeden řádek ResultSet na DataSQL.
+     * Slučování řádků žáka – dotaz vrací jeden řádek na každého zákonného
+     * zástupce a řádky jednoho žáka jdou po sobě. První řádek žáka vytvoří
+     * záznam, další mu jen doplní zástupce (vrací null, proud je odfiltruje).
+     *
+     * <p>Stavový převod – použitelný jen pro jeden sekvenční proud.</p>
      */
-    private DataSQL mapRow(ResultSet rs) throws Exception {
-        DataSQL row = new DataSQL();
-        for (EBakaSQL col : COLUMNS) {
-            String val = rs.getString(col.basename());
-            row.put(col.basename(), (val == null) ? EBakaSQL.NULL.basename() : val.trim());
+    private static final class GuardianRows implements Function<SqlRow, StudentRecord> {
+
+        private StudentRecord current;
+
+        @Override
+        public StudentRecord apply(SqlRow row) {
+            if (current != null && Objects.equals(current.getInternalId(), row.get(EBakaSQL.F_STU_ID))) {
+                StudentMapper.addGuardian(current, row);
+                return null;
+            }
+
+            current = StudentMapper.fromSQL(row);
+            return current;
         }
-        return row;
     }
 }
@@ -0,0 +1,285 @@
+package cz.zsstudanka.skola.bakakeeper.repository.impl;
+
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
+import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
+import cz.zsstudanka.skola.bakakeeper.utils.BakaUtils;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Paměťový snapshot adresáře po dobu jedné synchronizace.
+ *
+ * <p>Báze načtené z LDAP se drží v paměti a každý úspěšný zápis repozitáře se na ně
+ * aplikuje přes žurnál změn ({@link SnapshotMutation}). Pozdější fáze synchronizace
+ * tak vidí vlastní zápisy bez opakovaného prohledávání stromu.</p>
+ *
+ * <p>Atributy, jejichž výslednou hodnotu počítá server (UAC přes NT Security Descriptor,
+ * pwdLastSet), a objekty po neúspěšném nebo nejednoznačném zápisu se označí jako
+ * neaktuální a před dalším čtením se jednotlivě načtou znovu.</p>
+ *
+ * <p>Snapshot sdílí souběžné fáze i třídy – objekty přijímá i vydává pouze jako
+ * kopie, vlastní záznamy mění jen pod zámkem.</p>
+ *
+ * @author Jan Hladěna
+ */
+public class DirectorySnapshot {
+
+    /** atributy, jejichž hodnotu po zápisu určuje server */
+    private static final Set<String> SERVER_COMPUTED = Set.of(
+            EBakaLDAPAttributes.UAC.attribute().toLowerCase(),
+            EBakaLDAPAttributes.PW_LASTSET.attribute().toLowerCase(),
+            EBakaLDAPAttributes.PW_UNICODE.attribute().toLowerCase(),
+            EBakaLDAPAttributes.NT_SECURITY_DESCRIPTOR.attribute().toLowerCase()
+    );
+
+    /** objekty podle DN (malými písmeny) */
+    private final Map<String, DataLDAP> entries = new LinkedHashMap<>();
+
+    /** plně načtené báze (malými písmeny → původní zápis) */
+    private final Map<String, String> loadedBases = new LinkedHashMap<>();
+
+    /** DN objektů k opětovnému načtení */
+    private final Set<String> stale = new LinkedHashSet<>();
+
+    /** žurnál aplikovaných změn */
+    private final List<SnapshotMutation> journal = new ArrayList<>();
+
+    /**
+     * Zjistí, zda je báze (nebo některá nadřazená báze) načtena.
+     *
+     * @param baseOu báze
+     * @return báze je ve snapshotu
+     */
+    public synchronized boolean covers(String baseOu) {
+        String base = baseOu.toLowerCase();
+        for (String loaded : loadedBases.keySet()) {
+            if (base.equals(loaded) || base.endsWith("," + loaded)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Vloží plně načtenou bázi.
+     *
+     * @param baseOu báze
+     * @param loaded objekty báze
+     */
+    public synchronized void load(String baseOu, List<DataLDAP> loaded) {
+        String base = baseOu.toLowerCase();
+        entries.keySet().removeIf(dn -> isUnder(dn, base));
+        for (DataLDAP entry : loaded) {
+            String dn = dnOf(entry);
+            if (dn != null) {
+                entries.put(dn.toLowerCase(), entry.copy());
+            }
+        }
+        loadedBases.put(base, baseOu);
+    }
+
+    /**
+     * Objekty pod danou bází.
+     *
+     * @param baseOu báze
+     * @return kopie objektů v pořadí načtení
+     */
+    public synchronized List<DataLDAP> entriesUnder(String baseOu) {
+        String base = baseOu.toLowerCase();
+        List<DataLDAP> result = new ArrayList<>();
+        for (Map.Entry<String, DataLDAP> entry : entries.entrySet()) {
+            if (isUnder(entry.getKey(), base)) {
+                result.add(entry.getValue().copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * První objekt pod danou bází vyhovující podmínce (bez kopírování celé báze).
+     *
+     * @param baseOu báze
+     * @param match podmínka
+     * @return kopie objektu, nebo null
+     */
+    public synchronized DataLDAP findUnder(String baseOu, Predicate<DataLDAP> match) {
+        String base = baseOu.toLowerCase();
+        for (Map.Entry<String, DataLDAP> entry : entries.entrySet()) {
+            if (isUnder(entry.getKey(), base) && match.test(entry.getValue())) {
+                return entry.getValue().copy();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Načtené báze.
+     *
+     * @return seznam bází v původním zápisu
+     */
+    public synchronized List<String> loadedBases() {
+        return new ArrayList<>(loadedBases.values());
+    }
+
+    /**
+     * Vyzvednutí DN objektů k opětovnému načtení (seznam se vyprázdní).
+     *
+     * @return DN neaktuálních objektů
+     */
+    public synchronized List<String> drainStale() {
+        List<String> result = new ArrayList<>(stale);
+        stale.clear();
+        return result;
+    }
+
+    /**
+     * Označí objekt k opětovnému načtení.
+     *
+     * @param dn DN objektu
+     */
+    public synchronized void markStale(String dn) {
+        if (dn != null) {
+            stale.add(dn);
+        }
+    }
+
+    /**
+     * Nahrazení objektu aktuální podobou ze serveru, případně jeho odebrání.
+     *
+     * @param dn DN objektu
+     * @param fresh aktuální data, nebo null pokud objekt neexistuje
+     */
+    public synchronized void refresh(String dn, DataLDAP fresh) {
+        if (fresh == null) {
+            entries.remove(dn.toLowerCase());
+            return;
+        }
+        if (covers(BakaUtils.parseBase(dn))) {
+            entries.put(dn.toLowerCase(), fresh.copy());
+        }
+    }
+
+    /**
+     * Zahodí bázi, ve které je objekt – příští čtení ji načte celou.
+     *
+     * @param dn DN objektu
+     */
+    public synchronized void invalidateContaining(String dn) {
+        String lower = dn.toLowerCase();
+        loadedBases.keySet().removeIf(base -> isUnder(lower, base));
+    }
+
+    /**
+     * Aplikace úspěšné změny na snapshot a její zápis do žurnálu.
+     *
+     * @param mutation změna
+     */
+    public synchronized void apply(SnapshotMutation mutation) {
+        journal.add(mutation);
+        String key = mutation.dn().toLowerCase();
+        DataLDAP entry = entries.get(key);
+
+        switch (mutation.type()) {
+            case CREATE -> markStale(mutation.newDn());
+            case RENAME, MOVE -> {
+                if (entry != null) {
+                    entries.remove(key);
+                    entry.put(EBakaLDAPAttributes.DN.attribute(), mutation.newDn());
+                    if (covers(BakaUtils.parseBase(mutation.newDn()))) {
+                        entries.put(mutation.newDn().toLowerCase(), entry);
+                    }
+                }
+                // přesun může objekt při kolizi přejmenovat – ověřit skutečný stav
+                if (mutation.type() == SnapshotMutation.Type.MOVE) {
+                    markStale(mutation.newDn());
+                }
+            }
+            case REPLACE -> {
+                if (entry != null) {
+                    if (mutation.value() == null || mutation.value().isEmpty()) {
+                        entry.remove(mutation.attribute());
+                    } else {
+                        entry.put(mutation.attribute(), mutation.value());
+                    }
+                }
+                if (SERVER_COMPUTED.contains(mutation.attribute().toLowerCase())) {
+                    markStale(mutation.dn());
+                }
+            }
+            case ADD_VALUE -> {
+                if (entry != null) addValue(entry, mutation.attribute(), mutation.value());
+            }
+            case REMOVE_VALUE -> {
+                if (entry != null) removeValue(entry, mutation.attribute(), mutation.value());
+            }
+            case GROUP_ADD -> {
+                if (entry != null) addValue(entry, EBakaLDAPAttributes.MEMBER_OF.attribute(), mutation.attribute());
+            }
+            case GROUP_REMOVE -> {
+                if (entry != null) removeValue(entry, EBakaLDAPAttributes.MEMBER_OF.attribute(), mutation.attribute());
+            }
+            case GROUP_REMOVE_ALL -> {
+                if (entry != null) entry.remove(EBakaLDAPAttributes.MEMBER_OF.attribute());
+            }
+        }
+    }
+
+    /**
+     * Žurnál aplikovaných změn.
+     *
+     * @return kopie žurnálu
+     */
+    public synchronized List<SnapshotMutation> journal() {
+        return new ArrayList<>(journal);
+    }
+
+    // --- interní ---
+
+    private static void addValue(DataLDAP entry, String attribute, String value) {
+        List<Object> values = values(entry, attribute);
+        if (values.stream().noneMatch(v -> v.toString().equalsIgnoreCase(value))) {
+            values.add(value);
+        }
+        store(entry, attribute, values);
+    }
+
+    private static void removeValue(DataLDAP entry, String attribute, String value) {
+        List<Object> values = values(entry, attribute);
+        values.removeIf(v -> v.toString().equalsIgnoreCase(value));
+        store(entry, attribute, values);
+    }
+
+    /**
+     * Hodnoty atributu jako seznam (LDAP data drží jednu hodnotu přímo, více hodnot jako seznam).
+     */
+    private static List<Object> values(DataLDAP entry, String attribute) {
+        Object current = entry.get(attribute);
+        List<Object> values = new ArrayList<>();
+        if (current instanceof List<?> list) {
+            values.addAll(list);
+        } else if (current != null) {
+            values.add(current);
+        }
+        return values;
+    }
+
+    private static void store(DataLDAP entry, String attribute, List<Object> values) {
+        if (values.isEmpty()) {
+            entry.remove(attribute);
+        } else if (values.size() == 1) {
+            entry.put(attribute, values.get(0));
+        } else {
+            entry.put(attribute, new ArrayList<>(values));
+        }
+    }
+
+    private static boolean isUnder(String dnLower, String baseLower) {
+        return dnLower.equals(baseLower) || dnLower.endsWith("," + baseLower);
+    }
+
+    private static String dnOf(DataLDAP entry) {
+        Object dn = entry.get(EBakaLDAPAttributes.DN.attribute());
+        return (dn != null) ? dn.toString() : null;
+    }
+}
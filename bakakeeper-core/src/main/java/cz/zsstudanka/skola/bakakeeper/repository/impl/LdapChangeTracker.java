@@ -0,0 +1,231 @@
+package cz.zsstudanka.skola.bakakeeper.repository.impl;
+
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.connectors.LDAPConnector;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapFilter;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapWatermark;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Inkrementální čtení LDAP podle vodoznaku {@code highestCommittedUSN}.
+ *
+ * <p>Pro každý dotaz se v {@link LdapStateStore} uchovává vodoznak a poslední
+ * známý obsah. Při dalším čtení:</p>
+ * <ul>
+ *   <li>vodoznak serveru se nezměnil → obsah se vrátí z úložiště bez dotazu do stromu,</li>
+ *   <li>vodoznak se posunul → načtou se pouze objekty s {@code uSNChanged} vyšším
+ *       než uložený vodoznak a seznam DN (pro odebrání smazaných a přesunutých objektů),</li>
+ *   <li>vodoznak je neplatný (jiný řadič domény, obnova ze zálohy, chyba) → úplné čtení.</li>
+ * </ul>
+ *
+ * <p>Zpětné odkazy ({@code memberOf}) počítá server z atributu {@code member}
+ * skupiny – změna členství posune {@code uSNChanged} skupiny, nikoli člena.
+ * Při posunu vodoznaku se proto čtou znovu pro všechny objekty spolu se seznamem DN.</p>
+ *
+ * <p>Volající dostává kopie objektů – uložený obsah zůstává beze změny.</p>
+ *
+ * @author Jan Hladěna
+ */
+public class LdapChangeTracker {
+
+    /** zpětné odkazy – jejich změna neposouvá uSNChanged objektu */
+    private static final Set<String> BACK_LINKS = Set.of(
+            EBakaLDAPAttributes.MEMBER_OF.attribute().toLowerCase()
+    );
+
+    private final LDAPConnector ldap;
+    private final LdapStateStore stateStore;
+
+    /**
+     * Konstruktor.
+     *
+     * @param ldap       LDAP konektor
+     * @param stateStore úložiště vodoznaků a obsahu
+     */
+    public LdapChangeTracker(LDAPConnector ldap, LdapStateStore stateStore) {
+        this.ldap = ldap;
+        this.stateStore = stateStore;
+    }
+
+    /**
+     * Načte objekty odpovídající dotazu – inkrementálně, pokud je to možné.
+     *
+     * @param baseOu     základní OU
+     * @param filter     LDAP filtr
+     * @param attributes čtené atributy (musí obsahovat distinguishedName)
+     * @param consumer   zpracování jednoho objektu
+     * @return čtení proběhlo bez chyby
+     */
+    public boolean read(String baseOu, LdapFilter filter, String[] attributes, Consumer<DataLDAP> consumer) {
+        String key = stateKey(baseOu, filter, attributes);
+
+        // vodoznak čtený před dotazem – změny provedené během čtení zachytí příští běh
+        LdapWatermark current = ldap.readWatermark();
+        LdapStateStore.BaseState previous = stateStore.get(key);
+
+        if (current == null) {
+            // server vodoznak neposkytuje – bez sledování změn
+            return ldap.searchObjects(baseOu, filter, attributes, consumer);
+        }
+
+        if (previous != null && previous.watermark().isValidAgainst(current)) {
+            LinkedHashMap<String, DataLDAP> entries = (previous.watermark().usn() == current.usn())
+                    ? previous.entries()
+                    : readChanges(baseOu, filter, attributes, previous);
+
+            if (entries != null) {
+                if (entries != previous.entries()) {
+                    stateStore.put(key, new LdapStateStore.BaseState(current, entries));
+                }
+                entries.values().forEach(entry -> consumer.accept(entry.copy()));
+                return true;
+            }
+
+            ReportManager.log(EBakaLogType.LOG_VERBOSE,
+                    "Inkrementální čtení [" + baseOu + "] selhalo, proběhne úplné čtení.");
+        } else if (previous != null) {
+            ReportManager.log(EBakaLogType.LOG_VERBOSE,
+                    "Vodoznak LDAP pro [" + baseOu + "] je neplatný, proběhne úplné čtení.");
+        }
+
+        return readFull(key, baseOu, filter, attributes, current, consumer);
+    }
+
+    /**
+     * Zneplatní uložený stav dotazu – příští čtení proběhne celé.
+     *
+     * @param baseOu     základní OU
+     * @param filter     LDAP filtr
+     * @param attributes čtené atributy
+     */
+    public void invalidate(String baseOu, LdapFilter filter, String[] attributes) {
+        stateStore.invalidate(stateKey(baseOu, filter, attributes));
+    }
+
+    /**
+     * Úplné čtení s uložením nového stavu.
+     */
+    private boolean readFull(String key, String baseOu, LdapFilter filter, String[] attributes,
+                             LdapWatermark current, Consumer<DataLDAP> consumer) {
+        LinkedHashMap<String, DataLDAP> entries = new LinkedHashMap<>();
+        boolean success = ldap.searchObjects(baseOu, filter, attributes, entry -> {
+            String dn = dnOf(entry);
+            if (dn != null) {
+                entries.put(dn, entry);
+            }
+            consumer.accept(entry.copy());
+        });
+
+        if (success) {
+            stateStore.put(key, new LdapStateStore.BaseState(current, entries));
+        } else {
+            stateStore.invalidate(key);
+        }
+
+        return success;
+    }
+
+    /**
+     * Aplikace změn od uloženého vodoznaku na uložený obsah.
+     *
+     * @return nový obsah, nebo null při chybě čtení
+     */
+    private LinkedHashMap<String, DataLDAP> readChanges(String baseOu, LdapFilter filter, String[] attributes,
+                                                        LdapStateStore.BaseState previous) {
+        // aktuální seznam DN v bázi – odhalí smazané a přesunuté objekty;
+        // zpětné odkazy se čtou spolu s ním (změny členství uSNChanged člena neposunou)
+        List<String> backLinks = Arrays.stream(attributes)
+                .filter(attribute -> BACK_LINKS.contains(attribute.toLowerCase()))
+                .toList();
+        List<String> listing = new ArrayList<>();
+        listing.add(EBakaLDAPAttributes.DN.attribute());
+        listing.addAll(backLinks);
+
+        Map<String, DataLDAP> present = new HashMap<>();
+        boolean listed = ldap.searchObjects(baseOu, filter, listing.toArray(new String[0]), entry -> {
+            String dn = dnOf(entry);
+            if (dn != null) {
+                present.put(dn, entry);
+            }
+        });
+        if (!listed) return null;
+        Set<String> presentDns = present.keySet();
+
+        // změněné objekty
+        Map<String, DataLDAP> changed = new HashMap<>();
+        boolean fetched = ldap.searchObjectsChangedSince(baseOu, filter, previous.watermark().usn(), attributes, entry -> {
+            String dn = dnOf(entry);
+            if (dn != null) {
+                changed.put(dn, entry);
+            }
+        });
+        if (!fetched) return null;
+
+        LinkedHashMap<String, DataLDAP> merged = new LinkedHashMap<>();
+        for (Map.Entry<String, DataLDAP> entry : previous.entries().entrySet()) {
+            if (presentDns.contains(entry.getKey())) {
+                DataLDAP current = changed.get(entry.getKey());
+                merged.put(entry.getKey(), (current != null)
+                        ? current
+                        : withBackLinks(entry.getValue(), present.get(entry.getKey()), backLinks));
+            }
+        }
+        changed.forEach(merged::putIfAbsent);
+
+        // objekt existuje, ale nebyl ani v původním obsahu, ani mezi změnami → stav je neúplný
+        if (merged.size() != presentDns.size()) {
+            return null;
+        }
+
+        ReportManager.log(EBakaLogType.LOG_VERBOSE,
+                "Inkrementální čtení [" + baseOu + "]: změněno " + changed.size()
+                        + ", odebráno " + (previous.entries().size() + countNew(previous, changed) - merged.size()) + ".");
+
+        return merged;
+    }
+
+    /**
+     * Kopie uloženého objektu s aktuálními zpětnými odkazy.
+     */
+    private static DataLDAP withBackLinks(DataLDAP stored, DataLDAP listed, List<String> backLinks) {
+        if (backLinks.isEmpty()) {
+            return stored;
+        }
+
+        DataLDAP current = stored.copy();
+        for (String attribute : backLinks) {
+            Object value = listed.get(attribute);
+            if (value != null) {
+                current.put(attribute, value);
+            } else {
+                current.remove(attribute);
+            }
+        }
+        return current;
+    }
+
+    private static int countNew(LdapStateStore.BaseState previous, Map<String, DataLDAP> changed) {
+        int count = 0;
+        for (String dn : changed.keySet()) {
+            if (!previous.entries().containsKey(dn)) count++;
+        }
+        return count;
+    }
+
+    private static String dnOf(DataLDAP entry) {
+        Object dn = entry.get(EBakaLDAPAttributes.DN.attribute());
+        return (dn != null) ? dn.toString() : null;
+    }
+
+    /**
+     * Klíč stavu – báze, filtr a atributy (různé dotazy nad stejnou bází mají vlastní stav).
+     */
+    private static String stateKey(String baseOu, LdapFilter filter, String[] attributes) {
+        return baseOu.toLowerCase() + "|" + filter.encode() + "|" + String.join(",", attributes);
+    }
+}
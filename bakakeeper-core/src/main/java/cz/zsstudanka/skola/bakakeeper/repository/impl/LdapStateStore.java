@@ -0,0 +1,135 @@
+package cz.zsstudanka.skola.bakakeeper.repository.impl;
+
+import cz.zsstudanka.skola.bakakeeper.components.EncryptionInputStream;
+import cz.zsstudanka.skola.bakakeeper.components.EncryptionOutputStream;
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapWatermark;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Šifrované úložiště stavu inkrementálního čtení LDAP.
+ * Pro každý dotaz (báze + filtr + atributy) uchovává vodoznak řadiče domény
+ * a poslední známý obsah. Ukládá data do souboru {@code ldap-state.dat} ve formátu:
+ * {@code EncryptionOutputStream → GZIPOutputStream → ObjectOutputStream}.
+ *
+ * @author Jan Hladěna
+ */
+public class LdapStateStore {
+
+    private static final String DEFAULT_FILE = "./ldap-state.dat";
+
+    /**
+     * Stav jednoho dotazu.
+     *
+     * @param watermark vodoznak, ke kterému je obsah aktuální
+     * @param entries   objekty podle DN
+     */
+    public record BaseState(LdapWatermark watermark, LinkedHashMap<String, DataLDAP> entries) implements Serializable {}
+
+    private final String filePath;
+    private final char[] passphrase;
+
+    /** klíč dotazu → stav */
+    private Map<String, BaseState> store;
+
+    /**
+     * Vytvoří úložiště s výchozí cestou {@code ./ldap-state.dat}.
+     *
+     * @param passphrase heslo pro šifrování/dešifrování
+     */
+    public LdapStateStore(char[] passphrase) {
+        this(DEFAULT_FILE, passphrase);
+    }
+
+    /**
+     * Vytvoří úložiště s explicitní cestou.
+     *
+     * @param filePath   cesta k datovému souboru
+     * @param passphrase heslo pro šifrování/dešifrování
+     */
+    public LdapStateStore(String filePath, char[] passphrase) {
+        this.filePath = filePath;
+        this.passphrase = passphrase;
+        this.store = new HashMap<>();
+        load();
+    }
+
+    /**
+     * Vrátí uložený stav dotazu.
+     *
+     * @param key klíč dotazu
+     * @return stav, nebo null pokud neexistuje
+     */
+    public synchronized BaseState get(String key) {
+        return store.get(key);
+    }
+
+    /**
+     * Uloží stav dotazu a zapíše úložiště na disk.
+     *
+     * @param key   klíč dotazu
+     * @param state nový stav
+     */
+    public synchronized void put(String key, BaseState state) {
+        store.put(key, state);
+        save();
+    }
+
+    /**
+     * Zneplatní stav dotazu – příští čtení proběhne celé.
+     *
+     * @param key klíč dotazu
+     */
+    public synchronized void invalidate(String key) {
+        if (store.remove(key) != null) {
+            save();
+        }
+    }
+
+    /** Načte úložiště ze souboru. */
+    @SuppressWarnings("unchecked")
+    private void load() {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            return;
+        }
+
+        try (FileInputStream fis = new FileInputStream(file);
+             EncryptionInputStream decrypted = new EncryptionInputStream(fis, passphrase);
+             GZIPInputStream gzip = new GZIPInputStream(decrypted);
+             ObjectInputStream ois = new ObjectInputStream(gzip)) {
+
+            Object obj = ois.readObject();
+            if (obj instanceof Map<?, ?> map) {
+                this.store = (Map<String, BaseState>) map;
+            }
+        } catch (Exception e) {
+            // poškozený nebo cizí soubor – vodoznaky se zahodí a proběhne úplné čtení
+            ReportManager.log(EBakaLogType.LOG_ERR_VERBOSE,
+                    "Stav inkrementálního čtení LDAP nelze načíst, proběhne úplné čtení: " + e.getMessage());
+            this.store = new HashMap<>();
+        }
+    }
+
+    /** Uloží úložiště do souboru. */
+    private void save() {
+        try (FileOutputStream fos = new FileOutputStream(filePath);
+             EncryptionOutputStream encrypted = new EncryptionOutputStream(fos, passphrase);
+             GZIPOutputStream gzip = new GZIPOutputStream(encrypted);
+             ObjectOutputStream oos = new ObjectOutputStream(gzip)) {
+
+            oos.writeObject(store);
+        } catch (Exception e) {
+            ReportManager.log(EBakaLogType.LOG_ERR,
+                    "Chyba při ukládání stavu inkrementálního čtení LDAP: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package cz.zsstudanka.skola.bakakeeper.repository.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Krátkodobá mezipaměť výsledků jednotlivých vyhledání (UPN, interní kód).
+ *
+ * <p>Ukládají se pouze nalezené objekty; každý zápis repozitáře mezipaměť vyprázdní,
+ * takže po změně se objekt vždy načte znovu ze serveru. S nulovou platností je
+ * mezipaměť vypnutá.</p>
+ *
+ * @param <V> typ uloženého záznamu
+ *
+ * @author Jan Hladěna
+ */
+public class LookupCache<V> {
+
+    /** platnost záznamu v ms */
+    private final long ttlMillis;
+
+    /** zdroj času v ms */
+    private final LongSupplier clock;
+
+    /** záznamy podle klíče */
+    private final Map<String, Entry<V>> entries = new HashMap<>();
+
+    private record Entry<V>(V value, long expiresAt) {}
+
+    /**
+     * Mezipaměť se systémovým časem.
+     *
+     * @param ttlSeconds platnost záznamu v s (0 = vypnuto)
+     */
+    public LookupCache(int ttlSeconds) {
+        this(ttlSeconds, System::currentTimeMillis);
+    }
+
+    /**
+     * Mezipaměť s vlastním zdrojem času.
+     *
+     * @param ttlSeconds platnost záznamu v s (0 = vypnuto)
+     * @param clock zdroj času v ms
+     */
+    public LookupCache(int ttlSeconds, LongSupplier clock) {
+        this.ttlMillis = Math.max(0, ttlSeconds) * 1000L;
+        this.clock = clock;
+    }
+
+    /**
+     * Mezipaměť je zapnutá.
+     *
+     * @return nenulová platnost
+     */
+    public boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Platný záznam.
+     *
+     * @param key klíč
+     * @return uložený záznam, nebo null
+     */
+    public synchronized V get(String key) {
+        if (!isEnabled()) return null;
+
+        Entry<V> entry = entries.get(key);
+        if (entry == null) return null;
+
+        if (clock.getAsLong() >= entry.expiresAt()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value();
+    }
+
+    /**
+     * Uložení nalezeného záznamu.
+     *
+     * @param key klíč
+     * @param value záznam (null se neukládá)
+     */
+    public synchronized void put(String key, V value) {
+        if (!isEnabled() || value == null) return;
+        entries.put(key, new Entry<>(value, clock.getAsLong() + ttlMillis));
+    }
+
+    /**
+     * Vyprázdnění mezipaměti.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
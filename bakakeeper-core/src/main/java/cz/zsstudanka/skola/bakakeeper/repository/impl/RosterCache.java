@@ -0,0 +1,188 @@
+package cz.zsstudanka.skola.bakakeeper.repository.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Sdílená mezipaměť celých seznamů (žáci z evidence, vyučující, žákovské účty AD).
+ *
+ * <p>Klíč tvoří zdroj a rozsah čtení (např. {@code sql.students|5.A},
+ * {@code ldap.students|OU=Zaci,...}). Záznam platí po dobu platnosti mezipaměti,
+ * zápis repozitáře zneplatní všechny klíče svého zdroje. Souběžní volající
+ * se stejným klíčem sdílejí jediné načtení. S nulovou platností je mezipaměť
+ * vypnutá a každé volání čte ze serveru.</p>
+ *
+ * <p>Uložený seznam je sdílený mezi volajícími – repozitáře vracejí jeho kopii,
+ * samotné záznamy se však nekopírují a volající je nemá měnit.</p>
+ *
+ * @author Jan Hladěna
+ */
+public class RosterCache {
+
+    /**
+     * Využití mezipaměti.
+     *
+     * @param hits nalezené platné záznamy
+     * @param shared volání, která se připojila k probíhajícímu načtení
+     * @param misses načtení ze serveru
+     * @param size počet platných i prošlých uložených záznamů
+     */
+    public record Stats(long hits, long shared, long misses, int size) {
+
+        @Override
+        public String toString() {
+            return "Mezipaměť seznamů [zásahy " + hits + ", sdílená načtení " + shared
+                    + ", načtení " + misses + ", záznamů " + size + "]";
+        }
+    }
+
+    /** platnost záznamu v ms */
+    private final long ttlMillis;
+
+    /** zdroj času v ms */
+    private final LongSupplier clock;
+
+    /** uložené seznamy podle klíče */
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /** probíhající načtení podle klíče */
+    private final Map<String, CompletableFuture<Object>> loading = new HashMap<>();
+
+    /** počítadlo zneplatnění – načtení zahájené před zápisem se neuloží */
+    private long generation = 0;
+
+    private long hits = 0;
+    private long shared = 0;
+    private long misses = 0;
+
+    private record Entry(Object value, long expiresAt) {}
+
+    /**
+     * Mezipaměť se systémovým časem.
+     *
+     * @param ttlSeconds platnost záznamu v s (0 = vypnuto)
+     */
+    public RosterCache(int ttlSeconds) {
+        this(ttlSeconds, System::currentTimeMillis);
+    }
+
+    /**
+     * Mezipaměť s vlastním zdrojem času.
+     *
+     * @param ttlSeconds platnost záznamu v s (0 = vypnuto)
+     * @param clock zdroj času v ms
+     */
+    public RosterCache(int ttlSeconds, LongSupplier clock) {
+        this.ttlMillis = Math.max(0, ttlSeconds) * 1000L;
+        this.clock = clock;
+    }
+
+    /**
+     * Mezipaměť je zapnutá.
+     *
+     * @return nenulová platnost
+     */
+    public boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Platný uložený seznam, nebo jeho načtení. Probíhá-li načtení stejného
+     * klíče v jiném vlákně, volání počká na jeho výsledek.
+     *
+     * @param key zdroj a rozsah
+     * @param loader načtení ze serveru
+     * @param <T> typ seznamu
+     * @return seznam
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader) {
+        if (!isEnabled()) {
+            return loader.get();
+        }
+
+        CompletableFuture<Object> pending;
+        CompletableFuture<Object> own = null;
+        long startedGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && clock.getAsLong() < entry.expiresAt()) {
+                hits++;
+                return (T) entry.value();
+            }
+
+            pending = loading.get(key);
+            if (pending == null) {
+                own = new CompletableFuture<>();
+                loading.put(key, own);
+                misses++;
+            } else {
+                shared++;
+            }
+            startedGeneration = generation;
+        }
+
+        if (own == null) {
+            try {
+                return (T) pending.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                if (e.getCause() instanceof Error error) throw error;
+                throw e;
+            }
+        }
+
+        T value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                loading.remove(key, own);
+            }
+            own.completeExceptionally(e);
+            throw e;
+        }
+
+        synchronized (this) {
+            loading.remove(key, own);
+            if (generation == startedGeneration) {
+                entries.put(key, new Entry(value, clock.getAsLong() + ttlMillis));
+            }
+        }
+        own.complete(value);
+        return value;
+    }
+
+    /**
+     * Zneplatnění všech klíčů zdroje (volá se při každém zápisu).
+     *
+     * @param source začátek klíče (např. {@code ldap.}, {@code sql.students})
+     */
+    public synchronized void invalidate(String source) {
+        generation++;
+        entries.keySet().removeIf(key -> key.startsWith(source));
+
+        // pozdější volání nesmí převzít načtení zahájené před zápisem
+        loading.keySet().removeIf(key -> key.startsWith(source));
+    }
+
+    /**
+     * Zneplatnění celé mezipaměti (např. ruční obnovení zobrazení).
+     */
+    public void invalidateAll() {
+        invalidate("");
+    }
+
+    /**
+     * Využití mezipaměti od spuštění.
+     *
+     * @return statistiky
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hits, shared, misses, entries.size());
+    }
+}
@@ -0,0 +1,29 @@
+package cz.zsstudanka.skola.bakakeeper.repository.impl;
+
+/**
+ * Jedna úspěšně provedená změna adresáře zapsaná do žurnálu snapshotu.
+ *
+ * @param type      typ změny
+ * @param dn        DN objektu před změnou
+ * @param attribute název LDAP atributu (nebo DN skupiny u členství), jinak null
+ * @param value     hodnota atributu, jinak null
+ * @param newDn     DN objektu po změně (vytvoření, přejmenování, přesun), jinak null
+ *
+ * @author Jan Hladěna
+ */
+public record SnapshotMutation(Type type, String dn, String attribute, String value, String newDn) {
+
+    /** Typ změny. */
+    public enum Type {
+        CREATE, REPLACE, ADD_VALUE, REMOVE_VALUE, RENAME, MOVE,
+        GROUP_ADD, GROUP_REMOVE, GROUP_REMOVE_ALL
+    }
+
+    @Override
+    public String toString() {
+        return type + " [" + dn + "]"
+                + (attribute != null ? " " + attribute : "")
+                + (value != null ? " = " + value : "")
+                + (newDn != null ? " → [" + newDn + "]" : "");
+    }
+}
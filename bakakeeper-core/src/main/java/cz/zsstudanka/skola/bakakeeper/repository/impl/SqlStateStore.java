@@ -0,0 +1,124 @@
+package cz.zsstudanka.skola.bakakeeper.repository.impl;
+
+import cz.zsstudanka.skola.bakakeeper.components.EncryptionInputStream;
+import cz.zsstudanka.skola.bakakeeper.components.EncryptionOutputStream;
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Šifrované úložiště stavu inkrementálního čtení žáků z SQL evidence.
+ * Pro každou třídu uchovává kontrolní součet serveru, otisky žáků a poslední
+ * známé záznamy. Ukládá data do souboru {@code sql-state.dat} ve formátu:
+ * {@code EncryptionOutputStream → GZIPOutputStream → ObjectOutputStream}.
+ *
+ * <p>Úložiště si stav v paměti nedrží – každé čtení vrací nové záznamy,
+ * které volající smí měnit bez vlivu na uložený stav.</p>
+ *
+ * @author Jan Hladěna
+ */
+public class SqlStateStore {
+
+    private static final String DEFAULT_FILE = "./sql-state.dat";
+
+    /**
+     * Stav jedné třídy.
+     *
+     * @param checksum     kontrolní součet třídy ze serveru
+     * @param students     žáci třídy v pořadí dotazu
+     * @param fingerprints otisky žáků podle interního kódu
+     */
+    public record ClassState(String checksum,
+                             ArrayList<StudentRecord> students,
+                             HashMap<String, String> fingerprints) implements Serializable {}
+
+    private final String filePath;
+    private final char[] passphrase;
+
+    /**
+     * Vytvoří úložiště s výchozí cestou {@code ./sql-state.dat}.
+     *
+     * @param passphrase heslo pro šifrování/dešifrování
+     */
+    public SqlStateStore(char[] passphrase) {
+        this(DEFAULT_FILE, passphrase);
+    }
+
+    /**
+     * Vytvoří úložiště s explicitní cestou.
+     *
+     * @param filePath   cesta k datovému souboru
+     * @param passphrase heslo pro šifrování/dešifrování
+     */
+    public SqlStateStore(String filePath, char[] passphrase) {
+        this.filePath = filePath;
+        this.passphrase = passphrase;
+    }
+
+    /**
+     * Načte uložený stav všech tříd.
+     *
+     * @return třída → stav, nebo null pokud soubor chybí nebo jej nelze přečíst
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized LinkedHashMap<String, ClassState> load() {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (FileInputStream fis = new FileInputStream(file);
+             EncryptionInputStream decrypted = new EncryptionInputStream(fis, passphrase);
+             GZIPInputStream gzip = new GZIPInputStream(decrypted);
+             ObjectInputStream ois = new ObjectInputStream(gzip)) {
+
+            Object obj = ois.readObject();
+            if (obj instanceof LinkedHashMap<?, ?> map) {
+                return (LinkedHashMap<String, ClassState>) map;
+            }
+        } catch (Exception e) {
+            // poškozený nebo cizí soubor – proběhne úplné čtení
+            ReportManager.log(EBakaLogType.LOG_ERR_VERBOSE,
+                    "Stav inkrementálního čtení SQL nelze načíst, proběhne úplné čtení: " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Uloží stav všech tříd na disk.
+     *
+     * @param classes třída → stav
+     */
+    public synchronized void save(LinkedHashMap<String, ClassState> classes) {
+        try (FileOutputStream fos = new FileOutputStream(filePath);
+             EncryptionOutputStream encrypted = new EncryptionOutputStream(fos, passphrase);
+             GZIPOutputStream gzip = new GZIPOutputStream(encrypted);
+             ObjectOutputStream oos = new ObjectOutputStream(gzip)) {
+
+            oos.writeObject(classes);
+        } catch (Exception e) {
+            ReportManager.log(EBakaLogType.LOG_ERR,
+                    "Chyba při ukládání stavu inkrementálního čtení SQL: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Zneplatní uložený stav – příští čtení proběhne celé.
+     */
+    public synchronized void invalidate() {
+        File file = new File(filePath);
+        if (file.exists() && !file.delete()) {
+            ReportManager.log(EBakaLogType.LOG_ERR,
+                    "Stav inkrementálního čtení SQL nelze odstranit: " + filePath);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package cz.zsstudanka.skola.bakakeeper.repository.impl;
+
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.connectors.SQLConnector;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
+import cz.zsstudanka.skola.bakakeeper.model.GuardianRecord;
+import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
+import cz.zsstudanka.skola.bakakeeper.repository.StudentDelta;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Inkrementální čtení aktivních žáků z SQL evidence.
+ *
+ * <p>Server spočítá kontrolní součet řádků žáků a zákonných zástupců každé
+ * třídy ({@link BakaQueries#STUDENTS_CLASS_CHECKSUMS}). Znovu se načtou jen
+ * třídy, jejichž součet se od minulého čtení změnil; ostatní se převezmou
+ * z uloženého stavu. Porovnáním otisků jednotlivých žáků vznikne seznam
+ * přidaných, změněných a odebraných žáků.</p>
+ *
+ * <p>Pokud uložený stav chybí nebo jej nelze přečíst, proběhne úplné čtení
+ * a stav se založí znovu.</p>
+ *
+ * @author Jan Hladěna
+ */
+public class StudentChangeTracker {
+
+    /** ročník sestupně, písmeno třídy vzestupně – stejně jako {@link BakaQueries#STUDENTS_ACTIVE} */
+    private static final Comparator<String> CLASS_ORDER = Comparator
+            .comparing((String label) -> label.substring(0, 1)).reversed()
+            .thenComparing(label -> label.substring(1));
+
+    private final SQLConnector sql;
+    private final SqlStateStore stateStore;
+
+    /**
+     * Konstruktor.
+     *
+     * @param sql        SQL konektor
+     * @param stateStore úložiště stavu
+     */
+    public StudentChangeTracker(SQLConnector sql, SqlStateStore stateStore) {
+        this.sql = sql;
+        this.stateStore = stateStore;
+    }
+
+    /**
+     * Načtení aktivních žáků se změnami od předchozího čtení.
+     *
+     * @param classReader čtení žáků jedné třídy (označení třídy → žáci)
+     * @param fullReader  čtení všech aktivních žáků
+     * @return žáci a změny
+     */
+    public StudentDelta read(Function<String, List<StudentRecord>> classReader,
+                             Supplier<List<StudentRecord>> fullReader) {
+        // součty se čtou před obsahem – změna mezi oběma dotazy se projeví
+        // rozdílným součtem při příštím čtení, nikdy se neztratí
+        Map<String, String> checksums = readChecksums();
+
+        LinkedHashMap<String, SqlStateStore.ClassState> previous = stateStore.load();
+        if (previous == null) {
+            return readFull(checksums, fullReader);
+        }
+
+        LinkedHashMap<String, SqlStateStore.ClassState> current = new LinkedHashMap<>();
+        int reread = 0;
+        for (String classLabel : sorted(checksums.keySet())) {
+            String checksum = checksums.get(classLabel);
+            SqlStateStore.ClassState known = previous.get(classLabel);
+            if (known != null && checksum.equals(known.checksum())) {
+                current.put(classLabel, known);
+            } else {
+                current.put(classLabel, classState(checksum, classReader.apply(classLabel)));
+                reread++;
+            }
+        }
+
+        stateStore.save(current);
+        StudentDelta delta = diff(previous, current);
+
+        ReportManager.log(EBakaLogType.LOG_VERBOSE,
+                "Inkrementální čtení žáků: znovu načteno " + reread + " z " + current.size() + " tříd, "
+                        + "přidáno " + delta.added().size() + ", změněno " + delta.changed().size()
+                        + ", odebráno " + delta.removed().size() + ".");
+
+        return delta;
+    }
+
+    /**
+     * Zneplatní uložený stav – příští čtení proběhne celé.
+     */
+    public void invalidate() {
+        stateStore.invalidate();
+    }
+
+    /**
+     * Úplné čtení s založením nového stavu.
+     */
+    private StudentDelta readFull(Map<String, String> checksums, Supplier<List<StudentRecord>> fullReader) {
+        ReportManager.log(EBakaLogType.LOG_VERBOSE,
+                "Stav inkrementálního čtení žáků chybí, proběhne úplné čtení.");
+
+        List<StudentRecord> students = fullReader.get();
+
+        Map<String, List<StudentRecord>> byClass = new HashMap<>();
+        for (StudentRecord student : students) {
+            byClass.computeIfAbsent(student.getClassName(), k -> new ArrayList<>()).add(student);
+        }
+
+        // třída, která mezi oběma dotazy přibyla, nemá součet – příště se načte znovu
+        LinkedHashMap<String, SqlStateStore.ClassState> state = new LinkedHashMap<>();
+        for (String classLabel : sorted(byClass.keySet())) {
+            state.put(classLabel, classState(checksums.getOrDefault(classLabel, ""), byClass.get(classLabel)));
+        }
+        stateStore.save(state);
+
+        return StudentDelta.full(students);
+    }
+
+    /**
+     * Kontrolní součty tříd ze serveru.
+     *
+     * @return označení třídy → počet řádků a součet
+     */
+    private Map<String, String> readChecksums() {
+        sql.connect();
+
+        Map<String, String> checksums = new HashMap<>();
+        try (Stream<String[]> rows = sql.stream(BakaQueries.STUDENTS_CLASS_CHECKSUMS, row -> new String[] {
+                row.get(EBakaSQL.F_STU_CLASS),
+                row.get(EBakaSQL.F_STU_BK_ROWS) + ":" + row.get(EBakaSQL.F_STU_BK_CHECKSUM)
+        })) {
+            rows.forEach(row -> checksums.put(row[0], row[1]));
+        } catch (Exception e) {
+            throw new RuntimeException("Chyba při načítání kontrolních součtů tříd z SQL.", e);
+        }
+
+        return checksums;
+    }
+
+    /**
+     * Porovnání otisků žáků předchozího a nového stavu.
+     */
+    private static StudentDelta diff(Map<String, SqlStateStore.ClassState> previous,
+                                     Map<String, SqlStateStore.ClassState> current) {
+        Map<String, String> previousPrints = new HashMap<>();
+        Map<String, StudentRecord> previousStudents = new LinkedHashMap<>();
+        for (SqlStateStore.ClassState state : previous.values()) {
+            previousPrints.putAll(state.fingerprints());
+            state.students().forEach(s -> previousStudents.put(s.getInternalId(), s));
+        }
+
+        List<StudentRecord> students = new ArrayList<>();
+        List<StudentRecord> added = new ArrayList<>();
+        List<StudentRecord> changed = new ArrayList<>();
+        Set<String> currentIds = new HashSet<>();
+        for (SqlStateStore.ClassState state : current.values()) {
+            for (StudentRecord student : state.students()) {
+                students.add(student);
+                currentIds.add(student.getInternalId());
+
+                String before = previousPrints.get(student.getInternalId());
+                if (before == null) {
+                    added.add(student);
+                } else if (!before.equals(state.fingerprints().get(student.getInternalId()))) {
+                    changed.add(student);
+                }
+            }
+        }
+
+        List<StudentRecord> removed = new ArrayList<>();
+        previousStudents.forEach((id, student) -> {
+            if (!currentIds.contains(id)) removed.add(student);
+        });
+
+        return new StudentDelta(students, added, changed, removed, false);
+    }
+
+    private static SqlStateStore.ClassState classState(String checksum, List<StudentRecord> students) {
+        HashMap<String, String> fingerprints = new HashMap<>();
+        for (StudentRecord student : students) {
+            fingerprints.put(student.getInternalId(), fingerprint(student));
+        }
+        return new SqlStateStore.ClassState(checksum, new ArrayList<>(students), fingerprints);
+    }
+
+    private static List<String> sorted(Collection<String> classLabels) {
+        List<String> labels = new ArrayList<>(classLabels);
+        labels.sort(CLASS_ORDER);
+        return labels;
+    }
+
+    /**
+     * Otisk žáka – SHA-256 přes hodnoty sloupců {@link BakaQueries#STUDENTS_ACTIVE}
+     * (žák a všichni jeho zákonní zástupci v pořadí dotazu).
+     *
+     * @param student záznam žáka z SQL
+     * @return otisk v hexadecimálním tvaru
+     */
+    static String fingerprint(StudentRecord student) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        update(digest, student.getInternalId());
+        update(digest, student.getClassNumber());
+        update(digest, student.getSurname());
+        update(digest, student.getGivenName());
+        update(digest, student.getClassName());
+        update(digest, student.getEmail());
+        for (GuardianRecord guardian : student.getGuardians()) {
+            update(digest, guardian.getInternalId());
+            update(digest, guardian.getSurname());
+            update(digest, guardian.getGivenName());
+            update(digest, guardian.getPhone());
+            update(digest, guardian.getEmail());
+        }
+        update(digest, student.getGuardianInternalId());
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** hodnota sloupce s oddělovačem (null a prázdná hodnota se liší) */
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+        } else {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 1);
+        }
+    }
+}
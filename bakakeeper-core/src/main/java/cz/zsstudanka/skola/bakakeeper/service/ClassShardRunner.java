@@ -0,0 +1,142 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Zpracování záznamů rozdělených podle tříd (shardů).
+ *
+ * <p>Záznamy jedné třídy se zpracují postupně v pořadí vstupu, různé třídy
+ * běží souběžně – nejvýše {@code parallelism} najednou. Každá třída pracuje
+ * se svou OU ({@code OU=Trida-X,OU=Rocnik-N}) a skupinou {@code Zaci-Trida-*}.</p>
+ *
+ * <p>Výsledek je stejný jako při postupném běhu: události listeneru se při
+ * souběžném běhu odloží a na konci předají v pořadí vstupu, stejně tak výsledky.
+ * S {@code parallelism = 1} (nebo jedinou třídou) se záznamy zpracují přímo
+ * na volajícím vlákně s průběžnými událostmi.</p>
+ *
+ * <p>Po chybě se další záznamy nezpracují (již rozpracované doběhnou), předají
+ * se události záznamů před chybným a vyhodí se chyba prvního chybného záznamu
+ * v pořadí vstupu.</p>
+ *
+ * @author Jan Hladěna
+ */
+class ClassShardRunner {
+
+    private final int parallelism;
+
+    /**
+     * Konstruktor.
+     *
+     * @param parallelism nejvyšší počet souběžně zpracovávaných tříd (minimálně 1)
+     */
+    ClassShardRunner(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Zpracuje všechny záznamy.
+     *
+     * @param items    záznamy v pořadí vstupu
+     * @param shardKey třída záznamu (null = společný shard bez třídy)
+     * @param listener sledování průběhu
+     * @param action   zpracování záznamu – dostane listener záznamu, vrací výsledek (null = bez výsledku)
+     * @param <T>      typ záznamu
+     * @param <R>      typ výsledku
+     * @return výsledky v pořadí vstupu
+     */
+    <T, R> List<R> run(List<T> items, Function<T, String> shardKey, SyncProgressListener listener,
+                       BiFunction<T, SyncProgressListener, R> action) {
+        Map<String, List<Integer>> shards = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            shards.computeIfAbsent(shardKey.apply(items.get(i)), k -> new ArrayList<>()).add(i);
+        }
+
+        if (parallelism == 1 || shards.size() <= 1) {
+            List<R> results = new ArrayList<>();
+            for (T item : items) {
+                R result = action.apply(item, listener);
+                if (result != null) results.add(result);
+            }
+            return results;
+        }
+
+        int count = items.size();
+        List<R> results = new ArrayList<>(Collections.nCopies(count, null));
+        RecordingListener[] events = new RecordingListener[count];
+        RuntimeException[] failures = new RuntimeException[count];
+        Error[] errors = new Error[count];
+        AtomicBoolean failed = new AtomicBoolean(false);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, shards.size()),
+                Thread.ofPlatform().name("sync-shard-", 1).daemon(true).factory())) {
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>(shards.size());
+            for (List<Integer> shard : shards.values()) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (int index : shard) {
+                        // po chybě se – jako při postupném běhu – nepokračuje
+                        if (failed.get()) return;
+
+                        events[index] = new RecordingListener();
+                        try {
+                            results.set(index, action.apply(items.get(index), events[index]));
+                        } catch (RuntimeException e) {
+                            failures[index] = e;
+                            failed.set(true);
+                        } catch (Error e) {
+                            errors[index] = e;
+                            failed.set(true);
+                        }
+                    }
+                }, executor));
+            }
+
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        List<R> merged = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (events[i] != null) events[i].replay(listener);
+            if (errors[i] != null) throw errors[i];
+            if (failures[i] != null) throw failures[i];
+            if (results.get(i) != null) merged.add(results.get(i));
+        }
+        return merged;
+    }
+
+    /**
+     * Odložené události jednoho záznamu.
+     */
+    private static final class RecordingListener implements SyncProgressListener {
+
+        private final List<Consumer<SyncProgressListener>> recorded = new ArrayList<>();
+
+        @Override public void onProgress(String message) {
+            recorded.add(l -> l.onProgress(message));
+        }
+        @Override public void onResult(SyncResult result) {
+            recorded.add(l -> l.onResult(result));
+        }
+        @Override public void onPhaseStart(String phaseName) {
+            recorded.add(l -> l.onPhaseStart(phaseName));
+        }
+        @Override public void onPhaseEnd(String phaseName, int successCount, int errorCount) {
+            recorded.add(l -> l.onPhaseEnd(phaseName, successCount, errorCount));
+        }
+
+        void replay(SyncProgressListener target) {
+            recorded.forEach(event -> event.accept(target));
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package cz.zsstudanka.skola.bakakeeper.service;
 
 import cz.zsstudanka.skola.bakakeeper.model.FacultyRecord;
+import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
 
 import java.util.List;
 
@@ -22,4 +23,19 @@ public interface FacultyService {
     List<SyncResult> syncClassTeachers(List<FacultyRecord> classTeachers,
                                         boolean repair,
                                         SyncProgressListener listener);
+
+    /**
+     * Synchronizuje distribuční skupiny třídních učitelů s předem načtenými
+     * zaměstnaneckými účty.
+     *
+     * @param classTeachers třídní učitelé z evidence
+     * @param facultyLdap zaměstnanecké LDAP účty
+     * @param repair provést opravu (true) nebo jen kontrolu (false)
+     * @param listener sledování průběhu
+     * @return seznam výsledků
+     */
+    List<SyncResult> syncClassTeachers(List<FacultyRecord> classTeachers,
+                                        List<StudentRecord> facultyLdap,
+                                        boolean repair,
+                                        SyncProgressListener listener);
 }
@@ -40,6 +40,19 @@ public class FacultyServiceImpl implements FacultyService {
     public List<SyncResult> syncClassTeachers(List<FacultyRecord> classTeachers,
                                                boolean repair,
                                                SyncProgressListener listener) {
+        // LDAP adresář zaměstnanců – pro vyhledání DN učitele.
+        // Používáme findAllStudents() – vrací StudentRecord, ale protože potřebujeme
+        // jen email, UPN a DN (zděděno z Person), funguje to i pro zaměstnanecké účty.
+        List<StudentRecord> facultyLdap = ldapRepo.findAllStudents(
+                config.getLdapBaseFaculty(), null);
+        return syncClassTeachers(classTeachers, facultyLdap, repair, listener);
+    }
+
+    @Override
+    public List<SyncResult> syncClassTeachers(List<FacultyRecord> classTeachers,
+                                               List<StudentRecord> facultyLdap,
+                                               boolean repair,
+                                               SyncProgressListener listener) {
         listener.onPhaseStart("Synchronizace třídních učitelů");
         List<SyncResult> results = new ArrayList<>();
 
@@ -48,12 +61,6 @@ public class FacultyServiceImpl implements FacultyService {
                 .filter(f -> f.getClassLabel() != null)
                 .collect(Collectors.toMap(FacultyRecord::getClassLabel, f -> f, (a, b) -> a));
 
-        // LDAP adresář zaměstnanců – pro vyhledání DN učitele.
-        // Používáme findAllStudents() – vrací StudentRecord, ale protože potřebujeme
-        // jen email, UPN a DN (zděděno z Person), funguje to i pro zaměstnanecké účty.
-        List<StudentRecord> facultyLdap = ldapRepo.findAllStudents(
-                config.getLdapBaseFaculty(), null);
-
         // indexy pro vyhledávání
         FacultyLdapIndex index = new FacultyLdapIndex(facultyLdap);
 
@@ -70,9 +77,7 @@ public class FacultyServiceImpl implements FacultyService {
                 if (teacher == null) {
                     // žádný třídní učitel – DL musí být prázdná
                     if (!currentMembers.isEmpty() && repair) {
-                        for (String member : currentMembers) {
-                            ldapRepo.removeFromGroup(member, dlDn);
-                        }
+                        ldapRepo.updateGroupMembers(dlDn, List.of(), currentMembers);
                         results.add(SyncResult.updated(classLabel, "DL vyprázdněna (žádný TU)."));
                     }
                     continue;
@@ -98,27 +103,16 @@ public class FacultyServiceImpl implements FacultyService {
                             "INTERN_KOD → extensionAttribute1: " + sqlInternKod));
                 }
 
-                // porovnat a opravit DL
-                boolean needsUpdate = false;
-
-                // odebrat nepatřící
-                for (String member : currentMembers) {
-                    if (!member.equalsIgnoreCase(expectedDn)) {
-                        if (repair) {
-                            ldapRepo.removeFromGroup(member, dlDn);
-                        }
-                        needsUpdate = true;
-                    }
-                }
-
-                // přidat chybějícího
-                boolean teacherPresent = currentMembers.stream()
-                        .anyMatch(m -> m.equalsIgnoreCase(expectedDn));
-                if (!teacherPresent) {
-                    if (repair) {
-                        ldapRepo.addToGroup(expectedDn, dlDn);
+                // porovnat a opravit DL – odebrat nepatřící, přidat chybějícího
+                GroupMembershipDiff diff = GroupMembershipDiff.of(currentMembers, List.of(expectedDn));
+                boolean needsUpdate = !diff.isEmpty();
+                if (repair && needsUpdate) {
+                    List<String> failed = ldapRepo.updateGroupMembers(dlDn, diff.toAdd(), diff.toRemove());
+                    if (!failed.isEmpty()) {
+                        results.add(SyncResult.error(classLabel,
+                                "DL se nepodařilo plně aktualizovat: " + String.join("; ", failed)));
+                        continue;
                     }
-                    needsUpdate = true;
                 }
 
                 if (needsUpdate) {
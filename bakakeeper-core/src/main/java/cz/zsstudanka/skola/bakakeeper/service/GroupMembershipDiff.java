@@ -0,0 +1,65 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import java.util.*;
+
+/**
+ * Rozdíl mezi aktuálním a požadovaným členstvím skupiny.
+ * DN se porovnávají bez ohledu na velikost písmen.
+ *
+ * @param toAdd    DN členů k přidání (v pořadí požadovaného seznamu)
+ * @param toRemove DN členů k odebrání (v pořadí aktuálního seznamu)
+ *
+ * @author Jan Hladěna
+ */
+public record GroupMembershipDiff(
+        List<String> toAdd,
+        List<String> toRemove
+) {
+
+    /**
+     * Výpočet rozdílu členství.
+     *
+     * @param current aktuální přímí členové skupiny
+     * @param desired požadovaní členové skupiny
+     * @return členové k přidání a k odebrání
+     */
+    public static GroupMembershipDiff of(Collection<String> current, Collection<String> desired) {
+        Set<String> currentLower = lowerCase(current);
+        Set<String> desiredLower = lowerCase(desired);
+
+        List<String> toAdd = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String dn : desired) {
+            String lower = dn.toLowerCase();
+            if (!currentLower.contains(lower) && seen.add(lower)) {
+                toAdd.add(dn);
+            }
+        }
+
+        List<String> toRemove = new ArrayList<>();
+        for (String dn : current) {
+            if (!desiredLower.contains(dn.toLowerCase())) {
+                toRemove.add(dn);
+            }
+        }
+
+        return new GroupMembershipDiff(toAdd, toRemove);
+    }
+
+    /**
+     * Členství odpovídá požadovanému stavu.
+     *
+     * @return žádná změna
+     */
+    public boolean isEmpty() {
+        return toAdd.isEmpty() && toRemove.isEmpty();
+    }
+
+    private static Set<String> lowerCase(Collection<String> dns) {
+        Set<String> result = new HashSet<>(dns.size() * 2);
+        for (String dn : dns) {
+            result.add(dn.toLowerCase());
+        }
+        return result;
+    }
+}
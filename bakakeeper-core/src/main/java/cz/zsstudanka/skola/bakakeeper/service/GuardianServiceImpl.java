@@ -1,7 +1,9 @@
 package cz.zsstudanka.skola.bakakeeper.service;
 
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
 import cz.zsstudanka.skola.bakakeeper.config.AppConfig;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
 import cz.zsstudanka.skola.bakakeeper.model.GuardianRecord;
 import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
 import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
@@ -333,18 +335,15 @@ public class GuardianServiceImpl implements GuardianService {
     private void updateDistributionList(String dlDn, List<String> expectedMembers) {
         List<String> currentMembers = ldapRepo.listDirectMembers(dlDn);
 
-        // přidat chybějící
-        for (String memberDn : expectedMembers) {
-            if (!currentMembers.contains(memberDn)) {
-                ldapRepo.addToGroup(memberDn, dlDn);
-            }
+        // přidat chybějící a odebrat nadbytečné – hromadně
+        GroupMembershipDiff diff = GroupMembershipDiff.of(currentMembers, expectedMembers);
+        if (diff.isEmpty()) {
+            return;
         }
 
-        // odebrat nadbytečné
-        for (String memberDn : currentMembers) {
-            if (!expectedMembers.contains(memberDn)) {
-                ldapRepo.removeFromGroup(memberDn, dlDn);
-            }
+        for (String memberDn : ldapRepo.updateGroupMembers(dlDn, diff.toAdd(), diff.toRemove())) {
+            ReportManager.log(EBakaLogType.LOG_ERR,
+                    "Nebylo možné upravit členství [" + memberDn + "] v distribučním seznamu [" + dlDn + "].");
         }
     }
 }
@@ -70,12 +70,11 @@ public class IdentifyServiceImpl implements IdentifyService {
         List<IdentifyResult.ClassInfo> classInfos = new ArrayList<>();
         int totalCount = 0;
 
-        for (String cls : selector.getClasses()) {
-            int year = Character.getNumericValue(cls.charAt(0));
-            String letter = String.valueOf(cls.charAt(2));
+        // žáci všech vybraných tříd jedním dotazem
+        Map<String, List<StudentRecord>> studentsByClass = studentRepo.findActiveByClasses(selector.getClasses());
 
-            List<StudentRecord> students = studentRepo.findActive(year, letter);
-            int count = students.size();
+        for (String cls : selector.getClasses()) {
+            int count = studentsByClass.getOrDefault(cls, List.of()).size();
 
             // třída bez žáků – přeskočit
             if (count == 0) {
@@ -0,0 +1,196 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Plánovač fází synchronizace podle grafu závislostí.
+ *
+ * <p>Každá fáze se spustí, jakmile skončí všechny dříve deklarované fáze,
+ * na kterých závisí ({@link SyncPhase#dependsOn(SyncPhase)}). Nezávislé fáze
+ * běží souběžně, nejvýše {@code maxParallel} najednou. S {@code maxParallel = 1}
+ * běží fáze postupně v pořadí deklarace.</p>
+ *
+ * <p>Listener dostává události fází v pořadí deklarace: první nedokončená fáze
+ * posílá události přímo, události pozdějších fází se odloží a předají, jakmile
+ * na ně přijde řada. Volání listeneru se nikdy nepřekrývají. Výsledky fází
+ * se do celkového seznamu přidávají ve stejném pořadí.</p>
+ *
+ * <p>Po chybě fáze se další fáze nespouštějí (již běžící doběhnou) a plánovač
+ * vyhodí chybu první selhané fáze v pořadí deklarace.</p>
+ *
+ * @author Jan Hladěna
+ */
+class PhaseScheduler {
+
+    private final int maxParallel;
+
+    /**
+     * Konstruktor.
+     *
+     * @param maxParallel nejvyšší počet souběžně běžících fází (minimálně 1)
+     */
+    PhaseScheduler(int maxParallel) {
+        this.maxParallel = Math.max(1, maxParallel);
+    }
+
+    /**
+     * Provede všechny fáze.
+     *
+     * @param phases   fáze v pořadí deklarace
+     * @param results  cílový seznam výsledků (v pořadí fází)
+     * @param listener sledování průběhu
+     * @return doby běhu dokončených fází v pořadí deklarace
+     */
+    List<PhaseTiming> run(List<SyncPhase> phases, List<SyncResult> results, SyncProgressListener listener) {
+        int count = phases.size();
+        OrderedEvents events = new OrderedEvents(count, results, listener);
+        PhaseTiming[] timings = new PhaseTiming[count];
+        RuntimeException[] failures = new RuntimeException[count];
+        Error[] errors = new Error[count];
+        AtomicBoolean failed = new AtomicBoolean(false);
+        long origin = System.nanoTime();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(count);
+        try (ExecutorService executor = Executors.newFixedThreadPool(maxParallel,
+                Thread.ofPlatform().name("sync-phase-", 1).daemon(true).factory())) {
+
+            for (int i = 0; i < count; i++) {
+                SyncPhase phase = phases.get(i);
+                List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+                for (int j = 0; j < i; j++) {
+                    if (phase.dependsOn(phases.get(j))) {
+                        dependencies.add(futures.get(j));
+                    }
+                }
+
+                int index = i;
+                futures.add(CompletableFuture.allOf(dependencies.toArray(CompletableFuture[]::new))
+                        .thenRunAsync(() -> {
+                            try {
+                                // po chybě se – jako při postupném běhu – nepokračuje
+                                if (failed.get()) return;
+
+                                long start = System.nanoTime();
+                                List<SyncResult> phaseResults = phase.action().apply(events.listener(index));
+                                timings[index] = new PhaseTiming(phase.name(), millis(start - origin),
+                                        millis(System.nanoTime() - start), phaseResults.size());
+                                events.results(index, phaseResults, phase.notifyResults());
+                            } catch (RuntimeException e) {
+                                failures[index] = e;
+                                failed.set(true);
+                            } catch (Error e) {
+                                errors[index] = e;
+                                failed.set(true);
+                            } finally {
+                                events.finish(index);
+                            }
+                        }, executor));
+            }
+
+            // závislé fáze se do exekutoru předají až po dokončení předchůdců –
+            // exekutor se smí uzavřít teprve po poslední fázi
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (errors[i] != null) throw errors[i];
+            if (failures[i] != null) throw failures[i];
+        }
+
+        List<PhaseTiming> result = new ArrayList<>(count);
+        for (PhaseTiming timing : timings) {
+            if (timing != null) result.add(timing);
+        }
+        return result;
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    /**
+     * Předávání událostí fází listeneru v pořadí deklarace.
+     */
+    private static final class OrderedEvents {
+
+        private final SyncProgressListener target;
+        private final List<SyncResult> results;
+
+        /** odložené události fází, které ještě nejsou na řadě */
+        private final List<List<Consumer<SyncProgressListener>>> pending;
+        private final boolean[] finished;
+
+        /** první nedokončená fáze – její události jdou přímo listeneru */
+        private int head = 0;
+
+        OrderedEvents(int count, List<SyncResult> results, SyncProgressListener target) {
+            this.target = target;
+            this.results = results;
+            this.pending = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                pending.add(new ArrayList<>());
+            }
+            this.finished = new boolean[count];
+        }
+
+        /**
+         * Listener jedné fáze.
+         */
+        SyncProgressListener listener(int index) {
+            return new SyncProgressListener() {
+                @Override public void onProgress(String message) {
+                    emit(index, l -> l.onProgress(message));
+                }
+                @Override public void onResult(SyncResult result) {
+                    emit(index, l -> l.onResult(result));
+                }
+                @Override public void onPhaseStart(String phaseName) {
+                    emit(index, l -> l.onPhaseStart(phaseName));
+                }
+                @Override public void onPhaseEnd(String phaseName, int successCount, int errorCount) {
+                    emit(index, l -> l.onPhaseEnd(phaseName, successCount, errorCount));
+                }
+            };
+        }
+
+        /**
+         * Výsledky fáze – přidají se do celkového seznamu a případně přepošlou listeneru.
+         */
+        void results(int index, List<SyncResult> phaseResults, boolean notify) {
+            for (SyncResult result : phaseResults) {
+                emit(index, l -> {
+                    results.add(result);
+                    if (notify) l.onResult(result);
+                });
+            }
+        }
+
+        synchronized void emit(int index, Consumer<SyncProgressListener> event) {
+            if (index == head) {
+                event.accept(target);
+            } else {
+                pending.get(index).add(event);
+            }
+        }
+
+        /**
+         * Fáze skončila (i chybou nebo bez spuštění) – na řadu přijdou další fáze.
+         */
+        synchronized void finish(int index) {
+            finished[index] = true;
+            while (head < finished.length && finished[head]) {
+                head++;
+                if (head < finished.length) {
+                    pending.get(head).forEach(event -> event.accept(target));
+                    pending.get(head).clear();
+                }
+            }
+        }
+    }
+}
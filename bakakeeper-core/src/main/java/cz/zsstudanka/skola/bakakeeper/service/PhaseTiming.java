@@ -0,0 +1,29 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+/**
+ * Doba běhu jedné fáze synchronizace.
+ *
+ * @param phase     název fáze
+ * @param startMs   začátek fáze od spuštění plánovače v ms
+ * @param durationMs doba běhu fáze v ms
+ * @param results   počet výsledků fáze
+ *
+ * @author Jan Hladěna
+ */
+public record PhaseTiming(
+        String phase,
+        long startMs,
+        long durationMs,
+        int results
+) {
+
+    /** Konec fáze od spuštění plánovače v ms. */
+    public long endMs() {
+        return startMs + durationMs;
+    }
+
+    @Override
+    public String toString() {
+        return "Fáze [" + phase + "]: start " + startMs + " ms, trvání " + durationMs + " ms, výsledků " + results;
+    }
+}
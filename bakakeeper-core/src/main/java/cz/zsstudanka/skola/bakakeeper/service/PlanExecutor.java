@@ -0,0 +1,272 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+import cz.zsstudanka.skola.bakakeeper.repository.EmailWriteBuffer;
+import cz.zsstudanka.skola.bakakeeper.repository.LDAPUserRepository;
+import cz.zsstudanka.skola.bakakeeper.repository.StudentRepository;
+import cz.zsstudanka.skola.bakakeeper.utils.BakaUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Provedení plánu synchronizace ({@link PlannedChange}) – bez porovnávání, jen zápisy.
+ *
+ * <p>Změny se provádějí po třídách souběžně ({@link ClassShardRunner}), operace
+ * jedné změny postupně. Přejmenování a přesun mohou skončit na jiném DN, než
+ * plán předpokládal (řešení kolizí) – další operace téže změny pak použijí
+ * skutečné DN. E-maily se do SQL evidence zapíší jednou dávkou na konci.</p>
+ *
+ * <p>Souběžné třídy sdílejí snapshot adresáře (synchronizovaný, vydává kopie),
+ * společné skupiny (přidání člena je jediná atomická operace serveru), deník
+ * a dávku e-mailů (synchronizované); obsazování jmen řadí {@link #namingLock}.</p>
+ *
+ * <p>Nepodařená operace nepřeruší zbytek změny; výsledkem změny je pak chyba
+ * se seznamem nepodařených operací.</p>
+ *
+ * <p>Provedené operace se zapisují do deníku ({@link SyncJournal.PhaseLog}).
+ * Při obnovení přerušeného běhu se zaznamenané operace přeskočí a ostatní se
+ * před provedením ověří – přejmenování, přesun a přidání do skupiny mohly
+ * proběhnout bez záznamu.</p>
+ *
+ * @author Jan Hladěna
+ */
+class PlanExecutor {
+
+    private final LDAPUserRepository ldapRepo;
+    private final StudentRepository sqlRepo;
+    private final int parallelism;
+
+    /**
+     * Operace, které obsazují jména v adresáři (DN v cílové OU). Souběžně
+     * zpracované třídy by jinak mohly zvolit stejné volné jméno.
+     */
+    private final Object namingLock = new Object();
+
+    /**
+     * Konstruktor.
+     *
+     * @param ldapRepo    repozitář LDAP účtů
+     * @param sqlRepo     repozitář žáků v evidenci
+     * @param parallelism nejvyšší počet souběžně zpracovávaných tříd
+     */
+    PlanExecutor(LDAPUserRepository ldapRepo, StudentRepository sqlRepo, int parallelism) {
+        this.ldapRepo = ldapRepo;
+        this.sqlRepo = sqlRepo;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Provede změny.
+     *
+     * @param changes  změny v pořadí plánu
+     * @param log      deník provádění (null = bez deníku)
+     * @param listener sledování průběhu
+     * @return výsledky v pořadí plánu; při obnovení jen změn s neprovedenými operacemi
+     */
+    List<SyncResult> apply(List<PlannedChange> changes, SyncJournal.PhaseLog log, SyncProgressListener listener) {
+        EmailWriteBuffer emails = new EmailWriteBuffer(sqlRepo);
+        // e-maily se zaznamenají po zápisu dávky: interní kód → pozice operací
+        Map<String, List<int[]>> emailPositions = new HashMap<>();
+
+        List<Integer> indices = IntStream.range(0, changes.size()).boxed().toList();
+        List<SyncResult> results = new ArrayList<>(new ClassShardRunner(parallelism)
+                .run(indices, i -> changes.get(i).shard(), listener,
+                        (i, l) -> applyChange(i, changes.get(i), log, emails, emailPositions, l)));
+        results.addAll(flushEmails(emails, changes, log, emailPositions));
+        return results;
+    }
+
+    /**
+     * Provede operace jedné změny.
+     */
+    private SyncResult applyChange(int index, PlannedChange change, SyncJournal.PhaseLog log,
+                                   EmailWriteBuffer emails, Map<String, List<int[]>> emailPositions,
+                                   SyncProgressListener listener) {
+        boolean resumed = (log != null && log.isResumed());
+        if (!change.hasOperations()) {
+            return resumed ? null : change.result();
+        }
+
+        // plánované DN → skutečné DN po přejmenování/přesunu
+        Map<String, String> actualDn = new HashMap<>();
+        List<String> failed = new ArrayList<>();
+        int remaining = 0;
+
+        for (int o = 0; o < change.operations().size(); o++) {
+            PlannedOperation operation = change.operations().get(o);
+
+            if (resumed && log.isApplied(index, o)) {
+                remapApplied(operation, log.appliedDn(index, o), actualDn);
+                continue;
+            }
+            remaining++;
+            if (resumed && verifyApplied(operation, actualDn)) {
+                log.applied(index, o, appliedDn(operation, actualDn));
+                continue;
+            }
+
+            boolean ok = switch (operation) {
+                case PlannedOperation.Modify modify ->
+                        ldapRepo.modifyAttributes(modify.toBatch(actualDn.getOrDefault(modify.dn(), modify.dn())));
+
+                case PlannedOperation.Rename rename -> {
+                    String dn = actualDn.getOrDefault(rename.dn(), rename.dn());
+                    String newDn;
+                    synchronized (namingLock) {
+                        newDn = ldapRepo.renameObject(dn, rename.newCn());
+                    }
+                    actualDn.put(rename.plannedDn(), (newDn != null) ? newDn : dn);
+                    if (newDn != null) {
+                        listener.onProgress("Přejmenování CN: " + change.entityId()
+                                + " " + BakaUtils.parseCN(dn) + " → " + BakaUtils.parseCN(newDn));
+                    }
+                    yield newDn != null;
+                }
+
+                case PlannedOperation.Move move -> {
+                    String dn = actualDn.getOrDefault(move.dn(), move.dn());
+                    boolean moved;
+                    synchronized (namingLock) {
+                        moved = ldapRepo.moveObject(dn, move.targetOu(), move.createOu());
+                    }
+                    actualDn.put(move.plannedDn(), moved ? "CN=" + BakaUtils.parseCN(dn) + "," + move.targetOu() : dn);
+                    yield moved;
+                }
+
+                case PlannedOperation.AddToGroup add ->
+                        ldapRepo.addToGroup(actualDn.getOrDefault(add.dn(), add.dn()), add.groupDn());
+
+                case PlannedOperation.RemoveFromAllGroups remove ->
+                        ldapRepo.removeFromAllGroups(actualDn.getOrDefault(remove.dn(), remove.dn()));
+
+                case PlannedOperation.UpdateEmail email -> {
+                    emails.add(email.internalId(), email.email());
+                    if (log != null) {
+                        synchronized (emailPositions) {
+                            emailPositions.computeIfAbsent(email.internalId(), k -> new ArrayList<>())
+                                    .add(new int[]{index, o});
+                        }
+                    }
+                    yield true;
+                }
+            };
+
+            if (!ok) {
+                ReportManager.log(EBakaLogType.LOG_ERR, "Operace plánu se nezdařila ("
+                        + change.entityId() + "): " + operation.describe());
+                failed.add(operation.describe());
+            } else if (log != null && !(operation instanceof PlannedOperation.UpdateEmail)) {
+                log.applied(index, o, appliedDn(operation, actualDn));
+            }
+        }
+
+        if (resumed && remaining == 0) {
+            return null;
+        }
+        if (failed.isEmpty()) {
+            return change.result();
+        }
+        return SyncResult.error(change.entityId(), change.description()
+                + " – nezdařilo se: " + String.join("; ", failed));
+    }
+
+    /**
+     * Skutečné DN zaznamenané operace přejmenování/přesunu pro další operace změny.
+     */
+    private static void remapApplied(PlannedOperation operation, String dn, Map<String, String> actualDn) {
+        if (dn == null) return;
+        switch (operation) {
+            case PlannedOperation.Rename rename -> actualDn.put(rename.plannedDn(), dn);
+            case PlannedOperation.Move move -> actualDn.put(move.plannedDn(), dn);
+            default -> { }
+        }
+    }
+
+    /**
+     * Skutečné DN po provedené operaci přejmenování/přesunu (jinak null) – do deníku.
+     */
+    private static String appliedDn(PlannedOperation operation, Map<String, String> actualDn) {
+        return switch (operation) {
+            case PlannedOperation.Rename rename -> actualDn.get(rename.plannedDn());
+            case PlannedOperation.Move move -> actualDn.get(move.plannedDn());
+            default -> null;
+        };
+    }
+
+    /**
+     * Ověří, zda operace bez záznamu v deníku již proběhla. Ostatní operace
+     * (atributy, odebrání ze skupin, e-mail) lze bezpečně zopakovat.
+     */
+    private boolean verifyApplied(PlannedOperation operation, Map<String, String> actualDn) {
+        return switch (operation) {
+            case PlannedOperation.Rename rename -> movedTo(
+                    actualDn.getOrDefault(rename.dn(), rename.dn()), rename.plannedDn(), actualDn);
+            case PlannedOperation.Move move -> movedTo(
+                    actualDn.getOrDefault(move.dn(), move.dn()), move.plannedDn(), actualDn);
+            case PlannedOperation.AddToGroup add -> ldapRepo
+                    .listMembership(actualDn.getOrDefault(add.dn(), add.dn())).stream()
+                    .anyMatch(group -> group.equalsIgnoreCase(add.groupDn()));
+            default -> false;
+        };
+    }
+
+    /**
+     * Objekt už není na původním DN a je na plánovaném.
+     */
+    private boolean movedTo(String dn, String plannedDn, Map<String, String> actualDn) {
+        if (ldapRepo.checkDN(dn) || !ldapRepo.checkDN(plannedDn)) {
+            return false;
+        }
+        actualDn.put(plannedDn, plannedDn);
+        return true;
+    }
+
+    /**
+     * Zápis e-mailů do SQL evidence jednou dávkou.
+     *
+     * <p>Třídy zpracované souběžně přidávají e-maily v proměnlivém pořadí,
+     * chyby se proto vracejí v pořadí plánu.</p>
+     */
+    private List<SyncResult> flushEmails(EmailWriteBuffer emails, List<PlannedChange> changes,
+                                         SyncJournal.PhaseLog log, Map<String, List<int[]>> emailPositions) {
+        Map<String, String> failed = emails.flush();
+        if (log != null) {
+            emailPositions.forEach((internalId, positions) -> {
+                if (!failed.containsKey(internalId)) {
+                    positions.forEach(p -> log.applied(p[0], p[1], null));
+                }
+            });
+        }
+        if (failed.isEmpty()) {
+            return List.of();
+        }
+
+        List<SyncResult> errors = new ArrayList<>();
+        Set<String> reported = new HashSet<>();
+        for (PlannedChange change : changes) {
+            String internalId = change.entityId();
+            if (failed.containsKey(internalId) && reported.add(internalId)) {
+                errors.add(emailError(internalId, failed.get(internalId)));
+            }
+        }
+        failed.forEach((internalId, reason) -> {
+            if (!reported.contains(internalId)) {
+                errors.add(emailError(internalId, reason));
+            }
+        });
+        return errors;
+    }
+
+    private static SyncResult emailError(String internalId, String reason) {
+        ReportManager.log(EBakaLogType.LOG_ERR,
+                "E-mail žáka " + internalId + " nebyl zapsán do evidence: " + reason);
+        return SyncResult.error(internalId, "E-mail nebyl zapsán do evidence: " + reason);
+    }
+}
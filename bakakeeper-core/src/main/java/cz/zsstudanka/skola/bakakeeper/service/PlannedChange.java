@@ -0,0 +1,60 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Naplánované změny jednoho objektu (žáka) – výsledek porovnání evidence
+ * s adresářem, zatím bez zápisu.
+ *
+ * @param phase       fáze synchronizace, ve které změna vznikla
+ * @param entityId    interní kód žáka
+ * @param shard       třída žáka – změny různých tříd lze provést souběžně (null = bez třídy)
+ * @param type        výsledek po úspěšném provedení
+ * @param description popis změny
+ * @param operations  zápisové operace v pořadí provedení (prázdné = beze změny)
+ *
+ * @author Jan Hladěna
+ */
+public record PlannedChange(
+        String phase,
+        String entityId,
+        String shard,
+        SyncResult.Type type,
+        String description,
+        List<PlannedOperation> operations
+) implements Serializable {
+
+    public PlannedChange {
+        operations = List.copyOf(operations);
+    }
+
+    /**
+     * Objekt beze změny.
+     *
+     * @param phase    fáze synchronizace
+     * @param entityId interní kód žáka
+     * @param shard    třída žáka
+     * @return změna bez operací
+     */
+    public static PlannedChange none(String phase, String entityId, String shard) {
+        return new PlannedChange(phase, entityId, shard, SyncResult.Type.NO_CHANGE, null, List.of());
+    }
+
+    /** Změna obsahuje alespoň jednu operaci. */
+    public boolean hasOperations() {
+        return !operations.isEmpty();
+    }
+
+    /** Výsledek po úspěšném provedení všech operací. */
+    public SyncResult result() {
+        return new SyncResult(type, entityId, description);
+    }
+
+    /** Výsledek suchého běhu – změna se pouze ohlásí. */
+    public SyncResult dryRunResult() {
+        return hasOperations()
+                ? SyncResult.skipped(entityId, "Suchý běh – " + description)
+                : result();
+    }
+}
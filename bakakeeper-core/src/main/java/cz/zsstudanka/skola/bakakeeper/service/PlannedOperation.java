@@ -0,0 +1,159 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapModificationBatch;
+import cz.zsstudanka.skola.bakakeeper.utils.BakaUtils;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Jedna naplánovaná zápisová operace plánu synchronizace ({@link SyncPlan}).
+ *
+ * <p>DN v operacích odpovídají stavu adresáře po provedení předchozích operací
+ * téže změny – přejmenování a přesun objektu změní DN pro všechny další
+ * operace. Skutečné DN (po řešení kolizí) dosadí při provedení
+ * {@link PlanExecutor}.</p>
+ *
+ * @author Jan Hladěna
+ */
+public sealed interface PlannedOperation extends Serializable {
+
+    /**
+     * Popis operace pro výpis plánu.
+     *
+     * @return čitelný popis
+     */
+    String describe();
+
+    /**
+     * Změna atributů objektu jednou operací.
+     *
+     * @param dn            DN objektu
+     * @param modifications změny v pořadí provedení
+     */
+    record Modify(String dn, List<LdapModificationBatch.Modification> modifications) implements PlannedOperation {
+
+        public Modify {
+            modifications = List.copyOf(modifications);
+        }
+
+        /**
+         * Změny ze sestavené dávky.
+         *
+         * @param batch dávka změn
+         */
+        public Modify(LdapModificationBatch batch) {
+            this(batch.getDn(), batch.getModifications());
+        }
+
+        /**
+         * Dávka změn k odeslání.
+         *
+         * @param targetDn skutečné DN objektu
+         * @return dávka změn
+         */
+        public LdapModificationBatch toBatch(String targetDn) {
+            LdapModificationBatch batch = new LdapModificationBatch(targetDn);
+            for (LdapModificationBatch.Modification m : modifications) {
+                switch (m.operation()) {
+                    case REPLACE -> batch.replace(m.attribute(), m.value());
+                    case ADD -> batch.add(m.attribute(), m.value());
+                    case REMOVE -> batch.remove(m.attribute(), m.value());
+                }
+            }
+            return batch;
+        }
+
+        @Override
+        public String describe() {
+            return "Úprava [" + dn + "]: " + modifications.stream()
+                    .map(m -> switch (m.operation()) {
+                        case REPLACE -> m.attribute().attribute() + " = " + m.value();
+                        case ADD -> m.attribute().attribute() + " + " + m.value();
+                        case REMOVE -> m.attribute().attribute() + " - " + m.value();
+                    })
+                    .collect(Collectors.joining(", "));
+        }
+    }
+
+    /**
+     * Přejmenování objektu (změna CN ve stejné OU).
+     *
+     * @param dn    DN objektu
+     * @param newCn nové CN
+     */
+    record Rename(String dn, String newCn) implements PlannedOperation {
+
+        /** DN po přejmenování (bez řešení kolizí). */
+        public String plannedDn() {
+            return "CN=" + newCn + "," + BakaUtils.parseBase(dn);
+        }
+
+        @Override
+        public String describe() {
+            return "Přejmenování [" + dn + "] → CN=" + newCn;
+        }
+    }
+
+    /**
+     * Přesun objektu do jiné OU.
+     *
+     * @param dn       DN objektu
+     * @param targetOu cílová OU
+     * @param createOu vytvořit cílovou OU, pokud neexistuje
+     */
+    record Move(String dn, String targetOu, boolean createOu) implements PlannedOperation {
+
+        /** DN po přesunu. */
+        public String plannedDn() {
+            return "CN=" + BakaUtils.parseCN(dn) + "," + targetOu;
+        }
+
+        @Override
+        public String describe() {
+            return "Přesun [" + dn + "] → " + targetOu + (createOu ? " (vytvořit OU)" : "");
+        }
+    }
+
+    /**
+     * Přidání objektu do skupiny.
+     *
+     * @param dn      DN objektu
+     * @param groupDn DN skupiny
+     */
+    record AddToGroup(String dn, String groupDn) implements PlannedOperation {
+
+        @Override
+        public String describe() {
+            return "Přidání [" + dn + "] do skupiny [" + groupDn + "]";
+        }
+    }
+
+    /**
+     * Odebrání objektu ze všech skupin.
+     *
+     * @param dn DN objektu
+     */
+    record RemoveFromAllGroups(String dn) implements PlannedOperation {
+
+        @Override
+        public String describe() {
+            return "Odebrání [" + dn + "] ze všech skupin";
+        }
+    }
+
+    /**
+     * Zápis e-mailu žáka do SQL evidence (dávkou na konci provedení plánu).
+     *
+     * @param internalId interní kód žáka
+     * @param email      nová e-mailová adresa
+     */
+    record UpdateEmail(String internalId, String email) implements PlannedOperation {
+
+        @Override
+        public String describe() {
+            return "E-mail v evidenci [" + internalId + "] = " + email;
+        }
+    }
+}
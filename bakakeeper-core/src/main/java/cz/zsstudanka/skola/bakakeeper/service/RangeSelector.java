@@ -150,23 +150,22 @@ public class RangeSelector {
         // množina interních ID pro deduplikaci
         Set<String> seenIds = new HashSet<>();
 
-        // načtení žáků pro celé třídy
-        for (String cls : classes) {
-            // třída musí existovat v evidenci (má třídního učitele)
-            if (!teachersByClass.containsKey(cls)) {
-                continue;
-            }
-
-            // parsování ročníku a písmena z "5.A"
-            int year = Character.getNumericValue(cls.charAt(0));
-            String letter = String.valueOf(cls.charAt(2));
+        // třída musí existovat v evidenci (má třídního učitele)
+        List<String> existingClasses = classes.stream()
+                .filter(teachersByClass::containsKey)
+                .toList();
+
+        // načtení žáků pro celé třídy – všechny třídy jedním dotazem
+        if (!existingClasses.isEmpty()) {
+            Map<String, List<StudentRecord>> loaded = studentRepo.findActiveByClasses(existingClasses);
+            for (String cls : existingClasses) {
+                List<StudentRecord> classStudents = loaded.getOrDefault(cls, List.of());
+                for (StudentRecord s : classStudents) {
+                    seenIds.add(s.getInternalId());
+                }
 
-            List<StudentRecord> classStudents = studentRepo.findActive(year, letter);
-            for (StudentRecord s : classStudents) {
-                seenIds.add(s.getInternalId());
+                studentsByClass.put(cls, new ArrayList<>(classStudents));
             }
-
-            studentsByClass.put(cls, new ArrayList<>(classStudents));
         }
 
         // vyhledání individuálních žáků
@@ -2,6 +2,7 @@ package cz.zsstudanka.skola.bakakeeper.service;
 
 import cz.zsstudanka.skola.bakakeeper.config.SyncRule;
 import cz.zsstudanka.skola.bakakeeper.config.SyncRuleAttribute;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapModificationBatch;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
 import cz.zsstudanka.skola.bakakeeper.model.SyncScope;
@@ -176,6 +177,9 @@ public class RuleServiceImpl implements RuleService {
 
             Map<String, String> userDesired = desiredAttrs.getOrDefault(dn, Map.of());
 
+            // všechny změny uživatele se odešlou jednou operací
+            LdapModificationBatch batch = new LdapModificationBatch(dn);
+
             // Průchod A – nastavit požadované hodnoty z pravidel
             for (var entry : userDesired.entrySet()) {
                 String attrName = entry.getKey();
@@ -193,18 +197,14 @@ public class RuleServiceImpl implements RuleService {
                 if (CLEAR.equals(desiredValue)) {
                     // explicitní smazání atributu hodnotou CLEAR
                     if (currentValue != null && !currentValue.isEmpty()) {
-                        if (repair) {
-                            ldapRepo.updateAttribute(dn, resolved, "");
-                        }
+                        batch.replace(resolved, "");
                         results.add(SyncResult.updated(id,
                                 "Pravidlo CLEAR: " + attrName
                                         + " vyčištěn (bylo: " + currentValue + ")"));
                     }
                 } else if (!desiredValue.equals(currentValue)) {
                     // nastavit novou hodnotu
-                    if (repair) {
-                        ldapRepo.updateAttribute(dn, resolved, desiredValue);
-                    }
+                    batch.replace(resolved, desiredValue);
                     results.add(SyncResult.updated(id,
                             "Pravidlo: " + attrName + " = " + desiredValue
                                     + (currentValue != null
@@ -235,14 +235,16 @@ public class RuleServiceImpl implements RuleService {
                     EBakaLDAPAttributes resolved = resolveAttribute(attrName);
                     if (resolved == null) continue;
 
-                    if (repair) {
-                        ldapRepo.updateAttribute(dn, resolved, "");
-                    }
+                    batch.replace(resolved, "");
                     results.add(SyncResult.updated(id,
                             "Rekonciliace: " + attrName
                                     + " vyčištěn (bylo: " + currentValue + ")"));
                 }
             }
+
+            if (repair && !batch.isEmpty()) {
+                ldapRepo.modifyAttributes(batch);
+            }
         }
 
         return results;
@@ -265,30 +267,24 @@ public class RuleServiceImpl implements RuleService {
             // načíst aktuální členy (i v suchém běhu – pro reportování)
             List<String> currentMembers = ldapRepo.listDirectMembers(groupDn);
 
-            // přidat chybějící členy
-            for (String memberDn : desired) {
-                boolean present = currentMembers.stream()
-                        .anyMatch(m -> m.equalsIgnoreCase(memberDn));
-                if (!present) {
-                    if (repair) {
-                        ldapRepo.addToGroup(memberDn, groupDn);
-                    }
-                    results.add(SyncResult.updated(memberDn,
-                            "Přidán do skupiny: " + shortGroupName(groupDn)));
-                }
+            // chybějící a přebytečné členy – jedna hromadná změna skupiny
+            GroupMembershipDiff diff = GroupMembershipDiff.of(currentMembers, desired);
+            Set<String> failed = new HashSet<>();
+            if (repair && !diff.isEmpty()) {
+                ldapRepo.updateGroupMembers(groupDn, diff.toAdd(), diff.toRemove())
+                        .forEach(dn -> failed.add(dn.toLowerCase()));
             }
 
-            // odebrat přebytečné členy
-            for (String member : currentMembers) {
-                boolean shouldBeMember = desired.stream()
-                        .anyMatch(d -> d.equalsIgnoreCase(member));
-                if (!shouldBeMember) {
-                    if (repair) {
-                        ldapRepo.removeFromGroup(member, groupDn);
-                    }
-                    results.add(SyncResult.updated(member,
-                            "Odebrán ze skupiny: " + shortGroupName(groupDn)));
-                }
+            for (String memberDn : diff.toAdd()) {
+                results.add(failed.contains(memberDn.toLowerCase())
+                        ? SyncResult.error(memberDn, "Nepodařilo se přidat do skupiny: " + shortGroupName(groupDn))
+                        : SyncResult.updated(memberDn, "Přidán do skupiny: " + shortGroupName(groupDn)));
+            }
+
+            for (String member : diff.toRemove()) {
+                results.add(failed.contains(member.toLowerCase())
+                        ? SyncResult.error(member, "Nepodařilo se odebrat ze skupiny: " + shortGroupName(groupDn))
+                        : SyncResult.updated(member, "Odebrán ze skupiny: " + shortGroupName(groupDn)));
             }
         }
 
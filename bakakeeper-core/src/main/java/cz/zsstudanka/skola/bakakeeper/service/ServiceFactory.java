@@ -16,6 +16,12 @@ import cz.zsstudanka.skola.bakakeeper.repository.impl.BakaGuardianRepository;
 import cz.zsstudanka.skola.bakakeeper.repository.impl.BakaInternalUserRepository;
 import cz.zsstudanka.skola.bakakeeper.repository.impl.BakaLDAPUserRepository;
 import cz.zsstudanka.skola.bakakeeper.repository.impl.BakaStudentRepository;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.LdapChangeTracker;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.LdapStateStore;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.SqlStateStore;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.StudentChangeTracker;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.LookupCache;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.RosterCache;
 import cz.zsstudanka.skola.bakakeeper.settings.Settings;
 
 /**
@@ -34,6 +40,7 @@ public class ServiceFactory {
     private final AppConfig config;
 
     // repozitáře
+    private final RosterCache rosterCache;
     private final StudentRepository studentRepo;
     private final FacultyRepository facultyRepo;
     private final LDAPUserRepository ldapUserRepo;
@@ -109,11 +116,18 @@ public class ServiceFactory {
                           AuditHistoryStore auditHistoryStore) {
         this.config = config;
 
-        // repozitáře
-        this.studentRepo = new BakaStudentRepository(sql);
-        this.facultyRepo = new BakaFacultyRepository(sql);
-        this.ldapUserRepo = new BakaLDAPUserRepository(ldap);
-        this.guardianRepo = new BakaGuardianRepository(ldap);
+        // repozitáře (sdílená mezipaměť seznamů pro SQL i LDAP)
+        this.rosterCache = new RosterCache(config.getRosterCacheTtl());
+        this.studentRepo = new BakaStudentRepository(sql, config.isSqlIncremental()
+                ? new StudentChangeTracker(sql, new SqlStateStore(Settings.getInstance().getPassphrase()))
+                : null, rosterCache);
+        this.facultyRepo = new BakaFacultyRepository(sql, rosterCache);
+        LdapChangeTracker changeTracker = config.isLdapIncremental()
+                ? new LdapChangeTracker(ldap, new LdapStateStore(Settings.getInstance().getPassphrase()))
+                : null;
+        this.ldapUserRepo = new BakaLDAPUserRepository(ldap, changeTracker,
+                new LookupCache<>(config.getLdapLookupCacheTtl()), rosterCache);
+        this.guardianRepo = new BakaGuardianRepository(ldap, changeTracker);
 
         // služby
         this.structureService = new StructureServiceImpl(config, ldap);
@@ -121,7 +135,9 @@ public class ServiceFactory {
         this.accountService = new AccountServiceImpl(ldapUserRepo);
         this.pairingService = new PairingServiceImpl(ldapUserRepo);
         this.studentService = new StudentServiceImpl(
-                config, studentRepo, ldapUserRepo, passwordService, pairingService);
+                config, studentRepo, ldapUserRepo, passwordService, pairingService,
+                config.isSyncFingerprints()
+                        ? new StudentFingerprintStore(Settings.getInstance().getPassphrase()) : null);
         this.guardianService = new GuardianServiceImpl(config, guardianRepo, ldapUserRepo);
         this.facultyService = new FacultyServiceImpl(config, ldapUserRepo);
         this.ruleService = new RuleServiceImpl(ldapUserRepo);
@@ -130,7 +146,8 @@ public class ServiceFactory {
         // orchestrátor
         this.orchestrator = new SyncOrchestrator(
                 config, studentRepo, ldapUserRepo, facultyRepo, guardianRepo,
-                structureService, studentService, facultyService, guardianService, ruleService);
+                structureService, studentService, facultyService, guardianService, ruleService,
+                config.isSyncJournal() ? new SyncJournal(Settings.getInstance().getPassphrase()) : null);
 
         // hlášení
         this.syncReportSender = new SyncReportSender(config, mailer);
@@ -146,6 +163,7 @@ public class ServiceFactory {
 
     public AppConfig getConfig() { return config; }
 
+    public RosterCache getRosterCache() { return rosterCache; }
     public StudentRepository getStudentRepo() { return studentRepo; }
     public FacultyRepository getFacultyRepo() { return facultyRepo; }
     public LDAPUserRepository getLdapUserRepo() { return ldapUserRepo; }
@@ -0,0 +1,216 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import cz.zsstudanka.skola.bakakeeper.components.EncryptionInputStream;
+import cz.zsstudanka.skola.bakakeeper.components.EncryptionOutputStream;
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Šifrované úložiště otisků srovnaných žáků. Pro každý interní kód uchovává
+ * dvojici otisků (evidence, adresář) z posledního běhu, ve kterém se žák
+ * shodoval – beze změny obou otisků se žák znovu neporovnává.
+ * Ukládá data do souboru {@code student-fingerprints.dat} ve formátu:
+ * {@code EncryptionOutputStream → GZIPOutputStream → ObjectOutputStream}
+ * (verze, počítadlo běhů, záznamy {@code [kód][otisk SQL][otisk LDAP]}).
+ *
+ * <p>Každá N-tá synchronizace porovná všechny žáky – zachytí případné změny,
+ * které otisky nepokrývají.</p>
+ *
+ * @author Jan Hladěna
+ */
+public class StudentFingerprintStore {
+
+    private static final String DEFAULT_FILE = "./student-fingerprints.dat";
+
+    /** verze formátu – při změně výpočtu otisků se uložené otisky zahodí */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Otisky srovnaného žáka.
+     *
+     * @param sql  otisk záznamu v evidenci
+     * @param ldap otisk účtu v adresáři
+     */
+    record Fingerprints(long sql, long ldap) {}
+
+    private final String filePath;
+    private final char[] passphrase;
+
+    /** interní kód → otisky (null = zatím nenačteno) */
+    private Map<String, Fingerprints> converged;
+    /** počet běhů od posledního úplného porovnání */
+    private int runsSinceFullCompare;
+    private boolean dirty;
+
+    /**
+     * Vytvoří úložiště s výchozí cestou {@code ./student-fingerprints.dat}.
+     *
+     * @param passphrase heslo pro šifrování/dešifrování
+     */
+    public StudentFingerprintStore(char[] passphrase) {
+        this(DEFAULT_FILE, passphrase);
+    }
+
+    /**
+     * Vytvoří úložiště s explicitní cestou.
+     *
+     * @param filePath   cesta k datovému souboru
+     * @param passphrase heslo pro šifrování/dešifrování
+     */
+    public StudentFingerprintStore(String filePath, char[] passphrase) {
+        this.filePath = filePath;
+        this.passphrase = passphrase;
+    }
+
+    /**
+     * Zahájí porovnání žáků – rozhodne, zda tento běh porovná všechny žáky.
+     *
+     * @param fullCompareEvery každý N-tý běh je úplný (1 = vždy)
+     * @return tento běh porovná všechny žáky
+     */
+    public synchronized boolean startRun(int fullCompareEvery) {
+        ensureLoaded();
+        dirty = true;
+
+        if (converged.isEmpty() || runsSinceFullCompare + 1 >= fullCompareEvery) {
+            runsSinceFullCompare = 0;
+            return true;
+        }
+        runsSinceFullCompare++;
+        return false;
+    }
+
+    /**
+     * Zjistí, zda se žák od posledního srovnání nezměnil ani v evidenci, ani v adresáři.
+     *
+     * @param internalId interní kód žáka
+     * @param sql        aktuální otisk záznamu v evidenci
+     * @param ldap       aktuální otisk účtu v adresáři
+     * @return oba otisky odpovídají poslednímu srovnání
+     */
+    public synchronized boolean isConverged(String internalId, long sql, long ldap) {
+        ensureLoaded();
+        return new Fingerprints(sql, ldap).equals(converged.get(internalId));
+    }
+
+    /**
+     * Zaznamená otisky žáka, u kterého porovnání nenašlo žádnou změnu.
+     *
+     * @param internalId interní kód žáka
+     * @param sql        otisk záznamu v evidenci
+     * @param ldap       otisk účtu v adresáři
+     */
+    public synchronized void converged(String internalId, long sql, long ldap) {
+        ensureLoaded();
+        Fingerprints current = new Fingerprints(sql, ldap);
+        if (!current.equals(converged.put(internalId, current))) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Odebere otisky žáka – příští běh jej porovná (naplánovaná změna, vyřazení).
+     *
+     * @param internalId interní kód žáka
+     */
+    public synchronized void forget(String internalId) {
+        ensureLoaded();
+        if (converged.remove(internalId) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Uloží otisky na disk (pouze pokud se změnily).
+     */
+    public synchronized void save() {
+        if (!dirty) return;
+
+        try (FileOutputStream fos = new FileOutputStream(filePath);
+             EncryptionOutputStream encrypted = new EncryptionOutputStream(fos, passphrase);
+             GZIPOutputStream gzip = new GZIPOutputStream(encrypted);
+             ObjectOutputStream oos = new ObjectOutputStream(gzip)) {
+
+            oos.writeInt(FORMAT_VERSION);
+            oos.writeInt(runsSinceFullCompare);
+            oos.writeInt(converged.size());
+            for (Map.Entry<String, Fingerprints> entry : converged.entrySet()) {
+                oos.writeUTF(entry.getKey());
+                oos.writeLong(entry.getValue().sql());
+                oos.writeLong(entry.getValue().ldap());
+            }
+            dirty = false;
+        } catch (Exception e) {
+            ReportManager.log(EBakaLogType.LOG_ERR,
+                    "Chyba při ukládání otisků žáků: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Otisk hodnot – prvních 64 bitů SHA-256 (null a prázdná hodnota se liší).
+     *
+     * @param values porovnávané hodnoty v pevném pořadí
+     * @return otisk
+     */
+    static long fingerprint(String... values) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (String value : values) {
+            if (value == null) {
+                digest.update((byte) 0);
+            } else {
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 1);
+            }
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    /** Načte úložiště ze souboru při prvním použití. */
+    private void ensureLoaded() {
+        if (converged != null) return;
+        converged = new HashMap<>();
+
+        File file = new File(filePath);
+        if (!file.exists()) {
+            return;
+        }
+
+        try (FileInputStream fis = new FileInputStream(file);
+             EncryptionInputStream decrypted = new EncryptionInputStream(fis, passphrase);
+             GZIPInputStream gzip = new GZIPInputStream(decrypted);
+             ObjectInputStream ois = new ObjectInputStream(gzip)) {
+
+            if (ois.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            int runs = ois.readInt();
+            int count = ois.readInt();
+            Map<String, Fingerprints> loaded = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                loaded.put(ois.readUTF(), new Fingerprints(ois.readLong(), ois.readLong()));
+            }
+            converged = loaded;
+            runsSinceFullCompare = runs;
+        } catch (Exception e) {
+            // poškozený nebo cizí soubor – proběhne úplné porovnání
+            ReportManager.log(EBakaLogType.LOG_ERR_VERBOSE,
+                    "Otisky žáků nelze načíst, proběhne úplné porovnání: " + e.getMessage());
+        }
+    }
+}
@@ -26,33 +26,65 @@ public interface StudentService {
                                             SyncProgressListener listener);
 
     /**
-     * Zkontroluje a srovná data mezi SQL a LDAP pro spárované žáky.
+     * Inicializuje nové žákovské účty s předem načtenými zaměstnaneckými účty
+     * (kontrola kolizí adres bez dalšího čtení báze zaměstnanců).
+     *
+     * @param sqlStudents žáci z evidence
+     * @param ldapStudents existující LDAP účty
+     * @param staffAccounts zaměstnanecké LDAP účty
+     * @param repair provést zápis (true) nebo jen kontrolu (false)
+     * @param listener sledování průběhu
+     * @return seznam výsledků
+     */
+    List<SyncResult> initializeNewStudents(List<StudentRecord> sqlStudents,
+                                            List<StudentRecord> ldapStudents,
+                                            List<StudentRecord> staffAccounts,
+                                            boolean repair,
+                                            SyncProgressListener listener);
+
+    /**
+     * Porovná data mezi SQL a LDAP pro spárované žáky a naplánuje opravy.
      * Kontroluje: příjmení, jméno, třídu, UAC příznaky, externí poštu.
+     * Do adresáře ani evidence nic nezapisuje; otisky srovnaných žáků
+     * aktualizuje jen zapisující běh.
      *
      * @param sqlStudents žáci z evidence
      * @param ldapStudents žáci z LDAP
-     * @param repair provést opravu (true) nebo jen kontrolu (false)
+     * @param repair zapisující běh (true) nebo jen kontrola (false)
      * @param listener sledování průběhu
-     * @return seznam výsledků
+     * @return změny spárovaných žáků v pořadí evidence (i beze změny)
      */
-    List<SyncResult> syncStudentData(List<StudentRecord> sqlStudents,
-                                      List<StudentRecord> ldapStudents,
-                                      boolean repair,
-                                      SyncProgressListener listener);
+    List<PlannedChange> planStudentData(List<StudentRecord> sqlStudents,
+                                        List<StudentRecord> ldapStudents,
+                                        boolean repair,
+                                        SyncProgressListener listener);
 
     /**
-     * Vyřadí žáky, kteří mají LDAP účet, ale nejsou v evidenci.
+     * Naplánuje vyřazení žáků, kteří mají LDAP účet, ale nejsou v evidenci.
+     * Do adresáře nic nezapisuje; otisky vyřazovaných žáků odebere jen
+     * zapisující běh.
      *
      * @param sqlStudents žáci z evidence
      * @param ldapStudents žáci z LDAP
-     * @param repair provést vyřazení (true) nebo jen kontrolu (false)
+     * @param repair zapisující běh (true) nebo jen kontrola (false)
      * @param listener sledování průběhu
-     * @return seznam výsledků
+     * @return změny osiřelých účtů v pořadí LDAP
+     */
+    List<PlannedChange> planRetirement(List<StudentRecord> sqlStudents,
+                                       List<StudentRecord> ldapStudents,
+                                       boolean repair,
+                                       SyncProgressListener listener);
+
+    /**
+     * Provede naplánované změny žákovských účtů.
+     *
+     * @param changes změny v pořadí plánu
+     * @param log deník provádění – provedené operace, při obnovení i dříve provedené (null = bez deníku)
+     * @param listener sledování průběhu
+     * @return výsledky v pořadí plánu
      */
-    List<SyncResult> retireOrphanedStudents(List<StudentRecord> sqlStudents,
-                                             List<StudentRecord> ldapStudents,
-                                             boolean repair,
-                                             SyncProgressListener listener);
+    List<SyncResult> applyPlan(List<PlannedChange> changes, SyncJournal.PhaseLog log,
+                               SyncProgressListener listener);
 
     /**
      * Vytvoří nový žákovský účet v AD.
@@ -2,11 +2,13 @@ package cz.zsstudanka.skola.bakakeeper.service;
 
 import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
 import cz.zsstudanka.skola.bakakeeper.config.AppConfig;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapModificationBatch;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaUAC;
 import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
 import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
+import cz.zsstudanka.skola.bakakeeper.repository.EmailWriteBuffer;
 import cz.zsstudanka.skola.bakakeeper.repository.LDAPUserRepository;
 import cz.zsstudanka.skola.bakakeeper.repository.StudentRepository;
 import cz.zsstudanka.skola.bakakeeper.utils.BakaUtils;
@@ -25,31 +27,62 @@ public class StudentServiceImpl implements StudentService {
 
     private static final int MAX_DN_ATTEMPTS = 10;
 
+    /** fáze plánu – synchronizace dat spárovaných žáků */
+    static final String PHASE_DATA = "Synchronizace dat žáků";
+    /** fáze plánu – vyřazení osiřelých účtů */
+    static final String PHASE_RETIRE = "Vyřazení osiřelých účtů";
+
     private final AppConfig config;
     private final StudentRepository sqlRepo;
     private final LDAPUserRepository ldapRepo;
     private final PasswordService passwordService;
     private final PairingService pairingService;
 
+    /** otisky srovnaných žáků (null = porovnávat vždy všechny) */
+    private final StudentFingerprintStore fingerprints;
+
     public StudentServiceImpl(AppConfig config,
                                StudentRepository sqlRepo,
                                LDAPUserRepository ldapRepo,
                                PasswordService passwordService,
                                PairingService pairingService) {
+        this(config, sqlRepo, ldapRepo, passwordService, pairingService, null);
+    }
+
+    public StudentServiceImpl(AppConfig config,
+                               StudentRepository sqlRepo,
+                               LDAPUserRepository ldapRepo,
+                               PasswordService passwordService,
+                               PairingService pairingService,
+                               StudentFingerprintStore fingerprints) {
         this.config = config;
         this.sqlRepo = sqlRepo;
         this.ldapRepo = ldapRepo;
         this.passwordService = passwordService;
         this.pairingService = pairingService;
+        this.fingerprints = fingerprints;
+    }
+
+    @Override
+    public List<SyncResult> initializeNewStudents(List<StudentRecord> sqlStudents,
+                                                   List<StudentRecord> ldapStudents,
+                                                   boolean repair,
+                                                   SyncProgressListener listener) {
+        // zaměstnanecké účty (načíst zvlášť – zaměstnanci běžně mají více proxy adres)
+        List<StudentRecord> staffAccounts = ldapRepo.findAllStudents(
+                config.getLdapBaseFaculty(), null);
+        return initializeNewStudents(sqlStudents, ldapStudents, staffAccounts, repair, listener);
     }
 
     @Override
     public List<SyncResult> initializeNewStudents(List<StudentRecord> sqlStudents,
                                                    List<StudentRecord> ldapStudents,
+                                                   List<StudentRecord> staffAccounts,
                                                    boolean repair,
                                                    SyncProgressListener listener) {
         listener.onPhaseStart("Inicializace nových žáků");
         List<SyncResult> results = new ArrayList<>();
+        EmailWriteBuffer emails = new EmailWriteBuffer(sqlRepo);
 
         // indexy LDAP účtů podle UPN a interního ID
         Set<String> ldapUpns = ldapStudents.stream()
@@ -65,9 +98,7 @@ public class StudentServiceImpl implements StudentService {
         Set<String> occupiedAddresses = new HashSet<>(ldapUpns);
         // žákovské účty (předány jako parametr)
         collectOccupiedAddresses(ldapStudents, occupiedAddresses);
-        // zaměstnanecké účty (načíst zvlášť – zaměstnanci běžně mají více proxy adres)
-        List<StudentRecord> staffAccounts = ldapRepo.findAllStudents(
-                config.getLdapBaseFaculty(), null);
+        // zaměstnanecké účty (zaměstnanci běžně mají více proxy adres)
         collectOccupiedAddresses(staffAccounts, occupiedAddresses);
 
         for (StudentRecord sql : sqlStudents) {
@@ -118,14 +149,13 @@ public class StudentServiceImpl implements StudentService {
             }
 
             if (repair) {
-                // zapsat e-mail do SQL
-                sqlRepo.updateEmail(sql.getInternalId(), proposedUpn);
-
                 // vytvořit LDAP účet
                 SyncResult createResult = createStudentAccount(sql);
                 results.add(createResult);
 
                 if (createResult.isSuccess()) {
+                    // e-mail se do SQL zapíše dávkou na konci fáze
+                    emails.add(sql.getInternalId(), proposedUpn);
                     occupiedAddresses.add(proposedUpn.toLowerCase());
                     ldapUpns.add(proposedUpn.toLowerCase());
                 }
@@ -136,6 +166,8 @@ public class StudentServiceImpl implements StudentService {
             }
         }
 
+        results.addAll(flushEmails(emails));
+
         int ok = (int) results.stream().filter(SyncResult::isSuccess).count();
         int err = (int) results.stream().filter(r -> !r.isSuccess()).count();
         listener.onPhaseEnd("Inicializace nových žáků", ok, err);
@@ -143,41 +175,77 @@ public class StudentServiceImpl implements StudentService {
     }
 
     @Override
-    public List<SyncResult> syncStudentData(List<StudentRecord> sqlStudents,
-                                             List<StudentRecord> ldapStudents,
-                                             boolean repair,
-                                             SyncProgressListener listener) {
-        listener.onPhaseStart("Synchronizace dat žáků");
-        List<SyncResult> results = new ArrayList<>();
+    public List<PlannedChange> planStudentData(List<StudentRecord> sqlStudents,
+                                               List<StudentRecord> ldapStudents,
+                                               boolean repair,
+                                               SyncProgressListener listener) {
+        List<PlannedChange> changes = new ArrayList<>();
 
         // indexovat LDAP podle interního ID
         Map<String, StudentRecord> ldapById = ldapStudents.stream()
                 .filter(s -> s.getInternalId() != null)
                 .collect(Collectors.toMap(StudentRecord::getInternalId, s -> s, (a, b) -> a));
 
+        // adresy přidělené tímto plánem – plán se zapisuje až po porovnání všech žáků
+        Set<String> claimedUpns = new HashSet<>();
+
+        // každý N-tý zapisující běh porovná všechny žáky bez ohledu na otisky;
+        // kontrola otisky jen čte – neposouvá počítadlo ani neukládá
+        boolean fullCompare = (fingerprints == null)
+                || (repair && fingerprints.startRun(config.getSyncFullCompareEvery()));
+        int unchanged = 0;
+
         for (StudentRecord sql : sqlStudents) {
             if (sql.getInternalId() == null) continue;
 
             StudentRecord ldap = ldapById.get(sql.getInternalId());
             if (ldap == null || ldap.getDn() == null) continue; // nespárovaný
 
-            SyncResult result = syncSingleStudent(sql, ldap, repair, listener);
-            results.add(result);
+            if (fingerprints == null) {
+                changes.add(planSingleStudent(sql, ldap, claimedUpns, listener));
+                continue;
+            }
+
+            // beze změny v evidenci i v adresáři od posledního srovnání → bez porovnání
+            long sqlPrint = sqlFingerprint(sql);
+            long ldapPrint = ldapFingerprint(ldap);
+            if (!fullCompare && fingerprints.isConverged(sql.getInternalId(), sqlPrint, ldapPrint)) {
+                changes.add(PlannedChange.none(PHASE_DATA, sql.getInternalId(), sql.getClassName()));
+                unchanged++;
+                continue;
+            }
+
+            PlannedChange change = planSingleStudent(sql, ldap, claimedUpns, listener);
+            changes.add(change);
+            if (!repair) continue;
+
+            // srovnaný žák (s e-mailem v evidenci) se příště přeskočí, ostatní se porovnají znovu
+            if (!change.hasOperations() && sql.getEmail() != null && !sql.getEmail().isEmpty()) {
+                fingerprints.converged(sql.getInternalId(), sqlPrint, ldapPrint);
+            } else {
+                fingerprints.forget(sql.getInternalId());
+            }
+        }
+
+        if (fingerprints != null) {
+            if (repair) {
+                fingerprints.save();
+            }
+            ReportManager.log(EBakaLogType.LOG_VERBOSE, fullCompare
+                    ? "Úplné porovnání dat žáků (každá " + config.getSyncFullCompareEvery() + ". synchronizace)."
+                    : "Porovnání přeskočeno u " + unchanged + " z " + changes.size()
+                            + " žáků beze změny v evidenci i v adresáři.");
         }
 
-        int ok = (int) results.stream().filter(SyncResult::isSuccess).count();
-        int err = (int) results.stream().filter(r -> !r.isSuccess()).count();
-        listener.onPhaseEnd("Synchronizace dat žáků", ok, err);
-        return results;
+        return changes;
     }
 
     @Override
-    public List<SyncResult> retireOrphanedStudents(List<StudentRecord> sqlStudents,
-                                                    List<StudentRecord> ldapStudents,
-                                                    boolean repair,
-                                                    SyncProgressListener listener) {
-        listener.onPhaseStart("Vyřazení osiřelých účtů");
-        List<SyncResult> results = new ArrayList<>();
+    public List<PlannedChange> planRetirement(List<StudentRecord> sqlStudents,
+                                              List<StudentRecord> ldapStudents,
+                                              boolean repair,
+                                              SyncProgressListener listener) {
+        List<PlannedChange> changes = new ArrayList<>();
 
         // ID žáků v evidenci
         Set<String> sqlIds = sqlStudents.stream()
@@ -189,20 +257,25 @@ public class StudentServiceImpl implements StudentService {
             if (ldap.getInternalId() == null) continue;
             if (sqlIds.contains(ldap.getInternalId())) continue; // je v evidenci
 
-            if (repair) {
-                SyncResult result = retireStudent(ldap);
-                results.add(result);
-            } else {
-                listener.onProgress("Osiřelý účet: " + ldap.getDisplayName()
-                        + " (" + ldap.getInternalId() + ")");
-                results.add(SyncResult.skipped(ldap.getInternalId(), "Suchý běh – byl by vyřazen."));
+            listener.onProgress("Osiřelý účet: " + ldap.getDisplayName()
+                    + " (" + ldap.getInternalId() + ")");
+            changes.add(planRetireStudent(ldap));
+            if (repair && fingerprints != null) {
+                fingerprints.forget(ldap.getInternalId());
             }
         }
 
-        int ok = (int) results.stream().filter(SyncResult::isSuccess).count();
-        int err = (int) results.stream().filter(r -> !r.isSuccess()).count();
-        listener.onPhaseEnd("Vyřazení osiřelých účtů", ok, err);
-        return results;
+        if (repair && fingerprints != null) {
+            fingerprints.save();
+        }
+        return changes;
+    }
+
+    @Override
+    public List<SyncResult> applyPlan(List<PlannedChange> changes, SyncJournal.PhaseLog log,
+                                      SyncProgressListener listener) {
+        return new PlanExecutor(ldapRepo, sqlRepo, config.getStudentShardParallelism())
+                .apply(changes, log, listener);
     }
 
     @Override
@@ -290,35 +363,9 @@ public class StudentServiceImpl implements StudentService {
 
     @Override
     public SyncResult retireStudent(StudentRecord student) {
-        String dn = student.getDn();
-        if (dn == null) {
-            return SyncResult.error(student.getInternalId(), "Žák nemá DN.");
-        }
-
-        // nastavit titulek na "ABS {rok}"
-        String yearStr = new SimpleDateFormat("yyyy").format(new Date());
-        ldapRepo.updateAttribute(dn, EBakaLDAPAttributes.TITLE, "ABS " + yearStr);
-
-        // deaktivovat účet
-        int disabledUac = EBakaUAC.NORMAL_ACCOUNT.value()
-                | EBakaUAC.ACCOUNTDISABLE.value()
-                | EBakaUAC.PASSWORD_EXPIRED.value();
-        ldapRepo.updateAttribute(dn, EBakaLDAPAttributes.UAC, Integer.toString(disabledUac));
-
-        // odebrat ze všech skupin
-        ldapRepo.removeFromAllGroups(dn);
-
-        // přesunout do alumni OU (vytvořit OU pro rok, pokud neexistuje)
-        String alumniOu = "OU=" + yearStr + "," + config.getLdapBaseAlumni();
-        boolean moved = ldapRepo.moveObject(dn, alumniOu, true);
-
-        if (!moved) {
-            return SyncResult.error(student.getInternalId(),
-                    student.getDisplayName() + " – účet deaktivován, ale přesun do alumni selhal.");
-        }
-
-        return SyncResult.retired(student.getInternalId(),
-                student.getDisplayName() + " → alumni " + yearStr);
+        return new PlanExecutor(ldapRepo, sqlRepo, 1)
+                .apply(List.of(planRetireStudent(student)), null, SyncProgressListener.SILENT)
+                .getFirst();
     }
 
     // ===========================
@@ -326,13 +373,18 @@ public class StudentServiceImpl implements StudentService {
     // ===========================
 
     /**
-     * Synchronizuje jednoho žáka – porovná SQL vs LDAP data.
+     * Porovná jednoho žáka (SQL vs LDAP) a naplánuje opravy.
      * Extrahováno z Student.sync().
+     *
+     * <p>Pořadí operací: změna jména a loginu (na původním DN), přejmenování CN,
+     * přesun do třídy (další operace už na novém DN), skupiny a nakonec ostatní
+     * atributy jednou dávkou.</p>
      */
-    private SyncResult syncSingleStudent(StudentRecord sql, StudentRecord ldap,
-                                          boolean repair, SyncProgressListener listener) {
+    private PlannedChange planSingleStudent(StudentRecord sql, StudentRecord ldap,
+                                            Set<String> claimedUpns, SyncProgressListener listener) {
         String dn = ldap.getDn();
-        boolean changed = false;
+        List<PlannedOperation> operations = new ArrayList<>();
+        List<String> changes = new ArrayList<>();
 
         // 1-2. Kontrola změny jména (příjmení nebo křestní jméno)
         boolean nameChanged = !Objects.equals(sql.getSurname(), ldap.getSurname())
@@ -342,36 +394,33 @@ public class StudentServiceImpl implements StudentService {
             listener.onProgress("Změna jména: " + sql.getInternalId()
                     + " SQL=" + sql.getSurname() + " " + sql.getGivenName()
                     + " LDAP=" + ldap.getSurname() + " " + ldap.getGivenName());
+            changes.add("jméno");
+
+            // aktualizovat sn, givenName, displayName (ještě na starém DN) –
+            // odešle se jednou dávkou společně s loginem a e-mailem
+            String display = sql.getSurname() + " " + sql.getGivenName();
+            LdapModificationBatch batch = new LdapModificationBatch(dn)
+                    .replace(EBakaLDAPAttributes.NAME_LAST, sql.getSurname())
+                    .replace(EBakaLDAPAttributes.NAME_FIRST, sql.getGivenName())
+                    .replace(EBakaLDAPAttributes.NAME_DISPLAY, display);
+
+            // přegenerovat login, e-mail a proxyAddresses – vždy při změně jména.
+            // E_MAIL v SQL může být prázdný (scénář zmena-jmen) nebo stále obsahovat
+            // starý e-mail (běžný případ) – regenerace proběhne v obou případech.
+            // Pokud se regenerace nepovede, zapíše se alespoň změna jména.
+            String newUpn = regenerateLoginAndEmail(batch, sql, ldap, claimedUpns, listener);
+            operations.add(new PlannedOperation.Modify(batch));
+            if (newUpn != null) {
+                operations.add(new PlannedOperation.UpdateEmail(sql.getInternalId(), newUpn));
+            }
 
-            if (repair) {
-                // aktualizovat sn, givenName, displayName (ještě na starém DN)
-                ldapRepo.updateAttribute(dn, EBakaLDAPAttributes.NAME_LAST, sql.getSurname());
-                ldapRepo.updateAttribute(dn, EBakaLDAPAttributes.NAME_FIRST, sql.getGivenName());
-                String display = sql.getSurname() + " " + sql.getGivenName();
-                ldapRepo.updateAttribute(dn, EBakaLDAPAttributes.NAME_DISPLAY, display);
-                changed = true;
-
-                // přegenerovat login, e-mail a proxyAddresses – vždy při změně jména.
-                // E_MAIL v SQL může být prázdný (scénář zmena-jmen) nebo stále obsahovat
-                // starý e-mail (běžný případ) – regenerace proběhne v obou případech.
-                changed |= regenerateLoginAndEmail(dn, sql, ldap, listener);
-
-                // přejmenovat CN objektu (změna DN) – jako poslední operace,
-                // protože invaliduje staré DN
-                String newCn = sql.getSurname() + " " + sql.getGivenName();
-                String currentCn = BakaUtils.parseCN(dn);
-                if (!newCn.equals(currentCn)) {
-                    String newDn = ldapRepo.renameObject(dn, newCn);
-                    if (newDn != null) {
-                        listener.onProgress("Přejmenování CN: " + sql.getInternalId()
-                                + " " + currentCn + " → " + BakaUtils.parseCN(newDn));
-                        dn = newDn;
-                    } else {
-                        ReportManager.log(EBakaLogType.LOG_ERR,
-                                "Přejmenování CN selhalo pro " + sql.getInternalId()
-                                        + " (" + currentCn + " → " + newCn + ").");
-                    }
-                }
+            // přejmenovat CN objektu (změna DN) – až po změně atributů,
+            // protože invaliduje staré DN
+            String newCn = sql.getSurname() + " " + sql.getGivenName();
+            if (!newCn.equals(BakaUtils.parseCN(dn))) {
+                PlannedOperation.Rename rename = new PlannedOperation.Rename(dn, newCn);
+                operations.add(rename);
+                dn = rename.plannedDn();
             }
         }
 
@@ -388,61 +437,128 @@ public class StudentServiceImpl implements StudentService {
                 // LDAP má UPN, SQL nemá → zpětné doplnění
                 listener.onProgress("Chybějící email v SQL: " + sql.getInternalId()
                         + " → zpětné doplnění z LDAP UPN: " + ldapUpn);
-                if (repair) {
-                    sqlRepo.updateEmail(sql.getInternalId(), ldapUpn);
-                    changed = true;
-                }
+                operations.add(new PlannedOperation.UpdateEmail(sql.getInternalId(), ldapUpn));
+                changes.add("e-mail v evidenci");
             } else {
                 // ani LDAP nemá UPN → vygenerovat nový a zapsat do obou
                 listener.onProgress("Chybějící email: " + sql.getInternalId()
                         + " " + sql.getSurname() + " " + sql.getGivenName()
                         + " → generování nového UPN");
-                if (repair) {
-                    changed |= regenerateLoginAndEmail(dn, sql, ldap, listener);
+                LdapModificationBatch batch = new LdapModificationBatch(dn);
+                String newUpn = regenerateLoginAndEmail(batch, sql, ldap, claimedUpns, listener);
+                if (newUpn != null) {
+                    operations.add(new PlannedOperation.Modify(batch));
+                    operations.add(new PlannedOperation.UpdateEmail(sql.getInternalId(), newUpn));
+                    changes.add("e-mail");
                 }
             }
         }
 
+        // ostatní atributy se odešlou jednou dávkou na konečném DN
+        List<LdapModificationBatch.Modification> attributes = new ArrayList<>();
+
         // 3. Třída (OU + skupiny)
         String sqlClass = sql.getClassName(); // "5.A"
         String ldapClass = resolveClassFromDn(ldap.getDn());
         if (sqlClass != null && !sqlClass.equals(ldapClass)) {
-            if (repair) {
-                // moveStudentToClass přesune objekt a vrátí nové DN
-                dn = moveStudentToClass(dn, sql.getClassYear(), sql.getClassLetter());
-                changed = true;
-            }
             listener.onProgress("Neshoda třídy: " + sql.getInternalId()
                     + " SQL=" + sqlClass + " LDAP=" + ldapClass);
+            dn = planMoveToClass(operations, attributes, dn, sql.getClassYear(), sql.getClassLetter());
+            changes.add("třída " + ldapClass + " → " + sqlClass);
         }
 
-        // 4. Kontrola externího mailu (po přesunu používáme aktuální dn)
+        // 4. Kontrola externího mailu
         boolean extMailRestricted = ldap.isExtMailRestricted();
         boolean shouldBeRestricted = !config.getExtMailAllowed().contains(sql.getClassYear());
         if (extMailRestricted != shouldBeRestricted) {
-            if (repair) {
-                ldapRepo.updateAttribute(dn, EBakaLDAPAttributes.EXT02,
-                        shouldBeRestricted ? "TRUE" : "FALSE");
-                changed = true;
-            }
+            attributes.add(new LdapModificationBatch.Modification(LdapModificationBatch.Operation.REPLACE,
+                    EBakaLDAPAttributes.EXT02, shouldBeRestricted ? "TRUE" : "FALSE"));
+            changes.add("externí pošta");
         }
 
-        // 5. UAC příznaky (expirace hesla – po přesunu používáme aktuální dn)
+        // 5. UAC příznaky (expirace hesla)
         if (ldap.getUac() > 0) {
             int expectedUac = computeExpectedUac(sql.getClassYear());
             if (ldap.getUac() != expectedUac) {
-                if (repair) {
-                    ldapRepo.updateAttribute(dn, EBakaLDAPAttributes.UAC,
-                            Integer.toString(expectedUac));
-                    changed = true;
-                }
+                attributes.add(new LdapModificationBatch.Modification(LdapModificationBatch.Operation.REPLACE,
+                        EBakaLDAPAttributes.UAC, Integer.toString(expectedUac)));
+                changes.add("UAC");
             }
         }
 
-        if (changed) {
-            return SyncResult.updated(sql.getInternalId(), "Data synchronizována.");
+        if (!attributes.isEmpty()) {
+            operations.add(new PlannedOperation.Modify(dn, attributes));
         }
-        return SyncResult.noChange(sql.getInternalId());
+
+        if (operations.isEmpty()) {
+            return PlannedChange.none(PHASE_DATA, sql.getInternalId(), sql.getClassName());
+        }
+        return new PlannedChange(PHASE_DATA, sql.getInternalId(), sql.getClassName(),
+                SyncResult.Type.UPDATED, "Data synchronizována: " + String.join(", ", changes) + ".", operations);
+    }
+
+    /**
+     * Otisk záznamu žáka v evidenci – porovnávané údaje a z nich odvozená
+     * očekávaná nastavení (změna konfigurace vynutí nové porovnání).
+     */
+    private long sqlFingerprint(StudentRecord sql) {
+        return StudentFingerprintStore.fingerprint(
+                sql.getInternalId(),
+                sql.getSurname(),
+                sql.getGivenName(),
+                sql.getEmail(),
+                sql.getClassName(),
+                Integer.toString(sql.getClassYear()),
+                sql.getClassLetter(),
+                Boolean.toString(!config.getExtMailAllowed().contains(sql.getClassYear())),
+                Integer.toString(computeExpectedUac(sql.getClassYear())),
+                config.getLdapBaseStudents(),
+                config.getMailDomain());
+    }
+
+    /**
+     * Otisk žákovského účtu v adresáři – porovnávané atributy.
+     */
+    private static long ldapFingerprint(StudentRecord ldap) {
+        return StudentFingerprintStore.fingerprint(
+                ldap.getDn(),
+                ldap.getSurname(),
+                ldap.getGivenName(),
+                ldap.getUpn(),
+                Boolean.toString(ldap.isExtMailRestricted()),
+                Integer.toString(ldap.getUac()));
+    }
+
+    /**
+     * Naplánuje vyřazení žákovského účtu – titulek „ABS {rok}“, deaktivace,
+     * odebrání ze skupin a přesun do OU absolventů daného roku.
+     */
+    private PlannedChange planRetireStudent(StudentRecord student) {
+        String dn = student.getDn();
+        String shard = resolveClassFromDn(dn);
+        if (dn == null) {
+            return new PlannedChange(PHASE_RETIRE, student.getInternalId(), shard,
+                    SyncResult.Type.ERROR, "Žák nemá DN.", List.of());
+        }
+
+        String yearStr = new SimpleDateFormat("yyyy").format(new Date());
+
+        // titulek a deaktivace účtu jednou dávkou
+        int disabledUac = EBakaUAC.NORMAL_ACCOUNT.value()
+                | EBakaUAC.ACCOUNTDISABLE.value()
+                | EBakaUAC.PASSWORD_EXPIRED.value();
+        LdapModificationBatch batch = new LdapModificationBatch(dn)
+                .replace(EBakaLDAPAttributes.TITLE, "ABS " + yearStr)
+                .replace(EBakaLDAPAttributes.UAC, Integer.toString(disabledUac));
+
+        // přesunout do alumni OU (vytvořit OU pro rok, pokud neexistuje)
+        String alumniOu = "OU=" + yearStr + "," + config.getLdapBaseAlumni();
+
+        return new PlannedChange(PHASE_RETIRE, student.getInternalId(), shard, SyncResult.Type.RETIRED,
+                student.getDisplayName() + " → alumni " + yearStr,
+                List.of(new PlannedOperation.Modify(batch),
+                        new PlannedOperation.RemoveFromAllGroups(dn),
+                        new PlannedOperation.Move(dn, alumniOu, true)));
     }
 
     /**
@@ -455,42 +571,49 @@ public class StudentServiceImpl implements StudentService {
      *   <li>Aktualizovat UPN, sAMAccountName a mail v LDAP</li>
      *   <li>Demotovat starý primární email v proxyAddresses na smtp: (sekundární)</li>
      *   <li>Přidat nový email jako SMTP: (primární) do proxyAddresses</li>
-     *   <li>Zapsat nový email zpět do SQL evidence</li>
      * </ol>
      * </p>
      *
-     * @param dn aktuální DN žáka
+     * <p>Změny v LDAP se přidají do předané dávky. Zápis nového e-mailu do SQL
+     * evidence naplánuje volající. Pokud regenerace selže, dávka zůstane beze změny.</p>
+     *
+     * @param batch dávka změn aktuálního DN žáka (může již obsahovat další změny)
      * @param sql záznam z SQL evidence (nové jméno, prázdný email)
      * @param ldap záznam z LDAP (staré jméno, stará adresa, proxyAddresses)
+     * @param claimedUpns adresy přidělené dříve v tomto plánu
      * @param listener pro logování průběhu
-     * @return true pokud byla provedena změna
+     * @return nový UPN, nebo null pokud jej nelze vygenerovat
      */
-    private boolean regenerateLoginAndEmail(String dn, StudentRecord sql,
-                                             StudentRecord ldap,
-                                             SyncProgressListener listener) {
+    private String regenerateLoginAndEmail(LdapModificationBatch batch, StudentRecord sql,
+                                           StudentRecord ldap, Set<String> claimedUpns,
+                                           SyncProgressListener listener) {
+        String dn = batch.getDn();
         String newSurname = sql.getSurname();
         String newGivenName = sql.getGivenName();
         String oldEmail = ldap.getEmail(); // aktuální primární email v LDAP
 
-        // 1. Vygenerovat nový UPN – kontrola kolizí proti existujícím UPN a proxyAddresses
-        String newUpn = generateUniqueUpn(newSurname, newGivenName, config.getMailDomain(), dn);
+        // 1. Vygenerovat nový UPN – kontrola kolizí proti existujícím UPN, proxyAddresses
+        //    a adresám přiděleným dříve v tomto plánu
+        String newUpn = generateUniqueUpn(newSurname, newGivenName, config.getMailDomain(), dn, claimedUpns);
         if (newUpn == null) {
             ReportManager.log(EBakaLogType.LOG_ERR,
                     "Nelze vygenerovat nový UPN pro " + newSurname + " " + newGivenName
                             + " (" + sql.getInternalId() + ").");
-            return false;
+            return null;
         }
+        claimedUpns.add(newUpn.toLowerCase());
 
         String newSam = BakaUtils.createSAMloginFromUPNbase(newSurname, newGivenName, newUpn);
 
         listener.onProgress("Přegenerování loginu: " + sql.getInternalId()
                 + " " + ldap.getUpn() + " → " + newUpn
-                + " (SAM: " + ldap.getSamAccountName() + " → " + newSam + ")");
+                + " (SAM: " + ldap.getSamAccountName() + " → " + newSam + ")"
+                + ", e-mail " + (oldEmail != null ? oldEmail : "(žádný)") + " → " + newUpn);
 
         // 2. Aktualizovat UPN, sAMAccountName a mail v LDAP
-        ldapRepo.updateAttribute(dn, EBakaLDAPAttributes.UPN, newUpn);
-        ldapRepo.updateAttribute(dn, EBakaLDAPAttributes.LOGIN, newSam);
-        ldapRepo.updateAttribute(dn, EBakaLDAPAttributes.MAIL, newUpn);
+        batch.replace(EBakaLDAPAttributes.UPN, newUpn)
+                .replace(EBakaLDAPAttributes.LOGIN, newSam)
+                .replace(EBakaLDAPAttributes.MAIL, newUpn);
 
         // 3. Správa proxyAddresses – zachovat celou historii
         List<String> currentProxy = ldap.getProxyAddresses();
@@ -502,13 +625,13 @@ public class StudentServiceImpl implements StudentService {
 
             // odebrat starou primární SMTP: (pokud existuje)
             if (currentProxy.stream().anyMatch(p -> p.equals(oldPrimary))) {
-                ldapRepo.removeAttribute(dn, EBakaLDAPAttributes.PROXY_ADDR, oldPrimary);
+                batch.remove(EBakaLDAPAttributes.PROXY_ADDR, oldPrimary);
             }
             // přidat jako sekundární smtp: (pokud ještě neexistuje)
             // pozn.: porovnání musí být case-sensitive – SMTP: varianta (právě odebraná)
             // je stále v snapshotu currentProxy a equalsIgnoreCase by ji matchla
             if (currentProxy.stream().noneMatch(p -> p.equals(oldSecondary))) {
-                ldapRepo.addAttribute(dn, EBakaLDAPAttributes.PROXY_ADDR, oldSecondary);
+                batch.add(EBakaLDAPAttributes.PROXY_ADDR, oldSecondary);
             }
         }
 
@@ -517,19 +640,29 @@ public class StudentServiceImpl implements StudentService {
         String newPrimary = "SMTP:" + newUpn;
         String newSecondaryVariant = "smtp:" + newUpn;
         if (currentProxy.stream().anyMatch(p -> p.equalsIgnoreCase(newSecondaryVariant))) {
-            ldapRepo.removeAttribute(dn, EBakaLDAPAttributes.PROXY_ADDR, newSecondaryVariant);
+            batch.remove(EBakaLDAPAttributes.PROXY_ADDR, newSecondaryVariant);
         }
 
         // přidat nový email jako primární SMTP:
-        ldapRepo.addAttribute(dn, EBakaLDAPAttributes.PROXY_ADDR, newPrimary);
+        batch.add(EBakaLDAPAttributes.PROXY_ADDR, newPrimary);
 
-        // 4. Zapsat nový email do SQL evidence
-        sqlRepo.updateEmail(sql.getInternalId(), newUpn);
-
-        listener.onProgress("Email přegenerován: " + sql.getInternalId()
-                + " " + (oldEmail != null ? oldEmail : "(žádný)") + " → " + newUpn);
+        return newUpn;
+    }
 
-        return true;
+    /**
+     * Zápis e-mailů fáze do SQL evidence jednou dávkou.
+     *
+     * @param emails odložené zápisy
+     * @return chyby nezapsaných řádků
+     */
+    private List<SyncResult> flushEmails(EmailWriteBuffer emails) {
+        List<SyncResult> errors = new ArrayList<>();
+        emails.flush().forEach((internalId, reason) -> {
+            ReportManager.log(EBakaLogType.LOG_ERR,
+                    "E-mail žáka " + internalId + " nebyl zapsán do evidence: " + reason);
+            errors.add(SyncResult.error(internalId, "E-mail nebyl zapsán do evidence: " + reason));
+        });
+        return errors;
     }
 
     /**
@@ -547,17 +680,18 @@ public class StudentServiceImpl implements StudentService {
      * @param givenName nové jméno
      * @param domain mailová doména
      * @param excludeDn DN účtu, pro který generujeme (vyloučit z kontroly kolizí)
+     * @param claimedUpns adresy přidělené dříve v tomto plánu (lowercase)
      * @return unikátní UPN, nebo null pokud se nepodařilo vygenerovat
      */
     private String generateUniqueUpn(String surname, String givenName,
-                                      String domain, String excludeDn) {
+                                      String domain, String excludeDn, Set<String> claimedUpns) {
         // načíst VŠECHNY uživatelské účty z celého stromu (žáci + zaměstnanci)
         // pro úplnou kontrolu kolizí UPN a proxyAddresses
         List<StudentRecord> allUsers = ldapRepo.findAllStudents(
                 config.getLdapBase(), null);
 
         // množina obsazených adres: UPN + mail + všechny proxyAddresses (bez prefixu)
-        Set<String> occupiedAddresses = new HashSet<>();
+        Set<String> occupiedAddresses = new HashSet<>(claimedUpns);
         for (StudentRecord s : allUsers) {
             // vyloučit účet, pro který generujeme nový UPN
             if (excludeDn != null && excludeDn.equalsIgnoreCase(s.getDn())) {
@@ -589,19 +723,6 @@ public class StudentServiceImpl implements StudentService {
         return null;
     }
 
-    /**
-     * Přesune žákovský účet do správné třídní OU a aktualizuje skupiny.
-     * Extrahováno z Student.moveToClass().
-     *
-     * <p>Pořadí operací: nejprve přesun do cílové OU (dokud je staré DN platné),
-     * poté úprava skupin a atributů s novým DN.</p>
-     *
-     * @param dn aktuální DN žáka
-     * @param year cílový ročník
-     * @param letter písmeno cílové třídy
-     * @return nové DN žáka po přesunu (nebo původní DN, pokud přesun selhal)
-     */
-
     /**
      * Naplní množinu obsazenými e-mailovými adresami ze seznamu uživatelských účtů.
      * Pro každý účet přidá UPN, primární mail a všechny proxyAddresses (bez prefixu).
@@ -626,7 +747,23 @@ public class StudentServiceImpl implements StudentService {
         }
     }
 
-    private String moveStudentToClass(String dn, int year, String letter) {
+    /**
+     * Naplánuje přesun žákovského účtu do správné třídní OU a úpravu skupin.
+     * Extrahováno z Student.moveToClass().
+     *
+     * <p>Pořadí operací: nejprve přesun do cílové OU (dokud je staré DN platné),
+     * poté úprava skupin s novým DN. Titulek se přidá k dávce ostatních atributů.</p>
+     *
+     * @param operations operace změny žáka
+     * @param attributes změny atributů odeslané na konečném DN
+     * @param dn aktuální DN žáka
+     * @param year cílový ročník
+     * @param letter písmeno cílové třídy
+     * @return DN žáka po přesunu
+     */
+    private String planMoveToClass(List<PlannedOperation> operations,
+                                   List<LdapModificationBatch.Modification> attributes,
+                                   String dn, int year, String letter) {
         if (letter == null) letter = "A";
 
         String targetOu = "OU=Trida-" + letter.toUpperCase()
@@ -635,28 +772,19 @@ public class StudentServiceImpl implements StudentService {
                 + "," + config.getLdapBaseStudentGroups();
         String baseGroup = "CN=Skupina-Zaci," + config.getLdapBaseGlobalGroups();
 
-        // ověřit, že zdrojový objekt stále existuje na uvedeném DN
-        if (!ldapRepo.checkDN(dn)) {
-            ReportManager.log(EBakaLogType.LOG_ERR,
-                    "Objekt [" + dn + "] v LDAP neexistuje – přesun třídy nebude proveden.");
-            return dn;
-        }
-
         // 1. Nejprve přesunout do cílové OU (dokud je staré DN platné)
-        boolean moved = ldapRepo.moveObject(dn, targetOu);
-
-        // vypočítat nové DN – po přesunu operace pracují s novým umístěním
-        String activeDn = moved
-                ? "CN=" + BakaUtils.parseCN(dn) + "," + targetOu
-                : dn;
+        PlannedOperation.Move move = new PlannedOperation.Move(dn, targetOu, false);
+        operations.add(move);
+        String activeDn = move.plannedDn();
 
         // 2. Přeřadit skupiny (operace nad skupinovými objekty – používá activeDn jako member)
-        ldapRepo.removeFromAllGroups(activeDn);
-        ldapRepo.addToGroup(activeDn, baseGroup);
-        ldapRepo.addToGroup(activeDn, classGroup);
+        operations.add(new PlannedOperation.RemoveFromAllGroups(activeDn));
+        operations.add(new PlannedOperation.AddToGroup(activeDn, baseGroup));
+        operations.add(new PlannedOperation.AddToGroup(activeDn, classGroup));
 
         // 3. Aktualizovat titulek na novém DN
-        ldapRepo.updateAttribute(activeDn, EBakaLDAPAttributes.TITLE, "Žák");
+        attributes.add(new LdapModificationBatch.Modification(LdapModificationBatch.Operation.REPLACE,
+                EBakaLDAPAttributes.TITLE, "Žák"));
 
         return activeDn;
     }
@@ -0,0 +1,291 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Opakované spouštění synchronizace v dlouhodobě běžícím procesu.
+ *
+ * <p>První běh proběhne ihned, další po intervalu prodlouženém o náhodný
+ * odklad (jitter) – více instancí tak nezatěžuje řadič ve stejnou chvíli.
+ * Okamžitý běh lze vyžádat voláním {@link #trigger()} nebo vytvořením
+ * spouštěcího souboru (po převzetí se smaže).</p>
+ *
+ * <p>Chyba běhu proces neukončí – zaznamená se do stavu a další běh proběhne
+ * podle plánu.</p>
+ *
+ * @author Jan Hladěna
+ */
+public class SyncDaemon {
+
+    /** interval kontroly spouštěcího souboru (ms) */
+    private static final long TRIGGER_POLL_MS = 1000;
+
+    /**
+     * Stav procesu.
+     *
+     * @param started        spuštění procesu
+     * @param runs           počet dokončených běhů
+     * @param failedRuns     počet běhů ukončených výjimkou
+     * @param running        právě probíhá běh
+     * @param lastStart      začátek posledního běhu (null = zatím neproběhl)
+     * @param lastDurationMs doba posledního běhu
+     * @param lastActions    počet provedených změn posledního běhu
+     * @param lastErrors     počet chyb posledního běhu
+     * @param lastFailure    výjimka posledního běhu (null = bez výjimky)
+     * @param lastSuccess    konec posledního běhu bez výjimky (null = zatím žádný)
+     * @param nextRun        plánovaný další běh
+     */
+    public record Status(
+            Instant started,
+            long runs,
+            long failedRuns,
+            boolean running,
+            Instant lastStart,
+            long lastDurationMs,
+            int lastActions,
+            int lastErrors,
+            String lastFailure,
+            Instant lastSuccess,
+            Instant nextRun
+    ) {
+
+        /**
+         * Proces je v pořádku – poslední běh neskončil výjimkou a od posledního
+         * dokončeného běhu (případně od spuštění) neuplynula zadaná doba.
+         * Chyby jednotlivých záznamů stav neovlivní.
+         *
+         * @param maxAge nejdelší doba bez dokončeného běhu
+         * @return stav je v pořádku
+         */
+        public boolean isHealthy(Duration maxAge) {
+            if (lastFailure != null) return false;
+            Instant reference = (lastSuccess != null) ? lastSuccess : started;
+            return Instant.now().isBefore(reference.plus(maxAge));
+        }
+
+        /**
+         * Metriky v textovém formátu Prometheus.
+         *
+         * @return řádky metrik
+         */
+        public List<String> toMetrics() {
+            List<String> lines = new ArrayList<>();
+            metric(lines, "bakakeeper_daemon_start_time_seconds", "gauge", "Spuštění procesu.", seconds(started));
+            metric(lines, "bakakeeper_sync_runs_total", "counter", "Dokončené běhy synchronizace.", runs);
+            metric(lines, "bakakeeper_sync_failed_runs_total", "counter", "Běhy ukončené výjimkou.", failedRuns);
+            metric(lines, "bakakeeper_sync_running", "gauge", "Právě probíhá běh.", running ? 1 : 0);
+            metric(lines, "bakakeeper_sync_last_duration_seconds", "gauge", "Doba posledního běhu.",
+                    lastDurationMs / 1000.0);
+            metric(lines, "bakakeeper_sync_last_actions", "gauge", "Změny posledního běhu.", lastActions);
+            metric(lines, "bakakeeper_sync_last_errors", "gauge", "Chyby posledního běhu.", lastErrors);
+            metric(lines, "bakakeeper_sync_last_success_time_seconds", "gauge", "Konec posledního běhu bez výjimky.",
+                    seconds(lastSuccess));
+            metric(lines, "bakakeeper_sync_next_run_time_seconds", "gauge", "Plánovaný další běh.", seconds(nextRun));
+            return lines;
+        }
+
+        private static double seconds(Instant instant) {
+            return (instant != null) ? instant.toEpochMilli() / 1000.0 : 0;
+        }
+
+        private static void metric(List<String> lines, String name, String type, String help, double value) {
+            lines.add("# HELP " + name + " " + help);
+            lines.add("# TYPE " + name + " " + type);
+            lines.add(name + " " + ((value == Math.rint(value))
+                    ? Long.toString((long) value)
+                    : String.format(Locale.ROOT, "%.3f", value)));
+        }
+    }
+
+    private final Supplier<SyncReport> job;
+    private final Duration interval;
+    private final Duration jitter;
+    private final Path triggerFile;
+
+    private final Object monitor = new Object();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private boolean triggered;
+    private volatile boolean stopped;
+
+    private final Instant started = Instant.now();
+    private long runs;
+    private long failedRuns;
+    private boolean running;
+    private Instant lastStart;
+    private long lastDurationMs;
+    private int lastActions;
+    private int lastErrors;
+    private String lastFailure;
+    private Instant lastSuccess;
+    private Instant nextRun = started;
+
+    /**
+     * Konstruktor.
+     *
+     * @param job         jeden běh synchronizace
+     * @param interval    interval mezi běhy
+     * @param jitter      nejvyšší náhodné prodloužení intervalu
+     * @param triggerFile spouštěcí soubor (null = bez souboru)
+     */
+    public SyncDaemon(Supplier<SyncReport> job, Duration interval, Duration jitter, Path triggerFile) {
+        this.job = job;
+        this.interval = interval;
+        this.jitter = jitter;
+        this.triggerFile = triggerFile;
+    }
+
+    /**
+     * Spouští běhy, dokud není proces zastaven ({@link #stop()}). Blokující.
+     */
+    public void run() {
+        try {
+            while (!stopped) {
+                runOnce();
+                if (awaitNextRun()) {
+                    break;
+                }
+            }
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Vyžádá okamžitý běh (probíhající běh se dokončí, další začne ihned po něm).
+     */
+    public void trigger() {
+        synchronized (monitor) {
+            triggered = true;
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Zastaví proces – probíhající běh se dokončí.
+     */
+    public void stop() {
+        synchronized (monitor) {
+            stopped = true;
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Počká na ukončení {@link #run()}.
+     *
+     * @throws InterruptedException přerušení čekání
+     */
+    public void awaitTermination() throws InterruptedException {
+        finished.await();
+    }
+
+    /**
+     * Aktuální stav procesu.
+     *
+     * @return stav
+     */
+    public Status status() {
+        synchronized (monitor) {
+            return new Status(started, runs, failedRuns, running, lastStart, lastDurationMs,
+                    lastActions, lastErrors, lastFailure, lastSuccess, nextRun);
+        }
+    }
+
+    /**
+     * Jeden běh synchronizace se záznamem stavu.
+     */
+    private void runOnce() {
+        Instant start = Instant.now();
+        synchronized (monitor) {
+            running = true;
+            triggered = false;
+            lastStart = start;
+        }
+
+        SyncReport report = null;
+        String failure = null;
+        try {
+            report = job.get();
+        } catch (RuntimeException e) {
+            failure = (e.getMessage() != null) ? e.getMessage() : e.getClass().getSimpleName();
+            ReportManager.log(EBakaLogType.LOG_ERR, "Běh synchronizace selhal: " + failure);
+        }
+
+        Instant end = Instant.now();
+        synchronized (monitor) {
+            running = false;
+            runs++;
+            lastDurationMs = Duration.between(start, end).toMillis();
+            lastFailure = failure;
+            lastActions = (report != null) ? report.totalActions() : 0;
+            lastErrors = (report != null) ? (int) report.results().stream().filter(r -> !r.isSuccess()).count() : 0;
+            if (failure == null) {
+                lastSuccess = end;
+            } else {
+                failedRuns++;
+            }
+        }
+    }
+
+    /**
+     * Čeká na další běh – uplynutí intervalu, vyžádání nebo spouštěcí soubor.
+     *
+     * @return proces byl zastaven
+     */
+    private boolean awaitNextRun() {
+        long jitterMs = jitter.toMillis();
+        long delayMs = interval.toMillis() + ((jitterMs > 0) ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+        Instant due = Instant.now().plusMillis(delayMs);
+
+        synchronized (monitor) {
+            nextRun = due;
+            while (!stopped && !triggered) {
+                long remaining = Duration.between(Instant.now(), due).toMillis();
+                if (remaining <= 0) break;
+                if (consumeTriggerFile()) {
+                    triggered = true;
+                    break;
+                }
+
+                try {
+                    monitor.wait(Math.min(remaining, TRIGGER_POLL_MS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stopped = true;
+                }
+            }
+            if (triggered && !stopped) {
+                ReportManager.log(EBakaLogType.LOG_VERBOSE, "Vyžádán okamžitý běh synchronizace.");
+                nextRun = Instant.now();
+            }
+            return stopped;
+        }
+    }
+
+    /**
+     * Převezme (smaže) spouštěcí soubor, pokud existuje.
+     */
+    private boolean consumeTriggerFile() {
+        if (triggerFile == null) return false;
+        try {
+            return Files.deleteIfExists(triggerFile);
+        } catch (IOException e) {
+            ReportManager.log(EBakaLogType.LOG_ERR,
+                    "Spouštěcí soubor " + triggerFile + " nelze odstranit: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import cz.zsstudanka.skola.bakakeeper.components.EncryptionInputStream;
+import cz.zsstudanka.skola.bakakeeper.components.EncryptionOutputStream;
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Deník synchronizace (write-ahead) – plány fází, provedené operace a kontrolní
+ * body zapisujícího běhu. Po přerušení běhu (výpadek sítě, restart řadiče) se
+ * nedokončené operace provedou znovu příkazem {@code sync --resume} bez nového
+ * porovnání – účty nezůstanou napůl přejmenované. Do té doby se další
+ * zapisující synchronizace odmítne.
+ *
+ * <p>Soubor {@code sync-journal.dat} je posloupnost rámců {@code [délka][data]},
+ * data rámce jsou šifrovaná ({@code EncryptionOutputStream → GZIPOutputStream →
+ * ObjectOutputStream}). Šifrování rámce je drahé (odvození klíče), proto se
+ * provedené operace sdružují a zapisují na pozadí nejpozději po
+ * {@value #FLUSH_INTERVAL_MS} ms; plán fáze a její kontrolní bod se zapisují ihned.
+ * Operace bez záznamu tak mohla být provedena – před zopakováním se ověří.</p>
+ *
+ * <p>Neúplný rámec na konci souboru (pád během zápisu) se ignoruje a před
+ * dalším zápisem odřízne. Na konci běhu se deník zkompaktuje: bez
+ * nedokončených fází se smaže, jinak se přepíše jediným rámcem.</p>
+ *
+ * @author Jan Hladěna
+ */
+public class SyncJournal {
+
+    private static final String DEFAULT_FILE = "./sync-journal.dat";
+
+    /** nejdelší odklad zápisu provedených operací (ms) */
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    // --- záznamy deníku ---
+
+    /** Záznam deníku. */
+    sealed interface Entry extends Serializable
+            permits RunStarted, PhasePlanned, OperationApplied, PhaseCompleted {}
+
+    /** Zahájení běhu – fáze v pořadí deklarace. */
+    record RunStarted(Date started, List<String> phases) implements Entry {}
+
+    /** Plán fáze zapsaný před jeho provedením. */
+    record PhasePlanned(String phase, List<PlannedChange> changes) implements Entry {}
+
+    /** Provedená operace plánu – skutečné DN po přejmenování/přesunu, jinak null. */
+    record OperationApplied(String phase, int change, int operation, String dn) implements Entry {}
+
+    /** Kontrolní bod – fáze dokončena. */
+    record PhaseCompleted(String phase) implements Entry {}
+
+    /**
+     * Nedokončená fáze s plánem.
+     *
+     * @param phase   název fáze
+     * @param changes plán fáze
+     * @param applied provedené operace – pozice ({@link #position(int, int)}) → skutečné DN
+     */
+    public record PendingPhase(String phase, List<PlannedChange> changes, Map<Long, String> applied) {}
+
+    /**
+     * Stav deníku.
+     *
+     * @param started   zahájení posledního běhu (null = prázdný deník)
+     * @param phases    fáze posledního běhu v pořadí deklarace
+     * @param completed dokončené fáze
+     * @param pending   nedokončené fáze s plánem v pořadí zápisu
+     */
+    public record State(Date started, List<String> phases, Set<String> completed, List<PendingPhase> pending) {
+
+        /** Deník neobsahuje žádný běh. */
+        public boolean isEmpty() {
+            return started == null && pending.isEmpty();
+        }
+
+        /** Nedokončené fáze bez plánu – zapisují přímo, srovnají se při příští synchronizaci. */
+        public List<String> unfinishedPhases() {
+            Set<String> planned = new HashSet<>();
+            pending.forEach(p -> planned.add(p.phase()));
+            return phases.stream().filter(p -> !completed.contains(p) && !planned.contains(p)).toList();
+        }
+    }
+
+    /**
+     * Záznam provádění plánu jedné fáze ({@link PlanExecutor}).
+     */
+    public final class PhaseLog {
+
+        private final String phase;
+        private final Map<Long, String> applied;
+        private final boolean resumed;
+
+        private PhaseLog(String phase, Map<Long, String> applied, boolean resumed) {
+            this.phase = phase;
+            this.applied = new HashMap<>(applied);
+            this.resumed = resumed;
+        }
+
+        /** Operace byla provedena v přerušeném běhu. */
+        boolean isApplied(int change, int operation) {
+            return applied.containsKey(position(change, operation));
+        }
+
+        /** Skutečné DN po provedené operaci přejmenování/přesunu (jinak null). */
+        String appliedDn(int change, int operation) {
+            return applied.get(position(change, operation));
+        }
+
+        /** Obnovení přerušeného běhu – operace bez záznamu mohly být provedeny. */
+        boolean isResumed() {
+            return resumed;
+        }
+
+        /**
+         * Zaznamená provedenou operaci.
+         *
+         * @param change    pořadí změny v plánu fáze
+         * @param operation pořadí operace ve změně
+         * @param dn        skutečné DN po přejmenování/přesunu, jinak null
+         */
+        void applied(int change, int operation, String dn) {
+            append(new OperationApplied(phase, change, operation, dn));
+        }
+    }
+
+    private final String filePath;
+    private final char[] passphrase;
+
+    /** záznamy čekající na zápis */
+    private List<Entry> pending = new ArrayList<>();
+    private FileChannel channel;
+    private ScheduledExecutorService writer;
+    /** zápis selhal – deník se do konce běhu nevede */
+    private volatile boolean failed;
+    /** soubor obsahoval při otevření záznamy předchozího běhu */
+    private boolean inherited;
+    /** fáze s plánem zapsaným od otevření, zatím bez kontrolního bodu */
+    private final Set<String> openPhases = new HashSet<>();
+
+    /**
+     * Vytvoří deník s výchozí cestou {@code ./sync-journal.dat}.
+     *
+     * @param passphrase heslo pro šifrování/dešifrování
+     */
+    public SyncJournal(char[] passphrase) {
+        this(DEFAULT_FILE, passphrase);
+    }
+
+    /**
+     * Vytvoří deník s explicitní cestou.
+     *
+     * @param filePath   cesta k souboru deníku
+     * @param passphrase heslo pro šifrování/dešifrování
+     */
+    public SyncJournal(String filePath, char[] passphrase) {
+        this.filePath = filePath;
+        this.passphrase = passphrase;
+    }
+
+    /**
+     * Pozice operace v plánu fáze.
+     *
+     * @param change    pořadí změny
+     * @param operation pořadí operace ve změně
+     * @return klíč pozice
+     */
+    static long position(int change, int operation) {
+        return ((long) change << 32) | (operation & 0xFFFFFFFFL);
+    }
+
+    // --- zápis ---
+
+    /**
+     * Zahájí běh.
+     *
+     * @param phases fáze běhu v pořadí deklarace
+     */
+    public void begin(List<String> phases) {
+        append(new RunStarted(new Date(), List.copyOf(phases)));
+    }
+
+    /**
+     * Zapíše plán fáze před jeho provedením.
+     *
+     * @param phase   název fáze
+     * @param changes plán fáze
+     * @return záznam provádění plánu
+     */
+    public PhaseLog plan(String phase, List<PlannedChange> changes) {
+        append(new PhasePlanned(phase, List.copyOf(changes)));
+        synchronized (this) {
+            openPhases.add(phase);
+        }
+        sync();
+        return new PhaseLog(phase, Map.of(), false);
+    }
+
+    /**
+     * Záznam provádění nedokončené fáze – s již provedenými operacemi.
+     *
+     * @param phase nedokončená fáze
+     * @return záznam provádění plánu
+     */
+    public PhaseLog resume(PendingPhase phase) {
+        return new PhaseLog(phase.phase(), phase.applied(), true);
+    }
+
+    /**
+     * Zapíše kontrolní bod – fáze je dokončena. Kontrolní bod fáze s plánem
+     * se zapíše ihned (jinak by se plán při obnovení zopakoval).
+     *
+     * @param phase název fáze
+     */
+    public void checkpoint(String phase) {
+        append(new PhaseCompleted(phase));
+        boolean planned;
+        synchronized (this) {
+            planned = openPhases.remove(phase);
+        }
+        if (planned) {
+            sync();
+        }
+    }
+
+    /**
+     * Ukončí zápis a zkompaktuje deník – bez nedokončených fází jej smaže,
+     * jinak jej přepíše jediným rámcem.
+     */
+    public void compact() {
+        boolean clean;
+        synchronized (this) {
+            clean = !inherited && openPhases.isEmpty();
+        }
+        close();
+
+        Path path = Path.of(filePath);
+        // všechny plány tohoto běhu jsou dokončené – není co načítat
+        State state = clean ? new State(null, List.of(), Set.of(), List.of()) : load();
+        try {
+            if (state.pending().isEmpty()) {
+                Files.deleteIfExists(path);
+                return;
+            }
+
+            List<Entry> entries = new ArrayList<>();
+            if (state.started() != null) {
+                entries.add(new RunStarted(state.started(), state.phases()));
+            }
+            state.completed().forEach(phase -> entries.add(new PhaseCompleted(phase)));
+            for (PendingPhase phase : state.pending()) {
+                entries.add(new PhasePlanned(phase.phase(), phase.changes()));
+                phase.applied().forEach((position, dn) -> entries.add(new OperationApplied(
+                        phase.phase(), (int) (position >>> 32), (int) (long) position, dn)));
+            }
+
+            Path tmp = Path.of(filePath + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFrame(out, entries);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            ReportManager.log(EBakaLogType.LOG_ERR,
+                    "Chyba při kompaktaci deníku synchronizace " + filePath + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Přidá záznam k zápisu (nejpozději po {@value #FLUSH_INTERVAL_MS} ms).
+     */
+    private synchronized void append(Entry entry) {
+        if (failed) return;
+
+        if (writer == null) {
+            try {
+                open();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+        }
+        pending.add(entry);
+    }
+
+    /**
+     * Otevře deník pro zápis – odřízne neúplný rámec na konci.
+     */
+    private void open() throws IOException {
+        long valid = scan(null);
+        inherited = valid > 0;
+        channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(valid);
+        channel.position(valid);
+
+        writer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("sync-journal").daemon(true).factory());
+        writer.scheduleWithFixedDelay(this::drain, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Počká na zápis všech dosud přidaných záznamů.
+     */
+    private void sync() {
+        ScheduledExecutorService current;
+        synchronized (this) {
+            current = writer;
+        }
+        if (current == null) return;
+
+        try {
+            current.submit(this::drain).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            fail(e.getCause());
+        }
+    }
+
+    /**
+     * Zapíše čekající záznamy jedním rámcem (vlákno zápisu).
+     */
+    private void drain() {
+        List<Entry> batch;
+        synchronized (this) {
+            if (pending.isEmpty() || failed) return;
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+
+        try {
+            writeFrame(channel, batch);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Dokončí zápis a uzavře soubor.
+     */
+    private void close() {
+        sync();
+
+        ScheduledExecutorService current;
+        synchronized (this) {
+            current = writer;
+            writer = null;
+            pending = new ArrayList<>();
+            failed = false;
+            inherited = false;
+            openPhases.clear();
+        }
+        if (current == null) return;
+
+        current.close();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ReportManager.log(EBakaLogType.LOG_ERR,
+                    "Chyba při uzavírání deníku synchronizace " + filePath + ": " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    private void fail(Throwable e) {
+        if (!failed) {
+            failed = true;
+            ReportManager.log(EBakaLogType.LOG_ERR, "Deník synchronizace " + filePath
+                    + " nelze zapsat, přerušený běh nepůjde obnovit: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Zapíše šifrovaný rámec a vynutí jeho uložení na disk.
+     */
+    private void writeFrame(FileChannel out, List<Entry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (EncryptionOutputStream encrypted = new EncryptionOutputStream(bytes, passphrase);
+             GZIPOutputStream gzip = new GZIPOutputStream(encrypted);
+             ObjectOutputStream oos = new ObjectOutputStream(gzip)) {
+
+            oos.writeObject(new ArrayList<>(entries));
+        }
+
+        byte[] frame = bytes.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + frame.length);
+        buffer.putInt(frame.length).put(frame).flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        out.force(false);
+    }
+
+    // --- čtení ---
+
+    /**
+     * Načte stav deníku.
+     *
+     * @return stav deníku (prázdný, pokud soubor chybí)
+     */
+    public State load() {
+        List<Entry> entries = new ArrayList<>();
+        scan(entries);
+
+        Date started = null;
+        List<String> phases = List.of();
+        Set<String> completed = new LinkedHashSet<>();
+        Map<String, List<PlannedChange>> planned = new LinkedHashMap<>();
+        Map<String, Map<Long, String>> applied = new HashMap<>();
+
+        for (Entry entry : entries) {
+            switch (entry) {
+                case RunStarted run -> {
+                    started = run.started();
+                    phases = run.phases();
+                }
+                case PhasePlanned plan -> {
+                    // nový plán fáze (další běh) nahrazuje předchozí včetně jeho provedených operací
+                    planned.put(plan.phase(), plan.changes());
+                    applied.remove(plan.phase());
+                    completed.remove(plan.phase());
+                }
+                case OperationApplied op -> applied.computeIfAbsent(op.phase(), k -> new HashMap<>())
+                        .put(position(op.change(), op.operation()), op.dn());
+                case PhaseCompleted checkpoint -> completed.add(checkpoint.phase());
+            }
+        }
+
+        List<PendingPhase> pendingPhases = new ArrayList<>();
+        planned.forEach((phase, changes) -> {
+            if (!completed.contains(phase)) {
+                pendingPhases.add(new PendingPhase(phase, changes, applied.getOrDefault(phase, Map.of())));
+            }
+        });
+        return new State(started, phases, completed, pendingPhases);
+    }
+
+    /**
+     * Projde rámce deníku.
+     *
+     * @param entries načtené záznamy (null = jen ověřit délky rámců bez dešifrování)
+     * @return délka platné části souboru
+     */
+    private long scan(List<Entry> entries) {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            return 0;
+        }
+
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (length <= 0 || length > file.length() - valid - Integer.BYTES) {
+                    throw new EOFException();
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                if (entries != null) {
+                    entries.addAll(readFrame(frame));
+                }
+                valid += Integer.BYTES + length;
+            }
+        } catch (Exception e) {
+            ReportManager.log(EBakaLogType.LOG_WARN, "Neúplný záznam na konci deníku synchronizace "
+                    + filePath + " se ignoruje.");
+        }
+        return valid;
+    }
+
+    private List<Entry> readFrame(byte[] frame) throws IOException, ClassNotFoundException {
+        try (EncryptionInputStream decrypted = new EncryptionInputStream(new ByteArrayInputStream(frame), passphrase);
+             GZIPInputStream gzip = new GZIPInputStream(decrypted);
+             ObjectInputStream ois = new ObjectInputStream(gzip)) {
+
+            List<Entry> entries = new ArrayList<>();
+            if (ois.readObject() instanceof List<?> list) {
+                for (Object entry : list) {
+                    if (entry instanceof Entry e) entries.add(e);
+                }
+            }
+            return entries;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package cz.zsstudanka.skola.bakakeeper.service;
 
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
 import cz.zsstudanka.skola.bakakeeper.config.AppConfig;
 import cz.zsstudanka.skola.bakakeeper.config.SyncRule;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
 import cz.zsstudanka.skola.bakakeeper.model.FacultyRecord;
 import cz.zsstudanka.skola.bakakeeper.model.GuardianRecord;
 import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
@@ -9,20 +11,29 @@ import cz.zsstudanka.skola.bakakeeper.model.SyncScope;
 import cz.zsstudanka.skola.bakakeeper.repository.FacultyRepository;
 import cz.zsstudanka.skola.bakakeeper.repository.GuardianRepository;
 import cz.zsstudanka.skola.bakakeeper.repository.LDAPUserRepository;
+import cz.zsstudanka.skola.bakakeeper.repository.StudentDelta;
 import cz.zsstudanka.skola.bakakeeper.repository.StudentRepository;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 /**
  * Orchestrátor synchronizace – nahrazuje Sync.actionSync().
  * Koordinuje služby ve správném pořadí a agreguje výsledky.
  *
  * Pořadí fází:
- * 0. Kontrola a oprava AD struktury (StructureService)
+ * 0. Kontrola a oprava AD struktury (StructureService),
+ *    poté souběžné načtení všech nezávislých bází (SQL, žáci, zaměstnanci, kontakty)
  * 1. Synchronizace třídních distribučních seznamů (FacultyService)
  * 2. Inicializace nových žáků – vytvoření účtů (StudentService)
  * 3. Kontrola a srovnání dat spárovaných žáků (StudentService)
@@ -30,10 +41,53 @@ import java.util.Set;
  * 5. Synchronizace zákonných zástupců (GuardianService)
  * 6. Aplikace deklarativních pravidel (RuleService)
  *
+ * Fáze deklarují čtené a zapisované zdroje ({@link SyncPhase}); plánovač
+ * ({@link PhaseScheduler}) spouští nezávislé fáze souběžně – třídní učitelé,
+ * žáci (2–4) a zákonní zástupci zapisují různé objekty. Pořadí výsledků
+ * i událostí listeneru odpovídá pořadí fází výše.
+ *
+ * Zapisující běh vede deník ({@link SyncJournal}) – plány fází 3 a 4,
+ * provedené operace a kontrolní bod po každé fázi. Přerušený běh se dokončí
+ * výhradně příkazem {@link #resume(SyncProgressListener)}; dokud v deníku
+ * zůstávají neprovedené operace, další zapisující běh se nespustí. Průběžná
+ * synchronizace (daemon) jej proto před každým během dokončí sama
+ * ({@link #hasUnfinishedRun()}).
+ *
  * @author Jan Hladěna
  */
 public class SyncOrchestrator {
 
+    // --- zdroje fází synchronizace ---
+
+    /** OU a skupiny AD */
+    private static final String AD_STRUCTURE = "ad.structure";
+    /** předem načtená data ({@link SyncPrefetch}) */
+    private static final String PREFETCH = "prefetch";
+    /** žáci v evidenci (zpětný zápis e-mailů) */
+    private static final String SQL_STUDENTS = "sql.students";
+    /** vyučující v evidenci */
+    private static final String SQL_FACULTY = "sql.faculty";
+    /** žákovské účty a skupiny tříd */
+    private static final String LDAP_STUDENTS = "ldap.students";
+    /** zaměstnanecké účty */
+    private static final String LDAP_STAFF = "ldap.staff";
+    /** distribuční seznamy třídních učitelů */
+    private static final String LDAP_FACULTY_LISTS = "ldap.faculty-lists";
+    /** kontakty zákonných zástupců a jejich distribuční seznamy */
+    private static final String LDAP_CONTACTS = "ldap.contacts";
+
+    /**
+     * Data předávaná mezi fázemi jednoho běhu. Fáze, která pole zapisuje, vždy
+     * skončí před spuštěním fází, které je čtou (závislost přes zdroj).
+     */
+    private static final class PhaseData {
+        SyncPrefetch prefetch;
+        List<StudentRecord> ldapStudents;
+        GuardianSyncOutcome guardianOutcome;
+        /** plán synchronizace dat a vyřazení žáků */
+        final List<PlannedChange> plan = Collections.synchronizedList(new ArrayList<>());
+    }
+
     private final AppConfig config;
     private final StudentRepository studentRepo;
     private final LDAPUserRepository ldapUserRepo;
@@ -46,6 +100,9 @@ public class SyncOrchestrator {
     private final GuardianService guardianService;
     private final RuleService ruleService;
 
+    /** deník zapisujících běhů (null = bez deníku) */
+    private final SyncJournal journal;
+
     public SyncOrchestrator(AppConfig config,
                             StudentRepository studentRepo,
                             LDAPUserRepository ldapUserRepo,
@@ -56,6 +113,21 @@ public class SyncOrchestrator {
                             FacultyService facultyService,
                             GuardianService guardianService,
                             RuleService ruleService) {
+        this(config, studentRepo, ldapUserRepo, facultyRepo, guardianRepo, structureService,
+                studentService, facultyService, guardianService, ruleService, null);
+    }
+
+    public SyncOrchestrator(AppConfig config,
+                            StudentRepository studentRepo,
+                            LDAPUserRepository ldapUserRepo,
+                            FacultyRepository facultyRepo,
+                            GuardianRepository guardianRepo,
+                            StructureService structureService,
+                            StudentService studentService,
+                            FacultyService facultyService,
+                            GuardianService guardianService,
+                            RuleService ruleService,
+                            SyncJournal journal) {
         this.config = config;
         this.studentRepo = studentRepo;
         this.ldapUserRepo = ldapUserRepo;
@@ -66,80 +138,125 @@ public class SyncOrchestrator {
         this.facultyService = facultyService;
         this.guardianService = guardianService;
         this.ruleService = ruleService;
+        this.journal = journal;
     }
 
     /**
-     * Spustí kompletní synchronizaci – všechny fáze v pořadí.
+     * Spustí kompletní synchronizaci – všechny fáze podle grafu závislostí,
+     * souběžně nejvýše {@link AppConfig#getMaxParallelPhases()} fází.
      *
      * @param repair provést zápis (true) nebo jen kontrolu (false)
      * @param listener sledování průběhu
      * @return strukturovaný výsledek synchronizace
      */
     public SyncReport runFullSync(boolean repair, SyncProgressListener listener) {
+        return runFullSync(repair, config.getMaxParallelPhases(), listener);
+    }
+
+    /**
+     * Spustí kompletní synchronizaci – všechny fáze podle grafu závislostí.
+     *
+     * @param repair provést zápis (true) nebo jen kontrolu (false)
+     * @param maxParallelPhases nejvyšší počet souběžně běžících fází (1 = postupně)
+     * @param listener sledování průběhu
+     * @return strukturovaný výsledek synchronizace
+     */
+    public SyncReport runFullSync(boolean repair, int maxParallelPhases, SyncProgressListener listener) {
         listener.onPhaseStart("Kompletní synchronizace");
         List<SyncResult> allResults = new ArrayList<>();
-
-        // 0. Kontrola a oprava AD struktury (OU, skupiny, distribuční seznamy)
-        allResults.addAll(structureService.checkAndRepairStructure(repair, listener));
-
-        // --- Načtení dat z repozitářů ---
-        listener.onProgress("Načítání dat z SQL evidence...");
-        List<StudentRecord> sqlStudents = studentRepo.findActive(null, null);
-        listener.onProgress("Nalezeno " + sqlStudents.size() + " žáků v SQL.");
-
-        listener.onProgress("Načítání dat z Active Directory...");
-        List<StudentRecord> ldapStudents = ldapUserRepo.findAllStudents(
-                config.getLdapBaseStudents(), config.getLdapBaseAlumni());
-        listener.onProgress("Nalezeno " + ldapStudents.size() + " žáků v LDAP.");
-
-        // 1. Synchronizace distribučních skupin třídních učitelů
-        addAndNotify(allResults, syncFaculty(repair, listener), listener);
-
-        // 2. Inicializace nových žáků
-        addAndNotify(allResults, studentService.initializeNewStudents(
-                sqlStudents, ldapStudents, repair, listener), listener);
-
-        // 3. Kontrola a srovnání dat (znovu načíst LDAP – mohly přibýt nové účty)
-        if (repair) {
-            ldapStudents = ldapUserRepo.findAllStudents(
-                    config.getLdapBaseStudents(), config.getLdapBaseAlumni());
-        }
-        addAndNotify(allResults, studentService.syncStudentData(
-                sqlStudents, ldapStudents, repair, listener), listener);
-
-        // 4. Vyřazení osiřelých žáků
-        addAndNotify(allResults, studentService.retireOrphanedStudents(
-                sqlStudents, ldapStudents, repair, listener), listener);
-
-        // 5. Synchronizace zákonných zástupců (s validací kontaktních údajů)
-        GuardianSyncOutcome guardianOutcome = syncGuardians(sqlStudents, repair, listener);
-        addAndNotify(allResults, guardianOutcome.results(), listener);
-
-        // 6. Aplikace deklarativních pravidel (konvergentní model)
-        //    Pravidla se spouští VŽDY – i když je seznam pravidel prázdný.
-        //    Bezstavová rekonciliace: extensionAttribute5–15 se vyčistí vždy,
-        //    pokud je žádné pravidlo nepřiřazuje (i s rules: []).
-        {
-            // znovu načíst žáky – po všech úpravách
-            if (repair) {
-                ldapStudents = ldapUserRepo.findAllStudents(
-                        config.getLdapBaseStudents(), config.getLdapBaseAlumni());
-            }
-
-            // sestavit cílový seznam – žáci + zaměstnanci (pokud pravidla vyžadují)
-            List<StudentRecord> ruleTargets = buildRuleTargets(
-                    config.getRules(), ldapStudents, listener);
-
-            addAndNotify(allResults, ruleService.applyRules(
-                    config.getRules(), ruleTargets, repair, listener), listener);
-        }
+        PhaseData data = new PhaseData();
+        SyncJournal runJournal = repair ? journal : null;
+
+        List<SyncPhase> phases = List.of(
+                // 0. Kontrola a oprava AD struktury (OU, skupiny, distribuční seznamy)
+                new SyncPhase("Kontrola AD struktury",
+                        Set.of(), Set.of(AD_STRUCTURE), false,
+                        l -> structureService.checkAndRepairStructure(repair, l)),
+
+                // --- Souběžné načtení dat z repozitářů ---
+                new SyncPhase("Načtení dat",
+                        Set.of(AD_STRUCTURE, SQL_STUDENTS, SQL_FACULTY, LDAP_STUDENTS, LDAP_STAFF, LDAP_CONTACTS),
+                        Set.of(PREFETCH),
+                        l -> {
+                            data.prefetch = prefetch(null, null, l);
+                            data.ldapStudents = data.prefetch.ldapStudents();
+                            return List.of();
+                        }),
+
+                // 1. Synchronizace distribučních skupin třídních učitelů
+                new SyncPhase("Synchronizace třídních učitelů",
+                        Set.of(PREFETCH), Set.of(LDAP_FACULTY_LISTS, LDAP_STAFF),
+                        l -> facultyService.syncClassTeachers(
+                                data.prefetch.classTeachers(), data.prefetch.staffAccounts(), repair, l)),
+
+                // 2. Inicializace nových žáků
+                new SyncPhase("Inicializace nových žáků",
+                        Set.of(PREFETCH), Set.of(LDAP_STUDENTS, SQL_STUDENTS),
+                        l -> studentService.initializeNewStudents(data.prefetch.sqlStudents(),
+                                data.ldapStudents, data.prefetch.staffAccounts(), repair, l)),
+
+                // 3. Kontrola a srovnání dat (znovu načíst LDAP – mohly přibýt nové účty;
+                //    čtení obslouží snapshot včetně vlastních zápisů)
+                new SyncPhase("Synchronizace dat žáků",
+                        Set.of(PREFETCH), Set.of(LDAP_STUDENTS, SQL_STUDENTS),
+                        l -> {
+                            if (repair) {
+                                data.ldapStudents = ldapUserRepo.findAllStudents(
+                                        config.getLdapBaseStudents(), config.getLdapBaseAlumni());
+                            }
+                            return planAndApply("Synchronizace dat žáků", repair, runJournal, data.plan,
+                                    () -> studentService.planStudentData(
+                                            data.prefetch.sqlStudents(), data.ldapStudents, repair, l), l);
+                        }),
+
+                // 4. Vyřazení osiřelých žáků
+                new SyncPhase("Vyřazení osiřelých účtů",
+                        Set.of(PREFETCH), Set.of(LDAP_STUDENTS, SQL_STUDENTS),
+                        l -> planAndApply("Vyřazení osiřelých účtů", repair, runJournal, data.plan,
+                                () -> studentService.planRetirement(
+                                        data.prefetch.sqlStudents(), data.ldapStudents, repair, l), l)),
+
+                // 5. Synchronizace zákonných zástupců (s validací kontaktních údajů)
+                new SyncPhase("Synchronizace zákonných zástupců",
+                        Set.of(PREFETCH), Set.of(LDAP_CONTACTS),
+                        l -> {
+                            data.guardianOutcome = guardianService.syncGuardians(data.prefetch.sqlStudents(),
+                                    data.prefetch.contacts(), buildClassTeacherMap(data.prefetch.classTeachers()),
+                                    repair, l);
+                            return data.guardianOutcome.results();
+                        }),
+
+                // 6. Aplikace deklarativních pravidel (konvergentní model)
+                //    Pravidla se spouští VŽDY – i když je seznam pravidel prázdný.
+                //    Bezstavová rekonciliace: extensionAttribute5–15 se vyčistí vždy,
+                //    pokud je žádné pravidlo nepřiřazuje (i s rules: []).
+                new SyncPhase("Aplikace deklarativních pravidel",
+                        Set.of(PREFETCH), Set.of(LDAP_STUDENTS, LDAP_STAFF),
+                        l -> {
+                            // znovu načíst žáky – po všech úpravách (ze snapshotu)
+                            List<StudentRecord> ldapStudents = data.ldapStudents;
+                            if (repair) {
+                                ldapStudents = ldapUserRepo.findAllStudents(
+                                        config.getLdapBaseStudents(), config.getLdapBaseAlumni());
+                            }
+
+                            // sestavit cílový seznam – žáci + zaměstnanci (pokud pravidla vyžadují)
+                            List<StudentRecord> ruleTargets = buildRuleTargets(
+                                    config.getRules(), ldapStudents, repair, data.prefetch.staffAccounts(), l);
+
+                            return ruleService.applyRules(config.getRules(), ruleTargets, repair, l);
+                        })
+        );
+
+        List<PhaseTiming> timings = runPhases(phases, maxParallelPhases, runJournal, allResults, listener);
 
         // --- Souhrn ---
         int ok = (int) allResults.stream().filter(SyncResult::isSuccess).count();
         int err = (int) allResults.stream().filter(r -> !r.isSuccess()).count();
         listener.onPhaseEnd("Kompletní synchronizace", ok, err);
 
-        return new SyncReport(allResults, guardianOutcome.validationErrors());
+        return new SyncReport(allResults, data.guardianOutcome.validationErrors(), timings,
+                new SyncPlan(data.plan));
     }
 
     /**
@@ -158,32 +275,76 @@ public class SyncOrchestrator {
                 + (classLetter != null ? "." + classLetter : "");
         listener.onPhaseStart("Synchronizace rozsahu: " + scopeLabel);
         List<SyncResult> allResults = new ArrayList<>();
+        PhaseData data = new PhaseData();
+        SyncJournal runJournal = repair ? journal : null;
+
+        List<SyncPhase> phases = List.of(
+                // filtrovaní SQL studenti a všichni LDAP studenti (nutné pro párování) – souběžně
+                new SyncPhase("Načtení dat",
+                        Set.of(SQL_STUDENTS, SQL_FACULTY, LDAP_STUDENTS, LDAP_STAFF, LDAP_CONTACTS),
+                        Set.of(PREFETCH),
+                        l -> {
+                            data.prefetch = prefetch(classYear, classLetter, l);
+                            data.ldapStudents = data.prefetch.ldapStudents();
+                            return List.of();
+                        }),
+
+                // 1. Inicializace nových žáků (filtrovaní SQL vs. všichni LDAP)
+                new SyncPhase("Inicializace nových žáků",
+                        Set.of(PREFETCH), Set.of(LDAP_STUDENTS, SQL_STUDENTS),
+                        l -> studentService.initializeNewStudents(data.prefetch.sqlStudents(),
+                                data.ldapStudents, data.prefetch.staffAccounts(), repair, l)),
+
+                // 2. Kontrola a srovnání dat (znovu načíst LDAP – mohly přibýt nové účty;
+                //    čtení obslouží snapshot včetně vlastních zápisů)
+                new SyncPhase("Synchronizace dat žáků",
+                        Set.of(PREFETCH), Set.of(LDAP_STUDENTS, SQL_STUDENTS),
+                        l -> {
+                            if (repair) {
+                                data.ldapStudents = ldapUserRepo.findAllStudents(
+                                        config.getLdapBaseStudents(), config.getLdapBaseAlumni());
+                            }
+                            return planAndApply("Synchronizace dat žáků", repair, runJournal, data.plan,
+                                    () -> studentService.planStudentData(
+                                            data.prefetch.sqlStudents(), data.ldapStudents, repair, l), l);
+                        }),
+
+                // 3. Vyřazení osiřelých žáků – filtrovat LDAP na stejný rozsah
+                new SyncPhase("Vyřazení osiřelých účtů",
+                        Set.of(PREFETCH), Set.of(LDAP_STUDENTS, SQL_STUDENTS),
+                        l -> planAndApply("Vyřazení osiřelých účtů", repair, runJournal, data.plan,
+                                () -> studentService.planRetirement(data.prefetch.sqlStudents(),
+                                        inScope(data.ldapStudents, classYear, classLetter), repair, l), l)),
+
+                // 4. Synchronizace zákonných zástupců pro filtrované žáky
+                new SyncPhase("Synchronizace zákonných zástupců",
+                        Set.of(PREFETCH), Set.of(LDAP_CONTACTS),
+                        l -> {
+                            data.guardianOutcome = guardianService.syncGuardians(data.prefetch.sqlStudents(),
+                                    data.prefetch.contacts(), buildClassTeacherMap(data.prefetch.classTeachers()),
+                                    repair, l);
+                            return data.guardianOutcome.results();
+                        })
+        );
+
+        List<PhaseTiming> timings = runPhases(phases, config.getMaxParallelPhases(), runJournal,
+                allResults, listener);
 
-        // načíst filtrované SQL studenty
-        listener.onProgress("Načítání dat z SQL evidence (rozsah: " + scopeLabel + ")...");
-        List<StudentRecord> sqlStudents = studentRepo.findActive(classYear, classLetter);
-        listener.onProgress("Nalezeno " + sqlStudents.size() + " žáků v SQL.");
-
-        // načíst všechny LDAP studenty (nutné pro párování)
-        listener.onProgress("Načítání dat z Active Directory...");
-        List<StudentRecord> ldapStudents = ldapUserRepo.findAllStudents(
-                config.getLdapBaseStudents(), config.getLdapBaseAlumni());
-        listener.onProgress("Nalezeno " + ldapStudents.size() + " žáků v LDAP.");
-
-        // 1. Inicializace nových žáků (filtrovaní SQL vs. všichni LDAP)
-        addAndNotify(allResults, studentService.initializeNewStudents(
-                sqlStudents, ldapStudents, repair, listener), listener);
+        // --- Souhrn ---
+        int ok = (int) allResults.stream().filter(SyncResult::isSuccess).count();
+        int err = (int) allResults.stream().filter(r -> !r.isSuccess()).count();
+        listener.onPhaseEnd("Synchronizace rozsahu: " + scopeLabel, ok, err);
 
-        // 2. Kontrola a srovnání dat (znovu načíst LDAP – mohly přibýt nové účty)
-        if (repair) {
-            ldapStudents = ldapUserRepo.findAllStudents(
-                    config.getLdapBaseStudents(), config.getLdapBaseAlumni());
-        }
-        addAndNotify(allResults, studentService.syncStudentData(
-                sqlStudents, ldapStudents, repair, listener), listener);
+        return new SyncReport(allResults, data.guardianOutcome.validationErrors(), timings,
+                new SyncPlan(data.plan));
+    }
 
-        // 3. Vyřazení osiřelých žáků – filtrovat LDAP na stejný rozsah
-        List<StudentRecord> ldapFiltered = ldapStudents.stream()
+    /**
+     * Žákovské účty v rozsahu ročníku/třídy podle DN struktury.
+     */
+    private static List<StudentRecord> inScope(List<StudentRecord> ldapStudents,
+                                               Integer classYear, String classLetter) {
+        return ldapStudents.stream()
                 .filter(s -> {
                     if (s.getDn() == null) return false;
                     try {
@@ -201,19 +362,6 @@ public class SyncOrchestrator {
                     }
                 })
                 .toList();
-        addAndNotify(allResults, studentService.retireOrphanedStudents(
-                sqlStudents, ldapFiltered, repair, listener), listener);
-
-        // 4. Synchronizace zákonných zástupců pro filtrované žáky
-        GuardianSyncOutcome guardianOutcome = syncGuardians(sqlStudents, repair, listener);
-        addAndNotify(allResults, guardianOutcome.results(), listener);
-
-        // --- Souhrn ---
-        int ok = (int) allResults.stream().filter(SyncResult::isSuccess).count();
-        int err = (int) allResults.stream().filter(r -> !r.isSuccess()).count();
-        listener.onPhaseEnd("Synchronizace rozsahu: " + scopeLabel, ok, err);
-
-        return new SyncReport(allResults, guardianOutcome.validationErrors());
     }
 
     /**
@@ -224,7 +372,7 @@ public class SyncOrchestrator {
      * @return výsledky inicializace
      */
     public List<SyncResult> runInitOnly(boolean repair, SyncProgressListener listener) {
-        List<StudentRecord> sqlStudents = studentRepo.findActive(null, null);
+        List<StudentRecord> sqlStudents = studentRepo.findActiveChanges().students();
         List<StudentRecord> ldapStudents = ldapUserRepo.findAllStudents(
                 config.getLdapBaseStudents(), config.getLdapBaseAlumni());
 
@@ -239,11 +387,12 @@ public class SyncOrchestrator {
      * @return výsledky kontroly
      */
     public List<SyncResult> runCheckOnly(boolean repair, SyncProgressListener listener) {
-        List<StudentRecord> sqlStudents = studentRepo.findActive(null, null);
+        List<StudentRecord> sqlStudents = studentRepo.findActiveChanges().students();
         List<StudentRecord> ldapStudents = ldapUserRepo.findAllStudents(
                 config.getLdapBaseStudents(), config.getLdapBaseAlumni());
 
-        return studentService.syncStudentData(sqlStudents, ldapStudents, repair, listener);
+        return planAndApply("Synchronizace dat žáků", repair, null, new ArrayList<>(),
+                () -> studentService.planStudentData(sqlStudents, ldapStudents, repair, listener), listener);
     }
 
     /**
@@ -254,7 +403,7 @@ public class SyncOrchestrator {
      * @return výsledky synchronizace
      */
     public GuardianSyncOutcome runGuardiansOnly(boolean repair, SyncProgressListener listener) {
-        List<StudentRecord> sqlStudents = studentRepo.findActive(null, null);
+        List<StudentRecord> sqlStudents = studentRepo.findActiveChanges().students();
         return syncGuardians(sqlStudents, repair, listener);
     }
 
@@ -281,20 +430,202 @@ public class SyncOrchestrator {
     }
 
     /**
-     * Přidá výsledky do seznamu a přepošle je listeneru.
-     * Služby vracejí výsledky jako seznam, ale listener potřebuje
-     * každý výsledek individuálně pro real-time zobrazení v GUI.
+     * Provede dříve sestavený (a zkontrolovaný) plán synchronizace – pouze
+     * jeho zápisové operace, bez nového porovnání evidence s adresářem.
+     * Operace, které mezitím nelze provést (objekt neexistuje, kolize),
+     * skončí chybou ve výsledcích. Plán starší než
+     * {@link AppConfig#getSyncPlanMaxAge()} se odmítne – jeho operace by
+     * přepsaly mezitím změněné údaje evidence i adresáře.
+     *
+     * @param plan plán synchronizace
+     * @param listener sledování průběhu
+     * @return výsledky provedení plánu
+     * @throws IllegalStateException plán je starší než povolené stáří
      */
-    private void addAndNotify(List<SyncResult> target, List<SyncResult> results,
-                               SyncProgressListener listener) {
-        for (SyncResult r : results) {
-            target.add(r);
-            listener.onResult(r);
+    public SyncReport applyPlan(SyncPlan plan, SyncProgressListener listener) {
+        int maxAge = config.getSyncPlanMaxAge();
+        long age = (System.currentTimeMillis() - plan.created().getTime()) / 1000;
+        if (maxAge > 0 && age > maxAge) {
+            throw new IllegalStateException("Plán synchronizace z "
+                    + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(plan.created())
+                    + " je starší než " + maxAge + " s (sync.plan_max_age_s). Sestavte nový plán"
+                    + " (sync --dryrun --save-plan).");
         }
+
+        String phaseName = "Provedení plánu synchronizace";
+        listener.onPhaseStart(phaseName);
+        List<SyncResult> results = new ArrayList<>();
+
+        List<SyncPhase> phases = List.of(new SyncPhase(phaseName,
+                Set.of(), Set.of(LDAP_STUDENTS, SQL_STUDENTS),
+                l -> studentService.applyPlan(plan.changes(),
+                        (journal != null) ? journal.plan(phaseName, plan.changes()) : null, l)));
+        List<PhaseTiming> timings = runPhases(phases, 1, journal, results, listener);
+
+        int ok = (int) results.stream().filter(SyncResult::isSuccess).count();
+        int err = (int) results.stream().filter(r -> !r.isSuccess()).count();
+        listener.onPhaseEnd(phaseName, ok, err);
+
+        return new SyncReport(results, List.of(), timings, plan);
+    }
+
+    /**
+     * Zjistí, zda deník obsahuje neprovedené operace přerušeného běhu –
+     * do jejich dokončení ({@link #resume(SyncProgressListener)}) se zapisující
+     * běh nespustí.
+     *
+     * @return deník obsahuje neprovedené operace
+     */
+    public boolean hasUnfinishedRun() {
+        return journal != null && !journal.load().pending().isEmpty();
+    }
+
+    /**
+     * Dokončí přerušenou synchronizaci podle deníku – provede jen neprovedené
+     * operace plánů nedokončených fází, bez nového porovnání evidence
+     * s adresářem. Fáze bez plánu se srovnají při příští synchronizaci.
+     *
+     * @param listener sledování průběhu
+     * @return výsledky dokončených operací
+     */
+    public SyncReport resume(SyncProgressListener listener) {
+        String phaseName = "Obnovení přerušené synchronizace";
+        listener.onPhaseStart(phaseName);
+
+        List<SyncResult> results = new ArrayList<>();
+        if (journal == null) {
+            ReportManager.log(EBakaLogType.LOG_WARN, "Deník synchronizace je vypnutý (sync.journal).");
+        } else {
+            ldapUserRepo.openSnapshot();
+            try {
+                results.addAll(replayJournal(listener));
+            } finally {
+                closeSnapshot(results, listener);
+            }
+        }
+
+        int ok = (int) results.stream().filter(SyncResult::isSuccess).count();
+        int err = (int) results.stream().filter(r -> !r.isSuccess()).count();
+        listener.onPhaseEnd(phaseName, ok, err);
+
+        return new SyncReport(results, List.of(), List.of());
     }
 
     // --- Interní pomocné metody ---
 
+    /**
+     * Spustí fáze běhu nad snapshotem adresáře. S deníkem po každé fázi zapíše
+     * kontrolní bod a na konci deník zkompaktuje (po chybě v něm nedokončené
+     * fáze zůstanou). Zbývající operace předchozího běhu se neprovádí – běh
+     * se odmítne a nejprve je nutné je dokončit ({@code sync --resume}).
+     *
+     * @param phases fáze v pořadí deklarace
+     * @param maxParallelPhases nejvyšší počet souběžně běžících fází
+     * @param runJournal deník běhu (null = bez deníku)
+     * @param allResults výsledky běhu
+     * @param listener sledování průběhu
+     * @return doby běhu fází
+     * @throws IllegalStateException deník obsahuje neprovedené operace předchozího běhu
+     */
+    private List<PhaseTiming> runPhases(List<SyncPhase> phases, int maxParallelPhases, SyncJournal runJournal,
+                                        List<SyncResult> allResults, SyncProgressListener listener) {
+        if (runJournal != null) {
+            SyncJournal.State unfinished = runJournal.load();
+            if (!unfinished.pending().isEmpty()) {
+                // nový plán téže fáze by se v deníku smíchal s operacemi přerušeného běhu
+                throw new IllegalStateException("Předchozí synchronizace"
+                        + ((unfinished.started() != null)
+                                ? " z " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(unfinished.started()) : "")
+                        + " nebyla dokončena. Nejprve ji dokončete příkazem bakakeeper sync --resume.");
+            }
+            runJournal.begin(phases.stream().map(SyncPhase::name).toList());
+            phases = phases.stream()
+                    .map(phase -> new SyncPhase(phase.name(), phase.reads(), phase.writes(), phase.notifyResults(),
+                            l -> {
+                                List<SyncResult> results = phase.action().apply(l);
+                                runJournal.checkpoint(phase.name());
+                                return results;
+                            }))
+                    .toList();
+        }
+
+        // snapshot adresáře – opakovaná čtení mezi fázemi bez prohledávání stromu
+        ldapUserRepo.openSnapshot();
+        try {
+            return new PhaseScheduler(maxParallelPhases).run(phases, allResults, listener);
+        } finally {
+            closeSnapshot(allResults, listener);
+            if (runJournal != null) {
+                runJournal.compact();
+            }
+        }
+    }
+
+    /**
+     * Provede neprovedené operace nedokončených fází z deníku.
+     *
+     * @param listener sledování průběhu
+     * @return výsledky změn s neprovedenými operacemi
+     */
+    private List<SyncResult> replayJournal(SyncProgressListener listener) {
+        SyncJournal.State state = journal.load();
+        if (state.isEmpty()) {
+            return List.of();
+        }
+
+        ReportManager.log(EBakaLogType.LOG_WARN, "Předchozí synchronizace"
+                + ((state.started() != null)
+                        ? " z " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(state.started()) : "")
+                + " nebyla dokončena, provedou se její zbývající operace.");
+
+        List<SyncResult> results = new ArrayList<>();
+        for (SyncJournal.PendingPhase phase : state.pending()) {
+            listener.onProgress("Dokončení fáze: " + phase.phase());
+            List<SyncResult> phaseResults = studentService.applyPlan(
+                    phase.changes(), journal.resume(phase), listener);
+            phaseResults.forEach(listener::onResult);
+            results.addAll(phaseResults);
+            journal.checkpoint(phase.phase());
+        }
+        for (String phase : state.unfinishedPhases()) {
+            ReportManager.log(EBakaLogType.LOG_INFO,
+                    "Fáze „" + phase + "“ nebyla dokončena, srovná se při příští synchronizaci.");
+        }
+
+        journal.compact();
+        return results;
+    }
+
+    /**
+     * Fáze s plánem – porovnání (bez zápisu), zařazení změn do plánu běhu
+     * a při zápisu jejich provedení. Suchý běh změny pouze ohlásí.
+     *
+     * @param phaseName název fáze
+     * @param repair provést zápis (true) nebo jen kontrolu (false)
+     * @param runJournal deník běhu (null = bez deníku)
+     * @param plan plán běhu, do kterého se změny fáze přidají
+     * @param planner porovnání evidence s adresářem
+     * @param listener sledování průběhu
+     * @return výsledky fáze
+     */
+    private List<SyncResult> planAndApply(String phaseName, boolean repair, SyncJournal runJournal,
+                                          List<PlannedChange> plan,
+                                          Supplier<List<PlannedChange>> planner, SyncProgressListener listener) {
+        listener.onPhaseStart(phaseName);
+        List<PlannedChange> changes = planner.get();
+        plan.addAll(changes);
+
+        List<SyncResult> results = repair
+                ? studentService.applyPlan(changes,
+                        (runJournal != null) ? runJournal.plan(phaseName, changes) : null, listener)
+                : changes.stream().map(PlannedChange::dryRunResult).toList();
+
+        int ok = (int) results.stream().filter(SyncResult::isSuccess).count();
+        int err = (int) results.stream().filter(r -> !r.isSuccess()).count();
+        listener.onPhaseEnd(phaseName, ok, err);
+        return results;
+    }
+
     /**
      * Synchronizace distribučních skupin třídních učitelů.
      */
@@ -312,7 +643,7 @@ public class SyncOrchestrator {
                 config.getLdapBaseContacts());
 
         // sestavit mapování třída → e-mail třídního učitele
-        Map<String, String> classTeacherEmails = buildClassTeacherMap();
+        Map<String, String> classTeacherEmails = buildClassTeacherMap(facultyRepo.findActive(true));
 
         return guardianService.syncGuardians(
                 sqlStudents, contacts, classTeacherEmails, repair, listener);
@@ -321,8 +652,7 @@ public class SyncOrchestrator {
     /**
      * Sestaví mapování třída (např. "5.A") → e-mail třídního učitele.
      */
-    private Map<String, String> buildClassTeacherMap() {
-        List<FacultyRecord> teachers = facultyRepo.findActive(true);
+    private Map<String, String> buildClassTeacherMap(List<FacultyRecord> teachers) {
         Map<String, String> map = new HashMap<>();
         for (FacultyRecord teacher : teachers) {
             if (teacher.getClassLabel() != null && teacher.getEmail() != null) {
@@ -332,13 +662,94 @@ public class SyncOrchestrator {
         return map;
     }
 
+    /**
+     * Souběžné načtení všech nezávislých bází před první fází synchronizace.
+     *
+     * <p>Každá LDAP báze i každý SQL dotaz se čte na vlastním virtuálním vlákně
+     * a vlastním kontextu, resp. spojení z poolu. Doba načtení tak odpovídá
+     * nejpomalejší bázi, nikoli součtu všech.</p>
+     *
+     * @param classYear ročník SQL žáků (null = nefiltrovat)
+     * @param classLetter písmeno třídy SQL žáků (null = nefiltrovat)
+     * @param listener sledování průběhu
+     * @return načtená data
+     */
+    private SyncPrefetch prefetch(Integer classYear, String classLetter, SyncProgressListener listener) {
+        listener.onProgress("Souběžné načítání dat z SQL evidence a Active Directory...");
+        long start = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // celá evidence se čte se změnami od minulého běhu, omezený rozsah přímo
+            CompletableFuture<StudentDelta> sqlStudents = CompletableFuture.supplyAsync(
+                    () -> (classYear == null && classLetter == null)
+                            ? studentRepo.findActiveChanges()
+                            : StudentDelta.full(studentRepo.findActive(classYear, classLetter)), executor);
+            CompletableFuture<List<FacultyRecord>> classTeachers = CompletableFuture.supplyAsync(
+                    () -> facultyRepo.findActive(true), executor);
+            CompletableFuture<List<StudentRecord>> ldapStudents = CompletableFuture.supplyAsync(
+                    () -> ldapUserRepo.findAllStudents(config.getLdapBaseStudents(), config.getLdapBaseAlumni()), executor);
+            CompletableFuture<List<StudentRecord>> staffAccounts = CompletableFuture.supplyAsync(
+                    () -> ldapUserRepo.findAllStudents(config.getLdapBaseFaculty(), null), executor);
+            CompletableFuture<List<GuardianRecord>> contacts = CompletableFuture.supplyAsync(
+                    () -> guardianRepo.findAllContacts(config.getLdapBaseContacts()), executor);
+
+            StudentDelta sqlChanges = join(sqlStudents);
+            SyncPrefetch prefetch = new SyncPrefetch(sqlChanges.students(), sqlChanges, join(classTeachers),
+                    join(ldapStudents), join(staffAccounts), join(contacts));
+
+            listener.onProgress("Nalezeno " + prefetch.sqlStudents().size() + " žáků v SQL.");
+            if (!sqlChanges.complete()) {
+                listener.onProgress("Změny v SQL od minulého běhu: přidáno " + sqlChanges.added().size()
+                        + ", změněno " + sqlChanges.changed().size()
+                        + ", odebráno " + sqlChanges.removed().size() + ".");
+            }
+            listener.onProgress("Nalezeno " + prefetch.ldapStudents().size() + " žáků v LDAP.");
+            listener.onProgress("Data načtena za " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+            return prefetch;
+        }
+    }
+
+    /**
+     * Výsledek souběžného načtení – chyba repozitáře se předá dál beze změny.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error error) throw error;
+            throw e;
+        }
+    }
+
+    /**
+     * Ukončí snapshot adresáře; při zapnutém ověření nahlásí odchylky od serveru.
+     */
+    private void closeSnapshot(List<SyncResult> allResults, SyncProgressListener listener) {
+        boolean verify = config.isLdapVerifySnapshot();
+        List<String> drift = ldapUserRepo.closeSnapshot(verify);
+
+        if (drift.isEmpty()) {
+            if (verify) {
+                listener.onProgress("Snapshot adresáře odpovídá stavu serveru.");
+            }
+            return;
+        }
+
+        drift.forEach(line -> listener.onProgress("Odchylka snapshotu: " + line));
+        allResults.add(SyncResult.error("snapshot",
+                "Snapshot adresáře se liší od serveru (" + drift.size() + " odchylek)."));
+    }
+
     /**
      * Sestaví cílový seznam uživatelů pro pravidla.
      * Pokud některé pravidlo cílí na zaměstnance (USER, CATEGORY, TEACHERS, WHOLE_SCHOOL),
-     * načte i zaměstnanecké účty z LDAP.
+     * přidá i zaměstnanecké účty – předem načtené, po zápisech znovu ze snapshotu.
      */
     private List<StudentRecord> buildRuleTargets(List<SyncRule> rules,
                                                   List<StudentRecord> ldapStudents,
+                                                  boolean repair,
+                                                  List<StudentRecord> prefetchedStaff,
                                                   SyncProgressListener listener) {
         Set<SyncScope> staffScopes = Set.of(
                 SyncScope.USER, SyncScope.CATEGORY,
@@ -351,10 +762,12 @@ public class SyncOrchestrator {
             return ldapStudents;
         }
 
-        // načíst zaměstnance (učitele, vedení, provoz, ...) z Faculty base
-        listener.onProgress("Načítání zaměstnanců pro pravidla...");
-        List<StudentRecord> staff = ldapUserRepo.findAllStudents(
-                config.getLdapBaseFaculty(), null);
+        // zaměstnanci (učitelé, vedení, provoz, ...) z Faculty base
+        List<StudentRecord> staff = prefetchedStaff;
+        if (repair) {
+            listener.onProgress("Načítání zaměstnanců pro pravidla...");
+            staff = ldapUserRepo.findAllStudents(config.getLdapBaseFaculty(), null);
+        }
         listener.onProgress("Nalezeno " + staff.size() + " zaměstnanců v LDAP.");
 
         // spojit žáky + zaměstnance (bez duplicit – StudentRecord nemá equals,
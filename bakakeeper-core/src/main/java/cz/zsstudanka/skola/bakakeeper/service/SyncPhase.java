@@ -0,0 +1,62 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Fáze synchronizace s deklarovanými zdroji, které čte a zapisuje.
+ *
+ * <p>Zdroj je libovolný řetězec označující data (např. žákovské účty v AD,
+ * kontakty zákonných zástupců, předem načtená data). Fáze závisí na dříve
+ * deklarované fázi, pokud jedna z nich zapisuje zdroj, který druhá čte nebo
+ * zapisuje. Fáze bez společného zapisovaného zdroje mohou běžet souběžně.</p>
+ *
+ * @param name          název fáze (pro měření doby běhu)
+ * @param reads         čtené zdroje
+ * @param writes        zapisované zdroje
+ * @param notifyResults výsledky fáze přeposlat listeneru (služba je nehlásí sama)
+ * @param action        provedení fáze – dostane listener fáze, vrací výsledky
+ *
+ * @author Jan Hladěna
+ */
+record SyncPhase(
+        String name,
+        Set<String> reads,
+        Set<String> writes,
+        boolean notifyResults,
+        Function<SyncProgressListener, List<SyncResult>> action
+) {
+
+    /**
+     * Fáze, jejíž výsledky přepošle listeneru plánovač.
+     *
+     * @param name   název fáze
+     * @param reads  čtené zdroje
+     * @param writes zapisované zdroje
+     * @param action provedení fáze
+     */
+    SyncPhase(String name, Set<String> reads, Set<String> writes,
+              Function<SyncProgressListener, List<SyncResult>> action) {
+        this(name, reads, writes, true, action);
+    }
+
+    /**
+     * Fáze musí počkat na dříve deklarovanou fázi.
+     *
+     * @param earlier dříve deklarovaná fáze
+     * @return fáze sdílejí zdroj, který alespoň jedna z nich zapisuje
+     */
+    boolean dependsOn(SyncPhase earlier) {
+        return intersects(earlier.writes, writes)
+                || intersects(earlier.writes, reads)
+                || intersects(earlier.reads, writes);
+    }
+
+    private static boolean intersects(Set<String> a, Set<String> b) {
+        for (String resource : a) {
+            if (b.contains(resource)) return true;
+        }
+        return false;
+    }
+}
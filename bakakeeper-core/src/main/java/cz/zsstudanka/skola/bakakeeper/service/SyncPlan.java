@@ -0,0 +1,86 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Plán synchronizace – typované zápisové operace vzniklé porovnáním evidence
+ * s adresářem. Suchý běh ({@code status}, {@code sync --dryrun}) plán jen
+ * vypíše, ostrý běh jej provede; uložený plán lze po kontrole provést
+ * později ({@code sync --plan}).
+ *
+ * <p>Plán zahrnuje synchronizaci dat spárovaných žáků a vyřazení osiřelých
+ * účtů. Ostatní fáze (struktura AD, nové účty, třídní učitelé, zákonní
+ * zástupci, pravidla) zapisují přímo.</p>
+ *
+ * @param created vytvoření plánu
+ * @param changes změny objektů v pořadí fází a evidence
+ *
+ * @author Jan Hladěna
+ */
+public record SyncPlan(
+        Date created,
+        List<PlannedChange> changes
+) implements Serializable {
+
+    public SyncPlan {
+        changes = List.copyOf(changes);
+    }
+
+    /**
+     * Nový plán s aktuálním časem vytvoření.
+     *
+     * @param changes změny objektů
+     */
+    public SyncPlan(List<PlannedChange> changes) {
+        this(new Date(), changes);
+    }
+
+    /** Prázdný plán. */
+    public static SyncPlan empty() {
+        return new SyncPlan(List.of());
+    }
+
+    /** Změny, které obsahují alespoň jednu operaci. */
+    public List<PlannedChange> pendingChanges() {
+        return changes.stream().filter(PlannedChange::hasOperations).toList();
+    }
+
+    /** Celkový počet operací. */
+    public int operationCount() {
+        return changes.stream().mapToInt(c -> c.operations().size()).sum();
+    }
+
+    /** Plán neobsahuje žádnou operaci. */
+    public boolean isEmpty() {
+        return operationCount() == 0;
+    }
+
+    /**
+     * Čitelný výpis plánu – fáze, změny objektů a jejich operace.
+     *
+     * @return řádky výpisu
+     */
+    public List<String> render() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Plán synchronizace z " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(created)
+                + ": " + pendingChanges().size() + " objektů, " + operationCount() + " operací.");
+
+        String phase = null;
+        for (PlannedChange change : pendingChanges()) {
+            if (!Objects.equals(phase, change.phase())) {
+                phase = change.phase();
+                lines.add("[" + phase + "]");
+            }
+            lines.add("  " + change.entityId() + ": " + change.description());
+            for (PlannedOperation operation : change.operations()) {
+                lines.add("    - " + operation.describe());
+            }
+        }
+        return lines;
+    }
+}
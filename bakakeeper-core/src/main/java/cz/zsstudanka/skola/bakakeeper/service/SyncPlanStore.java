@@ -0,0 +1,86 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import cz.zsstudanka.skola.bakakeeper.components.EncryptionInputStream;
+import cz.zsstudanka.skola.bakakeeper.components.EncryptionOutputStream;
+import cz.zsstudanka.skola.bakakeeper.components.ReportManager;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLogType;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Šifrovaný soubor s plánem synchronizace ({@link SyncPlan}).
+ * Formát: {@code EncryptionOutputStream → GZIPOutputStream → ObjectOutputStream}.
+ *
+ * <p>Plán obsahuje DN, jména a e-mailové adresy žáků – proto se ukládá
+ * šifrovaně stejně jako ostatní datové soubory.</p>
+ *
+ * @author Jan Hladěna
+ */
+public class SyncPlanStore {
+
+    private final String filePath;
+    private final char[] passphrase;
+
+    /**
+     * Vytvoří úložiště plánu.
+     *
+     * @param filePath   cesta k souboru plánu
+     * @param passphrase heslo pro šifrování/dešifrování
+     */
+    public SyncPlanStore(String filePath, char[] passphrase) {
+        this.filePath = filePath;
+        this.passphrase = passphrase;
+    }
+
+    /**
+     * Uloží plán.
+     *
+     * @param plan plán synchronizace
+     * @return plán byl uložen
+     */
+    public boolean save(SyncPlan plan) {
+        try (FileOutputStream fos = new FileOutputStream(filePath);
+             EncryptionOutputStream encrypted = new EncryptionOutputStream(fos, passphrase);
+             GZIPOutputStream gzip = new GZIPOutputStream(encrypted);
+             ObjectOutputStream oos = new ObjectOutputStream(gzip)) {
+
+            oos.writeObject(plan);
+            return true;
+        } catch (Exception e) {
+            ReportManager.log(EBakaLogType.LOG_ERR,
+                    "Chyba při ukládání plánu synchronizace " + filePath + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Načte plán.
+     *
+     * @return plán, nebo null pokud soubor chybí nebo jej nelze přečíst
+     */
+    public SyncPlan load() {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            ReportManager.log(EBakaLogType.LOG_ERR, "Soubor plánu synchronizace " + filePath + " neexistuje.");
+            return null;
+        }
+
+        try (FileInputStream fis = new FileInputStream(file);
+             EncryptionInputStream decrypted = new EncryptionInputStream(fis, passphrase);
+             GZIPInputStream gzip = new GZIPInputStream(decrypted);
+             ObjectInputStream ois = new ObjectInputStream(gzip)) {
+
+            if (ois.readObject() instanceof SyncPlan plan) {
+                return plan;
+            }
+            ReportManager.log(EBakaLogType.LOG_ERR, "Soubor " + filePath + " neobsahuje plán synchronizace.");
+        } catch (Exception e) {
+            ReportManager.log(EBakaLogType.LOG_ERR,
+                    "Chyba při načítání plánu synchronizace " + filePath + ": " + e.getMessage());
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,31 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import cz.zsstudanka.skola.bakakeeper.model.FacultyRecord;
+import cz.zsstudanka.skola.bakakeeper.model.GuardianRecord;
+import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
+import cz.zsstudanka.skola.bakakeeper.repository.StudentDelta;
+
+import java.util.List;
+
+/**
+ * Data načtená před první fází synchronizace – všechny nezávislé báze najednou.
+ * Fáze je přebírají místo opakovaného čtení stejné báze.
+ *
+ * @param sqlStudents   žáci z evidence (v rozsahu synchronizace)
+ * @param sqlChanges    změny žáků v evidenci od minulého čtení
+ *                      ({@link StudentDelta#complete()} = bez předchozího stavu nebo omezený rozsah)
+ * @param classTeachers třídní učitelé z evidence
+ * @param ldapStudents  žákovské účty z AD (bez absolventů)
+ * @param staffAccounts zaměstnanecké účty z AD
+ * @param contacts      kontakty zákonných zástupců z AD
+ *
+ * @author Jan Hladěna
+ */
+public record SyncPrefetch(
+        List<StudentRecord> sqlStudents,
+        StudentDelta sqlChanges,
+        List<FacultyRecord> classTeachers,
+        List<StudentRecord> ldapStudents,
+        List<StudentRecord> staffAccounts,
+        List<GuardianRecord> contacts
+) {}
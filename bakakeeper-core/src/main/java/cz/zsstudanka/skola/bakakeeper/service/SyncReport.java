@@ -8,14 +8,51 @@ import java.util.List;
  *
  * @param results výsledky synchronizačních operací
  * @param guardianErrors validační chyby zákonných zástupců (chybný tel./email, neprimární zástupce)
+ * @param phaseTimings doby běhu jednotlivých fází v pořadí deklarace
+ * @param plan plán synchronizace dat a vyřazení žáků (při suchém běhu neprovedený)
  *
  * @author Jan Hladěna
  */
 public record SyncReport(
         List<SyncResult> results,
-        List<GuardianValidationError> guardianErrors
+        List<GuardianValidationError> guardianErrors,
+        List<PhaseTiming> phaseTimings,
+        SyncPlan plan
 ) {
 
+    /**
+     * Výsledek bez plánu.
+     *
+     * @param results výsledky synchronizačních operací
+     * @param guardianErrors validační chyby zákonných zástupců
+     * @param phaseTimings doby běhu jednotlivých fází
+     */
+    public SyncReport(List<SyncResult> results, List<GuardianValidationError> guardianErrors,
+                      List<PhaseTiming> phaseTimings) {
+        this(results, guardianErrors, phaseTimings, SyncPlan.empty());
+    }
+
+    /**
+     * Výsledek bez měření fází.
+     *
+     * @param results výsledky synchronizačních operací
+     * @param guardianErrors validační chyby zákonných zástupců
+     */
+    public SyncReport(List<SyncResult> results, List<GuardianValidationError> guardianErrors) {
+        this(results, guardianErrors, List.of());
+    }
+
+    /** Doba od začátku první do konce poslední fáze v ms. */
+    public long phasesElapsedMs() {
+        return phaseTimings.stream().mapToLong(PhaseTiming::endMs).max().orElse(0)
+                - phaseTimings.stream().mapToLong(PhaseTiming::startMs).min().orElse(0);
+    }
+
+    /** Součet dob běhu všech fází v ms (doba postupného běhu). */
+    public long phasesTotalMs() {
+        return phaseTimings.stream().mapToLong(PhaseTiming::durationMs).sum();
+    }
+
     /** Počet vytvořených objektů. */
     public int created() { return countType(SyncResult.Type.CREATED); }
 
@@ -327,6 +327,40 @@ public class Settings implements AppConfig {
     @Override public int getSqlPort() { return delegate().getSqlPort(); }
     @Override public int getSmtpPort() { return delegate().getSmtpPort(); }
 
+    // LDAP pool
+    @Override public int getLdapPoolMinSize() { return delegate().getLdapPoolMinSize(); }
+    @Override public int getLdapPoolMaxSize() { return delegate().getLdapPoolMaxSize(); }
+    @Override public int getLdapPoolBorrowTimeout() { return delegate().getLdapPoolBorrowTimeout(); }
+    @Override public int getLdapPoolIdleTimeout() { return delegate().getLdapPoolIdleTimeout(); }
+    @Override public int getLdapMemberChunkSize() { return delegate().getLdapMemberChunkSize(); }
+    @Override public boolean isLdapIncremental() { return delegate().isLdapIncremental(); }
+    @Override public boolean isLdapVerifySnapshot() { return delegate().isLdapVerifySnapshot(); }
+    @Override public int getLdapLookupCacheTtl() { return delegate().getLdapLookupCacheTtl(); }
+    @Override public int getRosterCacheTtl() { return delegate().getRosterCacheTtl(); }
+    @Override public int getMaxParallelPhases() { return delegate().getMaxParallelPhases(); }
+    @Override public int getStudentShardParallelism() { return delegate().getStudentShardParallelism(); }
+    @Override public boolean isSyncJournal() { return delegate().isSyncJournal(); }
+    @Override public boolean isSyncFingerprints() { return delegate().isSyncFingerprints(); }
+    @Override public int getSyncFullCompareEvery() { return delegate().getSyncFullCompareEvery(); }
+    @Override public int getSyncPlanMaxAge() { return delegate().getSyncPlanMaxAge(); }
+
+    // dlouhodobě běžící proces
+    @Override public int getDaemonInterval() { return delegate().getDaemonInterval(); }
+    @Override public int getDaemonJitter() { return delegate().getDaemonJitter(); }
+    @Override public int getDaemonPort() { return delegate().getDaemonPort(); }
+    @Override public String getDaemonTriggerFile() { return delegate().getDaemonTriggerFile(); }
+
+    // SQL pool
+    @Override public int getSqlPoolMinSize() { return delegate().getSqlPoolMinSize(); }
+    @Override public int getSqlPoolMaxSize() { return delegate().getSqlPoolMaxSize(); }
+    @Override public int getSqlPoolBorrowTimeout() { return delegate().getSqlPoolBorrowTimeout(); }
+    @Override public int getSqlPoolIdleTimeout() { return delegate().getSqlPoolIdleTimeout(); }
+    @Override public int getSqlPoolMaxLifetime() { return delegate().getSqlPoolMaxLifetime(); }
+    @Override public int getSqlPoolLeakThreshold() { return delegate().getSqlPoolLeakThreshold(); }
+    @Override public int getSqlFetchSize() { return delegate().getSqlFetchSize(); }
+    @Override public int getSqlStatementCacheSize() { return delegate().getSqlStatementCacheSize(); }
+    @Override public boolean isSqlIncremental() { return delegate().isSqlIncremental(); }
+
     // per-service credentials
     @Override public String getLdapUser() { return delegate().getLdapUser(); }
     @Override public String getLdapPass() { return delegate().getLdapPass(); }
@@ -487,4 +487,31 @@ public class BakaUtils {
         // následující DN
         return "CN=" + nextCN + "," + parseBase(dn);
     }
+
+    /**
+     * Ošetření hodnoty pro použití v LDAP filtru podle RFC 4515.
+     * Znaky {@code * ( ) \ NUL} se nahradí sekvencí {@code \XX}.
+     *
+     * @param value hodnota filtru
+     * @return ošetřená hodnota
+     */
+    public static String escapeLdapFilter(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '*' -> escaped.append("\\2a");
+                case '(' -> escaped.append("\\28");
+                case ')' -> escaped.append("\\29");
+                case '\\' -> escaped.append("\\5c");
+                case '\0' -> escaped.append("\\00");
+                default -> escaped.append(c);
+            }
+        }
+
+        return escaped.toString();
+    }
 }
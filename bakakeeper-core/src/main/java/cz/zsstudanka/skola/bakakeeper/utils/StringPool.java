@@ -0,0 +1,54 @@
+package cz.zsstudanka.skola.bakakeeper.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sdílené instance často se opakujících řetězců (označení tříd, písmena tříd,
+ * pracovní zařazení, názvy LDAP atributů, DN skupin).
+ *
+ * <p>Ovladače JDBC a JNDI vracejí pro každý řádek novou instanci řetězce, takže
+ * stovky žáků jedné třídy drží stovky kopií téhož {@code "5.A"}. Záznamy, které
+ * zůstávají v paměti (mezipaměť seznamů, stav inkrementálního čtení, snímek AD),
+ * pak sdílejí jedinou instanci.</p>
+ *
+ * <p>Velikost zásobníku je omezená – po naplnění se další řetězce vracejí beze
+ * změny. Určeno jen pro hodnoty s malým počtem různých výskytů, nikoli pro jména
+ * nebo e-maily.</p>
+ *
+ * @author Jan Hladěna
+ */
+public final class StringPool {
+
+    /** maximální počet uložených řetězců */
+    private static final int MAX_SIZE = 8192;
+
+    private static final ConcurrentHashMap<String, String> POOL = new ConcurrentHashMap<>();
+
+    private StringPool() {
+        // utilita – bez instancí
+    }
+
+    /**
+     * Sdílená instance řetězce.
+     *
+     * @param value řetězec (může být null)
+     * @return sdílená instance se stejným obsahem, nebo původní řetězec
+     */
+    public static String canonical(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String pooled = POOL.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+
+        if (POOL.size() >= MAX_SIZE) {
+            return value;
+        }
+
+        pooled = POOL.putIfAbsent(value, value);
+        return (pooled != null) ? pooled : value;
+    }
+}
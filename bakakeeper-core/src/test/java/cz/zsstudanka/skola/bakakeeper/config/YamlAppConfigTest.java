@@ -214,6 +214,34 @@ class YamlAppConfigTest {
         assertTrue(c.isDevelMode());
     }
 
+    // --- LDAP pool ---
+
+    @Test
+    void ldapPoolDefaults() {
+        assertEquals(1, config.getLdapPoolMinSize());
+        assertEquals(8, config.getLdapPoolMaxSize());
+        assertEquals(30_000, config.getLdapPoolBorrowTimeout());
+        assertEquals(300, config.getLdapPoolIdleTimeout());
+    }
+
+    @Test
+    void ldapPoolOverridesSurviveRoundTrip() {
+        String yaml = "ldap:\n  pool_min: 2\n  pool_max: 4\n  pool_timeout_ms: 500\n  pool_idle_s: 60\n";
+        YamlAppConfig c = new YamlAppConfig(
+                new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(2, c.getLdapPoolMinSize());
+        assertEquals(4, c.getLdapPoolMaxSize());
+        assertEquals(500, c.getLdapPoolBorrowTimeout());
+        assertEquals(60, c.getLdapPoolIdleTimeout());
+
+        StringWriter sw = new StringWriter();
+        c.writeTo(sw);
+        YamlAppConfig reloaded = new YamlAppConfig(
+                new ByteArrayInputStream(sw.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(4, reloaded.getLdapPoolMaxSize());
+        assertEquals(60, reloaded.getLdapPoolIdleTimeout());
+    }
+
     // --- Serializace ---
 
     @Test
@@ -0,0 +1,112 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.LdapContext;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy pro LdapContextPool.
+ *
+ * @author Jan Hladěna
+ */
+class LdapContextPoolTest {
+
+    private final List<LdapContext> createdContexts = new ArrayList<>();
+    private LdapContextPool pool;
+
+    private LdapContextPool newPool(int min, int max, long borrowTimeoutMs) {
+        pool = new LdapContextPool(() -> {
+            LdapContext ctx = mock(LdapContext.class);
+            createdContexts.add(ctx);
+            return ctx;
+        }, min, max, borrowTimeoutMs, 60_000);
+        return pool;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    void releasedContextIsReused() throws NamingException {
+        newPool(0, 2, 100);
+
+        LdapContext first = pool.borrow();
+        pool.release(first);
+        LdapContext second = pool.borrow();
+
+        assertSame(first, second);
+        assertEquals(1, createdContexts.size());
+        assertEquals(2, pool.stats().borrowed());
+        assertEquals(1, pool.stats().created());
+    }
+
+    @Test
+    void releaseResetsRequestControls() throws NamingException {
+        newPool(0, 1, 100);
+
+        LdapContext ctx = pool.borrow();
+        pool.release(ctx);
+
+        verify(ctx).setRequestControls(null);
+        verify(ctx, never()).close();
+    }
+
+    @Test
+    void borrowTimesOutWhenExhausted() throws NamingException {
+        newPool(0, 1, 50);
+
+        LdapContext held = pool.borrow();
+        assertThrows(ServiceUnavailableException.class, () -> pool.borrow());
+        assertEquals(1, pool.stats().timeouts());
+        assertEquals(1, pool.stats().active());
+
+        pool.release(held);
+        assertNotNull(pool.borrow());
+    }
+
+    @Test
+    void invalidatedContextIsClosedAndReplaced() throws NamingException {
+        newPool(0, 1, 100);
+
+        LdapContext broken = pool.borrow();
+        pool.invalidate(broken);
+        LdapContext fresh = pool.borrow();
+
+        verify(broken).close();
+        assertNotSame(broken, fresh);
+        assertEquals(1, pool.stats().evicted());
+        assertEquals(2, pool.stats().created());
+    }
+
+    @Test
+    void prefillCreatesMinimumIdleContexts() {
+        newPool(2, 4, 100);
+
+        pool.prefill();
+
+        assertEquals(2, pool.stats().idle());
+        assertEquals(2, createdContexts.size());
+    }
+
+    @Test
+    void closeClosesIdleContexts() throws NamingException {
+        newPool(0, 2, 100);
+
+        LdapContext ctx = pool.borrow();
+        pool.release(ctx);
+        pool.close();
+
+        verify(ctx).close();
+        assertThrows(ServiceUnavailableException.class, () -> pool.borrow());
+    }
+}
@@ -0,0 +1,61 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy pro LdapFilter a LdapFilterTemplate.
+ *
+ * @author Jan Hladěna
+ */
+class LdapFilterTest {
+
+    @Test
+    void composedFilterEscapesValues() {
+        LdapFilter filter = LdapFilter.and(
+                LdapFilter.is(EBakaLDAPAttributes.OC_GROUP),
+                LdapFilter.eq(EBakaLDAPAttributes.CN, "Žáci 5.A (2)*"),
+                LdapFilter.not(LdapFilter.present(EBakaLDAPAttributes.MAIL)));
+
+        assertEquals("(&(objectClass=group)(cn=Žáci 5.A \\282\\29\\2a)(!(mail=*)))", filter.encode());
+    }
+
+    @Test
+    void dnWithEscapedCommaIsEscapedForFilter() {
+        assertEquals("(distinguishedName=CN=Novák\\5c, Tomáš,OU=Zaci)",
+                LdapFilter.eq(EBakaLDAPAttributes.DN, "CN=Novák\\, Tomáš,OU=Zaci").encode());
+    }
+
+    @Test
+    void orAndSubstring() {
+        LdapFilter filter = LdapFilter.or(
+                LdapFilter.substring(EBakaLDAPAttributes.UPN, "novak", "@skola.cz", "(x)"),
+                LdapFilter.greaterOrEqual(EBakaLDAPAttributes.USN_CHANGED, "101"));
+
+        assertEquals("(|(userPrincipalName=novak*\\28x\\29*@skola.cz)(uSNChanged>=101))", filter.encode());
+    }
+
+    @Test
+    void singleMemberConjunctionIsNotWrapped() {
+        assertEquals("(objectClass=user)", LdapFilter.and(LdapFilter.is(EBakaLDAPAttributes.OC_USER)).encode());
+    }
+
+    @Test
+    void templateIsCompiledOnceAndEscapesParameters() {
+        String pattern = "(&(objectClass=user)(sAMAccountName={0})(|(mail={1})(mail={0})))";
+        LdapFilterTemplate template = LdapFilterTemplate.compile(pattern);
+
+        assertSame(template, LdapFilterTemplate.compile(pattern));
+        assertEquals("(&(objectClass=user)(sAMAccountName=a\\2a)(|(mail=b)(mail=a\\2a)))",
+                template.bind("a*", "b").encode());
+    }
+
+    @Test
+    void templateRejectsInvalidInput() {
+        assertThrows(IllegalArgumentException.class, () -> LdapFilterTemplate.compile("(&(cn={0})"));
+        assertThrows(IllegalArgumentException.class, () -> LdapFilterTemplate.compile("(cn={x})"));
+        assertThrows(IllegalArgumentException.class, () -> LdapFilterTemplate.compile("(cn={0})").bind("a", "b"));
+    }
+}
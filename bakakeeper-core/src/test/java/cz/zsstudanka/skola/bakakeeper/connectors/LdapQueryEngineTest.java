@@ -0,0 +1,26 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy pro LdapQueryEngine – zpracování rozsahů vícehodnotových atributů.
+ *
+ * @author Jan Hladěna
+ */
+class LdapQueryEngineTest {
+
+    @Test
+    void nextRangeStartContinuesAfterPartialRange() {
+        assertEquals(1500, LdapQueryEngine.nextRangeStart("member;range=0-1499"));
+        assertEquals(3000, LdapQueryEngine.nextRangeStart("member;Range=1500-2999"));
+    }
+
+    @Test
+    void nextRangeStartEndsOnLastRange() {
+        assertEquals(-1, LdapQueryEngine.nextRangeStart("member;range=1500-*"));
+        assertEquals(-1, LdapQueryEngine.nextRangeStart("member"));
+        assertEquals(-1, LdapQueryEngine.nextRangeStart("member;range=chyba"));
+    }
+}
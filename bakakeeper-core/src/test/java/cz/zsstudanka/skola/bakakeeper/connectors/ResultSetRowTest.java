@@ -0,0 +1,41 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy pro ResultSetRow.
+ *
+ * @author Jan Hladěna
+ */
+class ResultSetRowTest {
+
+    @Test
+    void readsByCachedIndex() throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        ResultSetMetaData meta = mock(ResultSetMetaData.class);
+        when(rs.getMetaData()).thenReturn(meta);
+        when(meta.getColumnCount()).thenReturn(2);
+        when(meta.getColumnLabel(1)).thenReturn(EBakaSQL.F_STU_ID.basename());
+        when(meta.getColumnLabel(2)).thenReturn(EBakaSQL.F_STU_MAIL.basename().toUpperCase());
+        when(rs.getString(1)).thenReturn(" 001 ", "002");
+        when(rs.getString(2)).thenReturn(null);
+
+        ResultSetRow row = new ResultSetRow(rs);
+
+        assertEquals("001", row.get(EBakaSQL.F_STU_ID));
+        assertEquals("002", row.get(EBakaSQL.F_STU_ID));
+        assertEquals(EBakaSQL.NULL.basename(), row.get(EBakaSQL.F_STU_MAIL));
+        assertNull(row.get(EBakaSQL.F_STU_EXPIRED));
+
+        verify(rs, times(1)).getMetaData();
+        verify(rs, never()).getString(anyString());
+    }
+}
@@ -0,0 +1,174 @@
+package cz.zsstudanka.skola.bakakeeper.connectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy pro SqlConnectionPool.
+ *
+ * @author Jan Hladěna
+ */
+class SqlConnectionPoolTest {
+
+    private final List<Connection> createdConnections = new ArrayList<>();
+    private SqlConnectionPool pool;
+
+    private SqlConnectionPool newPool(int max, long borrowTimeoutMs, long maxLifetimeMs, long leakThresholdMs) {
+        pool = new SqlConnectionPool(() -> {
+            Connection connection = mock(Connection.class);
+            when(connection.getAutoCommit()).thenReturn(true);
+            when(connection.prepareStatement(anyString())).thenAnswer(inv -> mock(PreparedStatement.class));
+            createdConnections.add(connection);
+            return connection;
+        }, 0, max, borrowTimeoutMs, 60_000, maxLifetimeMs, leakThresholdMs, 2);
+        return pool;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    void closedConnectionReturnsToPoolAndIsReused() throws SQLException {
+        newPool(2, 100, 0, 0);
+
+        Connection first = pool.borrow();
+        first.prepareStatement("SELECT 1");
+        first.close();
+        first.close();
+        Connection second = pool.borrow();
+        second.prepareStatement("SELECT 2");
+
+        assertEquals(1, createdConnections.size());
+        Connection physical = createdConnections.get(0);
+        verify(physical).prepareStatement("SELECT 1");
+        verify(physical).prepareStatement("SELECT 2");
+        verify(physical, never()).close();
+        assertTrue(first.isClosed());
+        assertEquals(1, pool.stats().active());
+    }
+
+    @Test
+    void preparedStatementIsCachedPerConnection() throws SQLException {
+        newPool(1, 100, 0, 0);
+
+        Connection first = pool.borrow();
+        PreparedStatement statement = first.prepareStatement("SELECT ?");
+        statement.setString(1, "a");
+        statement.close();
+        first.close();
+
+        Connection second = pool.borrow();
+        PreparedStatement again = second.prepareStatement("SELECT ?");
+        PreparedStatement parallel = second.prepareStatement("SELECT ?");
+
+        Connection physical = createdConnections.get(0);
+        verify(physical, times(2)).prepareStatement("SELECT ?");
+        assertNotSame(again, parallel);
+        assertThrows(SQLException.class, () -> statement.setString(1, "b"));
+
+        again.close();
+        second.prepareStatement("SELECT 2").close();
+        second.prepareStatement("SELECT 3").close();
+        second.close();
+        pool.close();
+
+        verify(physical).close();
+    }
+
+    @Test
+    void returnedConnectionRejectsFurtherUse() throws SQLException {
+        newPool(1, 100, 0, 0);
+
+        Connection connection = pool.borrow();
+        connection.close();
+
+        assertThrows(SQLException.class, () -> connection.createStatement());
+    }
+
+    @Test
+    void openTransactionIsRolledBackOnReturn() throws SQLException {
+        newPool(1, 100, 0, 0);
+
+        Connection connection = pool.borrow();
+        Connection physical = createdConnections.get(0);
+        when(physical.getAutoCommit()).thenReturn(false);
+        connection.close();
+
+        verify(physical).rollback();
+        verify(physical).setAutoCommit(true);
+    }
+
+    @Test
+    void borrowTimesOutWhenExhausted() throws SQLException {
+        newPool(1, 50, 0, 0);
+
+        Connection held = pool.borrow();
+        assertThrows(SQLTransientConnectionException.class, () -> pool.borrow());
+        assertEquals(1, pool.stats().timeouts());
+
+        held.close();
+        assertNotNull(pool.borrow());
+    }
+
+    @Test
+    void connectionErrorDiscardsPhysicalConnection() throws SQLException {
+        newPool(1, 100, 0, 0);
+
+        Connection connection = pool.borrow();
+        Connection physical = createdConnections.get(0);
+        when(physical.createStatement()).thenThrow(new SQLException("spojení přerušeno", "08S01"));
+
+        assertThrows(SQLException.class, connection::createStatement);
+        connection.close();
+        pool.borrow();
+
+        verify(physical).close();
+        assertEquals(2, createdConnections.size());
+        assertEquals(1, pool.stats().evicted());
+    }
+
+    @Test
+    void expiredConnectionIsReplaced() throws SQLException {
+        newPool(1, 100, 1, 0);
+
+        Connection connection = pool.borrow();
+        sleep(5);
+        connection.close();
+        pool.borrow();
+
+        verify(createdConnections.get(0)).close();
+        assertEquals(2, createdConnections.size());
+    }
+
+    @Test
+    void unreturnedConnectionIsReportedOnce() throws SQLException {
+        newPool(1, 100, 0, 1);
+
+        pool.borrow();
+        sleep(5);
+        pool.detectLeaks();
+        pool.detectLeaks();
+
+        assertEquals(1, pool.stats().leaks());
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -76,6 +76,38 @@ class StudentMapperTest {
         assertTrue(r.isExtMailRestricted());
     }
 
+    @Test
+    void fromLDAP_trida_sdileneRetezce() {
+        DataLDAP first = createTestLDAP();
+        DataLDAP second = createTestLDAP();
+        second.put(EBakaLDAPAttributes.DN.attribute(),
+                "CN=Svoboda Jan,OU=Trida-A,OU=Rocnik-5,OU=Zaci,DC=skola,DC=local");
+        second.put(EBakaLDAPAttributes.TITLE.attribute(), new String("Žák"));
+
+        StudentRecord a = StudentMapper.fromLDAP(first);
+        StudentRecord b = StudentMapper.fromLDAP(second);
+
+        assertEquals(5, a.getClassYear());
+        assertEquals("A", a.getClassLetter());
+        assertEquals("5.A", a.getClassName());
+        assertSame(a.getClassName(), b.getClassName());
+        assertSame(a.getClassLetter(), b.getClassLetter());
+        assertSame(a.getTitle(), b.getTitle());
+    }
+
+    @Test
+    void fromLDAP_dnBezTridy_ponechaVychoziHodnoty() {
+        DataLDAP ldap = createTestLDAP();
+        ldap.put(EBakaLDAPAttributes.DN.attribute(),
+                "CN=Novák Tomáš,OU=Rocnik-5,OU=Trida-A,OU=Absolventi,DC=skola,DC=local");
+
+        StudentRecord r = StudentMapper.fromLDAP(ldap);
+
+        assertEquals(0, r.getClassYear());
+        assertNull(r.getClassLetter());
+        assertNull(r.getClassName());
+    }
+
     @Test
     void mergeBoth() {
         DataSQL sql = createTestSQL();
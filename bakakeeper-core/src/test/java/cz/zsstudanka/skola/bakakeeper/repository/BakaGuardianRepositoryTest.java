@@ -1,16 +1,20 @@
 package cz.zsstudanka.skola.bakakeeper.repository;
 
 import cz.zsstudanka.skola.bakakeeper.connectors.LDAPConnector;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapFilter;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.model.GuardianRecord;
+import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
 import cz.zsstudanka.skola.bakakeeper.repository.impl.BakaGuardianRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -38,7 +42,7 @@ class BakaGuardianRepositoryTest {
         Map<Integer, Map<String, String>> raw = new LinkedHashMap<>();
         raw.put(0, createContactEntry("99001", "Nováková", "Jana", "novakova@email.cz", "777888999"));
 
-        when(ldap.getObjectInfo(anyString(), any(HashMap.class), any(String[].class))).thenReturn(raw);
+        stubSearch(null, raw);
 
         List<GuardianRecord> result = repo.findAllContacts("OU=Kontakty");
 
@@ -57,17 +61,27 @@ class BakaGuardianRepositoryTest {
         raw.put(0, createContactEntry("99001", "Nováková", "Jana", "novakova@email.cz", "777888999"));
         raw.put(1, createContactEntry("99002", "Dvořáková", "Marie", "dvorakova@email.cz", "666777888"));
 
-        when(ldap.getObjectInfo(anyString(), any(HashMap.class), any(String[].class))).thenReturn(raw);
+        stubSearch(null, raw);
 
         GuardianRecord found = repo.findByInternalId("OU=Kontakty", "99002");
         assertNotNull(found);
         assertEquals("Dvořáková", found.getSurname());
     }
 
+    @Test
+    void findByInternalIdFiltersOnServer() {
+        stubSearch(null, new LinkedHashMap<>());
+
+        repo.findByInternalId("OU=Kontakty", "99002");
+
+        ArgumentCaptor<LdapFilter> filter = ArgumentCaptor.forClass(LdapFilter.class);
+        verify(ldap).searchObjects(eq("OU=Kontakty"), filter.capture(), any(), any());
+        assertEquals("(&(objectClass=contact)(extensionAttribute1=99002))", filter.getValue().encode());
+    }
+
     @Test
     void findByInternalIdNotFound() {
-        when(ldap.getObjectInfo(anyString(), any(HashMap.class), any(String[].class)))
-                .thenReturn(new LinkedHashMap<>());
+        stubSearch(null, new LinkedHashMap<>());
 
         assertNull(repo.findByInternalId("OU=Kontakty", "neexistuje"));
     }
@@ -122,4 +136,15 @@ class BakaGuardianRepositoryTest {
         entry.put(EBakaLDAPAttributes.MSXCH_REQ_AUTH.attribute(), "TRUE");
         return entry;
     }
+
+    /** Simulace proudového LDAP hledání – záznamy se předají konzumentovi postupně. */
+    @SuppressWarnings("unchecked")
+    private void stubSearch(String baseOu, Map<Integer, Map<String, String>> raw) {
+        doAnswer(inv -> {
+            Consumer<DataLDAP> consumer = inv.getArgument(3);
+            raw.values().forEach(entry -> consumer.accept(new DataLDAP(entry)));
+            return true;
+        }).when(ldap).searchObjects(baseOu == null ? anyString() : eq(baseOu),
+                any(LdapFilter.class), any(String[].class), any(Consumer.class));
+    }
 }
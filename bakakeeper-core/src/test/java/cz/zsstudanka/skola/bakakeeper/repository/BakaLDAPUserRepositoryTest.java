@@ -1,12 +1,19 @@
 package cz.zsstudanka.skola.bakakeeper.repository;
 
 import cz.zsstudanka.skola.bakakeeper.connectors.LDAPConnector;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapFilter;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapModificationBatch;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
+import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
 import cz.zsstudanka.skola.bakakeeper.repository.impl.BakaLDAPUserRepository;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.DirectorySnapshot;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.LookupCache;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.SnapshotMutation;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -14,6 +21,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -42,7 +50,7 @@ class BakaLDAPUserRepositoryTest {
         raw.put(0, createUserEntry("12345", "Novák", "Tomáš", "novak.tomas@skola.local",
                 "CN=Novák Tomáš,OU=Zaci,DC=skola,DC=local", "512"));
 
-        when(ldap.getObjectInfo(eq("OU=Zaci"), any(HashMap.class), any(String[].class))).thenReturn(raw);
+        stubSearch("OU=Zaci", raw);
 
         List<StudentRecord> result = repo.findAllStudents("OU=Zaci", "OU=Alumni");
 
@@ -61,7 +69,7 @@ class BakaLDAPUserRepositoryTest {
         raw.put(1, createUserEntry("99999", "Starý", "Adam", "stary.adam@skola.local",
                 "CN=Starý Adam,OU=Alumni,DC=skola,DC=local", "514"));
 
-        when(ldap.getObjectInfo(anyString(), any(HashMap.class), any(String[].class))).thenReturn(raw);
+        stubSearch(null, raw);
 
         List<StudentRecord> result = repo.findAllStudents("OU=Skola", "OU=Alumni");
 
@@ -71,8 +79,7 @@ class BakaLDAPUserRepositoryTest {
 
     @Test
     void findAllStudentsEmpty() {
-        when(ldap.getObjectInfo(anyString(), any(HashMap.class), any(String[].class)))
-                .thenReturn(new LinkedHashMap<>());
+        stubSearch(null, new LinkedHashMap<>());
 
         List<StudentRecord> result = repo.findAllStudents("OU=Zaci", null);
         assertTrue(result.isEmpty());
@@ -86,7 +93,7 @@ class BakaLDAPUserRepositoryTest {
         raw.put(1, createUserEntry("67890", "Dvořák", "Petr", "dvorak.petr@skola.local",
                 "CN=Dvořák Petr,OU=Zaci,DC=skola,DC=local", "512"));
 
-        when(ldap.getObjectInfo(anyString(), any(HashMap.class), any(String[].class))).thenReturn(raw);
+        stubSearch(null, raw);
 
         StudentRecord found = repo.findByUPN("OU=Zaci", "dvorak.petr@skola.local");
         assertNotNull(found);
@@ -95,12 +102,56 @@ class BakaLDAPUserRepositoryTest {
 
     @Test
     void findByUPNnotFound() {
-        when(ldap.getObjectInfo(anyString(), any(HashMap.class), any(String[].class)))
-                .thenReturn(new LinkedHashMap<>());
+        stubSearch(null, new LinkedHashMap<>());
 
         assertNull(repo.findByUPN("OU=Zaci", "neexistuje@skola.local"));
     }
 
+    @Test
+    void findByUPNsendsEscapedEqualityFilter() {
+        stubSearch(null, new LinkedHashMap<>());
+
+        repo.findByUPN("OU=Zaci", "novak*)(x@skola.local");
+
+        ArgumentCaptor<LdapFilter> filter = ArgumentCaptor.forClass(LdapFilter.class);
+        verify(ldap).searchObjects(eq("OU=Zaci"), filter.capture(), any(), any());
+        assertEquals("(&(objectClass=user)(userPrincipalName=novak\\2a\\29\\28x@skola.local))", filter.getValue().encode());
+    }
+
+    @Test
+    void findByInternalIdServedFromSnapshot() {
+        Map<Integer, Map<String, String>> raw = new LinkedHashMap<>();
+        raw.put(0, createUserEntry("12345", "Novák", "Tomáš", "novak.tomas@skola.local",
+                "CN=Novák Tomáš,OU=Zaci,DC=skola,DC=local", "512"));
+        stubSearch("OU=Zaci,DC=skola,DC=local", raw);
+
+        repo.openSnapshot();
+        repo.findAllStudents("OU=Zaci,DC=skola,DC=local", null);
+
+        StudentRecord found = repo.findByInternalId("OU=Zaci,DC=skola,DC=local", "12345");
+        assertNotNull(found);
+        assertEquals("Novák", found.getSurname());
+        verify(ldap, times(1)).searchObjects(anyString(), any(), any(), any());
+    }
+
+    @Test
+    void lookupCacheIsClearedByWrite() {
+        repo = new BakaLDAPUserRepository(ldap, null, new LookupCache<>(60));
+        String dn = "CN=Novák Tomáš,OU=Zaci,DC=skola,DC=local";
+        Map<Integer, Map<String, String>> raw = new LinkedHashMap<>();
+        raw.put(0, createUserEntry("12345", "Novák", "Tomáš", "novak.tomas@skola.local", dn, "512"));
+        stubSearch("OU=Zaci", raw);
+        when(ldap.replaceAttribute(dn, EBakaLDAPAttributes.TITLE, "Absolvent")).thenReturn(true);
+
+        assertNotNull(repo.findByUPN("OU=Zaci", "novak.tomas@skola.local"));
+        assertNotNull(repo.findByUPN("OU=Zaci", "Novak.Tomas@skola.local"));
+        verify(ldap, times(1)).searchObjects(anyString(), any(), any(), any());
+
+        repo.updateAttribute(dn, EBakaLDAPAttributes.TITLE, "Absolvent");
+        assertNotNull(repo.findByUPN("OU=Zaci", "novak.tomas@skola.local"));
+        verify(ldap, times(2)).searchObjects(anyString(), any(), any(), any());
+    }
+
     @Test
     void checkDNdelegates() {
         when(ldap.checkDN("CN=Test,DC=skola,DC=local")).thenReturn(true);
@@ -119,6 +170,134 @@ class BakaLDAPUserRepositoryTest {
         assertTrue(repo.moveObject("CN=Test,OU=Old", "OU=New"));
     }
 
+    @Test
+    void snapshotServesRepeatedReadsWithOwnWrites() {
+        String dn = "CN=Novák Tomáš,OU=Zaci,DC=skola,DC=local";
+        Map<Integer, Map<String, String>> raw = new LinkedHashMap<>();
+        raw.put(0, createUserEntry("12345", "Novák", "Tomáš", "novak.tomas@skola.local", dn, "512"));
+        stubSearch("OU=Zaci,DC=skola,DC=local", raw);
+        when(ldap.replaceAttribute(dn, EBakaLDAPAttributes.MAIL, "tomas.novak@skola.local")).thenReturn(true);
+
+        repo.openSnapshot();
+        repo.findAllStudents("OU=Zaci,DC=skola,DC=local", null);
+        assertTrue(repo.updateAttribute(dn, EBakaLDAPAttributes.MAIL, "tomas.novak@skola.local"));
+        List<StudentRecord> result = repo.findAllStudents("OU=Zaci,DC=skola,DC=local", null);
+
+        assertEquals("tomas.novak@skola.local", result.get(0).getEmail());
+        verify(ldap, times(1)).searchObjects(anyString(), any(), any(), any());
+        assertTrue(repo.closeSnapshot(false).isEmpty());
+    }
+
+    @Test
+    void snapshotRefreshesObjectAfterFailedWrite() {
+        String dn = "CN=Novák Tomáš,OU=Zaci,DC=skola,DC=local";
+        Map<Integer, Map<String, String>> raw = new LinkedHashMap<>();
+        raw.put(0, createUserEntry("12345", "Novák", "Tomáš", "novak.tomas@skola.local", dn, "512"));
+        stubSearch("OU=Zaci,DC=skola,DC=local", raw);
+
+        Map<Integer, Map<String, String>> fresh = new LinkedHashMap<>();
+        fresh.put(0, createUserEntry("12345", "Novák", "Tomáš", "novak.tomas@skola.local", dn, "514"));
+        stubSearch(dn, fresh);
+        when(ldap.replaceAttribute(dn, EBakaLDAPAttributes.UAC, "514")).thenReturn(false);
+        when(ldap.checkDN(dn)).thenReturn(true);
+
+        repo.openSnapshot();
+        repo.findAllStudents("OU=Zaci,DC=skola,DC=local", null);
+        repo.updateAttribute(dn, EBakaLDAPAttributes.UAC, "514");
+        List<StudentRecord> result = repo.findAllStudents("OU=Zaci,DC=skola,DC=local", null);
+
+        assertEquals(514, result.get(0).getUac());
+        verify(ldap, times(1)).searchObjects(eq("OU=Zaci,DC=skola,DC=local"), any(), any(), any());
+    }
+
+    @Test
+    void snapshotFollowsMoveIntoCoveredBase() {
+        String dn = "CN=Novák Tomáš,OU=Zaci,DC=skola,DC=local";
+        String alumniOu = "OU=Alumni,OU=Zaci,DC=skola,DC=local";
+        String movedDn = "CN=Novák Tomáš," + alumniOu;
+        Map<Integer, Map<String, String>> raw = new LinkedHashMap<>();
+        raw.put(0, createUserEntry("12345", "Novák", "Tomáš", "novak.tomas@skola.local", dn, "512"));
+        stubSearch("OU=Zaci,DC=skola,DC=local", raw);
+
+        Map<Integer, Map<String, String>> moved = new LinkedHashMap<>();
+        moved.put(0, createUserEntry("12345", "Novák", "Tomáš", "novak.tomas@skola.local", movedDn, "514"));
+        stubSearch(movedDn, moved);
+        when(ldap.moveObject(dn, alumniOu)).thenReturn(true);
+        when(ldap.checkDN(movedDn)).thenReturn(true);
+
+        repo.openSnapshot();
+        repo.findAllStudents("OU=Zaci,DC=skola,DC=local", alumniOu);
+        assertTrue(repo.moveObject(dn, alumniOu));
+
+        assertTrue(repo.findAllStudents("OU=Zaci,DC=skola,DC=local", alumniOu).isEmpty());
+        List<StudentRecord> alumni = repo.findAllAlumni(alumniOu);
+        assertEquals(1, alumni.size());
+        assertEquals(movedDn, alumni.get(0).getDn());
+        verify(ldap, never()).searchObjects(eq(alumniOu), any(), any(), any());
+    }
+
+    @Test
+    void modifyAttributesSendsBatchAndJournalsIntoSnapshot() {
+        String dn = "CN=Novák Tomáš,OU=Zaci,DC=skola,DC=local";
+        Map<Integer, Map<String, String>> raw = new LinkedHashMap<>();
+        raw.put(0, createUserEntry("12345", "Novák", "Tomáš", "novak.tomas@skola.local", dn, "512"));
+        stubSearch("OU=Zaci,DC=skola,DC=local", raw);
+        when(ldap.modifyAttributes(any())).thenReturn(true);
+
+        repo.openSnapshot();
+        repo.findAllStudents("OU=Zaci,DC=skola,DC=local", null);
+        assertTrue(repo.modifyAttributes(new LdapModificationBatch(dn)
+                .replace(EBakaLDAPAttributes.NAME_LAST, "Nováková")
+                .replace(EBakaLDAPAttributes.TITLE, "")));
+
+        StudentRecord result = repo.findAllStudents("OU=Zaci,DC=skola,DC=local", null).get(0);
+        assertEquals("Nováková", result.getSurname());
+        assertNull(result.getTitle());
+        verify(ldap, times(1)).modifyAttributes(any());
+        verify(ldap, never()).replaceAttribute(anyString(), any(), anyString());
+    }
+
+    @Test
+    void snapshotNeverExposesItsOwnEntries() {
+        String dn = "CN=Novák Tomáš,OU=Zaci,DC=skola,DC=local";
+        DataLDAP loaded = new DataLDAP(createUserEntry("12345", "Novák", "Tomáš", "novak.tomas@skola.local", dn, "512"));
+        DirectorySnapshot snapshot = new DirectorySnapshot();
+        snapshot.load("OU=Zaci,DC=skola,DC=local", List.of(loaded));
+
+        DataLDAP handedOut = snapshot.entriesUnder("OU=Zaci,DC=skola,DC=local").get(0);
+        snapshot.apply(new SnapshotMutation(SnapshotMutation.Type.REPLACE, dn,
+                EBakaLDAPAttributes.NAME_LAST.attribute(), "Nováková", null));
+        loaded.put(EBakaLDAPAttributes.NAME_FIRST.attribute(), "Tomáš Jan");
+        handedOut.put(EBakaLDAPAttributes.TITLE.attribute(), "Absolvent");
+
+        // změna ve snapshotu se neprojeví ve vydaných ani převzatých objektech a naopak
+        assertEquals("Novák", handedOut.get(EBakaLDAPAttributes.NAME_LAST.attribute()));
+        assertEquals("Novák", loaded.get(EBakaLDAPAttributes.NAME_LAST.attribute()));
+        DataLDAP current = snapshot.findUnder("OU=Zaci,DC=skola,DC=local",
+                e -> "12345".equals(e.get(EBakaLDAPAttributes.EXT01.attribute())));
+        assertEquals("Nováková", current.get(EBakaLDAPAttributes.NAME_LAST.attribute()));
+        assertEquals("Tomáš", current.get(EBakaLDAPAttributes.NAME_FIRST.attribute()));
+        assertEquals("Žák", current.get(EBakaLDAPAttributes.TITLE.attribute()));
+    }
+
+    @Test
+    void closeSnapshotWithVerifyReportsDrift() {
+        String dn = "CN=Novák Tomáš,OU=Zaci,DC=skola,DC=local";
+        Map<Integer, Map<String, String>> raw = new LinkedHashMap<>();
+        raw.put(0, createUserEntry("12345", "Novák", "Tomáš", "novak.tomas@skola.local", dn, "512"));
+        stubSearch("OU=Zaci,DC=skola,DC=local", raw);
+
+        repo.openSnapshot();
+        repo.findAllStudents("OU=Zaci,DC=skola,DC=local", null);
+
+        // změna provedená mimo repozitář
+        raw.get(0).put(EBakaLDAPAttributes.TITLE.attribute(), "Absolvent");
+
+        List<String> drift = repo.closeSnapshot(true);
+        assertEquals(1, drift.size());
+        assertTrue(drift.get(0).contains(EBakaLDAPAttributes.TITLE.attribute()));
+    }
+
     // --- pomocná metoda ---
 
     private Map<String, String> createUserEntry(String id, String surname, String givenName,
@@ -137,4 +316,15 @@ class BakaLDAPUserRepositoryTest {
         entry.put(EBakaLDAPAttributes.TITLE.attribute(), "Žák");
         return entry;
     }
+
+    /** Simulace proudového LDAP hledání – záznamy se předají konzumentovi postupně. */
+    @SuppressWarnings("unchecked")
+    private void stubSearch(String baseOu, Map<Integer, Map<String, String>> raw) {
+        doAnswer(inv -> {
+            Consumer<DataLDAP> consumer = inv.getArgument(3);
+            raw.values().forEach(entry -> consumer.accept(new DataLDAP(entry)));
+            return true;
+        }).when(ldap).searchObjects(baseOu == null ? anyString() : eq(baseOu),
+                any(LdapFilter.class), any(String[].class), any(Consumer.class));
+    }
 }
@@ -1,22 +1,34 @@
 package cz.zsstudanka.skola.bakakeeper.repository;
 
 import cz.zsstudanka.skola.bakakeeper.connectors.SQLConnector;
+import cz.zsstudanka.skola.bakakeeper.connectors.SqlQuery;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
 import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
+import cz.zsstudanka.skola.bakakeeper.model.entities.DataSQL;
+import cz.zsstudanka.skola.bakakeeper.model.entities.SqlRow;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.BakaQueries;
 import cz.zsstudanka.skola.bakakeeper.repository.impl.BakaStudentRepository;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.RosterCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -28,9 +40,6 @@ import static org.mockito.Mockito.*;
 class BakaStudentRepositoryTest {
 
     @Mock SQLConnector sql;
-    @Mock ResultSet rs;
-    @Mock Connection conn;
-    @Mock PreparedStatement ps;
 
     private BakaStudentRepository repo;
 
@@ -41,56 +50,78 @@ class BakaStudentRepositoryTest {
 
     @Test
     void queryContainsStudentTable() {
-        // ověření, že generovaný SQL dotaz obsahuje tabulku žáků
-        String query = BakaStudentRepository.buildStudentQuery(null, null);
+        // ověření, že dotaz obsahuje tabulku žáků
+        String query = BakaQueries.STUDENTS_ACTIVE.sql();
         assertTrue(query.contains(EBakaSQL.TBL_STU.field()));
         assertTrue(query.contains("LEFT JOIN"));
         assertTrue(query.contains("IS NULL")); // EVID_DO IS NULL = aktivní žáci
     }
 
     @Test
-    void queryFiltersByClass() {
-        String query = BakaStudentRepository.buildStudentQuery(5, "A");
-        assertTrue(query.contains("LIKE '5.A'"));
+    void classFilterIsParameter() {
+        String query = BakaQueries.STUDENTS_IN_CLASS.sql();
+        assertTrue(query.contains(EBakaSQL.F_STU_CLASS.field() + " LIKE ? "));
+        assertTrue(query.indexOf("LIKE ?") < query.indexOf("ORDER BY"));
     }
 
     @Test
-    void queryFiltersByGradeOnly() {
-        String query = BakaStudentRepository.buildStudentQuery(3, null);
-        assertTrue(query.contains("LIKE '3.%'"));
+    void classChecksumsAreComputedServerSidePerClass() {
+        String query = BakaQueries.STUDENTS_CLASS_CHECKSUMS.sql();
+        assertTrue(query.contains("CHECKSUM_AGG(BINARY_CHECKSUM("));
+        assertTrue(query.contains(EBakaSQL.F_GUA_MAIL.field()));
+        assertTrue(query.contains("GROUP BY " + EBakaSQL.F_STU_CLASS.field()));
+        // stejná množina řádků jako při čtení žáků
+        String from = query.substring(query.indexOf("FROM "), query.indexOf("GROUP BY"));
+        assertTrue(BakaQueries.STUDENTS_ACTIVE.sql().contains(from));
     }
 
     @Test
-    void queryFiltersByLetterOnly() {
-        String query = BakaStudentRepository.buildStudentQuery(null, "B");
-        assertTrue(query.contains("LIKE '%.B'"));
+    void classPatternByClass() {
+        assertEquals("5.A", BakaQueries.classPattern(5, "A"));
     }
 
     @Test
-    void queryNoFilter() {
-        String query = BakaStudentRepository.buildStudentQuery(null, null);
-        // bez filtru by neměl obsahovat LIKE s číslem
-        assertFalse(query.contains("LIKE '5."));
+    void classPatternByGradeOnly() {
+        assertEquals("3.%", BakaQueries.classPattern(3, null));
     }
 
     @Test
-    void findActiveReturnsRecords() throws Exception {
-        // mock: jeden žák v ResultSet
-        when(sql.select(anyString())).thenReturn(rs);
-        when(rs.next()).thenReturn(true, false);
-        when(rs.getString(EBakaSQL.F_STU_ID.basename())).thenReturn("12345");
-        when(rs.getString(EBakaSQL.F_STU_SURNAME.basename())).thenReturn("Novák");
-        when(rs.getString(EBakaSQL.F_STU_GIVENNAME.basename())).thenReturn("Tomáš");
-        when(rs.getString(EBakaSQL.F_STU_CLASS.basename())).thenReturn("5.A");
-        when(rs.getString(EBakaSQL.F_STU_CLASS_ID.basename())).thenReturn("12");
-        when(rs.getString(EBakaSQL.F_STU_MAIL.basename())).thenReturn("novak@skola.cz");
-        when(rs.getString(EBakaSQL.F_STU_BK_CLASSYEAR.basename())).thenReturn("5");
-        when(rs.getString(EBakaSQL.F_STU_BK_CLASSLETTER.basename())).thenReturn("A");
-        when(rs.getString(EBakaSQL.F_GUA_BK_ID.basename())).thenReturn("99001");
-        when(rs.getString(EBakaSQL.F_GUA_BK_SURNAME.basename())).thenReturn("Nováková");
-        when(rs.getString(EBakaSQL.F_GUA_BK_GIVENNAME.basename())).thenReturn("Jana");
-        when(rs.getString(EBakaSQL.F_GUA_BK_MOBILE.basename())).thenReturn("777888999");
-        when(rs.getString(EBakaSQL.F_GUA_BK_MAIL.basename())).thenReturn("novakova@email.cz");
+    void classPatternByLetterOnly() {
+        assertEquals("%.B", BakaQueries.classPattern(null, "B"));
+    }
+
+    @Test
+    void classPatternNoFilter() {
+        assertNull(BakaQueries.classPattern(null, null));
+    }
+
+    /** Proudové čtení vrátí zadané řádky převedené předaným mapperem. */
+    @SuppressWarnings("unchecked")
+    private void stubRows(DataSQL... rows) {
+        when(sql.stream(any(SqlQuery.class), any(), any(Object[].class))).thenAnswer(inv -> {
+            Function<SqlRow, Object> mapper = inv.getArgument(1);
+            return Stream.of(rows).map(mapper);
+        });
+    }
+
+    @Test
+    void findActiveReturnsRecords() {
+        // jeden žák ve výsledku dotazu
+        DataSQL row = new DataSQL();
+        row.put(EBakaSQL.F_STU_ID.basename(), "12345");
+        row.put(EBakaSQL.F_STU_SURNAME.basename(), "Novák");
+        row.put(EBakaSQL.F_STU_GIVENNAME.basename(), "Tomáš");
+        row.put(EBakaSQL.F_STU_CLASS.basename(), "5.A");
+        row.put(EBakaSQL.F_STU_CLASS_ID.basename(), "12");
+        row.put(EBakaSQL.F_STU_MAIL.basename(), "novak@skola.cz");
+        row.put(EBakaSQL.F_STU_BK_CLASSYEAR.basename(), "5");
+        row.put(EBakaSQL.F_STU_BK_CLASSLETTER.basename(), "A");
+        row.put(EBakaSQL.F_GUA_BK_ID.basename(), "99001");
+        row.put(EBakaSQL.F_GUA_BK_SURNAME.basename(), "Nováková");
+        row.put(EBakaSQL.F_GUA_BK_GIVENNAME.basename(), "Jana");
+        row.put(EBakaSQL.F_GUA_BK_MOBILE.basename(), "777888999");
+        row.put(EBakaSQL.F_GUA_BK_MAIL.basename(), "novakova@email.cz");
+        stubRows(row);
 
         List<StudentRecord> result = repo.findActive(null, null);
 
@@ -101,36 +132,108 @@ class BakaStudentRepositoryTest {
         assertEquals("5.A", result.get(0).getClassName());
         assertEquals(5, result.get(0).getClassYear());
         assertEquals("99001", result.get(0).getGuardianInternalId());
+        verify(sql, never()).select(anyString());
+    }
+
+    @Test
+    void findActiveMergesGuardianRows() {
+        DataSQL secondary = studentRow("12345", "5.A");
+        secondary.put(EBakaSQL.F_GUA_BK_ID.basename(), "99002");
+        secondary.put(EBakaSQL.F_GUA_BK_SURNAME.basename(), "Novák");
+        secondary.put(EBakaSQL.F_GUA_BK_PRIMARY.basename(), "0");
+        DataSQL primary = studentRow("12345", "5.A");
+        primary.put(EBakaSQL.F_GUA_BK_ID.basename(), "99001");
+        primary.put(EBakaSQL.F_GUA_BK_SURNAME.basename(), "Nováková");
+        primary.put(EBakaSQL.F_GUA_BK_PRIMARY.basename(), "1");
+        DataSQL other = studentRow("12346", "5.A");
+        stubRows(secondary, primary, other);
+
+        List<StudentRecord> result = repo.findActive(null, null);
+
+        assertEquals(2, result.size());
+        StudentRecord merged = result.get(0);
+        assertEquals(List.of("99002", "99001"),
+                merged.getGuardians().stream().map(g -> g.getInternalId()).toList());
+        assertEquals("99001", merged.getGuardianInternalId());
+        assertEquals("Nováková", merged.getGuardianSurname());
+        assertTrue(result.get(1).getGuardians().isEmpty());
+        assertNull(result.get(1).getGuardianInternalId());
+    }
+
+    private static DataSQL studentRow(String id, String className) {
+        DataSQL row = new DataSQL();
+        row.put(EBakaSQL.F_STU_ID.basename(), id);
+        row.put(EBakaSQL.F_STU_CLASS.basename(), className);
+        row.put(EBakaSQL.F_GUA_BK_ID.basename(), EBakaSQL.NULL.basename());
+        return row;
+    }
+
+    @Test
+    void studentQueryJoinsGuardiansWithoutCorrelatedSubquery() {
+        String query = BakaQueries.STUDENTS_ACTIVE.sql();
+        assertFalse(query.contains("TOP 1"));
+        assertTrue(query.contains("LEFT JOIN " + EBakaSQL.TBL_STU_GUA.field()));
+        assertTrue(query.contains(EBakaSQL.F_GUA_BK_PRIMARY.basename() + " DESC"));
+    }
+
+    @Test
+    void findActiveByClassesGroupsOneQuery() {
+        stubRows(studentRow("1", "6.B"), studentRow("2", "5.A"), studentRow("3", "5.A"));
+
+        Map<String, List<StudentRecord>> result = repo.findActiveByClasses(List.of("5.A", "6.B", "7.C"));
+
+        assertEquals(List.of("5.A", "6.B", "7.C"), List.copyOf(result.keySet()));
+        assertEquals(2, result.get("5.A").size());
+        assertEquals(1, result.get("6.B").size());
+        assertTrue(result.get("7.C").isEmpty());
+        verify(sql, times(1)).stream(eq(BakaQueries.STUDENTS_IN_CLASSES), any(), eq(",5.A,6.B,7.C,"));
+    }
+
+    @Test
+    void findActiveIsCachedUntilEmailWrite() throws SQLException {
+        repo = new BakaStudentRepository(sql, null, new RosterCache(60));
+        stubRows(studentRow("1", "5.A"));
+        when(sql.update(eq(BakaQueries.STUDENT_UPDATE_EMAIL), any(Object[].class))).thenReturn(1);
+
+        repo.findActive(null, null);
+        repo.findActive(null, null);
+        verify(sql, times(1)).stream(eq(BakaQueries.STUDENTS_ACTIVE), any(), any(Object[].class));
+
+        // zápis e-mailu mezipaměť zneplatní
+        repo.updateEmail("1", "novak@skola.cz");
+        repo.findActive(null, null);
+        verify(sql, times(2)).stream(eq(BakaQueries.STUDENTS_ACTIVE), any(), any(Object[].class));
     }
 
     @Test
-    void findActiveEmpty() throws Exception {
-        when(sql.select(anyString())).thenReturn(rs);
-        when(rs.next()).thenReturn(false);
+    void findActiveEmpty() {
+        stubRows();
 
         List<StudentRecord> result = repo.findActive(null, null);
         assertTrue(result.isEmpty());
     }
 
     @Test
-    void findByEmailReturnsStudent() throws Exception {
-        when(sql.getConnection()).thenReturn(conn);
-        when(conn.prepareStatement(anyString())).thenReturn(ps);
-        when(ps.executeQuery()).thenReturn(rs);
-        when(rs.next()).thenReturn(true);
-        when(rs.getString(EBakaSQL.F_STU_ID.basename())).thenReturn("12345");
-        when(rs.getString(EBakaSQL.F_STU_SURNAME.basename())).thenReturn("Novák");
-        when(rs.getString(EBakaSQL.F_STU_GIVENNAME.basename())).thenReturn("Tomáš");
-        when(rs.getString(EBakaSQL.F_STU_CLASS.basename())).thenReturn("5.A");
-        when(rs.getString(EBakaSQL.F_STU_CLASS_ID.basename())).thenReturn("12");
-        when(rs.getString(EBakaSQL.F_STU_MAIL.basename())).thenReturn("novak.tomas@skola.cz");
-        when(rs.getString(EBakaSQL.F_STU_BK_CLASSYEAR.basename())).thenReturn("5");
-        when(rs.getString(EBakaSQL.F_STU_BK_CLASSLETTER.basename())).thenReturn("A");
-        when(rs.getString(EBakaSQL.F_GUA_BK_ID.basename())).thenReturn("99001");
-        when(rs.getString(EBakaSQL.F_GUA_BK_SURNAME.basename())).thenReturn("Nováková");
-        when(rs.getString(EBakaSQL.F_GUA_BK_GIVENNAME.basename())).thenReturn("Jana");
-        when(rs.getString(EBakaSQL.F_GUA_BK_MOBILE.basename())).thenReturn("777888999");
-        when(rs.getString(EBakaSQL.F_GUA_BK_MAIL.basename())).thenReturn("novakova@email.cz");
+    void findActiveByClassPassesPattern() {
+        stubRows();
+
+        repo.findActive(5, "A");
+
+        verify(sql).stream(eq(BakaQueries.STUDENTS_IN_CLASS), any(), eq("5.A"));
+    }
+
+    @Test
+    void findByEmailReturnsStudent() {
+        DataSQL row = new DataSQL();
+        row.put(EBakaSQL.F_STU_ID.basename(), "12345");
+        row.put(EBakaSQL.F_STU_SURNAME.basename(), "Novák");
+        row.put(EBakaSQL.F_STU_GIVENNAME.basename(), "Tomáš");
+        row.put(EBakaSQL.F_STU_CLASS.basename(), "5.A");
+        row.put(EBakaSQL.F_STU_CLASS_ID.basename(), "12");
+        row.put(EBakaSQL.F_STU_MAIL.basename(), "novak.tomas@skola.cz");
+        row.put(EBakaSQL.F_STU_BK_CLASSYEAR.basename(), "5");
+        row.put(EBakaSQL.F_STU_BK_CLASSLETTER.basename(), "A");
+        stubRows(row);
 
         StudentRecord result = repo.findByEmail("novak.tomas@skola.cz");
 
@@ -138,32 +241,93 @@ class BakaStudentRepositoryTest {
         assertEquals("12345", result.getInternalId());
         assertEquals("novak.tomas@skola.cz", result.getEmail());
 
-        verify(conn).prepareStatement(argThat(q -> q.contains(EBakaSQL.F_STU_MAIL.field() + " = ?")));
-        verify(ps).setString(1, "novak.tomas@skola.cz");
+        verify(sql).stream(eq(BakaQueries.STUDENT_BY_EMAIL), any(), eq("novak.tomas@skola.cz"));
+        assertTrue(BakaQueries.STUDENT_BY_EMAIL.sql().contains(EBakaSQL.F_STU_MAIL.field() + " = ?"));
     }
 
     @Test
-    void findByEmailReturnsNullWhenNotFound() throws Exception {
-        when(sql.getConnection()).thenReturn(conn);
-        when(conn.prepareStatement(anyString())).thenReturn(ps);
-        when(ps.executeQuery()).thenReturn(rs);
-        when(rs.next()).thenReturn(false);
+    void findByEmailReturnsNullWhenNotFound() {
+        stubRows();
 
         StudentRecord result = repo.findByEmail("neexistuje@skola.cz");
         assertNull(result);
     }
 
+    @Test
+    void findByInternalIdMergesAllGuardianRows() {
+        DataSQL first = studentRow("12345", "5.A");
+        first.put(EBakaSQL.F_GUA_BK_ID.basename(), "99001");
+        first.put(EBakaSQL.F_GUA_BK_PRIMARY.basename(), "1");
+        DataSQL second = studentRow("12345", "5.A");
+        second.put(EBakaSQL.F_GUA_BK_ID.basename(), "99002");
+        second.put(EBakaSQL.F_GUA_BK_PRIMARY.basename(), "0");
+        stubRows(first, second);
+
+        StudentRecord result = repo.findByInternalId("12345");
+
+        assertEquals(List.of("99001", "99002"),
+                result.getGuardians().stream().map(g -> g.getInternalId()).toList());
+    }
+
+    @Test
+    void findByInternalIdQueriesSingleRow() {
+        stubRows();
+
+        assertNull(repo.findByInternalId("12345"));
+
+        verify(sql).stream(eq(BakaQueries.STUDENT_BY_ID), any(), eq("12345"));
+        verify(sql, never()).select(anyString());
+    }
+
     @Test
     void updateEmail() throws Exception {
-        when(sql.getConnection()).thenReturn(conn);
-        when(conn.prepareStatement(anyString())).thenReturn(ps);
-        when(ps.executeUpdate()).thenReturn(1);
+        when(sql.update(BakaQueries.STUDENT_UPDATE_EMAIL, "novy@skola.cz", "12345")).thenReturn(1);
 
         boolean success = repo.updateEmail("12345", "novy@skola.cz");
 
         assertTrue(success);
-        verify(ps).setString(1, "novy@skola.cz");
-        verify(ps).setString(2, "12345");
-        verify(conn).commit();
+    }
+
+    @Test
+    void updateEmailWrapsSqlError() throws Exception {
+        when(sql.update(eq(BakaQueries.STUDENT_UPDATE_EMAIL), any(Object[].class)))
+                .thenThrow(new SQLException("zámek"));
+
+        assertThrows(RuntimeException.class, () -> repo.updateEmail("12345", "novy@skola.cz"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void updateEmailsWritesOneBatch() throws Exception {
+        Map<String, String> emails = new LinkedHashMap<>();
+        emails.put("1", "a@skola.cz");
+        emails.put("2", "b@skola.cz");
+        emails.put("3", "c@skola.cz");
+        when(sql.updateBatch(eq(BakaQueries.STUDENT_UPDATE_EMAIL), anyList()))
+                .thenReturn(new int[] { 1, 0, Statement.EXECUTE_FAILED });
+
+        Map<String, String> failed = repo.updateEmails(emails);
+
+        assertEquals(List.of("2", "3"), List.copyOf(failed.keySet()));
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(sql).updateBatch(eq(BakaQueries.STUDENT_UPDATE_EMAIL), rows.capture());
+        assertArrayEquals(new Object[] { "a@skola.cz", "1" }, rows.getValue().get(0));
+        verify(sql, never()).update(any(), any(Object[].class));
+    }
+
+    @Test
+    void emailBufferReportsWholeBatchFailure() throws Exception {
+        when(sql.updateBatch(eq(BakaQueries.STUDENT_UPDATE_EMAIL), anyList()))
+                .thenThrow(new SQLException("spojení přerušeno", "08S01"));
+        EmailWriteBuffer buffer = new EmailWriteBuffer(repo);
+        buffer.add("1", "stary@skola.cz");
+        buffer.add("2", "b@skola.cz");
+        buffer.add("1", "a@skola.cz");
+
+        Map<String, String> failed = buffer.flush();
+
+        assertEquals(List.of("1", "2"), List.copyOf(failed.keySet()));
+        assertEquals(0, buffer.size());
+        assertTrue(buffer.flush().isEmpty());
     }
 }
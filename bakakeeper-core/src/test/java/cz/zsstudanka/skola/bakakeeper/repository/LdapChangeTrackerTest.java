@@ -0,0 +1,189 @@
+package cz.zsstudanka.skola.bakakeeper.repository;
+
+import cz.zsstudanka.skola.bakakeeper.connectors.LDAPConnector;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapFilter;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapWatermark;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
+import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.LdapChangeTracker;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.LdapStateStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy pro LdapChangeTracker.
+ *
+ * @author Jan Hladěna
+ */
+@ExtendWith(MockitoExtension.class)
+class LdapChangeTrackerTest {
+
+    private static final String BASE = "OU=Zaci,DC=skola,DC=local";
+    private static final String SERVER = "CN=NTDS Settings,CN=DC1,CN=Servers,DC=skola,DC=local";
+    private static final String[] ATTRS = { EBakaLDAPAttributes.DN.attribute(), EBakaLDAPAttributes.MAIL.attribute() };
+
+    @Mock LDAPConnector ldap;
+
+    @TempDir Path tempDir;
+
+    private LdapStateStore store;
+    private LdapChangeTracker tracker;
+    private final LdapFilter filter = LdapFilter.is(EBakaLDAPAttributes.OC_USER);
+
+    @BeforeEach
+    void setUp() {
+        store = new LdapStateStore(tempDir.resolve("ldap-state.dat").toString(), "heslo".toCharArray());
+        tracker = new LdapChangeTracker(ldap, store);
+    }
+
+    @Test
+    void firstReadIsFullAndStoresWatermark() {
+        when(ldap.readWatermark()).thenReturn(new LdapWatermark(SERVER, 100));
+        stubFullSearch(entry("CN=A", "a@skola.cz"), entry("CN=B", "b@skola.cz"));
+
+        List<DataLDAP> result = read();
+
+        assertEquals(2, result.size());
+        assertEquals(100, store.get(storedKey()).watermark().usn());
+    }
+
+    @Test
+    void unchangedWatermarkSkipsDirectoryRead() {
+        when(ldap.readWatermark()).thenReturn(new LdapWatermark(SERVER, 100));
+        stubFullSearch(entry("CN=A", "a@skola.cz"));
+        read();
+
+        clearInvocations(ldap);
+        List<DataLDAP> result = read();
+
+        assertEquals(1, result.size());
+        verify(ldap, never()).searchObjects(anyString(), any(), any(), any());
+        verify(ldap, never()).searchObjectsChangedSince(anyString(), any(), anyLong(), any(), any());
+    }
+
+    @Test
+    void advancedWatermarkMergesChangesAndDropsRemovedObjects() {
+        when(ldap.readWatermark()).thenReturn(new LdapWatermark(SERVER, 100));
+        stubFullSearch(entry("CN=A", "a@skola.cz"), entry("CN=B", "b@skola.cz"));
+        read();
+
+        // A změněn, B smazán, C nový
+        when(ldap.readWatermark()).thenReturn(new LdapWatermark(SERVER, 150));
+        stubFullSearch(entry("CN=A", null), entry("CN=C", null));
+        doAnswer(inv -> {
+            Consumer<DataLDAP> consumer = inv.getArgument(4);
+            consumer.accept(entry("CN=A", "a2@skola.cz"));
+            consumer.accept(entry("CN=C", "c@skola.cz"));
+            return true;
+        }).when(ldap).searchObjectsChangedSince(eq(BASE), any(), eq(100L), any(), any());
+
+        List<DataLDAP> result = read();
+
+        assertEquals(2, result.size());
+        assertEquals("a2@skola.cz", result.get(0).get(EBakaLDAPAttributes.MAIL.attribute()));
+        assertEquals("c@skola.cz", result.get(1).get(EBakaLDAPAttributes.MAIL.attribute()));
+        assertEquals(150, store.get(storedKey()).watermark().usn());
+    }
+
+    @Test
+    void otherServerFallsBackToFullRead() {
+        when(ldap.readWatermark()).thenReturn(new LdapWatermark(SERVER, 100));
+        stubFullSearch(entry("CN=A", "a@skola.cz"));
+        read();
+
+        when(ldap.readWatermark()).thenReturn(new LdapWatermark("CN=NTDS Settings,CN=DC2", 50));
+        stubFullSearch(entry("CN=A", "a@skola.cz"), entry("CN=B", "b@skola.cz"));
+
+        assertEquals(2, read().size());
+        verify(ldap, never()).searchObjectsChangedSince(anyString(), any(), anyLong(), any(), any());
+    }
+
+    @Test
+    void stateSurvivesReload() {
+        when(ldap.readWatermark()).thenReturn(new LdapWatermark(SERVER, 100));
+        stubFullSearch(entry("CN=A", "a@skola.cz"));
+        read();
+
+        LdapStateStore reloaded = new LdapStateStore(tempDir.resolve("ldap-state.dat").toString(), "heslo".toCharArray());
+        assertNotNull(reloaded.get(storedKey()));
+        assertEquals(1, reloaded.get(storedKey()).entries().size());
+    }
+
+    @Test
+    void advancedWatermarkRereadsMembershipOfUnchangedObjects() {
+        String[] attrs = { EBakaLDAPAttributes.DN.attribute(), EBakaLDAPAttributes.MAIL.attribute(),
+                EBakaLDAPAttributes.MEMBER_OF.attribute() };
+        when(ldap.readWatermark()).thenReturn(new LdapWatermark(SERVER, 100));
+        DataLDAP member = entry("CN=A", "a@skola.cz");
+        member.put(EBakaLDAPAttributes.MEMBER_OF.attribute(), "CN=Zaci-Trida-5A,OU=Skupiny");
+        stubFullSearch(member);
+        assertTrue(tracker.read(BASE, filter, attrs, e -> {}));
+
+        // člen odebrán ze skupiny – změnila se skupina, uSNChanged člena zůstal
+        when(ldap.readWatermark()).thenReturn(new LdapWatermark(SERVER, 150));
+        stubFullSearch(entry("CN=A", null));
+        when(ldap.searchObjectsChangedSince(eq(BASE), any(), eq(100L), any(), any())).thenReturn(true);
+
+        List<DataLDAP> result = new ArrayList<>();
+        assertTrue(tracker.read(BASE, filter, attrs, result::add));
+
+        assertNull(result.get(0).get(EBakaLDAPAttributes.MEMBER_OF.attribute()));
+        assertEquals("a@skola.cz", result.get(0).get(EBakaLDAPAttributes.MAIL.attribute()));
+        verify(ldap).searchObjects(eq(BASE), any(), eq(new String[]{ EBakaLDAPAttributes.DN.attribute(),
+                EBakaLDAPAttributes.MEMBER_OF.attribute() }), any());
+    }
+
+    @Test
+    void storedEntriesAreNotHandedOut() {
+        when(ldap.readWatermark()).thenReturn(new LdapWatermark(SERVER, 100));
+        stubFullSearch(entry("CN=A", "a@skola.cz"));
+        read().get(0).put(EBakaLDAPAttributes.MAIL.attribute(), "zmena@skola.cz");
+
+        DataLDAP served = read().get(0);
+        assertEquals("a@skola.cz", served.get(EBakaLDAPAttributes.MAIL.attribute()));
+        served.put(EBakaLDAPAttributes.MAIL.attribute(), "zmena@skola.cz");
+
+        assertEquals("a@skola.cz", read().get(0).get(EBakaLDAPAttributes.MAIL.attribute()));
+    }
+
+    // --- pomocné metody ---
+
+    private List<DataLDAP> read() {
+        List<DataLDAP> result = new ArrayList<>();
+        assertTrue(tracker.read(BASE, filter, ATTRS, result::add));
+        return result;
+    }
+
+    private void stubFullSearch(DataLDAP... entries) {
+        doAnswer(inv -> {
+            Consumer<DataLDAP> consumer = inv.getArgument(3);
+            Arrays.stream(entries).forEach(consumer);
+            return true;
+        }).when(ldap).searchObjects(eq(BASE), any(), any(), any());
+    }
+
+    private String storedKey() {
+        return BASE.toLowerCase() + "|" + filter.encode() + "|" + String.join(",", ATTRS);
+    }
+
+    private static DataLDAP entry(String dn, String mail) {
+        DataLDAP data = new DataLDAP();
+        data.put(EBakaLDAPAttributes.DN.attribute(), dn);
+        if (mail != null) {
+            data.put(EBakaLDAPAttributes.MAIL.attribute(), mail);
+        }
+        return data;
+    }
+}
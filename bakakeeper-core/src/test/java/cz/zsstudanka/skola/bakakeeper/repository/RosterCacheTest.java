@@ -0,0 +1,123 @@
+package cz.zsstudanka.skola.bakakeeper.repository;
+
+import cz.zsstudanka.skola.bakakeeper.repository.impl.RosterCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy pro RosterCache.
+ *
+ * @author Jan Hladěna
+ */
+class RosterCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private List<String> load() {
+        return List.of("načteno " + loads.incrementAndGet());
+    }
+
+    @Test
+    void cachedUntilTtlExpires() {
+        RosterCache cache = new RosterCache(60, now::get);
+
+        assertEquals(List.of("načteno 1"), cache.get("sql.students|*", this::load));
+        now.addAndGet(59_000);
+        assertEquals(List.of("načteno 1"), cache.get("sql.students|*", this::load));
+        now.addAndGet(1_000);
+        assertEquals(List.of("načteno 2"), cache.get("sql.students|*", this::load));
+
+        RosterCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+    }
+
+    @Test
+    void invalidateDropsOnlyItsSource() {
+        RosterCache cache = new RosterCache(60, now::get);
+        cache.get("sql.students|*", this::load);
+        cache.get("sql.faculty|true", this::load);
+
+        cache.invalidate("sql.students");
+
+        assertEquals(List.of("načteno 3"), cache.get("sql.students|*", this::load));
+        assertEquals(List.of("načteno 2"), cache.get("sql.faculty|true", this::load));
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        RosterCache cache = new RosterCache(0, now::get);
+
+        cache.get("sql.students|*", this::load);
+        cache.get("sql.students|*", this::load);
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getStats().size());
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        RosterCache cache = new RosterCache(60, now::get);
+
+        assertThrows(IllegalStateException.class,
+                () -> cache.get("ldap.students|OU=Zaci", () -> { throw new IllegalStateException("chyba"); }));
+        assertEquals(List.of("načteno 1"), cache.get("ldap.students|OU=Zaci", this::load));
+    }
+
+    @Test
+    void loadStartedBeforeWriteIsNotStored() {
+        RosterCache cache = new RosterCache(60, now::get);
+
+        cache.get("sql.students|*", () -> {
+            // zápis během načítání
+            cache.invalidate("sql.students");
+            return load();
+        });
+
+        assertEquals(List.of("načteno 2"), cache.get("sql.students|*", this::load));
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        RosterCache cache = new RosterCache(60, now::get);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            Future<List<String>> first = executor.submit(() -> cache.get("sql.students|*", () -> {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return load();
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            Future<List<String>> second = executor.submit(() -> cache.get("sql.students|*", this::load));
+            // druhé volání čeká na probíhající načtení
+            while (cache.getStats().shared() == 0) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            assertEquals(List.of("načteno 1"), first.get(5, TimeUnit.SECONDS));
+            assertEquals(List.of("načteno 1"), second.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getStats().shared());
+    }
+}
@@ -0,0 +1,163 @@
+package cz.zsstudanka.skola.bakakeeper.repository;
+
+import cz.zsstudanka.skola.bakakeeper.connectors.SQLConnector;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaSQL;
+import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
+import cz.zsstudanka.skola.bakakeeper.model.entities.DataSQL;
+import cz.zsstudanka.skola.bakakeeper.model.entities.SqlRow;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.BakaQueries;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.SqlStateStore;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.StudentChangeTracker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy pro StudentChangeTracker.
+ *
+ * @author Jan Hladěna
+ */
+@ExtendWith(MockitoExtension.class)
+class StudentChangeTrackerTest {
+
+    @Mock SQLConnector sql;
+
+    @TempDir Path tempDir;
+
+    private StudentChangeTracker tracker;
+
+    /** obsah evidence podle tříd */
+    private final Map<String, List<StudentRecord>> roster = new TreeMap<>();
+    /** kontrolní součty tříd vracené serverem */
+    private final Map<String, String> checksums = new HashMap<>();
+    /** třídy načtené jednotlivě */
+    private final List<String> classReads = new ArrayList<>();
+    private int fullReads = 0;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new StudentChangeTracker(sql, new SqlStateStore(tempDir.resolve("sql-state.dat").toString(),
+                "heslo".toCharArray()));
+
+        when(sql.stream(eq(BakaQueries.STUDENTS_CLASS_CHECKSUMS), any(), any(Object[].class))).thenAnswer(inv -> {
+            Function<SqlRow, Object> mapper = inv.getArgument(1);
+            return checksums.entrySet().stream().map(e -> {
+                DataSQL row = new DataSQL();
+                row.put(EBakaSQL.F_STU_CLASS.basename(), e.getKey());
+                row.put(EBakaSQL.F_STU_BK_ROWS.basename(), "1");
+                row.put(EBakaSQL.F_STU_BK_CHECKSUM.basename(), e.getValue());
+                return (SqlRow) row;
+            }).map(mapper);
+        });
+    }
+
+    @Test
+    void missingStateFallsBackToFullRead() {
+        put(student("1", "5.A", "a@skola.cz"), student("2", "6.B", "b@skola.cz"));
+
+        StudentDelta delta = read();
+
+        assertTrue(delta.complete());
+        assertEquals(1, fullReads);
+        assertTrue(classReads.isEmpty());
+        assertEquals(List.of("2", "1"), ids(delta.students()));
+        assertEquals(2, delta.added().size());
+    }
+
+    @Test
+    void unchangedChecksumsSkipClassReads() {
+        put(student("1", "5.A", "a@skola.cz"));
+        read();
+
+        StudentDelta delta = read();
+
+        assertFalse(delta.complete());
+        assertTrue(delta.isEmpty());
+        assertEquals(1, fullReads);
+        assertTrue(classReads.isEmpty());
+        assertEquals(List.of("1"), ids(delta.students()));
+    }
+
+    @Test
+    void changedClassIsRereadAndDiffed() {
+        put(student("1", "5.A", "a@skola.cz"), student("2", "5.A", "b@skola.cz"),
+                student("3", "6.B", "c@skola.cz"));
+        read();
+
+        // v 5.A: žák 1 změnil e-mail, žák 2 odešel, žák 4 přibyl; 6.B beze změny
+        roster.put("5.A", new ArrayList<>(List.of(student("1", "5.A", "a2@skola.cz"),
+                student("4", "5.A", "d@skola.cz"))));
+        checksums.put("5.A", "changed");
+
+        StudentDelta delta = read();
+
+        assertEquals(List.of("5.A"), classReads);
+        assertEquals(List.of("3", "1", "4"), ids(delta.students()));
+        assertEquals(List.of("4"), ids(delta.added()));
+        assertEquals(List.of("1"), ids(delta.changed()));
+        assertEquals(List.of("2"), ids(delta.removed()));
+    }
+
+    @Test
+    void corruptStateFallsBackToFullRead() throws Exception {
+        Files.writeString(tempDir.resolve("sql-state.dat"), "poškozený soubor");
+        put(student("1", "5.A", "a@skola.cz"));
+
+        StudentDelta delta = read();
+
+        assertTrue(delta.complete());
+        assertEquals(1, fullReads);
+    }
+
+    private StudentDelta read() {
+        return tracker.read(classLabel -> {
+            classReads.add(classLabel);
+            return copy(roster.getOrDefault(classLabel, List.of()));
+        }, () -> {
+            fullReads++;
+            // pořadí dotazu – ročník sestupně
+            List<StudentRecord> all = new ArrayList<>();
+            roster.keySet().stream().sorted(Comparator.reverseOrder())
+                    .forEach(label -> all.addAll(copy(roster.get(label))));
+            return all;
+        });
+    }
+
+    private void put(StudentRecord... students) {
+        for (StudentRecord student : students) {
+            roster.computeIfAbsent(student.getClassName(), k -> new ArrayList<>()).add(student);
+            checksums.put(student.getClassName(), "initial");
+        }
+    }
+
+    private static List<StudentRecord> copy(List<StudentRecord> students) {
+        return students.stream()
+                .map(s -> student(s.getInternalId(), s.getClassName(), s.getEmail()))
+                .toList();
+    }
+
+    private static List<String> ids(List<StudentRecord> students) {
+        return students.stream().map(StudentRecord::getInternalId).toList();
+    }
+
+    private static StudentRecord student(String id, String className, String email) {
+        StudentRecord student = new StudentRecord();
+        student.setInternalId(id);
+        student.setClassName(className);
+        student.setEmail(email);
+        return student;
+    }
+}
@@ -0,0 +1,144 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy pro ClassShardRunner.
+ *
+ * @author Jan Hladěna
+ */
+class ClassShardRunnerTest {
+
+    /** události listeneru v pořadí doručení */
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    private final SyncProgressListener listener = new SyncProgressListener() {
+        @Override public void onProgress(String message) { events.add(message); }
+        @Override public void onResult(SyncResult result) { events.add("výsledek " + result.getEntityId()); }
+        @Override public void onPhaseStart(String phaseName) { events.add("start " + phaseName); }
+        @Override public void onPhaseEnd(String phaseName, int successCount, int errorCount) { events.add("konec " + phaseName); }
+    };
+
+    /** žák – interní kód a třída */
+    private record Pupil(String id, String className) {}
+
+    @Test
+    void shardsRunConcurrently() {
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        AtomicBoolean overlapped = new AtomicBoolean(true);
+
+        List<Pupil> pupils = List.of(new Pupil("1", "5.A"), new Pupil("2", "5.B"));
+
+        new ClassShardRunner(2).run(pupils, Pupil::className, listener, (p, l) -> {
+            bothRunning.countDown();
+            try {
+                if (!bothRunning.await(5, TimeUnit.SECONDS)) overlapped.set(false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return SyncResult.noChange(p.id());
+        });
+
+        assertTrue(overlapped.get());
+    }
+
+    @Test
+    void resultsAndEventsFollowInputOrder() {
+        // třídy se v evidenci prolínají, první žák třídy 5.A skončí poslední
+        List<Pupil> pupils = List.of(
+                new Pupil("1", "5.A"), new Pupil("2", "5.B"), new Pupil("3", "5.A"),
+                new Pupil("4", "6.C"), new Pupil("5", "5.B"));
+        CountDownLatch othersDone = new CountDownLatch(2);
+
+        List<SyncResult> results = new ClassShardRunner(3).run(pupils, Pupil::className, listener, (p, l) -> {
+            if (p.id().equals("1")) {
+                await(othersDone);
+            }
+            l.onProgress("žák " + p.id());
+            if (p.id().equals("5") || p.id().equals("4")) {
+                othersDone.countDown();
+            }
+            return p.id().equals("3") ? null : SyncResult.noChange(p.id());
+        });
+
+        assertEquals(List.of("1", "2", "4", "5"), results.stream().map(SyncResult::getEntityId).toList());
+        assertEquals(List.of("žák 1", "žák 2", "žák 3", "žák 4", "žák 5"), events);
+    }
+
+    @Test
+    void sameClassRunsSequentially() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Pupil> pupils = List.of(new Pupil("1", "5.A"), new Pupil("2", "5.A"), new Pupil("3", "5.A"));
+
+        new ClassShardRunner(4).run(pupils, Pupil::className, listener, (p, l) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(10);
+            running.decrementAndGet();
+            return SyncResult.noChange(p.id());
+        });
+
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    void failureReplaysEarlierEventsAndRethrows() {
+        List<Pupil> pupils = List.of(new Pupil("1", "5.A"), new Pupil("2", "5.A"), new Pupil("3", "5.A"),
+                new Pupil("4", null));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> new ClassShardRunner(2).run(pupils, Pupil::className, listener, (p, l) -> {
+                    if (p.id().equals("2")) throw new IllegalStateException("chyba žáka 2");
+                    l.onProgress("žák " + p.id());
+                    return SyncResult.noChange(p.id());
+                }));
+
+        assertEquals("chyba žáka 2", e.getMessage());
+        // žák 3 téže třídy se po chybě nezpracuje
+        assertEquals("žák 1", events.getFirst());
+        assertFalse(events.contains("žák 3"));
+    }
+
+    @Test
+    void parallelismOneStreamsEventsDirectly() {
+        List<Pupil> pupils = List.of(new Pupil("1", "5.A"), new Pupil("2", "5.B"));
+        List<String> threads = new ArrayList<>();
+
+        new ClassShardRunner(1).run(pupils, Pupil::className, listener, (p, l) -> {
+            threads.add(Thread.currentThread().getName());
+            // událost je doručena ještě během zpracování
+            l.onProgress("žák " + p.id());
+            assertEquals("žák " + p.id(), events.getLast());
+            return SyncResult.noChange(p.id());
+        });
+
+        assertEquals(List.of(Thread.currentThread().getName(), Thread.currentThread().getName()), threads);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -13,6 +13,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -56,7 +57,7 @@ class IdentifyServiceImplTest {
 
         StudentRecord s1 = createStudent("001", "Novák", "Tomáš");
         StudentRecord s2 = createStudent("002", "Veselá", "Marie");
-        when(studentRepo.findActive(5, "A")).thenReturn(List.of(s1, s2));
+        when(studentRepo.findActiveByClasses(List.of("5.A"))).thenReturn(Map.of("5.A", List.of(s1, s2)));
 
         List<IdentifyResult> results = service.identify("5.A");
 
@@ -186,7 +187,7 @@ class IdentifyServiceImplTest {
         when(facultyRepo.findActive(true)).thenReturn(List.of(teacher));
 
         StudentRecord s1 = createStudent("001", "Novák", "Tomáš");
-        when(studentRepo.findActive(5, "A")).thenReturn(List.of(s1));
+        when(studentRepo.findActiveByClasses(List.of("5.A"))).thenReturn(Map.of("5.A", List.of(s1)));
 
         // individuální žák nenalezen
         when(ldapUserRepo.findByUPN(config.getLdapBaseStudents(), "neexistuje@skola.cz"))
@@ -0,0 +1,168 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy pro PhaseScheduler.
+ *
+ * @author Jan Hladěna
+ */
+class PhaseSchedulerTest {
+
+    /** události listeneru v pořadí doručení */
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    private final SyncProgressListener listener = new SyncProgressListener() {
+        @Override public void onProgress(String message) { events.add(message); }
+        @Override public void onResult(SyncResult result) { events.add("výsledek " + result.getEntityId()); }
+        @Override public void onPhaseStart(String phaseName) { events.add("start " + phaseName); }
+        @Override public void onPhaseEnd(String phaseName, int successCount, int errorCount) { events.add("konec " + phaseName); }
+    };
+
+    @Test
+    void independentPhasesRunConcurrently() {
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        AtomicBoolean overlapped = new AtomicBoolean(true);
+
+        List<SyncPhase> phases = List.of(
+                phase("učitelé", Set.of(), Set.of("ldap.faculty-lists"), l -> await(bothRunning, overlapped)),
+                phase("zástupci", Set.of(), Set.of("ldap.contacts"), l -> await(bothRunning, overlapped)));
+
+        List<PhaseTiming> timings = new PhaseScheduler(2).run(phases, new ArrayList<>(), listener);
+
+        assertTrue(overlapped.get());
+        assertEquals(List.of("učitelé", "zástupci"), timings.stream().map(PhaseTiming::phase).toList());
+    }
+
+    @Test
+    void singlePhaseAtATimeWithParallelismOne() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Runnable body = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(20);
+            running.decrementAndGet();
+        };
+
+        List<SyncPhase> phases = List.of(
+                phase("a", Set.of(), Set.of("x"), l -> { body.run(); return List.of(); }),
+                phase("b", Set.of(), Set.of("y"), l -> { body.run(); return List.of(); }),
+                phase("c", Set.of(), Set.of("z"), l -> { body.run(); return List.of(); }));
+
+        new PhaseScheduler(1).run(phases, new ArrayList<>(), listener);
+
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    void eventsAndResultsFollowDeclarationOrder() {
+        CountDownLatch laterDone = new CountDownLatch(1);
+        AtomicBoolean dependentSawWriter = new AtomicBoolean(false);
+        AtomicBoolean writerDone = new AtomicBoolean(false);
+
+        List<SyncPhase> phases = List.of(
+                phase("žáci", Set.of(), Set.of("ldap.students"), l -> {
+                    l.onPhaseStart("žáci");
+                    // pozdější nezávislá fáze skončí dřív
+                    await(laterDone);
+                    l.onProgress("žáci: průběh");
+                    writerDone.set(true);
+                    return List.of(SyncResult.noChange("1"));
+                }),
+                phase("zástupci", Set.of(), Set.of("ldap.contacts"), l -> {
+                    l.onPhaseStart("zástupci");
+                    laterDone.countDown();
+                    return List.of(SyncResult.noChange("2"));
+                }),
+                phase("pravidla", Set.of("ldap.students"), Set.of(), l -> {
+                    dependentSawWriter.set(writerDone.get());
+                    l.onPhaseStart("pravidla");
+                    return List.of(SyncResult.noChange("3"));
+                }));
+
+        List<SyncResult> results = new ArrayList<>();
+        new PhaseScheduler(3).run(phases, results, listener);
+
+        assertTrue(dependentSawWriter.get());
+        assertEquals(List.of("1", "2", "3"), results.stream().map(SyncResult::getEntityId).toList());
+        assertEquals(List.of("start žáci", "žáci: průběh", "výsledek 1",
+                "start zástupci", "výsledek 2",
+                "start pravidla", "výsledek 3"), events);
+    }
+
+    @Test
+    void failureStopsLaterPhases() {
+        AtomicBoolean laterRan = new AtomicBoolean(false);
+
+        List<SyncPhase> phases = List.of(
+                phase("struktura", Set.of(), Set.of("ad.structure"), l -> {
+                    throw new IllegalStateException("chyba struktury");
+                }),
+                phase("načtení", Set.of("ad.structure"), Set.of("prefetch"), l -> {
+                    laterRan.set(true);
+                    return List.of();
+                }));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> new PhaseScheduler(2).run(phases, new ArrayList<>(), listener));
+
+        assertEquals("chyba struktury", e.getMessage());
+        assertFalse(laterRan.get());
+    }
+
+    @Test
+    void dependencyFollowsConflictingResources() {
+        SyncPhase writer = phase("a", Set.of(), Set.of("ldap.students"), l -> List.of());
+
+        assertTrue(phase("b", Set.of("ldap.students"), Set.of(), l -> List.of()).dependsOn(writer));
+        assertTrue(phase("c", Set.of(), Set.of("ldap.students"), l -> List.of()).dependsOn(writer));
+        assertFalse(phase("d", Set.of("prefetch"), Set.of("ldap.contacts"), l -> List.of()).dependsOn(writer));
+        // dvě čtení téhož zdroje se nevylučují
+        SyncPhase reader = phase("e", Set.of("prefetch"), Set.of(), l -> List.of());
+        assertFalse(phase("f", Set.of("prefetch"), Set.of(), l -> List.of()).dependsOn(reader));
+    }
+
+    private static SyncPhase phase(String name, Set<String> reads, Set<String> writes,
+                                   Function<SyncProgressListener, List<SyncResult>> action) {
+        return new SyncPhase(name, reads, writes, action);
+    }
+
+    /** obě fáze musí běžet současně, jinak odpočet vyprší */
+    private static List<SyncResult> await(CountDownLatch latch, AtomicBoolean overlapped) {
+        latch.countDown();
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) overlapped.set(false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return List.of();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import cz.zsstudanka.skola.bakakeeper.connectors.LDAPConnector;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapModificationBatch;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
+import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
+import cz.zsstudanka.skola.bakakeeper.model.entities.DataLDAP;
+import cz.zsstudanka.skola.bakakeeper.repository.LDAPUserRepository;
+import cz.zsstudanka.skola.bakakeeper.repository.StudentRepository;
+import cz.zsstudanka.skola.bakakeeper.repository.impl.BakaLDAPUserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy pro PlanExecutor.
+ *
+ * @author Jan Hladěna
+ */
+@ExtendWith(MockitoExtension.class)
+class PlanExecutorTest {
+
+    private static final String PHASE = "Synchronizace dat žáků";
+    private static final String DN = "CN=novak.jan,OU=Trida-A,OU=Rocnik-1,OU=Zaci,DC=skola,DC=local";
+    private static final String OU_1B = "OU=Trida-B,OU=Rocnik-1,OU=Zaci,DC=skola,DC=local";
+
+    @Mock private LDAPUserRepository ldapRepo;
+    @Mock private StudentRepository sqlRepo;
+    @Mock private LDAPConnector ldap;
+
+    @TempDir Path tempDir;
+
+    private PlanExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new PlanExecutor(ldapRepo, sqlRepo, 1);
+    }
+
+    @Test
+    void přejmenováníAPřesun_dalšíOperacePoužijíSkutečnéDN() {
+        // kolize jména – adresář zvolí novak.jan1 místo plánovaného novak.jan2
+        when(ldapRepo.renameObject(DN, "novak.jan2"))
+                .thenReturn("CN=novak.jan1,OU=Trida-A,OU=Rocnik-1,OU=Zaci,DC=skola,DC=local");
+        when(ldapRepo.moveObject(anyString(), eq(OU_1B), eq(false))).thenReturn(true);
+        when(ldapRepo.addToGroup(anyString(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
+
+        PlannedOperation.Rename rename = new PlannedOperation.Rename(DN, "novak.jan2");
+        PlannedOperation.Move move = new PlannedOperation.Move(rename.plannedDn(), OU_1B, false);
+        PlannedChange change = new PlannedChange(PHASE, "001", "1.A", SyncResult.Type.UPDATED, "ok", List.of(
+                rename,
+                move,
+                new PlannedOperation.AddToGroup(move.plannedDn(), "CN=Zaci-Trida-1B,OU=Skupiny"),
+                new PlannedOperation.Modify(new LdapModificationBatch(move.plannedDn())
+                        .replace(EBakaLDAPAttributes.TITLE, "Žák"))));
+
+        List<SyncResult> results = executor.apply(List.of(change), null, SyncProgressListener.SILENT);
+
+        assertEquals(List.of(SyncResult.Type.UPDATED), results.stream().map(SyncResult::getType).toList());
+        String actual = "CN=novak.jan1," + OU_1B;
+        verify(ldapRepo).moveObject("CN=novak.jan1,OU=Trida-A,OU=Rocnik-1,OU=Zaci,DC=skola,DC=local", OU_1B, false);
+        verify(ldapRepo).addToGroup(actual, "CN=Zaci-Trida-1B,OU=Skupiny");
+
+        ArgumentCaptor<LdapModificationBatch> batch = ArgumentCaptor.forClass(LdapModificationBatch.class);
+        verify(ldapRepo).modifyAttributes(batch.capture());
+        assertEquals(actual, batch.getValue().getDn());
+    }
+
+    @Test
+    void nepodařenáOperace_chybaSeznamemOperací_zbytekSeProvede() {
+        when(ldapRepo.removeFromAllGroups(DN)).thenReturn(false);
+        when(ldapRepo.moveObject(DN, "OU=Alumni", true)).thenReturn(true);
+
+        PlannedChange change = new PlannedChange("Vyřazení osiřelých účtů", "002", "9.A",
+                SyncResult.Type.RETIRED, "Jan Novák → alumni 2026", List.of(
+                        new PlannedOperation.RemoveFromAllGroups(DN),
+                        new PlannedOperation.Move(DN, "OU=Alumni", true)));
+
+        List<SyncResult> results = executor.apply(List.of(change), null, SyncProgressListener.SILENT);
+
+        assertEquals(1, results.size());
+        assertFalse(results.getFirst().isSuccess());
+        assertTrue(results.getFirst().getDescription().contains("nezdařilo se"));
+        verify(ldapRepo).moveObject(DN, "OU=Alumni", true);
+    }
+
+    @Test
+    void změnaBezOperací_bezZápisu() {
+        List<SyncResult> results = executor.apply(
+                List.of(PlannedChange.none(PHASE, "003", "1.A")), null, SyncProgressListener.SILENT);
+
+        assertEquals(SyncResult.Type.NO_CHANGE, results.getFirst().getType());
+        verifyNoInteractions(ldapRepo, sqlRepo);
+    }
+
+    @Test
+    void emaily_jednaDávka_chybyVPořadíPlánu() {
+        when(sqlRepo.updateEmails(any())).thenReturn(Map.of("005", "zamčeno", "004", "zamčeno"));
+
+        List<PlannedChange> changes = List.of(
+                new PlannedChange(PHASE, "004", "1.A", SyncResult.Type.UPDATED, "e-mail",
+                        List.of(new PlannedOperation.UpdateEmail("004", "a@skola.local"))),
+                new PlannedChange(PHASE, "005", "2.B", SyncResult.Type.UPDATED, "e-mail",
+                        List.of(new PlannedOperation.UpdateEmail("005", "b@skola.local"))));
+
+        List<SyncResult> results = new PlanExecutor(ldapRepo, sqlRepo, 4)
+                .apply(changes, null, SyncProgressListener.SILENT);
+
+        verify(sqlRepo, times(1)).updateEmails(Map.of("004", "a@skola.local", "005", "b@skola.local"));
+        assertEquals(List.of("004", "005", "004", "005"),
+                results.stream().map(SyncResult::getEntityId).toList());
+        assertFalse(results.get(2).isSuccess());
+        assertFalse(results.get(3).isSuccess());
+    }
+
+    @Test
+    void obnovení_přeskočíProvedenéAOvěříNezaznamenanéOperace() {
+        String renamed = "CN=novak.jan1,OU=Trida-A,OU=Rocnik-1,OU=Zaci,DC=skola,DC=local";
+        PlannedOperation.Rename rename = new PlannedOperation.Rename(DN, "novak.jan2");
+        PlannedOperation.Move move = new PlannedOperation.Move(rename.plannedDn(), OU_1B, false);
+        List<PlannedChange> changes = List.of(
+                new PlannedChange(PHASE, "001", "1.A", SyncResult.Type.UPDATED, "hotovo",
+                        List.of(new PlannedOperation.RemoveFromAllGroups("CN=jiny.zak,OU=Zaci"))),
+                new PlannedChange(PHASE, "002", "1.A", SyncResult.Type.UPDATED, "přesun", List.of(
+                        rename,
+                        move,
+                        new PlannedOperation.AddToGroup(move.plannedDn(), "CN=Zaci-Trida-1B,OU=Skupiny"))));
+
+        // přerušený běh: první změna celá, u druhé jen přejmenování (s kolizí jména)
+        SyncJournal journal = new SyncJournal(tempDir.resolve("sync-journal.dat").toString(), "heslo".toCharArray());
+        SyncJournal.PhaseLog log = journal.plan(PHASE, changes);
+        log.applied(0, 0, null);
+        log.applied(1, 0, renamed);
+        journal.compact();
+
+        // přesun neproběhl (účet je stále na DN po přejmenování), skupina se přidá
+        when(ldapRepo.checkDN(renamed)).thenReturn(true);
+        when(ldapRepo.moveObject(renamed, OU_1B, false)).thenReturn(true);
+        when(ldapRepo.listMembership("CN=novak.jan1," + OU_1B)).thenReturn(List.of());
+        when(ldapRepo.addToGroup("CN=novak.jan1," + OU_1B, "CN=Zaci-Trida-1B,OU=Skupiny")).thenReturn(true);
+
+        List<SyncResult> results = executor.apply(changes,
+                journal.resume(journal.load().pending().getFirst()), SyncProgressListener.SILENT);
+
+        assertEquals(List.of("002"), results.stream().map(SyncResult::getEntityId).toList());
+        assertTrue(results.getFirst().isSuccess());
+        verify(ldapRepo, never()).renameObject(anyString(), anyString());
+        verify(ldapRepo, never()).removeFromAllGroups(anyString());
+        verify(ldapRepo).moveObject(renamed, OU_1B, false);
+
+        // zbývající operace jsou nyní zaznamenané
+        journal.compact();
+        SyncJournal.PhaseLog resumed = journal.resume(journal.load().pending().getFirst());
+        assertTrue(resumed.isApplied(1, 1));
+        assertTrue(resumed.isApplied(1, 2));
+    }
+
+    @Test
+    void obnovení_přesunProvedenýBezZáznamu_seNeopakuje() {
+        PlannedOperation.Move move = new PlannedOperation.Move(DN, OU_1B, false);
+        List<PlannedChange> changes = List.of(new PlannedChange(PHASE, "001", "1.A", SyncResult.Type.UPDATED,
+                "přesun", List.of(move)));
+
+        SyncJournal journal = new SyncJournal(tempDir.resolve("sync-journal.dat").toString(), "heslo".toCharArray());
+        journal.plan(PHASE, changes);
+        journal.compact();
+
+        // účet už na původním DN není, na plánovaném ano
+        when(ldapRepo.checkDN(DN)).thenReturn(false);
+        when(ldapRepo.checkDN(move.plannedDn())).thenReturn(true);
+
+        List<SyncResult> results = executor.apply(changes,
+                journal.resume(journal.load().pending().getFirst()), SyncProgressListener.SILENT);
+
+        assertTrue(results.getFirst().isSuccess());
+        verify(ldapRepo, never()).moveObject(anyString(), anyString(), anyBoolean());
+    }
+
+    @Test
+    void dvěTřídySouběžně_nadJednímSnapshotem_žádnýZápisSeNeztratí() throws Exception {
+        String base = "OU=Zaci,DC=skola,DC=local";
+        List<DataLDAP> accounts = new ArrayList<>();
+        List<PlannedChange> changes = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String shard = (i % 2 == 0) ? "5.A" : "5.B";
+            String dn = "CN=Zak " + i + ",OU=Trida-" + shard.substring(2) + ",OU=Rocnik-5," + base;
+            DataLDAP account = new DataLDAP();
+            account.put(EBakaLDAPAttributes.DN.attribute(), dn);
+            account.put(EBakaLDAPAttributes.EXT01.attribute(), Integer.toString(i));
+            account.put(EBakaLDAPAttributes.TITLE.attribute(), "Žák");
+            accounts.add(account);
+            changes.add(new PlannedChange(PHASE, Integer.toString(i), shard, SyncResult.Type.UPDATED, "titulek",
+                    List.of(new PlannedOperation.Modify(new LdapModificationBatch(dn)
+                            .replace(EBakaLDAPAttributes.TITLE, "Žák " + shard)))));
+        }
+        doAnswer(inv -> {
+            Consumer<DataLDAP> consumer = inv.getArgument(3);
+            accounts.forEach(account -> consumer.accept(new DataLDAP(account)));
+            return true;
+        }).when(ldap).searchObjects(eq(base), any(), any(), any());
+        when(ldap.modifyAttributes(any())).thenReturn(true);
+
+        BakaLDAPUserRepository repo = new BakaLDAPUserRepository(ldap);
+        repo.openSnapshot();
+        repo.findAllStudents(base, null);
+
+        // snapshot se během zápisu obou tříd průběžně čte
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> readFailure = new AtomicReference<>();
+        Thread reader = Thread.ofVirtual().start(() -> {
+            try {
+                while (writing.get()) repo.findAllStudents(base, null);
+            } catch (Throwable t) {
+                readFailure.set(t);
+            }
+        });
+
+        List<SyncResult> results;
+        try {
+            results = new PlanExecutor(repo, sqlRepo, 2).apply(changes, null, SyncProgressListener.SILENT);
+        } finally {
+            writing.set(false);
+            reader.join();
+        }
+
+        assertNull(readFailure.get());
+        assertEquals(200, results.stream().filter(SyncResult::isSuccess).count());
+        List<StudentRecord> students = repo.findAllStudents(base, null);
+        assertEquals(200, students.size());
+        for (StudentRecord student : students) {
+            String shard = (Integer.parseInt(student.getInternalId()) % 2 == 0) ? "5.A" : "5.B";
+            assertEquals("Žák " + shard, student.getTitle());
+        }
+        verify(ldap, times(1)).searchObjects(eq(base), any(), any(), any());
+        assertTrue(repo.closeSnapshot(false).isEmpty());
+    }
+}
@@ -10,6 +10,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -142,7 +143,7 @@ class RangeSelectorTest {
         // příprava žáků 5.A
         StudentRecord student1 = createStudent("001", "Novák", "Tomáš", "5.A", "novak@skola.cz");
         StudentRecord student2 = createStudent("002", "Veselá", "Marie", "5.A", "vesela@skola.cz");
-        when(studentRepo.findActive(5, "A")).thenReturn(List.of(student1, student2));
+        when(studentRepo.findActiveByClasses(List.of("5.A"))).thenReturn(Map.of("5.A", List.of(student1, student2)));
 
         ResolvedSelection result = RangeSelector.parse("5.A").resolve(studentRepo, facultyRepo);
 
@@ -153,13 +154,33 @@ class RangeSelectorTest {
         assertTrue(result.notFound().isEmpty());
     }
 
+    @Test
+    void resolveYearLoadsAllClassesAtOnce() {
+        FacultyRecord teacher5A = new FacultyRecord();
+        teacher5A.setClassLabel("5.A");
+        FacultyRecord teacher5B = new FacultyRecord();
+        teacher5B.setClassLabel("5.B");
+        when(facultyRepo.findActive(true)).thenReturn(List.of(teacher5A, teacher5B));
+
+        StudentRecord student = createStudent("001", "Novák", "Tomáš", "5.B", "novak@skola.cz");
+        when(studentRepo.findActiveByClasses(List.of("5.A", "5.B")))
+                .thenReturn(Map.of("5.A", List.of(), "5.B", List.of(student)));
+
+        ResolvedSelection result = RangeSelector.parse("5").resolve(studentRepo, facultyRepo);
+
+        assertEquals(1, result.studentsByClass().get("5.B").size());
+        assertTrue(result.studentsByClass().get("5.A").isEmpty());
+        verify(studentRepo, times(1)).findActiveByClasses(any());
+        verify(studentRepo, never()).findActive(any(), any());
+    }
+
     @Test
     void resolveSkipsNonExistentClass() {
         // třída 9.E nemá třídního učitele → přeskočit
         FacultyRecord teacher5A = new FacultyRecord();
         teacher5A.setClassLabel("5.A");
         when(facultyRepo.findActive(true)).thenReturn(List.of(teacher5A));
-        when(studentRepo.findActive(5, "A")).thenReturn(List.of());
+        when(studentRepo.findActiveByClasses(List.of("5.A"))).thenReturn(Map.of("5.A", List.of()));
 
         ResolvedSelection result = RangeSelector.parse("5.A,9.E").resolve(studentRepo, facultyRepo);
 
@@ -206,7 +227,7 @@ class RangeSelectorTest {
         when(facultyRepo.findActive(true)).thenReturn(List.of(teacher5A));
 
         StudentRecord student = createStudent("001", "Novák", "Tomáš", "5.A", "novak.tomas@skola.cz");
-        when(studentRepo.findActive(5, "A")).thenReturn(List.of(student));
+        when(studentRepo.findActiveByClasses(List.of("5.A"))).thenReturn(Map.of("5.A", List.of(student)));
         when(studentRepo.findByEmail("novak.tomas@skola.cz")).thenReturn(student);
 
         ResolvedSelection result = RangeSelector.parse("5.A,novak.tomas@skola.cz")
@@ -227,7 +248,7 @@ class RangeSelectorTest {
         when(facultyRepo.findActive(true)).thenReturn(List.of(teacher5A, teacher6B));
 
         StudentRecord stu5A = createStudent("001", "Novák", "Tomáš", "5.A", "novak@skola.cz");
-        when(studentRepo.findActive(5, "A")).thenReturn(List.of(stu5A));
+        when(studentRepo.findActiveByClasses(List.of("5.A"))).thenReturn(Map.of("5.A", List.of(stu5A)));
 
         StudentRecord stu6B = createStudent("002", "Veselá", "Marie", "6.B", "vesela.marie@skola.cz");
         when(studentRepo.findByEmail("vesela.marie@skola.cz")).thenReturn(stu6B);
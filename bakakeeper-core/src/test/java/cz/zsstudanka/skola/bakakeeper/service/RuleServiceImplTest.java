@@ -2,6 +2,7 @@ package cz.zsstudanka.skola.bakakeeper.service;
 
 import cz.zsstudanka.skola.bakakeeper.config.SyncRule;
 import cz.zsstudanka.skola.bakakeeper.config.SyncRuleAttribute;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapModificationBatch;
 import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
 import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
 import cz.zsstudanka.skola.bakakeeper.model.SyncScope;
@@ -9,6 +10,7 @@ import cz.zsstudanka.skola.bakakeeper.repository.LDAPUserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -16,6 +18,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -75,6 +78,72 @@ class RuleServiceImplTest {
         return s;
     }
 
+    /** Všechny dávky změn odeslané do repozitáře. */
+    private List<LdapModificationBatch> sentBatches() {
+        ArgumentCaptor<LdapModificationBatch> captor = ArgumentCaptor.forClass(LdapModificationBatch.class);
+        verify(ldapRepo, atLeast(0)).modifyAttributes(captor.capture());
+        return captor.getAllValues();
+    }
+
+    /** Počet nahrazení odpovídajících zadání (null = libovolná hodnota). */
+    private long countReplaced(String dn, EBakaLDAPAttributes attr, String value) {
+        return sentBatches().stream()
+                .filter(b -> b.getDn().equals(dn))
+                .flatMap(b -> b.getModifications().stream())
+                .filter(m -> m.operation() == LdapModificationBatch.Operation.REPLACE)
+                .filter(m -> attr == null || m.attribute() == attr)
+                .filter(m -> value == null || Objects.equals(m.value(), value))
+                .count();
+    }
+
+    /** Ověří, že atribut objektu byl právě jednou nahrazen hodnotou. */
+    private void assertReplaced(String dn, EBakaLDAPAttributes attr, String value) {
+        assertEquals(1, countReplaced(dn, attr, value),
+                "Očekáváno nahrazení " + attr + " = '" + value + "' na " + dn);
+    }
+
+    /** Ověří, že atribut objektu nebyl nahrazen (null = libovolný atribut/hodnota). */
+    private void assertNotModified(String dn, EBakaLDAPAttributes attr, String value) {
+        assertEquals(0, countReplaced(dn, attr, value));
+    }
+
+    /** Hromadné změny skupin: DN skupiny → [přidaní, odebraní]. */
+    @SuppressWarnings("unchecked")
+    private Map<String, List<List<String>>> groupChanges() {
+        ArgumentCaptor<String> group = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<List<String>> added = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<String>> removed = ArgumentCaptor.forClass(List.class);
+        verify(ldapRepo, atLeast(0)).updateGroupMembers(group.capture(), added.capture(), removed.capture());
+
+        Map<String, List<List<String>>> changes = new HashMap<>();
+        for (int i = 0; i < group.getAllValues().size(); i++) {
+            changes.put(group.getAllValues().get(i),
+                    List.of(added.getAllValues().get(i), removed.getAllValues().get(i)));
+        }
+        return changes;
+    }
+
+    private void assertAddedToGroup(String memberDn, String groupDn) {
+        List<List<String>> change = groupChanges().get(groupDn);
+        assertNotNull(change, "Skupina " + groupDn + " nebyla změněna");
+        assertTrue(change.get(0).contains(memberDn));
+    }
+
+    private void assertRemovedFromGroup(String memberDn, String groupDn) {
+        List<List<String>> change = groupChanges().get(groupDn);
+        assertNotNull(change, "Skupina " + groupDn + " nebyla změněna");
+        assertTrue(change.get(1).contains(memberDn));
+    }
+
+    /** Ověří, že člen nebyl přidán do skupiny (null = libovolný člen/skupina). */
+    private void assertNotAddedToGroup(String memberDn, String groupDn) {
+        groupChanges().forEach((group, change) -> {
+            if (groupDn == null || groupDn.equals(group)) {
+                assertTrue(memberDn == null ? change.get(0).isEmpty() : !change.get(0).contains(memberDn));
+            }
+        });
+    }
+
     // =====================================================================
     // Základní testy matching (CLASS, GRADE, LEVEL, ALL_STUDENTS, ...)
     // =====================================================================
@@ -91,16 +160,16 @@ class RuleServiceImplTest {
         StudentRecord s3 = student("003", "6.A", 6,
                 "CN=Kovar,OU=Trida-A,OU=Rocnik-6,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, s2, s3), true, SyncProgressListener.SILENT);
 
         // s1 dostane hodnotu, s2 a s3 ne
-        verify(ldapRepo).updateAttribute(s1.getDn(),
+        assertReplaced(s1.getDn(),
                 EBakaLDAPAttributes.EXT05, "Zaci");
         // s2 a s3 nemají aktuální hodnotu → žádné čištění
-        verify(ldapRepo, never()).updateAttribute(eq(s2.getDn()), eq(EBakaLDAPAttributes.EXT05), eq(""));
+        assertNotModified(s2.getDn(), EBakaLDAPAttributes.EXT05, "");
     }
 
     @Test
@@ -115,14 +184,14 @@ class RuleServiceImplTest {
         StudentRecord s3 = student("003", "6.A", 6,
                 "CN=Kov,OU=Trida-A,OU=Rocnik-6,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, s2, s3), true, SyncProgressListener.SILENT);
 
         // s1 a s2 dostanou title, s3 ne
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.TITLE, "Pátý ročník");
-        verify(ldapRepo).updateAttribute(s2.getDn(), EBakaLDAPAttributes.TITLE, "Pátý ročník");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.TITLE, "Pátý ročník");
+        assertReplaced(s2.getDn(), EBakaLDAPAttributes.TITLE, "Pátý ročník");
     }
 
     @Test
@@ -135,13 +204,13 @@ class RuleServiceImplTest {
         StudentRecord s2 = student("002", "6.B", 6,
                 "CN=S,OU=Trida-B,OU=Rocnik-6,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, s2), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.TITLE, "Žák");
-        verify(ldapRepo).updateAttribute(s2.getDn(), EBakaLDAPAttributes.TITLE, "Žák");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.TITLE, "Žák");
+        assertReplaced(s2.getDn(), EBakaLDAPAttributes.TITLE, "Žák");
     }
 
     @Test
@@ -158,7 +227,7 @@ class RuleServiceImplTest {
                 List.of(rule), List.of(t), true, SyncProgressListener.SILENT);
 
         // učitel nedostane title, a protože nemá aktuální title, žádné čištění
-        verify(ldapRepo, never()).updateAttribute(eq(t.getDn()), eq(EBakaLDAPAttributes.TITLE), anyString());
+        assertNotModified(t.getDn(), EBakaLDAPAttributes.TITLE, null);
     }
 
     // =====================================================================
@@ -177,9 +246,8 @@ class RuleServiceImplTest {
                 List.of(rule), List.of(s1), false, SyncProgressListener.SILENT);
 
         assertFalse(results.isEmpty());
-        verify(ldapRepo, never()).updateAttribute(anyString(), any(), anyString());
-        verify(ldapRepo, never()).addToGroup(anyString(), anyString());
-        verify(ldapRepo, never()).removeFromGroup(anyString(), anyString());
+        verify(ldapRepo, never()).modifyAttributes(any());
+        verify(ldapRepo, never()).updateGroupMembers(anyString(), any(), any());
     }
 
     // =====================================================================
@@ -231,14 +299,14 @@ class RuleServiceImplTest {
         StudentRecord s2 = student("002", "7.A", 7,
                 "CN=S,OU=Trida-A,OU=Rocnik-7,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, s2), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.TITLE, "1. stupeň");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.TITLE, "1. stupeň");
         // s2 nemá aktuální title → žádné čištění
-        verify(ldapRepo, never()).updateAttribute(eq(s2.getDn()), any(), anyString());
+        assertNotModified(s2.getDn(), null, null);
     }
 
     @Test
@@ -251,12 +319,12 @@ class RuleServiceImplTest {
         StudentRecord s2 = student("002", "7.A", 7,
                 "CN=S,OU=Trida-A,OU=Rocnik-7,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, s2), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(s2.getDn(), EBakaLDAPAttributes.TITLE, "2. stupeň");
+        assertReplaced(s2.getDn(), EBakaLDAPAttributes.TITLE, "2. stupeň");
     }
 
     // =====================================================================
@@ -274,13 +342,13 @@ class RuleServiceImplTest {
                 "CN=Ucitel,OU=Ucitele,OU=Zamestnanci,OU=Uzivatele,OU=Skola,DC=skola,DC=local",
                 "ucitel", "ucitel@skola.ext");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, t1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.TITLE, "Člen školy");
-        verify(ldapRepo).updateAttribute(t1.getDn(), EBakaLDAPAttributes.TITLE, "Člen školy");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.TITLE, "Člen školy");
+        assertReplaced(t1.getDn(), EBakaLDAPAttributes.TITLE, "Člen školy");
     }
 
     @Test
@@ -295,12 +363,12 @@ class RuleServiceImplTest {
                 "CN=svoboda.petr,OU=Trida-B,OU=Rocnik-5,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local",
                 "svoboda.petr", "svoboda.petr@skola.ext");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, s2), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.TITLE, "Speciální");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.TITLE, "Speciální");
     }
 
     @Test
@@ -312,12 +380,12 @@ class RuleServiceImplTest {
                 "CN=ucitel.karel,OU=Ucitele,OU=Zamestnanci,OU=Uzivatele,OU=Skola,DC=skola,DC=local",
                 null, "ucitel.karel@skola.ext"); // nemá sAMAccountName, ale má UPN
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(t1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(t1.getDn(), EBakaLDAPAttributes.TITLE, "Vedoucí");
+        assertReplaced(t1.getDn(), EBakaLDAPAttributes.TITLE, "Vedoucí");
     }
 
     @Test
@@ -331,12 +399,12 @@ class RuleServiceImplTest {
                 "CN=Ucitel,OU=Ucitele,OU=Zamestnanci,OU=Uzivatele,OU=Skola,DC=skola,DC=local",
                 "ucitel", "ucitel@skola.ext");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, t1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(t1.getDn(), EBakaLDAPAttributes.TITLE, "Učitel");
+        assertReplaced(t1.getDn(), EBakaLDAPAttributes.TITLE, "Učitel");
     }
 
     @Test
@@ -350,12 +418,12 @@ class RuleServiceImplTest {
                 "CN=Ucitel,OU=Ucitele,OU=Zamestnanci,OU=Uzivatele,OU=Skola,DC=skola,DC=local",
                 "ucitel", "ucitel@skola.ext");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, t1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.TITLE, "Žák");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.TITLE, "Žák");
     }
 
     @Test
@@ -370,12 +438,12 @@ class RuleServiceImplTest {
                 "CN=Ucitel,OU=Ucitele,OU=Zamestnanci,OU=Uzivatele,OU=Skola,DC=skola,DC=local",
                 "ucitel", "ucitel@skola.ext");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(v1, t1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(v1.getDn(), EBakaLDAPAttributes.TITLE, "Vedení");
+        assertReplaced(v1.getDn(), EBakaLDAPAttributes.TITLE, "Vedení");
     }
 
     @Test
@@ -389,12 +457,12 @@ class RuleServiceImplTest {
                 "CN=Ucitel,OU=Ucitele,OU=Zamestnanci,OU=Uzivatele,OU=Skola,DC=skola,DC=local",
                 "ucitel", "ucitel@skola.ext");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, t1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(t1.getDn(), EBakaLDAPAttributes.TITLE, "Učitel");
+        assertReplaced(t1.getDn(), EBakaLDAPAttributes.TITLE, "Učitel");
     }
 
     // =====================================================================
@@ -412,13 +480,13 @@ class RuleServiceImplTest {
         StudentRecord s1 = student("001", "6.A", 6,
                 "CN=N,OU=Trida-A,OU=Rocnik-6,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.TITLE, "Žák 6.A");
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.EXT05, "Zaci");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.TITLE, "Žák 6.A");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.EXT05, "Zaci");
     }
 
     // =====================================================================
@@ -435,13 +503,13 @@ class RuleServiceImplTest {
         StudentRecord s1 = student("001", "6.A", 6,
                 "CN=N,OU=Trida-A,OU=Rocnik-6,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
         when(ldapRepo.listDirectMembers(groupDn)).thenReturn(new ArrayList<>());
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).addToGroup(s1.getDn(), groupDn);
+        assertAddedToGroup(s1.getDn(), groupDn);
     }
 
     @Test
@@ -459,8 +527,8 @@ class RuleServiceImplTest {
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).addToGroup(s1.getDn(), groupDn1);
-        verify(ldapRepo).addToGroup(s1.getDn(), groupDn2);
+        assertAddedToGroup(s1.getDn(), groupDn1);
+        assertAddedToGroup(s1.getDn(), groupDn2);
     }
 
     @Test
@@ -480,9 +548,8 @@ class RuleServiceImplTest {
                 List.of(rule), List.of(s1), false, SyncProgressListener.SILENT);
 
         assertFalse(results.isEmpty());
-        verify(ldapRepo, never()).updateAttribute(anyString(), any(), anyString());
-        verify(ldapRepo, never()).addToGroup(anyString(), anyString());
-        verify(ldapRepo, never()).removeFromGroup(anyString(), anyString());
+        verify(ldapRepo, never()).modifyAttributes(any());
+        verify(ldapRepo, never()).updateGroupMembers(anyString(), any(), any());
     }
 
     // =====================================================================
@@ -502,15 +569,15 @@ class RuleServiceImplTest {
                 "CN=S,OU=Trida-A,OU=Rocnik-5,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local",
                 Map.of("extensionAttribute5", "StaryZaznam"));
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, s2), true, SyncProgressListener.SILENT);
 
         // s1 dostane hodnotu
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.EXT05, "Zaci");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.EXT05, "Zaci");
         // s2 má starý záznam v ext5 (RULE_EXCLUSIVE) → vyčistit
-        verify(ldapRepo).updateAttribute(s2.getDn(), EBakaLDAPAttributes.EXT05, "");
+        assertReplaced(s2.getDn(), EBakaLDAPAttributes.EXT05, "");
     }
 
     @Test
@@ -526,13 +593,13 @@ class RuleServiceImplTest {
                 "CN=S,OU=Trida-A,OU=Rocnik-5,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
         // s2 nemá ruleAttributes nastaven → getRuleAttribute("extensionAttribute5") = null
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, s2), true, SyncProgressListener.SILENT);
 
-        // s2 nemá co čistit → žádný updateAttribute s prázdnou hodnotou
-        verify(ldapRepo, never()).updateAttribute(eq(s2.getDn()), eq(EBakaLDAPAttributes.EXT05), eq(""));
+        // s2 nemá co čistit → žádné nahrazení prázdnou hodnotou
+        assertNotModified(s2.getDn(), EBakaLDAPAttributes.EXT05, "");
     }
 
     @Test
@@ -559,9 +626,9 @@ class RuleServiceImplTest {
                 List.of(rule), List.of(s1, s2), true, SyncProgressListener.SILENT);
 
         // s2 má INTERN_KOD "002", ale extensionAttribute1 je chráněný → NESMÍ se vyčistit
-        verify(ldapRepo, never()).updateAttribute(eq(s2.getDn()), eq(EBakaLDAPAttributes.EXT01), eq(""));
+        assertNotModified(s2.getDn(), EBakaLDAPAttributes.EXT01, "");
         // celkově žádný zápis – ext1 je chráněný
-        verify(ldapRepo, never()).updateAttribute(anyString(), any(), anyString());
+        verify(ldapRepo, never()).modifyAttributes(any());
     }
 
     @Test
@@ -579,7 +646,7 @@ class RuleServiceImplTest {
                 List.of(rule), List.of(s1), true, SyncProgressListener.SILENT);
 
         // hodnota je shodná → žádný zápis
-        verify(ldapRepo, never()).updateAttribute(anyString(), any(), anyString());
+        verify(ldapRepo, never()).modifyAttributes(any());
     }
 
     @Test
@@ -595,13 +662,13 @@ class RuleServiceImplTest {
         StudentRecord s1 = student("001", "6.A", 6,
                 "CN=N,OU=Trida-A,OU=Rocnik-6,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule1, rule2), List.of(s1), true, SyncProgressListener.SILENT);
 
         // poslední pravidlo vyhrává → "DruhyStupen"
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.EXT05, "DruhyStupen");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.EXT05, "DruhyStupen");
     }
 
     // =====================================================================
@@ -628,9 +695,9 @@ class RuleServiceImplTest {
                 List.of(rule), List.of(s1, s2), true, SyncProgressListener.SILENT);
 
         // s1 už je ve skupině → bez přidání
-        verify(ldapRepo, never()).addToGroup(eq(s1.getDn()), eq(groupDn));
+        assertNotAddedToGroup(s1.getDn(), groupDn);
         // s2 nepatří → odebrat
-        verify(ldapRepo).removeFromGroup(s2Dn, groupDn);
+        assertRemovedFromGroup(s2Dn, groupDn);
     }
 
     @Test
@@ -648,7 +715,7 @@ class RuleServiceImplTest {
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).addToGroup(s1.getDn(), groupDn);
+        assertAddedToGroup(s1.getDn(), groupDn);
     }
 
     @Test
@@ -669,8 +736,8 @@ class RuleServiceImplTest {
                 List.of(rule), List.of(s1), true, SyncProgressListener.SILENT);
 
         // nikdo nematchuje → odebrat stávajícího člena
-        verify(ldapRepo).removeFromGroup(s1.getDn(), groupDn);
-        verify(ldapRepo, never()).addToGroup(anyString(), anyString());
+        assertRemovedFromGroup(s1.getDn(), groupDn);
+        assertNotAddedToGroup(null, null);
     }
 
     // =====================================================================
@@ -685,13 +752,13 @@ class RuleServiceImplTest {
                 "CN=N,OU=Trida-A,OU=Rocnik-6,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local",
                 Map.of("extensionAttribute5", "StaráHodnota"));
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(), List.of(s1), true, SyncProgressListener.SILENT);
 
         // ext5 je exkluzivní pro pravidla → vyčistit i s prázdnými pravidly
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.EXT05, "");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.EXT05, "");
         assertTrue(results.stream().anyMatch(r -> r.getDescription() != null
                 && r.getDescription().contains("Rekonciliace")));
     }
@@ -720,7 +787,7 @@ class RuleServiceImplTest {
                 List.of(), List.of(s1), true, SyncProgressListener.SILENT);
 
         // title není exkluzivní pro pravidla a žádné pravidlo title nezmiňuje → ponechat
-        verify(ldapRepo, never()).updateAttribute(anyString(), any(), anyString());
+        verify(ldapRepo, never()).modifyAttributes(any());
     }
 
     @Test
@@ -732,14 +799,14 @@ class RuleServiceImplTest {
                         "extensionAttribute7", "B",
                         "extensionAttribute10", "C"));
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(), List.of(s1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.EXT05, "");
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.EXT07, "");
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.EXT10, "");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.EXT05, "");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.EXT07, "");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.EXT10, "");
         assertEquals(3, results.size());
     }
 
@@ -757,13 +824,13 @@ class RuleServiceImplTest {
                 "CN=N,OU=Trida-A,OU=Rocnik-6,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local",
                 Map.of("extensionAttribute5", "StaryZaznam"));
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1), true, SyncProgressListener.SILENT);
 
         // CLEAR → vyčistit
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.EXT05, "");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.EXT05, "");
         assertTrue(results.stream().anyMatch(r -> r.getDescription() != null
                 && r.getDescription().contains("CLEAR")));
     }
@@ -781,7 +848,7 @@ class RuleServiceImplTest {
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo, never()).updateAttribute(anyString(), any(), anyString());
+        verify(ldapRepo, never()).modifyAttributes(any());
     }
 
     @Test
@@ -794,12 +861,12 @@ class RuleServiceImplTest {
                 "CN=N,OU=Trida-A,OU=Rocnik-5,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
         s1.setTitle("Starý title");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.TITLE, "");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.TITLE, "");
     }
 
     // =====================================================================
@@ -820,14 +887,14 @@ class RuleServiceImplTest {
                 Map.of("title", "Starý title"));
         s2.setTitle("Starý title");
 
-        when(ldapRepo.updateAttribute(anyString(), any(), anyString())).thenReturn(true);
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
 
         List<SyncResult> results = service.applyRules(
                 List.of(rule), List.of(s1, s2), true, SyncProgressListener.SILENT);
 
-        verify(ldapRepo).updateAttribute(s1.getDn(), EBakaLDAPAttributes.TITLE, "Žák 6.A");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.TITLE, "Žák 6.A");
         // title je zmíněn v pravidle → rekoncilovat → vyčistit na s2
-        verify(ldapRepo).updateAttribute(s2.getDn(), EBakaLDAPAttributes.TITLE, "");
+        assertReplaced(s2.getDn(), EBakaLDAPAttributes.TITLE, "");
     }
 
     // =====================================================================
@@ -853,7 +920,7 @@ class RuleServiceImplTest {
         assertFalse(results.isEmpty());
         assertTrue(results.stream().anyMatch(r -> r.getDescription() != null
                 && r.getDescription().contains("Rekonciliace")));
-        verify(ldapRepo, never()).updateAttribute(anyString(), any(), anyString());
+        verify(ldapRepo, never()).modifyAttributes(any());
     }
 
     @Test
@@ -869,6 +936,68 @@ class RuleServiceImplTest {
         assertFalse(results.isEmpty());
         assertTrue(results.stream().anyMatch(r -> r.getDescription() != null
                 && r.getDescription().contains("Rekonciliace")));
-        verify(ldapRepo, never()).updateAttribute(anyString(), any(), anyString());
+        verify(ldapRepo, never()).modifyAttributes(any());
+    }
+
+    // =====================================================================
+    // Dávkování změn
+    // =====================================================================
+
+    @Test
+    void změnyJednohoUživatele_odeslányJednouDávkou() {
+        SyncRule rule = new SyncRule(SyncScope.CLASS, "6.A", List.of(
+                new SyncRuleAttribute(EBakaLDAPAttributes.TITLE.attribute(), "Žák 6.A"),
+                new SyncRuleAttribute(EBakaLDAPAttributes.EXT05.attribute(), "Zaci")), List.of());
+
+        StudentRecord s1 = studentWithRuleAttrs("001", "6.A", 6,
+                "CN=Novak,OU=Trida-A,OU=Rocnik-6,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local",
+                Map.of(EBakaLDAPAttributes.EXT07.attribute(), "stará"));
+
+        when(ldapRepo.modifyAttributes(any())).thenReturn(true);
+
+        service.applyRules(List.of(rule), List.of(s1), true, SyncProgressListener.SILENT);
+
+        verify(ldapRepo, times(1)).modifyAttributes(any());
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.TITLE, "Žák 6.A");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.EXT05, "Zaci");
+        assertReplaced(s1.getDn(), EBakaLDAPAttributes.EXT07, "");
+    }
+
+    @Test
+    void rekonciliaceSkupin_jednaZměnaNaSkupinu() {
+        String groupDn = "CN=Skupina,OU=Skupiny,DC=skola,DC=local";
+        SyncRule rule = new SyncRule(SyncScope.GRADE, "6", List.of(), List.of(groupDn));
+
+        StudentRecord s1 = student("001", "6.A", 6,
+                "CN=A,OU=Trida-A,OU=Rocnik-6,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
+        StudentRecord s2 = student("002", "6.B", 6,
+                "CN=B,OU=Trida-B,OU=Rocnik-6,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
+        String staryDn = "CN=C,OU=Trida-A,OU=Rocnik-7,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local";
+
+        // člen s jinou velikostí písmen v DN se nepřidává znovu
+        when(ldapRepo.listDirectMembers(groupDn))
+                .thenReturn(new ArrayList<>(List.of(s1.getDn().toUpperCase(), staryDn)));
+
+        service.applyRules(List.of(rule), List.of(s1, s2), true, SyncProgressListener.SILENT);
+
+        verify(ldapRepo, times(1)).updateGroupMembers(eq(groupDn), any(), any());
+        assertEquals(List.of(List.of(s2.getDn()), List.of(staryDn)), groupChanges().get(groupDn));
+    }
+
+    @Test
+    void rekonciliaceSkupin_selhanéČlenstvíHlášenoJakoChyba() {
+        String groupDn = "CN=Skupina,OU=Skupiny,DC=skola,DC=local";
+        SyncRule rule = new SyncRule(SyncScope.CLASS, "6.A", List.of(), List.of(groupDn));
+
+        StudentRecord s1 = student("001", "6.A", 6,
+                "CN=A,OU=Trida-A,OU=Rocnik-6,OU=Zaci,OU=Uzivatele,OU=Skola,DC=skola,DC=local");
+
+        when(ldapRepo.listDirectMembers(groupDn)).thenReturn(new ArrayList<>());
+        when(ldapRepo.updateGroupMembers(eq(groupDn), any(), any())).thenReturn(List.of(s1.getDn()));
+
+        List<SyncResult> results = service.applyRules(
+                List.of(rule), List.of(s1), true, SyncProgressListener.SILENT);
+
+        assertTrue(results.stream().anyMatch(r -> !r.isSuccess() && s1.getDn().equals(r.getEntityId())));
     }
 }
@@ -0,0 +1,165 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import cz.zsstudanka.skola.bakakeeper.config.AppConfig;
+import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
+import cz.zsstudanka.skola.bakakeeper.repository.LDAPUserRepository;
+import cz.zsstudanka.skola.bakakeeper.repository.StudentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy pro StudentFingerprintStore.
+ *
+ * @author Jan Hladěna
+ */
+@ExtendWith(MockitoExtension.class)
+class StudentFingerprintStoreTest {
+
+    @Mock private AppConfig config;
+    @Mock private StudentRepository sqlRepo;
+    @Mock private LDAPUserRepository ldapRepo;
+    @Mock private PasswordService passwordService;
+    @Mock private PairingService pairingService;
+
+    @TempDir Path tempDir;
+
+    private String file;
+
+    @BeforeEach
+    void setUp() {
+        file = tempDir.resolve("student-fingerprints.dat").toString();
+    }
+
+    @Test
+    void uloženíANačtení_zachováOtiskyAPočítadlo() {
+        StudentFingerprintStore store = new StudentFingerprintStore(file, "heslo".toCharArray());
+        assertTrue(store.startRun(3)); // prázdné úložiště – úplné porovnání
+        store.converged("001", 1L, 2L);
+        store.save();
+
+        StudentFingerprintStore loaded = new StudentFingerprintStore(file, "heslo".toCharArray());
+        assertTrue(loaded.isConverged("001", 1L, 2L));
+        assertFalse(loaded.isConverged("001", 1L, 3L));
+        assertFalse(loaded.startRun(3));
+        assertFalse(loaded.startRun(3));
+        assertTrue(loaded.startRun(3));
+
+        // jiné heslo – otisky se zahodí
+        assertFalse(new StudentFingerprintStore(file, "jine".toCharArray()).isConverged("001", 1L, 2L));
+    }
+
+    @Test
+    void otisk_rozlišujeNullAPrázdnouHodnotu() {
+        assertEquals(StudentFingerprintStore.fingerprint("a", "b"), StudentFingerprintStore.fingerprint("a", "b"));
+        assertNotEquals(StudentFingerprintStore.fingerprint("a", null), StudentFingerprintStore.fingerprint("a", ""));
+        assertNotEquals(StudentFingerprintStore.fingerprint("ab", "c"), StudentFingerprintStore.fingerprint("a", "bc"));
+    }
+
+    @Test
+    void synchronizaceDat_srovnanýŽákSePřeskočí_změnaVAdresáři_porovnáSe() {
+        lenient().when(config.getSyncFullCompareEvery()).thenReturn(24);
+        lenient().when(config.getExtMailAllowed()).thenReturn(List.of());
+        lenient().when(config.getPwdNoExpire()).thenReturn(List.of());
+        lenient().when(config.getLdapBaseStudents()).thenReturn("OU=Zaci,DC=skola,DC=local");
+        lenient().when(config.getMailDomain()).thenReturn("skola.local");
+
+        StudentFingerprintStore store = new StudentFingerprintStore(file, "heslo".toCharArray());
+        StudentServiceImpl service = new StudentServiceImpl(
+                config, sqlRepo, ldapRepo, passwordService, pairingService, store);
+
+        StudentRecord sql = student();
+        StudentRecord ldap = student();
+        ldap.setDn("CN=Novák Jan,OU=Trida-A,OU=Rocnik-5,OU=Zaci,DC=skola,DC=local");
+        ldap.setUpn("novak.jan@skola.local");
+        ldap.setExtMailRestricted(true);
+
+        // první běh porovná a zaznamená srovnaného žáka
+        List<PlannedChange> first = service.planStudentData(List.of(sql), List.of(ldap), true, SyncProgressListener.SILENT);
+        assertFalse(first.getFirst().hasOperations());
+
+        // druhý běh žáka přeskočí
+        List<PlannedChange> second = service.planStudentData(List.of(sql), List.of(ldap), true, SyncProgressListener.SILENT);
+        assertEquals(SyncResult.Type.NO_CHANGE, second.getFirst().type());
+
+        // změna mimo synchronizaci – otisk adresáře se liší, žák se porovná
+        ldap.setExtMailRestricted(false);
+        List<PlannedChange> third = service.planStudentData(List.of(sql), List.of(ldap), true, SyncProgressListener.SILENT);
+        assertEquals(SyncResult.Type.UPDATED, third.getFirst().type());
+        assertTrue(third.getFirst().description().contains("externí pošta"));
+
+        verifyNoInteractions(ldapRepo, sqlRepo);
+    }
+
+    @Test
+    void kontrolaBezZápisu_otiskyPouzeČte() {
+        lenient().when(config.getSyncFullCompareEvery()).thenReturn(24);
+        lenient().when(config.getExtMailAllowed()).thenReturn(List.of());
+        lenient().when(config.getPwdNoExpire()).thenReturn(List.of());
+        lenient().when(config.getLdapBaseStudents()).thenReturn("OU=Zaci,DC=skola,DC=local");
+        lenient().when(config.getMailDomain()).thenReturn("skola.local");
+
+        StudentRecord sql = student();
+        StudentRecord ldap = student();
+        ldap.setDn("CN=Novák Jan,OU=Trida-A,OU=Rocnik-5,OU=Zaci,DC=skola,DC=local");
+        ldap.setUpn("novak.jan@skola.local");
+        ldap.setExtMailRestricted(true);
+
+        // suchý běh nad prázdným úložištěm – porovná, ale nic nezaznamená ani neuloží
+        StudentServiceImpl dryRun = new StudentServiceImpl(config, sqlRepo, ldapRepo, passwordService,
+                pairingService, new StudentFingerprintStore(file, "heslo".toCharArray()));
+        assertFalse(dryRun.planStudentData(List.of(sql), List.of(ldap), false, SyncProgressListener.SILENT)
+                .getFirst().hasOperations());
+        dryRun.planRetirement(List.of(), List.of(ldap), false, SyncProgressListener.SILENT);
+        assertFalse(Files.exists(Path.of(file)));
+
+        // zapisující běh žáka zaznamená
+        StudentServiceImpl repair = new StudentServiceImpl(config, sqlRepo, ldapRepo, passwordService,
+                pairingService, new StudentFingerprintStore(file, "heslo".toCharArray()));
+        repair.planStudentData(List.of(sql), List.of(ldap), true, SyncProgressListener.SILENT);
+        byte[] saved = readFile();
+
+        // suchý běh uložené otisky využije, ale neposune počítadlo ani neodebere vyřazovaného
+        StudentFingerprintStore store = new StudentFingerprintStore(file, "heslo".toCharArray());
+        dryRun = new StudentServiceImpl(config, sqlRepo, ldapRepo, passwordService, pairingService, store);
+        assertEquals(SyncResult.Type.NO_CHANGE, dryRun.planStudentData(
+                List.of(sql), List.of(ldap), false, SyncProgressListener.SILENT).getFirst().type());
+        dryRun.planRetirement(List.of(), List.of(ldap), false, SyncProgressListener.SILENT);
+        store.save(); // bez změny se nepřepíše
+        assertArrayEquals(saved, readFile());
+        assertEquals(SyncResult.Type.NO_CHANGE, repair.planStudentData(
+                List.of(sql), List.of(ldap), true, SyncProgressListener.SILENT).getFirst().type());
+    }
+
+    private byte[] readFile() {
+        try {
+            return Files.readAllBytes(Path.of(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static StudentRecord student() {
+        StudentRecord student = new StudentRecord();
+        student.setInternalId("001");
+        student.setSurname("Novák");
+        student.setGivenName("Jan");
+        student.setEmail("novak.jan@skola.local");
+        student.setClassName("5.A");
+        student.setClassYear(5);
+        student.setClassLetter("A");
+        return student;
+    }
+}
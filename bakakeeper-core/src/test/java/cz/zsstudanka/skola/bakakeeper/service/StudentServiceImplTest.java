@@ -0,0 +1,241 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import cz.zsstudanka.skola.bakakeeper.config.AppConfig;
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapModificationBatch;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaUAC;
+import cz.zsstudanka.skola.bakakeeper.model.StudentRecord;
+import cz.zsstudanka.skola.bakakeeper.repository.LDAPUserRepository;
+import cz.zsstudanka.skola.bakakeeper.repository.StudentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy plánování změn žákovských účtů v StudentServiceImpl – pořadí
+ * naplánovaných operací a DN, na kterých se provedou.
+ *
+ * @author Jan Hladěna
+ */
+@ExtendWith(MockitoExtension.class)
+class StudentServiceImplTest {
+
+    private static final String BASE = "DC=skola,DC=local";
+    private static final String STUDENTS = "OU=Zaci," + BASE;
+    private static final String ALUMNI = "OU=Absolventi," + BASE;
+    private static final String CLASS_GROUPS = "OU=Zaci,OU=Skupiny," + BASE;
+    private static final String GLOBAL_GROUPS = "OU=Globalni,OU=Skupiny," + BASE;
+
+    @Mock private AppConfig config;
+    @Mock private StudentRepository sqlRepo;
+    @Mock private LDAPUserRepository ldapRepo;
+    @Mock private PasswordService passwordService;
+    @Mock private PairingService pairingService;
+
+    private StudentServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(config.getMailDomain()).thenReturn("skola.local");
+        lenient().when(config.getLdapBase()).thenReturn(BASE);
+        lenient().when(config.getLdapBaseStudents()).thenReturn(STUDENTS);
+        lenient().when(config.getLdapBaseAlumni()).thenReturn(ALUMNI);
+        lenient().when(config.getLdapBaseStudentGroups()).thenReturn(CLASS_GROUPS);
+        lenient().when(config.getLdapBaseGlobalGroups()).thenReturn(GLOBAL_GROUPS);
+        lenient().when(config.getExtMailAllowed()).thenReturn(List.of(6, 7, 8, 9));
+        lenient().when(config.getPwdNoExpire()).thenReturn(List.of(6, 7, 8, 9));
+        lenient().when(config.getPwdNoChange()).thenReturn(List.of());
+
+        service = new StudentServiceImpl(config, sqlRepo, ldapRepo, passwordService, pairingService);
+    }
+
+    private static StudentRecord sqlStudent(String id, String surname, String givenName,
+                                            String email, int year, String letter) {
+        StudentRecord s = new StudentRecord();
+        s.setInternalId(id);
+        s.setSurname(surname);
+        s.setGivenName(givenName);
+        s.setEmail(email);
+        s.setClassName(year + "." + letter);
+        s.setClassYear(year);
+        s.setClassLetter(letter);
+        return s;
+    }
+
+    private static StudentRecord ldapStudent(String id, String surname, String givenName,
+                                             String upn, int year, String letter) {
+        StudentRecord s = new StudentRecord();
+        s.setInternalId(id);
+        s.setSurname(surname);
+        s.setGivenName(givenName);
+        s.setDisplayName(surname + " " + givenName);
+        s.setDn("CN=" + surname + " " + givenName + ",OU=Trida-" + letter + ",OU=Rocnik-" + year + "," + STUDENTS);
+        s.setUpn(upn);
+        s.setEmail(upn);
+        if (upn != null) {
+            s.setProxyAddresses(new ArrayList<>(List.of("SMTP:" + upn)));
+        }
+        int uac = EBakaUAC.NORMAL_ACCOUNT.value();
+        if (year >= 6) {
+            uac |= EBakaUAC.DONT_EXPIRE_PASSWORD.value();
+        }
+        s.setUac(uac);
+        s.setExtMailRestricted(year < 6);
+        return s;
+    }
+
+    private static LdapModificationBatch.Modification replace(EBakaLDAPAttributes attribute, String value) {
+        return new LdapModificationBatch.Modification(LdapModificationBatch.Operation.REPLACE, attribute, value);
+    }
+
+    @Test
+    void změnaJménaATřídy_pořadíOperacíANavazujícíDN() {
+        StudentRecord sql = sqlStudent("001", "Nováková", "Jana", "novak.jan@skola.local", 6, "B");
+        StudentRecord ldap = ldapStudent("001", "Novák", "Jan", "novak.jan@skola.local", 5, "A");
+        when(ldapRepo.findAllStudents(BASE, null)).thenReturn(List.of(ldap));
+
+        List<PlannedChange> changes = service.planStudentData(
+                List.of(sql), List.of(ldap), true, SyncProgressListener.SILENT);
+
+        String oldDn = ldap.getDn();
+        String renamedDn = "CN=Nováková Jana,OU=Trida-A,OU=Rocnik-5," + STUDENTS;
+        String finalDn = "CN=Nováková Jana,OU=Trida-B,OU=Rocnik-6," + STUDENTS;
+
+        // jméno a login na starém DN, zápis e-mailu do evidence, přejmenování,
+        // přesun, skupiny na novém DN a nakonec ostatní atributy jednou dávkou
+        PlannedChange change = changes.getFirst();
+        assertEquals(SyncResult.Type.UPDATED, change.type());
+        assertEquals(List.of(
+                new PlannedOperation.Modify(new LdapModificationBatch(oldDn)
+                        .replace(EBakaLDAPAttributes.NAME_LAST, "Nováková")
+                        .replace(EBakaLDAPAttributes.NAME_FIRST, "Jana")
+                        .replace(EBakaLDAPAttributes.NAME_DISPLAY, "Nováková Jana")
+                        .replace(EBakaLDAPAttributes.UPN, "novakova.jana@skola.local")
+                        .replace(EBakaLDAPAttributes.LOGIN, "novakova.jana")
+                        .replace(EBakaLDAPAttributes.MAIL, "novakova.jana@skola.local")
+                        .remove(EBakaLDAPAttributes.PROXY_ADDR, "SMTP:novak.jan@skola.local")
+                        .add(EBakaLDAPAttributes.PROXY_ADDR, "smtp:novak.jan@skola.local")
+                        .add(EBakaLDAPAttributes.PROXY_ADDR, "SMTP:novakova.jana@skola.local")),
+                new PlannedOperation.UpdateEmail("001", "novakova.jana@skola.local"),
+                new PlannedOperation.Rename(oldDn, "Nováková Jana"),
+                new PlannedOperation.Move(renamedDn, "OU=Trida-B,OU=Rocnik-6," + STUDENTS, false),
+                new PlannedOperation.RemoveFromAllGroups(finalDn),
+                new PlannedOperation.AddToGroup(finalDn, "CN=Skupina-Zaci," + GLOBAL_GROUPS),
+                new PlannedOperation.AddToGroup(finalDn, "CN=Zaci-Trida-6B," + CLASS_GROUPS),
+                new PlannedOperation.Modify(finalDn, List.of(
+                        replace(EBakaLDAPAttributes.TITLE, "Žák"),
+                        replace(EBakaLDAPAttributes.EXT02, "FALSE"),
+                        replace(EBakaLDAPAttributes.UAC, Integer.toString(
+                                EBakaUAC.NORMAL_ACCOUNT.value() | EBakaUAC.DONT_EXPIRE_PASSWORD.value()))))),
+                change.operations());
+
+        // plánování nic nezapisuje
+        verify(ldapRepo, only()).findAllStudents(BASE, null);
+        verifyNoInteractions(sqlRepo);
+    }
+
+    @Test
+    void dvaPřejmenovaníŽáci_nedostanouStejnýUpn() {
+        StudentRecord sqlFirst = sqlStudent("001", "Svoboda", "Petr", "dvorak.petr@skola.local", 7, "A");
+        StudentRecord sqlSecond = sqlStudent("002", "Svoboda", "Petr", "cerny.petr@skola.local", 7, "A");
+        StudentRecord ldapFirst = ldapStudent("001", "Dvořák", "Petr", "dvorak.petr@skola.local", 7, "A");
+        StudentRecord ldapSecond = ldapStudent("002", "Černý", "Petr", "cerny.petr@skola.local", 7, "A");
+        when(ldapRepo.findAllStudents(BASE, null)).thenReturn(List.of(ldapFirst, ldapSecond));
+
+        List<PlannedChange> changes = service.planStudentData(List.of(sqlFirst, sqlSecond),
+                List.of(ldapFirst, ldapSecond), true, SyncProgressListener.SILENT);
+
+        assertEquals(new PlannedOperation.UpdateEmail("001", "svoboda.petr@skola.local"),
+                changes.get(0).operations().get(1));
+        assertEquals(new PlannedOperation.UpdateEmail("002", "svoboda.petr1@skola.local"),
+                changes.get(1).operations().get(1));
+
+        // obě přejmenování cílí na totéž CN – kolizi DN řeší až provedení plánu
+        assertEquals(new PlannedOperation.Rename(ldapSecond.getDn(), "Svoboda Petr"),
+                changes.get(1).operations().get(2));
+    }
+
+    @Test
+    void upnNelzeVygenerovat_zapíšeSeJenJméno_bezZápisuEmailu() {
+        StudentRecord sql = sqlStudent("001", "Svoboda", "Petr", "dvorak.petr@skola.local", 7, "A");
+        StudentRecord ldap = ldapStudent("001", "Dvořák", "Petr", "dvorak.petr@skola.local", 7, "A");
+
+        // všechny pokusy obsazuje historie adres zaměstnance
+        StudentRecord staff = new StudentRecord();
+        staff.setDn("CN=Svoboda Petr,OU=Ucitele," + BASE);
+        List<String> proxy = new ArrayList<>();
+        for (int attempt = 0; attempt < 10; attempt++) {
+            proxy.add("smtp:svoboda.petr" + ((attempt == 0) ? "" : attempt) + "@skola.local");
+        }
+        staff.setProxyAddresses(proxy);
+        when(ldapRepo.findAllStudents(BASE, null)).thenReturn(List.of(ldap, staff));
+
+        PlannedChange change = service.planStudentData(
+                List.of(sql), List.of(ldap), true, SyncProgressListener.SILENT).getFirst();
+
+        assertEquals(List.of(
+                new PlannedOperation.Modify(new LdapModificationBatch(ldap.getDn())
+                        .replace(EBakaLDAPAttributes.NAME_LAST, "Svoboda")
+                        .replace(EBakaLDAPAttributes.NAME_FIRST, "Petr")
+                        .replace(EBakaLDAPAttributes.NAME_DISPLAY, "Svoboda Petr")),
+                new PlannedOperation.Rename(ldap.getDn(), "Svoboda Petr")),
+                change.operations());
+
+        // chybějící e-mail bez UPN v adresáři – bez nového UPN se nic nenaplánuje
+        StudentRecord sqlNoMail = sqlStudent("002", "Svoboda", "Petr", null, 7, "A");
+        StudentRecord ldapNoUpn = ldapStudent("002", "Svoboda", "Petr", null, 7, "A");
+        PlannedChange none = service.planStudentData(
+                List.of(sqlNoMail), List.of(ldapNoUpn), true, SyncProgressListener.SILENT).getFirst();
+        assertFalse(none.hasOperations());
+    }
+
+    @Test
+    void chybějícíEmailVEvidenci_doplníSeZUpnBezZápisuDoAdresáře() {
+        StudentRecord sql = sqlStudent("001", "Novák", "Jan", null, 7, "A");
+        StudentRecord ldap = ldapStudent("001", "Novák", "Jan", "novak.jan@skola.local", 7, "A");
+
+        PlannedChange change = service.planStudentData(
+                List.of(sql), List.of(ldap), true, SyncProgressListener.SILENT).getFirst();
+
+        assertEquals(List.of(new PlannedOperation.UpdateEmail("001", "novak.jan@skola.local")),
+                change.operations());
+        verifyNoInteractions(ldapRepo);
+    }
+
+    @Test
+    void vyřazení_titulekAUacPakSkupinyAPřesunDoAbsolventů() {
+        StudentRecord orphan = ldapStudent("009", "Malý", "Karel", "maly.karel@skola.local", 9, "A");
+        StudentRecord noDn = ldapStudent("010", "Velký", "Josef", "velky.josef@skola.local", 9, "A");
+        noDn.setDn(null);
+        String year = new SimpleDateFormat("yyyy").format(new Date());
+
+        List<PlannedChange> changes = service.planRetirement(
+                List.of(), List.of(orphan, noDn), true, SyncProgressListener.SILENT);
+
+        PlannedChange retired = changes.getFirst();
+        assertEquals(SyncResult.Type.RETIRED, retired.type());
+        assertEquals("9.A", retired.shard());
+        assertEquals(List.of(
+                new PlannedOperation.Modify(orphan.getDn(), List.of(
+                        replace(EBakaLDAPAttributes.TITLE, "ABS " + year),
+                        replace(EBakaLDAPAttributes.UAC, Integer.toString(EBakaUAC.NORMAL_ACCOUNT.value()
+                                | EBakaUAC.ACCOUNTDISABLE.value() | EBakaUAC.PASSWORD_EXPIRED.value())))),
+                new PlannedOperation.RemoveFromAllGroups(orphan.getDn()),
+                new PlannedOperation.Move(orphan.getDn(), "OU=" + year + "," + ALUMNI, true)),
+                retired.operations());
+
+        assertEquals(SyncResult.Type.ERROR, changes.get(1).type());
+        assertFalse(changes.get(1).hasOperations());
+        verifyNoInteractions(ldapRepo, sqlRepo);
+    }
+}
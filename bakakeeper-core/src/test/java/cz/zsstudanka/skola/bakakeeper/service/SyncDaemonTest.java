@@ -0,0 +1,120 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy pro SyncDaemon.
+ *
+ * @author Jan Hladěna
+ */
+class SyncDaemonTest {
+
+    private static final Duration LONG = Duration.ofHours(1);
+
+    @TempDir Path tempDir;
+
+    private final Semaphore completed = new Semaphore(0);
+    private SyncDaemon daemon;
+    private Thread thread;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        daemon.stop();
+        daemon.awaitTermination();
+        thread.join();
+    }
+
+    private void start(Supplier<SyncReport> job, Path triggerFile) {
+        daemon = new SyncDaemon(() -> {
+            try {
+                return job.get();
+            } finally {
+                completed.release();
+            }
+        }, LONG, Duration.ZERO, triggerFile);
+        thread = new Thread(daemon::run, "sync-daemon-test");
+        thread.start();
+    }
+
+    private void awaitRun() throws InterruptedException {
+        assertTrue(completed.tryAcquire(5, TimeUnit.SECONDS), "běh neproběhl");
+        // stav se zapisuje až po návratu úlohy
+        for (int i = 0; i < 100 && daemon.status().running(); i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static SyncReport report(SyncResult... results) {
+        return new SyncReport(List.of(results), List.of(), List.of());
+    }
+
+    @Test
+    void prvníBěhIhned_vyžádáníSpustíDalší() throws Exception {
+        start(() -> report(SyncResult.created("001", "ok"), SyncResult.error("002", "chyba")), null);
+
+        awaitRun();
+        daemon.trigger();
+        awaitRun();
+
+        SyncDaemon.Status status = daemon.status();
+        assertEquals(2, status.runs());
+        assertEquals(0, status.failedRuns());
+        assertEquals(1, status.lastErrors());
+        // chyba záznamu proces nezneplatní
+        assertTrue(status.isHealthy(LONG));
+    }
+
+    @Test
+    void spouštěcíSoubor_spustíBěhASmažeSe() throws Exception {
+        Path trigger = tempDir.resolve("sync.trigger");
+        start(() -> report(), trigger);
+
+        awaitRun();
+        Files.createFile(trigger);
+        awaitRun();
+
+        assertEquals(2, daemon.status().runs());
+        assertFalse(Files.exists(trigger));
+    }
+
+    @Test
+    void výjimkaBěhu_zaznamenáSe_dalšíBěhProběhne() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        start(() -> {
+            if (calls.incrementAndGet() == 1) throw new IllegalStateException("LDAP nedostupný");
+            return report(SyncResult.updated("001", "ok"));
+        }, null);
+
+        awaitRun();
+        assertEquals("LDAP nedostupný", daemon.status().lastFailure());
+        assertFalse(daemon.status().isHealthy(LONG));
+
+        daemon.trigger();
+        awaitRun();
+
+        SyncDaemon.Status status = daemon.status();
+        assertEquals(2, status.runs());
+        assertEquals(1, status.failedRuns());
+        assertNull(status.lastFailure());
+        assertEquals(1, status.lastActions());
+        assertTrue(status.isHealthy(LONG));
+
+        List<String> metrics = status.toMetrics();
+        assertTrue(metrics.contains("bakakeeper_sync_runs_total 2"));
+        assertTrue(metrics.contains("bakakeeper_sync_failed_runs_total 1"));
+        assertTrue(metrics.contains("bakakeeper_sync_running 0"));
+    }
+}
@@ -0,0 +1,126 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy pro SyncJournal.
+ *
+ * @author Jan Hladěna
+ */
+class SyncJournalTest {
+
+    private static final String PHASE = "Synchronizace dat žáků";
+    private static final String DN = "CN=novak.jan,OU=Trida-A,OU=Rocnik-1,OU=Zaci,DC=skola,DC=local";
+
+    @TempDir Path tempDir;
+
+    private Path file;
+    private SyncJournal journal;
+
+    private final List<PlannedChange> changes = List.of(
+            new PlannedChange(PHASE, "001", "1.A", SyncResult.Type.UPDATED, "Data synchronizována: jméno.",
+                    List.of(new PlannedOperation.Rename(DN, "novakova.jana"),
+                            new PlannedOperation.UpdateEmail("001", "novakova.jana@skola.local"))));
+
+    @BeforeEach
+    void setUp() {
+        file = tempDir.resolve("sync-journal.dat");
+        journal = new SyncJournal(file.toString(), "heslo".toCharArray());
+    }
+
+    @Test
+    void dokončenýBěh_kompaktaceDeníkSmaže() {
+        journal.begin(List.of("Kontrola AD struktury", PHASE));
+        journal.checkpoint("Kontrola AD struktury");
+        journal.plan(PHASE, changes).applied(0, 0, "CN=novakova.jana,OU=Trida-A,OU=Rocnik-1,OU=Zaci,DC=skola,DC=local");
+        journal.checkpoint(PHASE);
+
+        journal.compact();
+
+        assertFalse(Files.exists(file));
+        assertTrue(journal.load().isEmpty());
+    }
+
+    @Test
+    void přerušenýBěh_zůstaneNedokončenáFáze() {
+        journal.begin(List.of("Kontrola AD struktury", PHASE, "Synchronizace zákonných zástupců"));
+        journal.checkpoint("Kontrola AD struktury");
+        journal.plan(PHASE, changes).applied(0, 0, "CN=novakova.jana,OU=Trida-A,OU=Rocnik-1,OU=Zaci,DC=skola,DC=local");
+
+        // běh skončil chybou – kompaktace ponechá nedokončenou fázi
+        journal.compact();
+
+        SyncJournal.State state = new SyncJournal(file.toString(), "heslo".toCharArray()).load();
+        assertEquals(1, state.pending().size());
+        SyncJournal.PendingPhase pending = state.pending().getFirst();
+        assertEquals(PHASE, pending.phase());
+        assertEquals(changes, pending.changes());
+
+        SyncJournal.PhaseLog log = journal.resume(pending);
+        assertTrue(log.isResumed());
+        assertTrue(log.isApplied(0, 0));
+        assertFalse(log.isApplied(0, 1));
+        assertEquals("CN=novakova.jana,OU=Trida-A,OU=Rocnik-1,OU=Zaci,DC=skola,DC=local", log.appliedDn(0, 0));
+        assertEquals(List.of("Synchronizace zákonných zástupců"), state.unfinishedPhases());
+    }
+
+    @Test
+    void fázeDokončenáDřívějšímBěhem_novýPlánNepřebíráProvedenéOperace() {
+        // první běh fázi dokončil, přerušil se až v pozdější fázi (bez kompaktace)
+        journal.begin(List.of(PHASE, "Synchronizace zákonných zástupců"));
+        journal.plan(PHASE, changes).applied(0, 0, "CN=novakova.jana,OU=Trida-A,OU=Rocnik-1,OU=Zaci,DC=skola,DC=local");
+        journal.checkpoint(PHASE);
+
+        // druhý běh naplánuje tutéž fázi znovu a přeruší se před první operací
+        List<PlannedChange> next = List.of(
+                new PlannedChange(PHASE, "002", "2.B", SyncResult.Type.UPDATED, "Data synchronizována: jméno.",
+                        List.of(new PlannedOperation.Rename(
+                                "CN=svoboda.petr,OU=Trida-B,OU=Rocnik-2,OU=Zaci,DC=skola,DC=local", "svoboda.pavel"))));
+        SyncJournal second = new SyncJournal(file.toString(), "heslo".toCharArray());
+        second.begin(List.of(PHASE, "Synchronizace zákonných zástupců"));
+        second.plan(PHASE, next);
+        second.compact();
+
+        SyncJournal.State state = new SyncJournal(file.toString(), "heslo".toCharArray()).load();
+        assertEquals(1, state.pending().size());
+        SyncJournal.PendingPhase pending = state.pending().getFirst();
+        assertEquals(next, pending.changes());
+        assertTrue(pending.applied().isEmpty());
+        assertFalse(journal.resume(pending).isApplied(0, 0));
+    }
+
+    @Test
+    void neúplnýRámecNaKonci_seIgnorujeAOdřízne() throws Exception {
+        journal.plan(PHASE, changes);
+        journal.compact();
+        long valid = Files.size(file);
+
+        // pád během zápisu dalšího rámce
+        Files.write(file, new byte[]{0, 0, 4, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        assertEquals(1, journal.load().pending().size());
+
+        journal.checkpoint(PHASE);
+        journal.compact();
+
+        assertFalse(Files.exists(file));
+        assertTrue(valid > 0);
+    }
+
+    @Test
+    void jinéHeslo_deníkNelzePřečíst() {
+        journal.plan(PHASE, changes);
+        journal.compact();
+
+        assertTrue(new SyncJournal(file.toString(), "jine".toCharArray()).load().isEmpty());
+    }
+}
@@ -11,9 +11,13 @@ import cz.zsstudanka.skola.bakakeeper.repository.StudentRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -37,6 +41,8 @@ class SyncOrchestratorTest {
     @Mock private GuardianService guardianService;
     @Mock private RuleService ruleService;
 
+    @TempDir Path tempDir;
+
     private SyncOrchestrator orchestrator;
 
     @BeforeEach
@@ -44,6 +50,8 @@ class SyncOrchestratorTest {
         orchestrator = new SyncOrchestrator(config, studentRepo, ldapUserRepo,
                 facultyRepo, guardianRepo, structureService, studentService,
                 facultyService, guardianService, ruleService);
+        // změny evidence – výchozí implementace nad findActive(null, null)
+        lenient().when(studentRepo.findActiveChanges()).thenCallRealMethod();
     }
 
     /** Společné stubování pro testy runFullSync – strukturní kontrola vrací prázdno. */
@@ -70,10 +78,10 @@ class SyncOrchestratorTest {
         when(guardianRepo.findAllContacts(any())).thenReturn(List.of());
 
         // services vracejí prázdné výsledky
-        when(facultyService.syncClassTeachers(any(), anyBoolean(), any())).thenReturn(List.of());
-        when(studentService.initializeNewStudents(any(), any(), anyBoolean(), any())).thenReturn(List.of());
-        when(studentService.syncStudentData(any(), any(), anyBoolean(), any())).thenReturn(List.of());
-        when(studentService.retireOrphanedStudents(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(facultyService.syncClassTeachers(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(studentService.initializeNewStudents(any(), any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(studentService.planStudentData(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(studentService.planRetirement(any(), any(), anyBoolean(), any())).thenReturn(List.of());
         when(guardianService.syncGuardians(any(), any(), any(), anyBoolean(), any()))
                 .thenReturn(new GuardianSyncOutcome(List.of(), List.of()));
         // konvergentní model – pravidla se volají vždy (kvůli rekonciliaci)
@@ -84,13 +92,22 @@ class SyncOrchestratorTest {
         assertNotNull(report);
         assertNotNull(report.results());
         verify(structureService).checkAndRepairStructure(eq(false), any());
-        verify(facultyService).syncClassTeachers(any(), eq(false), any());
-        verify(studentService).initializeNewStudents(any(), any(), eq(false), any());
-        verify(studentService).syncStudentData(any(), any(), eq(false), any());
-        verify(studentService).retireOrphanedStudents(any(), any(), eq(false), any());
+        verify(facultyService).syncClassTeachers(any(), any(), eq(false), any());
+        verify(studentService).initializeNewStudents(any(), any(), any(), eq(false), any());
+        verify(studentService).planStudentData(any(), any(), eq(false), any());
+        verify(studentService).planRetirement(any(), any(), eq(false), any());
+        // suchý běh plán neprovádí
+        verify(studentService, never()).applyPlan(any(), any(), any());
         verify(guardianService).syncGuardians(any(), any(), any(), eq(false), any());
         // konvergentní model – pravidla se volají vždy (i s prázdnými rules – kvůli rekonciliaci)
         verify(ruleService).applyRules(eq(List.of()), any(), eq(false), any());
+        // bez zápisu se každá báze načte jen jednou (předem, souběžně)
+        verify(ldapUserRepo, times(2)).findAllStudents(any(), any());
+        verify(facultyRepo).findActive(true);
+        verify(guardianRepo).findAllContacts("OU=Kontakty");
+        // doba běhu každé fáze grafu
+        assertEquals(8, report.phaseTimings().size());
+        assertEquals("Kontrola AD struktury", report.phaseTimings().get(0).phase());
     }
 
     @Test
@@ -108,10 +125,10 @@ class SyncOrchestratorTest {
         when(facultyRepo.findActive(true)).thenReturn(List.of());
         when(guardianRepo.findAllContacts(any())).thenReturn(List.of());
 
-        when(facultyService.syncClassTeachers(any(), anyBoolean(), any())).thenReturn(List.of());
-        when(studentService.initializeNewStudents(any(), any(), anyBoolean(), any())).thenReturn(List.of());
-        when(studentService.syncStudentData(any(), any(), anyBoolean(), any())).thenReturn(List.of());
-        when(studentService.retireOrphanedStudents(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(facultyService.syncClassTeachers(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(studentService.initializeNewStudents(any(), any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(studentService.planStudentData(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(studentService.planRetirement(any(), any(), anyBoolean(), any())).thenReturn(List.of());
         when(guardianService.syncGuardians(any(), any(), any(), anyBoolean(), any()))
                 .thenReturn(new GuardianSyncOutcome(List.of(), List.of()));
         when(ruleService.applyRules(any(), any(), anyBoolean(), any())).thenReturn(List.of());
@@ -120,6 +137,8 @@ class SyncOrchestratorTest {
 
         // s repair=true se LDAP načítá vícekrát (po inicializaci + před pravidly)
         verify(ldapUserRepo, atLeast(3)).findAllStudents(any(), any());
+        // plán dat i vyřazení se provede
+        verify(studentService, times(2)).applyPlan(any(), any(), any());
     }
 
     @Test
@@ -136,13 +155,14 @@ class SyncOrchestratorTest {
         // strukturní kontrola vrátí jeden výsledek
         when(structureService.checkAndRepairStructure(anyBoolean(), any()))
                 .thenReturn(List.of(SyncResult.noChange("OU=Skupiny")));
-        when(facultyService.syncClassTeachers(any(), anyBoolean(), any()))
+        when(facultyService.syncClassTeachers(any(), any(), anyBoolean(), any()))
                 .thenReturn(List.of(SyncResult.updated("T1", "ok")));
-        when(studentService.initializeNewStudents(any(), any(), anyBoolean(), any()))
+        when(studentService.initializeNewStudents(any(), any(), any(), anyBoolean(), any()))
                 .thenReturn(List.of(SyncResult.created("S1", "ok")));
-        when(studentService.syncStudentData(any(), any(), anyBoolean(), any()))
-                .thenReturn(List.of(SyncResult.error("S2", "chyba")));
-        when(studentService.retireOrphanedStudents(any(), any(), anyBoolean(), any()))
+        when(studentService.planStudentData(any(), any(), anyBoolean(), any()))
+                .thenReturn(List.of(new PlannedChange("Synchronizace dat žáků", "S2", "1.A",
+                        SyncResult.Type.ERROR, "chyba", List.of())));
+        when(studentService.planRetirement(any(), any(), anyBoolean(), any()))
                 .thenReturn(List.of());
         when(guardianService.syncGuardians(any(), any(), any(), anyBoolean(), any()))
                 .thenReturn(new GuardianSyncOutcome(List.of(), List.of()));
@@ -154,6 +174,70 @@ class SyncOrchestratorTest {
         assertEquals(3, report.results().stream().filter(SyncResult::isSuccess).count());
         assertEquals(1, report.results().stream().filter(r -> !r.isSuccess()).count());
         assertTrue(report.guardianErrors().isEmpty());
+        assertEquals(1, report.plan().changes().size());
+    }
+
+    @Test
+    void runFullSync_suchýBěh_hlásíPlánovanéZměny() {
+        stubStructureOk();
+        when(studentRepo.findActive(null, null)).thenReturn(List.of());
+        when(ldapUserRepo.findAllStudents(any(), any())).thenReturn(List.of());
+        when(config.getLdapBaseStudents()).thenReturn("OU=Zaci");
+        when(config.getLdapBaseAlumni()).thenReturn("OU=Alumni");
+        when(config.getLdapBaseContacts()).thenReturn("OU=Kontakty");
+        when(config.getRules()).thenReturn(List.of());
+        when(facultyRepo.findActive(true)).thenReturn(List.of());
+        when(guardianRepo.findAllContacts(any())).thenReturn(List.of());
+
+        when(facultyService.syncClassTeachers(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(studentService.initializeNewStudents(any(), any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(studentService.planStudentData(any(), any(), anyBoolean(), any())).thenReturn(List.of(
+                new PlannedChange("Synchronizace dat žáků", "S1", "1.A", SyncResult.Type.UPDATED,
+                        "Data synchronizována: třída 1.A → 1.B.",
+                        List.of(new PlannedOperation.AddToGroup("CN=novak.jan,OU=Zaci",
+                                "CN=Zaci-Trida-1B,OU=Skupiny")))));
+        when(studentService.planRetirement(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(guardianService.syncGuardians(any(), any(), any(), anyBoolean(), any()))
+                .thenReturn(new GuardianSyncOutcome(List.of(), List.of()));
+        when(ruleService.applyRules(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+
+        SyncReport report = orchestrator.runFullSync(false, SyncProgressListener.SILENT);
+
+        SyncResult planned = report.results().stream()
+                .filter(r -> "S1".equals(r.getEntityId())).findFirst().orElseThrow();
+        assertEquals(SyncResult.Type.SKIPPED, planned.getType());
+        assertEquals(1, report.plan().operationCount());
+        assertFalse(report.plan().render().isEmpty());
+    }
+
+    @Test
+    void applyPlan_provedeUloženýPlán() {
+        PlannedChange change = new PlannedChange("Vyřazení osiřelých účtů", "S9", "9.A",
+                SyncResult.Type.RETIRED, "Jan Novák → alumni 2026",
+                List.of(new PlannedOperation.RemoveFromAllGroups("CN=novak.jan,OU=Zaci")));
+        when(config.getSyncPlanMaxAge()).thenReturn(3600);
+        when(studentService.applyPlan(eq(List.of(change)), any(), any())).thenReturn(List.of(change.result()));
+
+        SyncReport report = orchestrator.applyPlan(new SyncPlan(List.of(change)), SyncProgressListener.SILENT);
+
+        assertEquals(1, report.results().size());
+        assertEquals(SyncResult.Type.RETIRED, report.results().getFirst().getType());
+        verifyNoInteractions(structureService, facultyService, guardianService, ruleService);
+    }
+
+    @Test
+    void applyPlan_zastaralýPlán_seOdmítne() {
+        PlannedChange change = new PlannedChange("Vyřazení osiřelých účtů", "S9", "9.A",
+                SyncResult.Type.RETIRED, "Jan Novák → alumni 2026",
+                List.of(new PlannedOperation.RemoveFromAllGroups("CN=novak.jan,OU=Zaci")));
+        when(config.getSyncPlanMaxAge()).thenReturn(3600);
+        SyncPlan stale = new SyncPlan(new Date(System.currentTimeMillis() - 2 * 3600 * 1000L), List.of(change));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> orchestrator.applyPlan(stale, SyncProgressListener.SILENT));
+
+        assertTrue(e.getMessage().contains("sync.plan_max_age_s"));
+        verifyNoInteractions(studentService, ldapUserRepo);
     }
 
     @Test
@@ -177,12 +261,93 @@ class SyncOrchestratorTest {
         when(ldapUserRepo.findAllStudents(any(), any())).thenReturn(List.of());
         when(config.getLdapBaseStudents()).thenReturn("OU=Zaci");
         when(config.getLdapBaseAlumni()).thenReturn("OU=Alumni");
-        when(studentService.syncStudentData(any(), any(), anyBoolean(), any()))
+        when(studentService.planStudentData(any(), any(), anyBoolean(), any()))
                 .thenReturn(List.of());
 
         orchestrator.runCheckOnly(false, SyncProgressListener.SILENT);
 
-        verify(studentService).syncStudentData(any(), any(), eq(false), any());
+        verify(studentService).planStudentData(any(), any(), eq(false), any());
+        verify(studentService, never()).applyPlan(any(), any(), any());
         verifyNoInteractions(facultyService, guardianService, ruleService);
     }
+
+    @Test
+    void runFullSync_sDeníkem_dokončenýBěhDeníkSmaže() {
+        Path file = tempDir.resolve("sync-journal.dat");
+        orchestrator = new SyncOrchestrator(config, studentRepo, ldapUserRepo,
+                facultyRepo, guardianRepo, structureService, studentService,
+                facultyService, guardianService, ruleService,
+                new SyncJournal(file.toString(), "heslo".toCharArray()));
+        stubStructureOk();
+        when(studentRepo.findActive(null, null)).thenReturn(List.of());
+        when(ldapUserRepo.findAllStudents(any(), any())).thenReturn(List.of());
+        when(config.getRules()).thenReturn(List.of());
+        when(facultyRepo.findActive(true)).thenReturn(List.of());
+        when(guardianRepo.findAllContacts(any())).thenReturn(List.of());
+        when(facultyService.syncClassTeachers(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(studentService.initializeNewStudents(any(), any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(studentService.planStudentData(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(studentService.planRetirement(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+        when(guardianService.syncGuardians(any(), any(), any(), anyBoolean(), any()))
+                .thenReturn(new GuardianSyncOutcome(List.of(), List.of()));
+        when(ruleService.applyRules(any(), any(), anyBoolean(), any())).thenReturn(List.of());
+
+        orchestrator.runFullSync(true, SyncProgressListener.SILENT);
+
+        // plány fází se provedly s deníkem, po dokončení běhu deník zmizí
+        verify(studentService, times(2)).applyPlan(any(), notNull(), any());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void runFullSync_nedokončenýDeník_běhSeOdmítne() {
+        Path file = tempDir.resolve("sync-journal.dat");
+        SyncJournal journal = new SyncJournal(file.toString(), "heslo".toCharArray());
+        PlannedChange change = new PlannedChange("Vyřazení osiřelých účtů", "S9", "9.A",
+                SyncResult.Type.RETIRED, "Jan Novák → alumni 2026",
+                List.of(new PlannedOperation.RemoveFromAllGroups("CN=novak.jan,OU=Zaci")));
+        journal.begin(List.of("Vyřazení osiřelých účtů"));
+        journal.plan("Vyřazení osiřelých účtů", List.of(change));
+        journal.compact();
+
+        orchestrator = new SyncOrchestrator(config, studentRepo, ldapUserRepo,
+                facultyRepo, guardianRepo, structureService, studentService,
+                facultyService, guardianService, ruleService, journal);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> orchestrator.runFullSync(true, SyncProgressListener.SILENT));
+
+        // zbývající operace se neprovedou mimo --resume a deník zůstane zachován
+        assertTrue(e.getMessage().contains("sync --resume"));
+        assertTrue(orchestrator.hasUnfinishedRun());
+        verifyNoInteractions(structureService, studentService, ldapUserRepo);
+        assertEquals(1, journal.load().pending().size());
+    }
+
+    @Test
+    void resume_provedeNedokončenouFázi() {
+        Path file = tempDir.resolve("sync-journal.dat");
+        SyncJournal journal = new SyncJournal(file.toString(), "heslo".toCharArray());
+        PlannedChange change = new PlannedChange("Vyřazení osiřelých účtů", "S9", "9.A",
+                SyncResult.Type.RETIRED, "Jan Novák → alumni 2026",
+                List.of(new PlannedOperation.RemoveFromAllGroups("CN=novak.jan,OU=Zaci")));
+        // přerušený běh – plán fáze bez kontrolního bodu
+        journal.begin(List.of("Vyřazení osiřelých účtů"));
+        journal.plan("Vyřazení osiřelých účtů", List.of(change));
+        journal.compact();
+
+        orchestrator = new SyncOrchestrator(config, studentRepo, ldapUserRepo,
+                facultyRepo, guardianRepo, structureService, studentService,
+                facultyService, guardianService, ruleService, journal);
+        when(studentService.applyPlan(eq(List.of(change)), argThat(SyncJournal.PhaseLog::isResumed), any()))
+                .thenReturn(List.of(change.result()));
+
+        assertTrue(orchestrator.hasUnfinishedRun());
+        SyncReport report = orchestrator.resume(SyncProgressListener.SILENT);
+
+        assertEquals(1, report.results().size());
+        assertFalse(Files.exists(file));
+        assertFalse(orchestrator.hasUnfinishedRun());
+        verifyNoInteractions(structureService, facultyService, guardianService, ruleService);
+    }
 }
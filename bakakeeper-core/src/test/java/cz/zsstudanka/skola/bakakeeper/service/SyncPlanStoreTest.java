@@ -0,0 +1,48 @@
+package cz.zsstudanka.skola.bakakeeper.service;
+
+import cz.zsstudanka.skola.bakakeeper.connectors.LdapModificationBatch;
+import cz.zsstudanka.skola.bakakeeper.constants.EBakaLDAPAttributes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy pro SyncPlanStore.
+ *
+ * @author Jan Hladěna
+ */
+class SyncPlanStoreTest {
+
+    @TempDir Path tempDir;
+
+    @Test
+    void uloženíANačtení_zachováPlán() {
+        String dn = "CN=novak.jan,OU=Trida-A,OU=Rocnik-9,OU=Zaci,DC=skola,DC=local";
+        SyncPlan plan = new SyncPlan(List.of(
+                PlannedChange.none("Synchronizace dat žáků", "001", "9.A"),
+                new PlannedChange("Vyřazení osiřelých účtů", "002", "9.A", SyncResult.Type.RETIRED,
+                        "Jan Novák → alumni 2026", List.of(
+                        new PlannedOperation.Modify(new LdapModificationBatch(dn)
+                                .replace(EBakaLDAPAttributes.TITLE, "ABS 2026")),
+                        new PlannedOperation.RemoveFromAllGroups(dn),
+                        new PlannedOperation.Move(dn, "OU=2026,OU=StudiumUkonceno,DC=skola,DC=local", true)))));
+
+        String file = tempDir.resolve("plan.dat").toString();
+        assertTrue(new SyncPlanStore(file, "heslo".toCharArray()).save(plan));
+
+        SyncPlan loaded = new SyncPlanStore(file, "heslo".toCharArray()).load();
+
+        assertEquals(plan, loaded);
+        assertEquals(3, loaded.operationCount());
+        assertEquals(plan.render(), loaded.render());
+    }
+
+    @Test
+    void chybějícíSoubor_null() {
+        assertNull(new SyncPlanStore(tempDir.resolve("zadny.dat").toString(), "heslo".toCharArray()).load());
+    }
+}
@@ -214,4 +214,12 @@ class BakaUtilsTest {
         int year = BakaUtils.getCurrentClassYear();
         assertTrue(year >= 2020 && year <= 2100);
     }
+
+    @Test
+    void escapeLdapFilter() {
+        assertEquals("novak.tomas@skola.cz", BakaUtils.escapeLdapFilter("novak.tomas@skola.cz"));
+        assertEquals("\\2a\\29\\28objectClass=\\2a", BakaUtils.escapeLdapFilter("*)(objectClass=*"));
+        assertEquals("a\\5cb\\00", BakaUtils.escapeLdapFilter("a\\b\0"));
+        assertNull(BakaUtils.escapeLdapFilter(null));
+    }
 }
@@ -154,7 +154,12 @@ public class MainView extends BorderPane {
         MenuItem refreshItem = new MenuItem("Obnovit data");
         refreshItem.setAccelerator(new KeyCodeCombination(KeyCode.F5));
         refreshItem.disableProperty().bind(viewModel.configLoadedProperty().not());
-        refreshItem.setOnAction(e -> loadTreeData());
+        refreshItem.setOnAction(e -> {
+            // ruční obnovení čte vždy ze serverů, ne ze sdílené mezipaměti
+            var sf = viewModel.getServiceFactory();
+            if (sf != null) sf.getRosterCache().invalidateAll();
+            loadTreeData();
+        });
 
         viewMenu.getItems().add(refreshItem);
 
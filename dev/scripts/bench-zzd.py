@@ -0,0 +1,267 @@
+#!/usr/bin/env python3
+# =============================================================================
+# BakaKeeper – benchmark: načtení žáků se zákonnými zástupci
+#
+# Porovná původní dotaz (korelovaný poddotaz SELECT TOP 1 na dbo.zaci_zzr
+# pro každý řádek žáka, jen primární zástupce) s množinovým dotazem
+# (LEFT JOIN všech vazeb a zástupců, jeden řádek na zástupce), který
+# BakaKeeper používá v BakaQueries.STUDENTS_ACTIVE.
+#
+# Pro každý dotaz vypíše:
+#   – odhadovaný plán (SET SHOWPLAN_TEXT)
+#   – logická čtení a CPU čas jednoho běhu (SET STATISTICS IO/TIME)
+#   – celkovou dobu N běhů měřenou na serveru (výsledek do #sink,
+#     bez přenosu řádků na klienta)
+#
+# Použití:
+#   cd dev && python3 scripts/bench-zzd.py                 # dry-run – vypíše SQL
+#   cd dev && python3 scripts/bench-zzd.py --apply         # spustí na kontejneru
+#   cd dev && python3 scripts/bench-zzd.py --apply --runs 50
+# =============================================================================
+
+import argparse
+import os
+import subprocess
+import sys
+import tempfile
+
+_SCRIPT_DIR = os.path.dirname(os.path.abspath(__file__))
+_DEV_DIR = os.path.dirname(_SCRIPT_DIR)
+
+DEFAULT_RUNS = 20
+
+# Barevný výstup
+_OK   = "\033[0;32m[OK]\033[0m"
+_INFO = "\033[0;34m[INFO]\033[0m"
+_ERR  = "\033[0;31m[ERR]\033[0m"
+
+
+# =============================================================================
+# Porovnávané dotazy
+# =============================================================================
+
+_STUDENT_COLUMNS = """
+    dbo.zaci.INTERN_KOD, dbo.zaci.C_TR_VYK, dbo.zaci.PRIJMENI, dbo.zaci.JMENO,
+    dbo.zaci.TRIDA, dbo.zaci.E_MAIL,
+    SUBSTRING(dbo.zaci.TRIDA, 1, 1) AS B_ROCNIK,
+    SUBSTRING(dbo.zaci.TRIDA, 3, 1) AS B_TRIDA,
+    dbo.zaci_zzd.ID AS ZZ_KOD, dbo.zaci_zzd.PRIJMENI AS ZZ_PRIJMENI,
+    dbo.zaci_zzd.JMENO AS ZZ_JMENO, dbo.zaci_zzd.TEL_MOBIL AS ZZ_TELEFON,
+    dbo.zaci_zzd.E_MAIL AS ZZ_MAIL"""
+
+_ACTIVE = "dbo.zaci.TRIDA LIKE '[1-9].[A-E]' AND dbo.zaci.EVID_DO IS NULL"
+
+# původní dotaz – korelovaný poddotaz pro každého žáka
+QUERY_CORRELATED = f"""SELECT {_STUDENT_COLUMNS}
+FROM dbo.zaci
+LEFT JOIN dbo.zaci_zzd ON (dbo.zaci_zzd.ID = (
+    SELECT TOP 1 dbo.zaci_zzr.ID_ZZ FROM dbo.zaci_zzr
+    WHERE dbo.zaci_zzr.INTERN_KOD = dbo.zaci.INTERN_KOD
+    AND (dbo.zaci_zzr.JE_ZZ = '1' AND dbo.zaci_zzr.PRIMARNI = '1')))
+WHERE {_ACTIVE}
+ORDER BY B_ROCNIK DESC, B_TRIDA ASC, dbo.zaci.PRIJMENI ASC, dbo.zaci.JMENO ASC"""
+
+# množinový dotaz – všechny vazby a zástupci jedním průchodem
+QUERY_SET_BASED = f"""SELECT {_STUDENT_COLUMNS},
+    CASE WHEN dbo.zaci_zzr.PRIMARNI = '1' THEN '1' ELSE '0' END AS ZZ_PRIMARNI
+FROM dbo.zaci
+LEFT JOIN dbo.zaci_zzr ON (dbo.zaci_zzr.INTERN_KOD = dbo.zaci.INTERN_KOD AND dbo.zaci_zzr.JE_ZZ = '1')
+LEFT JOIN dbo.zaci_zzd ON (dbo.zaci_zzd.ID = dbo.zaci_zzr.ID_ZZ)
+WHERE {_ACTIVE}
+ORDER BY B_ROCNIK DESC, B_TRIDA ASC, dbo.zaci.PRIJMENI ASC, dbo.zaci.JMENO ASC,
+    dbo.zaci.INTERN_KOD ASC, ZZ_PRIMARNI DESC"""
+
+QUERIES = [
+    ("korelovaný TOP 1", QUERY_CORRELATED),
+    ("množinový JOIN", QUERY_SET_BASED),
+]
+
+
+# =============================================================================
+# Načtení prostředí
+# =============================================================================
+
+def load_env() -> dict:
+    """Načte proměnné z dev/.env."""
+    env = {}
+    env_path = os.path.join(_DEV_DIR, ".env")
+    if not os.path.isfile(env_path):
+        print(f"{_ERR} Soubor .env nenalezen: {env_path}", file=sys.stderr)
+        sys.exit(1)
+    with open(env_path) as f:
+        for line in f:
+            line = line.strip()
+            if not line or line.startswith("#"):
+                continue
+            if "=" in line:
+                k, v = line.split("=", 1)
+                env[k.strip()] = v.strip()
+    return env
+
+
+# =============================================================================
+# Generátor SQL
+# =============================================================================
+
+def into_sink(query: str) -> str:
+    """Přesměruje výsledek dotazu do dočasné tabulky (bez přenosu na klienta)."""
+    return query.replace("\nFROM dbo.zaci\n", "\nINTO #sink\nFROM dbo.zaci\n", 1)
+
+
+def build_sql(sql_db: str, runs: int) -> str:
+    """Vygeneruje SQL benchmarku obou dotazů."""
+
+    lines: list[str] = []
+
+    def emit(*args: str) -> None:
+        lines.extend(args)
+
+    def emit_section(title: str) -> None:
+        emit("", f"-- {'=' * 61}",
+             f"-- {title}",
+             f"-- {'=' * 61}", "")
+
+    emit(f"USE {sql_db};", "GO", "SET NOCOUNT ON;", "GO")
+
+    for label, query in QUERIES:
+        emit_section(f"Plán: {label}")
+        emit(f"PRINT '=== Plán: {label} ===';", "GO")
+        emit("SET SHOWPLAN_TEXT ON;", "GO")
+        emit(query + ";", "GO")
+        emit("SET SHOWPLAN_TEXT OFF;", "GO")
+
+    for label, query in QUERIES:
+        emit_section(f"Čtení a CPU jednoho běhu: {label}")
+        emit(f"PRINT '=== Statistiky: {label} ===';")
+        emit("SET STATISTICS IO, TIME ON;")
+        emit(into_sink(query) + ";")
+        emit("SET STATISTICS IO, TIME OFF;")
+        emit("SELECT COUNT(*) AS radku, COUNT(DISTINCT INTERN_KOD) AS zaku,")
+        emit("       COUNT(ZZ_KOD) AS vazeb_zz FROM #sink;")
+        emit("DROP TABLE #sink;", "GO")
+
+    for label, query in QUERIES:
+        emit_section(f"Doba {runs} běhů: {label}")
+        emit("DECLARE @i INT = 0, @start DATETIME2 = SYSDATETIME();")
+        emit(f"WHILE @i < {runs}")
+        emit("BEGIN")
+        emit(into_sink(query) + ";")
+        emit("    DROP TABLE #sink;")
+        emit("    SET @i += 1;")
+        emit("END;")
+        emit(f"PRINT CONCAT('=== {label}: {runs} běhů, celkem ', "
+             "DATEDIFF(MILLISECOND, @start, SYSDATETIME()), ' ms, průměr ', "
+             f"DATEDIFF(MILLISECOND, @start, SYSDATETIME()) / {runs}.0, ' ms ===');")
+        emit("GO")
+
+    return "\n".join(lines) + "\n"
+
+
+# =============================================================================
+# Spuštění na kontejneru
+# =============================================================================
+
+def run_sql(sql_content: str, sql_db: str, sa_password: str) -> None:
+    """Spustí SQL na MSSQL kontejneru přes podman exec + sqlcmd."""
+
+    result = subprocess.run(
+        ["podman", "inspect", "--format={{.State.Status}}", "bakadev-mssql"],
+        capture_output=True, text=True,
+    )
+    if "running" not in result.stdout:
+        print(f"{_ERR} Kontejner bakadev-mssql není spuštěn.", file=sys.stderr)
+        print("  Spusťte nejprve: cd dev && ./setup-dev.sh", file=sys.stderr)
+        sys.exit(1)
+
+    with tempfile.NamedTemporaryFile(
+        mode="w", suffix=".sql", delete=False, encoding="utf-8"
+    ) as f:
+        f.write(sql_content)
+        tmp_path = f.name
+
+    try:
+        subprocess.run(
+            ["podman", "cp", tmp_path, "bakadev-mssql:/tmp/bench-zzd.sql"],
+            check=True,
+        )
+
+        result = subprocess.run(
+            [
+                "podman", "exec",
+                "-e", "SQLCMDENCRYPT=false",
+                "bakadev-mssql",
+                "/usr/local/bin/sqlcmd",
+                "-S", "localhost",
+                "-U", "sa",
+                "-P", sa_password,
+                "-d", sql_db,
+                "-i", "/tmp/bench-zzd.sql",
+                "-b",
+            ],
+            capture_output=True, text=True,
+        )
+
+        if result.stdout:
+            for line in result.stdout.rstrip().splitlines():
+                print(f"  {line}")
+        if result.returncode != 0:
+            print(f"\n{_ERR} Chyba při běhu benchmarku (kód {result.returncode}):",
+                  file=sys.stderr)
+            if result.stderr:
+                print(result.stderr, file=sys.stderr)
+            sys.exit(1)
+
+        print(f"\n{_OK} Benchmark dokončen.")
+    finally:
+        os.unlink(tmp_path)
+
+
+# =============================================================================
+# main
+# =============================================================================
+
+def main() -> None:
+    parser = argparse.ArgumentParser(
+        description="BakaKeeper – benchmark načtení žáků se zákonnými zástupci",
+    )
+    parser.add_argument(
+        "--apply", action="store_true",
+        help="Spustit benchmark na běžícím MSSQL kontejneru (jinak dry-run – vypíše SQL)",
+    )
+    parser.add_argument(
+        "--runs", type=int, default=DEFAULT_RUNS, metavar="N",
+        help=f"Počet opakování každého dotazu při měření doby (výchozí: {DEFAULT_RUNS})",
+    )
+    args = parser.parse_args()
+
+    if not (1 <= args.runs <= 1000):
+        print(f"Chyba: --runs musí být 1–1000 (zadáno: {args.runs})",
+              file=sys.stderr)
+        sys.exit(1)
+
+    env = load_env()
+    sql_db = env.get("SQL_DB", "bakalari")
+    sa_password = env.get("SQL_SA_PASSWORD", "SqlServer.Dev2026")
+
+    print("============================================================")
+    print(" BakaKeeper – benchmark: žáci + zákonní zástupci")
+    print(f" Databáze:   {sql_db}")
+    print(f" Opakování:  {args.runs}")
+    print(f" Režim:      {'APPLY' if args.apply else 'DRY-RUN'}")
+    print("============================================================")
+    print()
+
+    sql = build_sql(sql_db, args.runs)
+
+    if args.apply:
+        run_sql(sql, sql_db, sa_password)
+    else:
+        print(sql)
+        print("-- =========================================================")
+        print("-- Dry-run: benchmark nebyl spuštěn.")
+        print("-- Pro spuštění na kontejneru použijte: --apply")
+        print("-- =========================================================")
+
+
+if __name__ == "__main__":
+    main()